@@ -0,0 +1,747 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.multicast;
+
+import org.reactivestreams.BatchSubscriber;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.reactivestreams.example.wal.Serializer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hot {@link Publisher} that multicasts every item handed to {@link #offer(Object)}
+ * to all of its current {@link Subscriber}s, each of which is drained on the provided
+ * {@link Executor} from its own bounded buffer.
+ * A {@link BatchSubscriber} receives the buffered items in batches.
+ * <p>
+ * Items may be offered from any number of threads concurrently without taking a lock:
+ * an offer first reserves room in the buffer of every current {@link Subscriber} and
+ * only then claims a slot in each of them, so an item is either delivered to all of them
+ * or to none. Items offered by a single thread are received in the order they were offered,
+ * items offered concurrently by different threads may be received in a different order
+ * by different {@link Subscriber}s.
+ * <p>
+ * By default an item is only accepted if there is room for it in the buffers of all
+ * {@link Subscriber}s, so a single slow one holds back all the others. Each {@link Subscriber}
+ * can be given a different {@link OverflowStrategy} via {@link #subscribe(Subscriber, OverflowStrategy)}
+ * to degrade in a controlled way instead, the number of items it lost that way is available
+ * from {@link OverflowSubscription#droppedCount()}. With {@link OverflowStrategy#SPILL}, nothing is lost,
+ * the items which don't fit are kept in a file instead, see {@link #subscribe(Subscriber, Serializer, Path)}.
+ *
+ * @param <T> the element type
+ */
+public final class MulticastPublisher<T> implements Publisher<T>, AutoCloseable {
+
+    /** Same as {@code java.util.concurrent.Flow.defaultBufferSize()}. */
+    static final int DEFAULT_BUFFER_SIZE = 256;
+
+    final Executor executor;
+    final int bufferSize;
+
+    final AtomicBoolean done = new AtomicBoolean();
+    Throwable error;
+
+    @SuppressWarnings("unchecked")
+    final SubscriberRegistry<InnerSubscription<T>> subscribers =
+            new SubscriberRegistry<InnerSubscription<T>>(new InnerSubscription[0]);
+
+    /**
+     * The {@link Subscription} a {@link Subscriber} of a {@link MulticastPublisher} receives,
+     * it can be used to find out how that {@link Subscriber} is coping with the rate of items.
+     */
+    public interface OverflowSubscription extends Subscription {
+        /** @return what happens with items that don't fit into the buffer of the {@link Subscriber} */
+        OverflowStrategy overflowStrategy();
+        /** @return how many items the {@link Subscriber} didn't get because of its {@link #overflowStrategy()} */
+        long droppedCount();
+    }
+
+    /**
+     * The {@link Subscription} a {@link Subscriber} with {@link OverflowStrategy#SPILL} receives,
+     * it can be used to find out how much it spilled and how long reading it back took.
+     */
+    public interface SpillSubscription extends OverflowSubscription {
+        /** @return how many bytes of serialized items the {@link Subscriber} has spilled so far */
+        long spilledBytes();
+        /** @return how many reads it took so far to read the spilled items back */
+        long spillReads();
+        /** @return how long all those reads took in total, in nanoseconds, divided by {@link #spillReads()} the latency of a read */
+        long spillReadNanos();
+    }
+
+    public MulticastPublisher() {
+        this(ForkJoinPool.commonPool(), DEFAULT_BUFFER_SIZE);
+    }
+
+    public MulticastPublisher(Executor executor, int bufferSize) {
+        if ((bufferSize & (bufferSize - 1)) != 0) {
+            throw new IllegalArgumentException("Please provide a power-of-two buffer size");
+        }
+        this.executor = executor;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Hands the item to all current {@link Subscriber}s, same as {@link #tryOffer(Object)}.
+     * @param item the item to multicast, not null
+     * @return true if the item was accepted, false if any of the buffers were full or this publisher is done
+     */
+    public boolean offer(T item) {
+        return tryOffer(item);
+    }
+
+    /**
+     * Hands the item to all current {@link Subscriber}s without blocking, a {@link Subscriber} with
+     * {@link OverflowStrategy#BLOCK} rejects it just like one with {@link OverflowStrategy#REJECT} if its buffer is full.
+     * @param item the item to multicast, not null
+     * @return true if the item was accepted, false if any of the buffers were full or this publisher is done
+     */
+    public boolean tryOffer(T item) {
+        if (item == null) throw new NullPointerException("item is null");
+
+        if (subscribers.isTerminated()) {
+            return false;
+        }
+        SubscriberRegistry.View<InnerSubscription<T>> a = subscribers.view();
+        if (reserveAll(a) != null) {
+            return false;
+        }
+        deliver(item, a);
+        return true;
+    }
+
+    /**
+     * Reserves a slot with every subscriber which may reject the item first,
+     * so the item is either delivered to all of them or none.
+     * @return null if all reservations were made, otherwise the subscriber which had no room, after undoing the others
+     */
+    InnerSubscription<T> reserveAll(SubscriberRegistry.View<InnerSubscription<T>> a) {
+        for (int i = 0; i < a.length(); i++) {
+            InnerSubscription<T> inner = a.get(i);
+            if (inner == null || !inner.rejects() || inner.reserve()) {
+                continue;
+            }
+            for (int j = 0; j < i; j++) {
+                InnerSubscription<T> reserved = a.get(j);
+                if (reserved != null && reserved.rejects()) {
+                    reserved.unreserve();
+                }
+            }
+            return inner;
+        }
+        return null;
+    }
+
+    void deliver(T item, SubscriberRegistry.View<InnerSubscription<T>> a) {
+        for (int i = 0; i < a.length(); i++) {
+            InnerSubscription<T> inner = a.get(i);
+            if (inner == null) {
+                continue;
+            }
+            if (inner.rejects() || inner.reserve()) {
+                inner.offer(item);
+            } else {
+                inner.overflow(item);
+            }
+            inner.drain(executor);
+        }
+    }
+
+    /**
+     * Hands the item to all current {@link Subscriber}s, waiting up to the given time for room
+     * in their buffers if necessary. A {@link Subscriber} with {@link OverflowStrategy#BLOCK} makes it wait
+     * no longer than its own timeout, if that is the shorter one. No room is held in the other buffers while waiting.
+     * @param item the item to multicast, not null
+     * @param timeout how long to wait before giving up, in units of {@code unit}
+     * @param unit the unit of {@code timeout}
+     * @return true if the item was accepted, false if the waiting time elapsed or this publisher is done
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean offer(T item, long timeout, TimeUnit unit) throws InterruptedException {
+        if (item == null) throw new NullPointerException("item is null");
+        if (unit == null) throw new NullPointerException("unit is null");
+        final long start = System.nanoTime();
+        final long deadline = start + unit.toNanos(timeout);
+        long backoff = 1L;
+        for (;;) {
+            if (subscribers.isTerminated()) {
+                return false;
+            }
+            SubscriberRegistry.View<InnerSubscription<T>> a = subscribers.view();
+            InnerSubscription<T> full = reserveAll(a);
+            if (full == null) {
+                deliver(item, a);
+                return true;
+            }
+            long now = System.nanoTime();
+            long remaining = deadline - now;
+            if (full.strategy == OverflowStrategy.BLOCK) {
+                remaining = Math.min(remaining, start + full.blockNanos - now);
+            }
+            if (remaining <= 0L) {
+                return false;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            // The subscribers don't notify producers when they make room, so back off exponentially, up to 1 ms
+            LockSupport.parkNanos(Math.min(backoff, remaining));
+            backoff = Math.min(backoff << 1, 1_000_000L);
+        }
+    }
+
+    public void complete() {
+        if (done.compareAndSet(false, true)) {
+            for (InnerSubscription<T> inner : subscribers.terminate()) {
+                inner.done = true;
+                inner.drain(executor);
+            }
+        }
+    }
+
+    public void completeExceptionally(Throwable error) {
+        if (done.compareAndSet(false, true)) {
+            this.error = error;
+            for (InnerSubscription<T> inner : subscribers.terminate()) {
+                inner.error = error;
+                inner.done = true;
+                inner.drain(executor);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        complete();
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        subscribe(subscriber, OverflowStrategy.REJECT);
+    }
+
+    /**
+     * Subscribes with the given {@link OverflowStrategy}, which must not be {@link OverflowStrategy#BLOCK}.
+     * @param subscriber the {@link Subscriber} to multicast to
+     * @param strategy what to do with items that don't fit into the buffer of the {@link Subscriber}
+     * @return the {@link Subscription} the {@link Subscriber} receives
+     */
+    public OverflowSubscription subscribe(Subscriber<? super T> subscriber, OverflowStrategy strategy) {
+        if (strategy == OverflowStrategy.BLOCK) {
+            throw new IllegalArgumentException("OverflowStrategy.BLOCK needs a timeout");
+        }
+        return subscribe(subscriber, strategy, 0L, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Subscribes with {@link OverflowStrategy#SPILL}: the items which don't fit into the buffer of the {@link Subscriber}
+     * are appended to a temporary file in the given directory, which is deleted once the {@link Subscriber} is done.
+     * The heap only holds the buffer and the buffers for writing and reading the file, however far the
+     * {@link Subscriber} falls behind. If the file can't be written or read, the {@link Subscriber} is signalled the failure.
+     * @param subscriber the {@link Subscriber} to multicast to
+     * @param serializer turns the items into bytes and back
+     * @param directory where the spill file is created
+     * @return the {@link Subscription} the {@link Subscriber} receives
+     */
+    public SpillSubscription subscribe(Subscriber<? super T> subscriber, Serializer<T> serializer, Path directory) {
+        if (serializer == null) throw new NullPointerException("serializer is null");
+        if (directory == null) throw new NullPointerException("directory is null");
+        return subscribe(subscriber, OverflowStrategy.SPILL, 0L, TimeUnit.NANOSECONDS, new SpillBuffer<T>(serializer, directory));
+    }
+
+    /**
+     * Subscribes with the given {@link OverflowStrategy}, with {@link OverflowStrategy#BLOCK} the timeout is how long
+     * {@link #offer(Object, long, TimeUnit)} waits at most for room in the buffer of the {@link Subscriber}.
+     * @param subscriber the {@link Subscriber} to multicast to
+     * @param strategy what to do with items that don't fit into the buffer of the {@link Subscriber}
+     * @param timeout how long an offer with a timeout waits for room, in units of {@code unit}, ignored by other strategies
+     * @param unit the unit of {@code timeout}
+     * @return the {@link Subscription} the {@link Subscriber} receives
+     */
+    public OverflowSubscription subscribe(Subscriber<? super T> subscriber, OverflowStrategy strategy, long timeout, TimeUnit unit) {
+        if (strategy == OverflowStrategy.SPILL) {
+            throw new IllegalArgumentException("OverflowStrategy.SPILL needs a serializer and a directory");
+        }
+        return subscribe(subscriber, strategy, timeout, unit, null);
+    }
+
+    InnerSubscription<T> subscribe(Subscriber<? super T> subscriber, OverflowStrategy strategy, long timeout, TimeUnit unit, SpillBuffer<T> spill) {
+        if (subscriber == null) throw new NullPointerException("subscriber is null");
+        if (strategy == null) throw new NullPointerException("strategy is null");
+        if (unit == null) throw new NullPointerException("unit is null");
+        InnerSubscription<T> inner = new InnerSubscription<T>(subscriber, bufferSize, this, strategy, unit.toNanos(timeout), spill);
+        if (!add(inner)) {
+            Throwable ex = error;
+            if (ex != null) {
+                inner.error = ex;
+            }
+            inner.done = true;
+        }
+        inner.drain(executor);
+        return inner;
+    }
+
+    public boolean hasSubscribers() {
+        return subscribers.size() != 0;
+    }
+
+    boolean add(InnerSubscription<T> inner) {
+        int slot = subscribers.add(inner);
+        inner.slot = slot;
+        return slot != SubscriberRegistry.TERMINATED;
+    }
+
+    void remove(InnerSubscription<T> inner) {
+        subscribers.remove(inner.slot, inner);
+    }
+
+    static final class InnerSubscription<T> implements SpillSubscription, Runnable {
+
+        /** The largest number of items handed to a {@link BatchSubscriber} in one call. */
+        static final int MAX_BATCH = 128;
+
+        final Subscriber<? super T> actual;
+        final BatchSubscriber<? super T> batchActual;
+        final Object[] batch;
+        final MulticastPublisher<T> parent;
+        final OverflowStrategy strategy;
+        final long blockNanos;
+
+        /**
+         * A bounded multi-producer multi-consumer queue: the items are offered by the producers and
+         * polled by the drain loop, but also by producers dropping the oldest item to make room.
+         * Each slot carries a sequence number saying whether it's ready to be written or read.
+         */
+        final AtomicReferenceArray<T> queue;
+        final AtomicLongArray sequences;
+        final int mask;
+
+        /** The item which didn't fit with {@link OverflowStrategy#KEEP_LATEST}. */
+        final AtomicReference<T> latest;
+
+        /** Where the items which don't fit go with {@link OverflowStrategy#SPILL}. */
+        final SpillBuffer<T> spill;
+
+        final AtomicLong dropped = new AtomicLong();
+
+        /** Set when the buffer overflowed with {@link OverflowStrategy#ERROR}, or spilling failed. */
+        volatile boolean overflowed;
+
+        /** Why spilling failed. */
+        volatile Throwable spillError;
+
+        volatile boolean badRequest;
+        final AtomicBoolean cancelled = new AtomicBoolean();
+
+        volatile boolean done;
+        Throwable error;
+
+        boolean subscribed;
+        long emitted;
+
+        final AtomicLong requested = new AtomicLong();
+
+        final AtomicInteger wip = new AtomicInteger();
+
+        /** The handle of this subscription in {@link #parent}'s registry. */
+        volatile int slot = SubscriberRegistry.TERMINATED;
+
+        /** Claimed by producers, each claims its own index once it has reserved room. */
+        final AtomicLong producerIndex = new AtomicLong();
+
+        /** Claimed by consumers with a CAS, as producers may also poll to drop the oldest item. */
+        final AtomicLong consumerIndex = new AtomicLong();
+
+        /** The number of slots that have not been reserved by producers. */
+        final AtomicInteger available;
+
+        @SuppressWarnings("unchecked")
+        InnerSubscription(Subscriber<? super T> actual, int bufferSize, MulticastPublisher<T> parent,
+                          OverflowStrategy strategy, long blockNanos, SpillBuffer<T> spill) {
+            this.actual = actual;
+            this.strategy = strategy;
+            this.blockNanos = blockNanos;
+            this.latest = strategy == OverflowStrategy.KEEP_LATEST ? new AtomicReference<T>() : null;
+            this.spill = spill;
+            if (actual instanceof BatchSubscriber) {
+                this.batchActual = (BatchSubscriber<? super T>)actual;
+                this.batch = new Object[Math.min(bufferSize, MAX_BATCH)];
+            } else {
+                this.batchActual = null;
+                this.batch = null;
+            }
+            this.queue = new AtomicReferenceArray<T>(bufferSize);
+            this.sequences = new AtomicLongArray(bufferSize);
+            for (int i = 0; i < bufferSize; i++) {
+                sequences.lazySet(i, i);
+            }
+            this.parent = parent;
+            this.mask = bufferSize - 1;
+            this.available = new AtomicInteger(bufferSize);
+        }
+
+        @Override
+        public OverflowStrategy overflowStrategy() {
+            return strategy;
+        }
+
+        @Override
+        public long droppedCount() {
+            return dropped.get();
+        }
+
+        @Override
+        public long spilledBytes() {
+            return spill != null ? spill.bytes.get() : 0L;
+        }
+
+        @Override
+        public long spillReads() {
+            return spill != null ? spill.reads.get() : 0L;
+        }
+
+        @Override
+        public long spillReadNanos() {
+            return spill != null ? spill.readNanos.get() : 0L;
+        }
+
+        /** Whether a full buffer makes the whole offer fail. */
+        boolean rejects() {
+            return strategy == OverflowStrategy.REJECT || strategy == OverflowStrategy.BLOCK;
+        }
+
+        /** Handles an item which doesn't fit into the buffer according to {@link #strategy}. */
+        void overflow(T item) {
+            switch (strategy) {
+                case DROP_OLDEST:
+                    for (;;) {
+                        if (poll() != null) {
+                            dropped.getAndIncrement();
+                        } else {
+                            // The buffer is still full of items which are reserved but not yet written, wait for them
+                            Thread.yield();
+                        }
+                        if (reserve()) {
+                            offer(item);
+                            return;
+                        }
+                    }
+                case DROP_NEWEST:
+                    dropped.getAndIncrement();
+                    return;
+                case KEEP_LATEST:
+                    if (latest.getAndSet(item) != null) {
+                        dropped.getAndIncrement();
+                    }
+                    return;
+                case ERROR:
+                    dropped.getAndIncrement();
+                    if (!overflowed) {
+                        overflowed = true;
+                        parent.remove(this);
+                    }
+                    return;
+                case SPILL:
+                    spill(item);
+                    return;
+                default:
+                    throw new IllegalStateException("Not an overflow strategy: " + strategy);
+            }
+        }
+
+        void spill(T item) {
+            try {
+                spill.offer(item);
+            } catch (Throwable ex) {
+                spillFailed(ex);
+            }
+        }
+
+        void spillFailed(Throwable ex) {
+            if (!overflowed) {
+                spillError = ex;
+                overflowed = true;
+                parent.remove(this);
+            }
+        }
+
+        boolean reserve() {
+            for (;;) {
+                int a = available.get();
+                if (a == 0) {
+                    return false;
+                }
+                if (available.compareAndSet(a, a - 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void unreserve() {
+            available.getAndIncrement();
+        }
+
+        /**
+         * Must only be called after a successful {@link #reserve()}, which guarantees
+         * that the consumer has already emptied the claimed slot.
+         */
+        void offer(T item) {
+            if (latest != null && latest.get() != null) {
+                // Something newer than the buffer is waiting already, so this one must come after it
+                if (latest.getAndSet(item) != null) {
+                    dropped.getAndIncrement();
+                }
+                unreserve();
+                return;
+            }
+            if (spill != null && !spill.isEmpty()) {
+                // Items have been spilled already, so this one must come after them
+                unreserve();
+                spill(item);
+                return;
+            }
+            long pi = producerIndex.getAndIncrement();
+            int offset = (int)(pi) & mask;
+
+            // The reservation guarantees the slot is being freed, but whoever polled it may not be done yet
+            while (sequences.get(offset) != pi) {
+                Thread.yield();
+            }
+            queue.lazySet(offset, item);
+            sequences.lazySet(offset, pi + 1);
+        }
+
+        T poll() {
+            for (;;) {
+                long ci = consumerIndex.get();
+                int offset = (int)(ci) & mask;
+                long seq = sequences.get(offset);
+                if (seq == ci + 1) {
+                    if (consumerIndex.compareAndSet(ci, ci + 1)) {
+                        T o = queue.get(offset);
+                        queue.lazySet(offset, null);
+                        // Ready to be written again one lap later
+                        sequences.lazySet(offset, ci + mask + 1);
+                        available.getAndIncrement();
+                        return o;
+                    }
+                } else if (seq < ci + 1) {
+                    // Nothing to poll, or a slot which has been claimed but not yet written
+                    return null;
+                }
+                // Otherwise another consumer got there first, try the next slot
+            }
+        }
+
+        /** Polls the buffer, then the item kept by {@link OverflowStrategy#KEEP_LATEST} or the spilled items. */
+        T pollNext() {
+            T o = poll();
+            if (o == null) {
+                if (latest != null) {
+                    o = latest.getAndSet(null);
+                } else if (spill != null) {
+                    try {
+                        o = spill.poll();
+                    } catch (Throwable ex) {
+                        spillFailed(ex);
+                    }
+                }
+            }
+            return o;
+        }
+
+        boolean isEmpty() {
+            // A slot which has been claimed but not yet written counts as empty, its producer drains after writing it
+            long ci = consumerIndex.get();
+            return sequences.get((int)(ci) & mask) != ci + 1 && (latest == null || latest.get() == null)
+                    && (spill == null || spill.isEmpty());
+        }
+
+        void drain(Executor executor) {
+            if (wip.getAndAdd(1) == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0L) {
+                badRequest = true;
+                done = true;
+            } else {
+                for (;;) {
+                    long r = requested.get();
+                    long u = r + n;
+                    if (u < 0) {
+                        u = Long.MAX_VALUE;
+                    }
+                    if (requested.compareAndSet(r, u)) {
+                        break;
+                    }
+                }
+            }
+            drain(parent.executor);
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled.compareAndSet(false, true)) {
+                parent.remove(this);
+                if (spill != null) {
+                    drain(parent.executor); // Deletes the spill file
+                }
+            }
+        }
+
+        void clear() {
+            error = null;
+            if (spill != null) {
+                spill.close();
+            }
+            while (poll() != null) ;
+            if (latest != null) {
+                latest.lazySet(null);
+            }
+        }
+
+        /** Stops signalling, once the {@link Subscriber} has been signalled a terminal event. */
+        void terminate() {
+            cancelled.lazySet(true);
+            if (spill != null) {
+                spill.close();
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            Subscriber<? super T> a = actual;
+
+            outer:
+            for (;;) {
+
+                if (subscribed) {
+                    if (cancelled.get()) {
+                        clear();
+                    } else if (overflowed) {
+                        // Signalled eagerly, there's no point in delivering the buffer of a subscriber which can't keep up
+                        terminate();
+                        Throwable ex = spillError;
+                        a.onError(ex != null ? ex : new IllegalStateException("The Subscriber couldn't keep up, its buffer of " + (mask + 1) + " items overflowed"));
+                        continue;
+                    } else {
+                        long r = requested.get();
+                        long e = emitted;
+
+                        while (e != r) {
+                            if (cancelled.get()) {
+                                continue outer;
+                            }
+
+                            boolean d = done;
+
+                            if (d) {
+                                Throwable ex = error;
+                                if (ex != null) {
+                                    terminate();
+                                    a.onError(ex);
+                                    continue outer;
+                                }
+                                if (badRequest) {
+                                    terminate();
+                                    parent.remove(this);
+                                    a.onError(new IllegalArgumentException("§3.9 violated: request was not positive"));
+                                    continue outer;
+                                }
+                            }
+
+                            T v = pollNext();
+                            boolean empty = v == null;
+
+                            if (empty && overflowed) {
+                                continue outer; // Reading the spilled items failed
+                            }
+
+                            if (d && empty) {
+                                terminate();
+                                a.onComplete();
+                                break;
+                            }
+
+                            if (empty) {
+                                break;
+                            }
+
+                            if (batch != null) {
+                                // Hand over what is both buffered and requested, up to the size of the batch, with a single call
+                                Object[] b = batch;
+                                int n = 0;
+                                long max = Math.min(r - e, b.length);
+                                b[n++] = v;
+                                while (n != max && (v = pollNext()) != null) {
+                                    b[n++] = v;
+                                }
+                                try {
+                                    batchActual.onNextBatch(b, 0, n);
+                                } finally {
+                                    Arrays.fill(b, 0, n, null);
+                                }
+                                e += n;
+                            } else {
+                                a.onNext(v);
+
+                                e++;
+                            }
+                        }
+
+                        if (e == r) {
+                            if (cancelled.get()) {
+                                continue outer;
+                            }
+                            if (done) {
+                                Throwable ex = error;
+                                if (ex != null) {
+                                    terminate();
+                                    a.onError(ex);
+                                } else
+                                if (badRequest) {
+                                    terminate();
+                                    a.onError(new IllegalArgumentException("§3.9 violated: request was not positive"));
+                                } else
+                                if (isEmpty()) {
+                                    terminate();
+                                    a.onComplete();
+                                }
+                            }
+                        }
+
+                        emitted = e;
+                    }
+                } else {
+                    subscribed = true;
+                    a.onSubscribe(this);
+                }
+
+                int w = wip.get();
+                if (missed == w) {
+                    w = wip.getAndAdd(-missed);
+                    if (missed == w) {
+                        break;
+                    }
+                }
+                missed = w;
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,36 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.multicast;
+
+/**
+ * What a {@link MulticastPublisher} does with an offered item when the buffer of one of its
+ * {@link org.reactivestreams.Subscriber}s is full because that subscriber is not keeping up.
+ */
+public enum OverflowStrategy {
+    /** The item is offered to no subscriber at all and the offer returns false, this is the default. */
+    REJECT,
+    /** The oldest buffered item of the slow subscriber is dropped to make room for the new one. */
+    DROP_OLDEST,
+    /** The slow subscriber doesn't get the new item. */
+    DROP_NEWEST,
+    /**
+     * The slow subscriber keeps its buffer and only the latest of the items which didn't fit,
+     * which it receives once it has caught up with its buffer.
+     */
+    KEEP_LATEST,
+    /** The slow subscriber is cancelled and signalled an {@link IllegalStateException}. */
+    ERROR,
+    /**
+     * Like {@link #REJECT}, but an offer with a timeout waits for the slow subscriber to make room,
+     * for no longer than the subscriber's own timeout. Offers without a timeout never wait.
+     */
+    BLOCK,
+    /**
+     * The items which don't fit into the buffer of the slow subscriber are serialized to a spill file,
+     * and read back in order once it has caught up with its buffer: nothing is lost, and the offer is
+     * not held back.
+     */
+    SPILL
+}
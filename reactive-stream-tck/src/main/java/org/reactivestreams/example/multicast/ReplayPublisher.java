@@ -0,0 +1,461 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.multicast;
+
+import org.reactivestreams.Processor;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A hot {@link Publisher} which, unlike {@link MulticastPublisher}, remembers a bounded history of the
+ * items offered to it and replays it to every new {@link Subscriber} before continuing with the live items.
+ * It can also be subscribed to a {@link Publisher} itself, so the source is run only once no matter how
+ * many {@link Subscriber}s come later.
+ * <p>
+ * The history is bounded by the number of items, their age, their total weight, or any combination:
+ * whatever exceeds a bound is evicted, oldest first, when an item is added or a {@link Subscriber}
+ * arrives. Eviction only affects {@link Subscriber}s which arrive later, those which are already
+ * behind keep receiving every item, the items they still have to receive stay reachable until then.
+ * <p>
+ * The history is stored in a linked list of fixed-size segments, so appending and evicting don't copy
+ * anything. Each {@link Subscriber} follows it at its own pace, on the provided {@link Executor}.
+ * Offering is serialized, as items have to be appended in order anyway.
+ *
+ * @param <T> the element type
+ */
+public final class ReplayPublisher<T> implements Processor<T, T>, AutoCloseable {
+
+    /** Tells how much an item weighs, for bounding the history by weight. */
+    public interface Weigher<T> {
+        /**
+         * @param item the item to weigh
+         * @return the weight of the item, not negative
+         */
+        long weigh(T item);
+    }
+
+    /** The number of items in a segment of the history. */
+    static final int SEGMENT_SIZE = 32;
+
+    final Executor executor;
+    final int maxCount;
+    final long maxAgeNanos;
+    final long maxWeight;
+    final Weigher<? super T> weigher;
+
+    /** The segment holding the item at {@link #start}, guarded by this. */
+    Segment head;
+
+    /** The last segment, where items are appended, guarded by this. */
+    Segment tail;
+
+    /** The index of the oldest item that new subscribers receive, guarded by this. */
+    long start;
+
+    /** The total weight of the items from {@link #start} on, guarded by this. */
+    long weight;
+
+    /** The number of items appended so far, which makes them visible to the subscribers. */
+    volatile long produced;
+
+    volatile boolean done;
+    Throwable error;
+
+    /**
+     * The source's {@link Subscription} while this is subscribed to one, {@link #REQUESTING} while {@link #onSubscribe}
+     * makes its request, and {@link #CANCELLED} once this has been terminated from the outside.
+     */
+    final AtomicReference<Subscription> upstream = new AtomicReference<Subscription>();
+
+    @SuppressWarnings("unchecked")
+    final SubscriberRegistry<ReplaySubscription<T>> subscribers =
+            new SubscriberRegistry<ReplaySubscription<T>>(new ReplaySubscription[0]);
+
+    /**
+     * @param executor the {@link Executor} the {@link Subscriber}s are signalled on
+     * @param maxCount the largest number of items to keep, {@code Integer.MAX_VALUE} for no limit
+     * @param maxAge how long to keep items, {@code Long.MAX_VALUE} for no limit
+     * @param unit the unit of {@code maxAge}
+     * @param maxWeight the largest total weight of the items to keep, {@code Long.MAX_VALUE} for no limit
+     * @param weigher how much each item weighs, may be null if the weight is not limited
+     */
+    public ReplayPublisher(Executor executor, int maxCount, long maxAge, TimeUnit unit,
+                           long maxWeight, Weigher<? super T> weigher) {
+        if (executor == null) throw new NullPointerException("executor is null");
+        if (unit == null) throw new NullPointerException("unit is null");
+        if (maxCount < 0) throw new IllegalArgumentException("maxCount must not be negative but was " + maxCount);
+        if (maxAge < 0L) throw new IllegalArgumentException("maxAge must not be negative but was " + maxAge);
+        if (maxWeight < 0L) throw new IllegalArgumentException("maxWeight must not be negative but was " + maxWeight);
+        if (maxWeight != Long.MAX_VALUE && weigher == null) throw new NullPointerException("weigher is null");
+        this.executor = executor;
+        this.maxCount = maxCount;
+        this.maxAgeNanos = maxAge == Long.MAX_VALUE ? Long.MAX_VALUE : unit.toNanos(maxAge);
+        this.maxWeight = maxWeight;
+        this.weigher = maxWeight == Long.MAX_VALUE ? null : weigher;
+        this.head = this.tail = new Segment(0L);
+    }
+
+    /** @return a ReplayPublisher keeping the last {@code maxCount} items */
+    public static <T> ReplayPublisher<T> boundedByCount(Executor executor, int maxCount) {
+        return new ReplayPublisher<T>(executor, maxCount, Long.MAX_VALUE, TimeUnit.NANOSECONDS, Long.MAX_VALUE, null);
+    }
+
+    /** @return a ReplayPublisher keeping the items offered within the last {@code maxAge} */
+    public static <T> ReplayPublisher<T> boundedByAge(Executor executor, long maxAge, TimeUnit unit) {
+        return new ReplayPublisher<T>(executor, Integer.MAX_VALUE, maxAge, unit, Long.MAX_VALUE, null);
+    }
+
+    /** @return a ReplayPublisher keeping the latest items weighing no more than {@code maxWeight} in total */
+    public static <T> ReplayPublisher<T> boundedByWeight(Executor executor, long maxWeight, Weigher<? super T> weigher) {
+        return new ReplayPublisher<T>(executor, Integer.MAX_VALUE, Long.MAX_VALUE, TimeUnit.NANOSECONDS, maxWeight, weigher);
+    }
+
+    /**
+     * Appends the item to the history and hands it to all current {@link Subscriber}s.
+     * @param item the item to multicast, not null
+     * @return true if the item was accepted, false if this publisher is done
+     */
+    public boolean offer(T item) {
+        if (item == null) throw new NullPointerException("item is null");
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            long index = produced;
+            Segment t = tail;
+            int offset = (int)(index - t.base);
+            if (offset == SEGMENT_SIZE) {
+                Segment n = new Segment(index);
+                t.next = n;
+                tail = t = n;
+                offset = 0;
+            }
+            t.items[offset] = item;
+            if (maxAgeNanos != Long.MAX_VALUE) {
+                t.timestamps[offset] = System.nanoTime();
+            }
+            if (weigher != null) {
+                long w = weigher.weigh(item);
+                t.weights[offset] = w;
+                weight += w;
+            }
+            // Publishes the item and the link to its segment to the subscribers
+            produced = index + 1;
+            evict();
+        }
+
+        SubscriberRegistry.View<ReplaySubscription<T>> inners = subscribers.view();
+        for (int i = 0; i < inners.length(); i++) {
+            ReplaySubscription<T> inner = inners.get(i);
+            if (inner != null) {
+                inner.drain();
+            }
+        }
+        return true;
+    }
+
+    /** Drops the oldest items until the history is within its bounds again, must be called holding the lock. */
+    void evict() {
+        long end = produced;
+        long now = maxAgeNanos != Long.MAX_VALUE ? System.nanoTime() : 0L;
+        while (start != end) {
+            int offset = (int)(start - head.base);
+            if (offset == SEGMENT_SIZE) {
+                head = head.next;
+                offset = 0;
+            }
+            if (end - start <= maxCount
+                    && weight <= maxWeight
+                    && (maxAgeNanos == Long.MAX_VALUE || now - head.timestamps[offset] <= maxAgeNanos)) {
+                break;
+            }
+            if (weigher != null) {
+                weight -= head.weights[offset];
+            }
+            start++;
+        }
+    }
+
+    public void complete() {
+        cancelUpstream();
+        terminate(null);
+    }
+
+    public void completeExceptionally(Throwable error) {
+        if (error == null) throw new NullPointerException("error is null");
+        cancelUpstream();
+        terminate(error);
+    }
+
+    /**
+     * Cancels the source, if this is subscribed to one, as it is no use once this has been terminated from the outside.
+     * If {@link #onSubscribe} is still making its request, it cancels once that has returned, so the calls are serial.
+     */
+    void cancelUpstream() {
+        Subscription s = upstream.getAndSet(CANCELLED);
+        if (s != null && s != CANCELLED && s != REQUESTING) {
+            s.cancel();
+        }
+    }
+
+    void terminate(Throwable error) {
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            this.error = error;
+            done = true;
+        }
+        for (ReplaySubscription<T> inner : subscribers.terminate()) {
+            inner.drain();
+        }
+    }
+
+    @Override
+    public void close() {
+        complete(); // Which cancels the source as well
+    }
+
+    @Override
+    public void onSubscribe(Subscription s) {
+        if (s == null) throw null;
+        if (!upstream.compareAndSet(null, REQUESTING)) {
+            s.cancel(); // Either this has been terminated already, or it is an additional Subscription, rule 2.5
+            return;
+        }
+        // The history takes care of slow subscribers, so there's no need to hold back the source
+        s.request(Long.MAX_VALUE);
+        if (!upstream.compareAndSet(REQUESTING, s)) {
+            s.cancel(); // Terminated from the outside while we were requesting, the cancel was left to us
+        }
+    }
+
+    @Override
+    public void onNext(T t) {
+        if (t == null) throw null;
+        offer(t);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        if (t == null) throw null;
+        terminate(t); // The source is done, so there is nothing to cancel
+    }
+
+    @Override
+    public void onComplete() {
+        terminate(null);
+    }
+
+    /** Stands in for the source's {@link Subscription} while {@link #onSubscribe} requests from it. */
+    static final Subscription REQUESTING = new Subscription() {
+        @Override public void request(long n) { }
+        @Override public void cancel() { }
+    };
+
+    /** Stands in for the source's {@link Subscription} once it has been cancelled, a later one is cancelled right away. */
+    static final Subscription CANCELLED = new Subscription() {
+        @Override public void request(long n) { }
+        @Override public void cancel() { }
+    };
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        if (subscriber == null) throw new NullPointerException("subscriber is null");
+        ReplaySubscription<T> inner = new ReplaySubscription<T>(subscriber, this);
+        synchronized (this) {
+            // Items may have grown too old since the last offer
+            evict();
+            inner.segment = head;
+            inner.index = start;
+            // Once done, the subscriber replays the history and terminates without being registered
+            if (!done) {
+                inner.slot = subscribers.add(inner);
+            }
+        }
+        inner.drain();
+    }
+
+    public boolean hasSubscribers() {
+        return subscribers.size() != 0;
+    }
+
+    /** @return the number of items new {@link Subscriber}s would receive right now */
+    public synchronized long historySize() {
+        evict();
+        return produced - start;
+    }
+
+    void remove(ReplaySubscription<T> inner) {
+        subscribers.remove(inner.slot, inner);
+    }
+
+    final class Segment {
+        /** The index of the first item in this segment. */
+        final long base;
+        final Object[] items = new Object[SEGMENT_SIZE];
+        final long[] timestamps = maxAgeNanos != Long.MAX_VALUE ? new long[SEGMENT_SIZE] : null;
+        final long[] weights = weigher != null ? new long[SEGMENT_SIZE] : null;
+        /** Written before {@link #produced} publishes the first item in it. */
+        Segment next;
+
+        Segment(long base) {
+            this.base = base;
+        }
+    }
+
+    static final class ReplaySubscription<T> implements Subscription, Runnable {
+
+        final Subscriber<? super T> actual;
+        final ReplayPublisher<T> parent;
+
+        volatile boolean badRequest;
+        final AtomicBoolean cancelled = new AtomicBoolean();
+
+        boolean subscribed;
+        long emitted;
+
+        /** The segment holding the next item to emit, null once this subscription is over. */
+        ReplayPublisher<T>.Segment segment;
+
+        /** The index of the next item to emit. */
+        long index;
+
+        final AtomicLong requested = new AtomicLong();
+
+        final AtomicInteger wip = new AtomicInteger();
+
+        /** The handle of this subscription in {@link #parent}'s registry. */
+        volatile int slot = SubscriberRegistry.TERMINATED;
+
+        ReplaySubscription(Subscriber<? super T> actual, ReplayPublisher<T> parent) {
+            this.actual = actual;
+            this.parent = parent;
+        }
+
+        void drain() {
+            if (wip.getAndIncrement() == 0) {
+                parent.executor.execute(this);
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0L) {
+                badRequest = true;
+            } else {
+                for (;;) {
+                    long r = requested.get();
+                    long u = r + n;
+                    if (u < 0) {
+                        u = Long.MAX_VALUE;
+                    }
+                    if (requested.compareAndSet(r, u)) {
+                        break;
+                    }
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled.compareAndSet(false, true)) {
+                parent.remove(this);
+                drain(); // Lets go of the history
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void run() {
+            int missed = 1;
+            Subscriber<? super T> a = actual;
+            ReplayPublisher<T> p = parent;
+
+            for (;;) {
+
+                if (!subscribed) {
+                    subscribed = true;
+                    a.onSubscribe(this);
+                }
+
+                if (cancelled.get()) {
+                    segment = null;
+                } else {
+                    long r = requested.get();
+                    long e = emitted;
+                    long i = index;
+                    ReplayPublisher<T>.Segment s = segment;
+
+                    for (;;) {
+                        if (cancelled.get()) {
+                            segment = null;
+                            break;
+                        }
+
+                        if (badRequest) {
+                            cancelled.lazySet(true);
+                            p.remove(this);
+                            segment = null;
+                            a.onError(new IllegalArgumentException("§3.9 violated: request was not positive"));
+                            break;
+                        }
+
+                        // Read done before produced, so no item appended before termination is missed
+                        boolean d = p.done;
+                        if (i == p.produced) {
+                            if (d) {
+                                cancelled.lazySet(true);
+                                segment = null;
+                                Throwable ex = p.error;
+                                if (ex != null) {
+                                    a.onError(ex);
+                                } else {
+                                    a.onComplete();
+                                }
+                            }
+                            break;
+                        }
+
+                        if (e == r) {
+                            break;
+                        }
+
+                        int offset = (int)(i - s.base);
+                        if (offset == SEGMENT_SIZE) {
+                            s = s.next;
+                            offset = 0;
+                        }
+                        T v = (T)s.items[offset];
+                        i++;
+                        // Save our position before emitting, onNext may cancel
+                        index = i;
+                        segment = s;
+
+                        a.onNext(v);
+
+                        e++;
+                    }
+
+                    emitted = e;
+                }
+
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+    }
+}
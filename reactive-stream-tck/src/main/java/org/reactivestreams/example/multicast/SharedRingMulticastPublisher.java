@@ -0,0 +1,451 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.multicast;
+
+import org.reactivestreams.BatchSubscriber;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hot {@link Publisher} that multicasts every item handed to {@link #offer(Object)}
+ * to all of its current {@link Subscriber}s, just like {@link MulticastPublisher},
+ * but from a single ring buffer shared by all of them.
+ * <p>
+ * Every item is stored once, at the sequence number claimed by its producer, and each
+ * {@link Subscriber} follows the ring with its own read cursor, drained on the provided
+ * {@link Executor}. Producers may not lap the slowest cursor, so an offer fails if the
+ * slowest {@link Subscriber} is a full buffer behind. Memory use is independent of the
+ * number of {@link Subscriber}s, at the cost of all of them being held back by the slowest one.
+ * <p>
+ * Items may be offered from any number of threads concurrently without taking a lock,
+ * and since there is only one sequence all {@link Subscriber}s receive the items in the same order.
+ * Slots are not cleared after reading, an item stays reachable until it is overwritten.
+ *
+ * @param <T> the element type
+ */
+public final class SharedRingMulticastPublisher<T> implements Publisher<T>, AutoCloseable {
+
+    /** Set in {@link #claimed} once this publisher is done, the remaining bits are the end sequence. */
+    static final long TERMINATED_BIT = Long.MIN_VALUE;
+
+    final Executor executor;
+    final int bufferSize;
+
+    final AtomicReferenceArray<T> ring;
+    /** The sequence number last published into each slot, so cursors can tell whether it's ready. */
+    final AtomicLongArray published;
+    final int mask;
+
+    /** The next sequence number to claim, with {@link #TERMINATED_BIT} set once this publisher is done. */
+    final AtomicLong claimed = new AtomicLong();
+
+    /** The slowest cursor seen by the last producer who had to look, producers may never lap it. */
+    volatile long gatingCache;
+
+    Throwable error;
+
+    /**
+     * The subscribers at the time of termination, which a producer who claimed its sequence before then
+     * still has to wake up once it has published, as they are no longer in {@link #subscribers}.
+     */
+    volatile InnerSubscription<T>[] terminatedSubscribers;
+
+    @SuppressWarnings("unchecked")
+    final SubscriberRegistry<InnerSubscription<T>> subscribers =
+            new SubscriberRegistry<InnerSubscription<T>>(new InnerSubscription[0]);
+
+    public SharedRingMulticastPublisher() {
+        this(ForkJoinPool.commonPool(), MulticastPublisher.DEFAULT_BUFFER_SIZE);
+    }
+
+    public SharedRingMulticastPublisher(Executor executor, int bufferSize) {
+        if (executor == null) throw new NullPointerException("executor is null");
+        if (bufferSize <= 0 || (bufferSize & (bufferSize - 1)) != 0) {
+            throw new IllegalArgumentException("Please provide a power-of-two buffer size");
+        }
+        this.executor = executor;
+        this.bufferSize = bufferSize;
+        this.ring = new AtomicReferenceArray<T>(bufferSize);
+        this.published = new AtomicLongArray(bufferSize);
+        for (int i = 0; i < bufferSize; i++) {
+            published.lazySet(i, -1L);
+        }
+        this.mask = bufferSize - 1;
+    }
+
+    /**
+     * Hands the item to all current {@link Subscriber}s, same as {@link #tryOffer(Object)}.
+     * @param item the item to multicast, not null
+     * @return true if the item was accepted, false if the ring was full or this publisher is done
+     */
+    public boolean offer(T item) {
+        return tryOffer(item);
+    }
+
+    /**
+     * Hands the item to all current {@link Subscriber}s without blocking.
+     * @param item the item to multicast, not null
+     * @return true if the item was accepted, false if the ring was full or this publisher is done
+     */
+    public boolean tryOffer(T item) {
+        if (item == null) throw new NullPointerException("item is null");
+
+        long seq;
+        for (;;) {
+            seq = claimed.get();
+            if (seq < 0L) {
+                return false;
+            }
+            // The slot of seq was last used by seq - bufferSize, which every cursor has to be past
+            long wrapPoint = seq - bufferSize;
+            if (wrapPoint >= gatingCache) {
+                long min = minimumCursor(seq);
+                gatingCache = min;
+                if (wrapPoint >= min) {
+                    return false;
+                }
+            }
+            if (claimed.compareAndSet(seq, seq + 1)) {
+                break;
+            }
+        }
+
+        int offset = (int)seq & mask;
+        ring.lazySet(offset, item);
+        // A volatile write, so it is ordered before reading the wip counters below
+        published.set(offset, seq);
+
+        wakeUp(subscribers.view());
+        if (claimed.get() < 0L) {
+            // We published after terminate had started, which may already have taken the subscribers out of
+            // the registry. If it hasn't stored them yet, it will drain them after we have published
+            InnerSubscription<T>[] t = terminatedSubscribers;
+            if (t != null) {
+                wakeUp(t);
+            }
+        }
+        return true;
+    }
+
+    void wakeUp(SubscriberRegistry.View<InnerSubscription<T>> inners) {
+        for (int i = 0; i < inners.length(); i++) {
+            InnerSubscription<T> inner = inners.get(i);
+            if (inner != null) {
+                wakeUp(inner);
+            }
+        }
+    }
+
+    void wakeUp(InnerSubscription<T>[] inners) {
+        for (InnerSubscription<T> inner : inners) {
+            wakeUp(inner);
+        }
+    }
+
+    void wakeUp(InnerSubscription<T> inner) {
+        // A busy cursor will find the item by itself, see InnerSubscription.run
+        if (inner.wip.get() == 0) {
+            inner.drain(executor);
+        }
+    }
+
+    /**
+     * Hands the item to all current {@link Subscriber}s, waiting up to the given time for room
+     * in the ring if necessary.
+     * @param item the item to multicast, not null
+     * @param timeout how long to wait before giving up, in units of {@code unit}
+     * @param unit the unit of {@code timeout}
+     * @return true if the item was accepted, false if the waiting time elapsed or this publisher is done
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean offer(T item, long timeout, TimeUnit unit) throws InterruptedException {
+        if (unit == null) throw new NullPointerException("unit is null");
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long backoff = 1L;
+        while (!tryOffer(item)) {
+            if (claimed.get() < 0L) {
+                return false;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0L) {
+                return false;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            // The cursors don't notify producers when they move, so back off exponentially, up to 1 ms
+            LockSupport.parkNanos(Math.min(backoff, remaining));
+            backoff = Math.min(backoff << 1, 1_000_000L);
+        }
+        return true;
+    }
+
+    long minimumCursor(long min) {
+        SubscriberRegistry.View<InnerSubscription<T>> inners = subscribers.view();
+        for (int i = 0; i < inners.length(); i++) {
+            InnerSubscription<T> inner = inners.get(i);
+            if (inner == null) {
+                continue;
+            }
+            long c = inner.cursor.get();
+            if (c < min) {
+                min = c;
+            }
+        }
+        return min;
+    }
+
+    public void complete() {
+        terminate(null);
+    }
+
+    public void completeExceptionally(Throwable error) {
+        if (error == null) throw new NullPointerException("error is null");
+        terminate(error);
+    }
+
+    void terminate(Throwable error) {
+        for (;;) {
+            long c = claimed.get();
+            if (c < 0L) {
+                return;
+            }
+            if (error != null) {
+                this.error = error;
+            }
+            // From now on nothing can be claimed, so everything before c is all there will ever be
+            if (claimed.compareAndSet(c, c | TERMINATED_BIT)) {
+                break;
+            }
+        }
+        InnerSubscription<T>[] inners = subscribers.terminate();
+        terminatedSubscribers = inners;
+        for (InnerSubscription<T> inner : inners) {
+            inner.drain(executor);
+        }
+    }
+
+    @Override
+    public void close() {
+        complete();
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        if (subscriber == null) throw new NullPointerException("subscriber is null");
+        InnerSubscription<T> inner = new InnerSubscription<T>(subscriber, this);
+        // Hold producers back from here while registering, so they don't take the ring for empty
+        inner.cursor.set(claimed.get() & ~TERMINATED_BIT);
+        add(inner);
+        // Only now start at the next sequence to be claimed, anything older has not been offered to this subscriber.
+        // A producer which did not see the new cursor has claimed its sequence before this read, or claims exactly
+        // this one, so it can't lap it, while all later claims are gated by it
+        long c = claimed.get() & ~TERMINATED_BIT;
+        inner.sequence = c;
+        inner.cursor.set(c);
+        inner.drain(executor);
+    }
+
+    public boolean hasSubscribers() {
+        return subscribers.size() != 0;
+    }
+
+    boolean add(InnerSubscription<T> inner) {
+        int slot = subscribers.add(inner);
+        inner.slot = slot;
+        return slot != SubscriberRegistry.TERMINATED;
+    }
+
+    void remove(InnerSubscription<T> inner) {
+        subscribers.remove(inner.slot, inner);
+    }
+
+    static final class InnerSubscription<T> implements Subscription, Runnable {
+
+        /** The largest number of items handed to a {@link BatchSubscriber} in one call. */
+        static final int MAX_BATCH = 128;
+
+        final Subscriber<? super T> actual;
+        final BatchSubscriber<? super T> batchActual;
+        final Object[] batch;
+        final SharedRingMulticastPublisher<T> parent;
+
+        volatile boolean badRequest;
+        final AtomicBoolean cancelled = new AtomicBoolean();
+
+        boolean subscribed;
+        long emitted;
+
+        /** The next sequence to read, only accessed by the drain loop. */
+        long sequence;
+
+        /** The next sequence to read as seen by the producers, which may not lap it. */
+        final AtomicLong cursor = new AtomicLong();
+
+        final AtomicLong requested = new AtomicLong();
+
+        final AtomicInteger wip = new AtomicInteger();
+
+        /** The handle of this subscription in {@link #parent}'s registry. */
+        volatile int slot = SubscriberRegistry.TERMINATED;
+
+        @SuppressWarnings("unchecked")
+        InnerSubscription(Subscriber<? super T> actual, SharedRingMulticastPublisher<T> parent) {
+            this.actual = actual;
+            if (actual instanceof BatchSubscriber) {
+                this.batchActual = (BatchSubscriber<? super T>)actual;
+                this.batch = new Object[Math.min(parent.bufferSize, MAX_BATCH)];
+            } else {
+                this.batchActual = null;
+                this.batch = null;
+            }
+            this.parent = parent;
+        }
+
+        void drain(Executor executor) {
+            if (wip.getAndAdd(1) == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0L) {
+                badRequest = true;
+            } else {
+                for (;;) {
+                    long r = requested.get();
+                    long u = r + n;
+                    if (u < 0) {
+                        u = Long.MAX_VALUE;
+                    }
+                    if (requested.compareAndSet(r, u)) {
+                        break;
+                    }
+                }
+            }
+            drain(parent.executor);
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled.compareAndSet(false, true)) {
+                parent.remove(this);
+            }
+        }
+
+        /** Whether the item at {@code seq} has been published, which also means it hasn't been overwritten yet. */
+        boolean isPublished(long seq) {
+            return parent.published.get((int)seq & parent.mask) == seq;
+        }
+
+        /** Whether there is something to do that no producer will wake us up for. */
+        boolean hasWork() {
+            return !cancelled.get() && requested.get() != emitted && isPublished(sequence);
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            Subscriber<? super T> a = actual;
+            SharedRingMulticastPublisher<T> p = parent;
+
+            for (;;) {
+
+                if (!subscribed) {
+                    subscribed = true;
+                    a.onSubscribe(this);
+                }
+
+                // Carries on right after onSubscribe, so a terminated publisher is signalled without waiting for a request
+                if (!cancelled.get()) {
+                    long r = requested.get();
+                    long e = emitted;
+                    long seq = sequence;
+
+                    for (;;) {
+                        if (cancelled.get()) {
+                            break;
+                        }
+
+                        if (badRequest) {
+                            cancelled.lazySet(true);
+                            p.remove(this);
+                            a.onError(new IllegalArgumentException("§3.9 violated: request was not positive"));
+                            break;
+                        }
+
+                        long c = p.claimed.get();
+                        if (c < 0L) {
+                            Throwable ex = p.error;
+                            if (ex != null) {
+                                cancelled.lazySet(true);
+                                a.onError(ex);
+                                break;
+                            }
+                            if (seq == (c & ~TERMINATED_BIT)) {
+                                cancelled.lazySet(true);
+                                a.onComplete();
+                                break;
+                            }
+                        }
+
+                        if (e == r || !isPublished(seq)) {
+                            break;
+                        }
+
+                        if (batch != null) {
+                            // Hand over what is both published and requested, up to the size of the batch, with a single call
+                            Object[] b = batch;
+                            int n = 0;
+                            long max = Math.min(r - e, b.length);
+                            do {
+                                b[n++] = p.ring.get((int)seq & p.mask);
+                                seq++;
+                            } while (n != max && isPublished(seq));
+                            sequence = seq;
+                            cursor.lazySet(seq);
+                            try {
+                                batchActual.onNextBatch(b, 0, n);
+                            } finally {
+                                Arrays.fill(b, 0, n, null);
+                            }
+                            e += n;
+                        } else {
+                            // Read the item before moving the cursor, which allows producers to overwrite it
+                            T v = p.ring.get((int)seq & p.mask);
+                            seq++;
+                            sequence = seq;
+                            cursor.lazySet(seq);
+                            a.onNext(v);
+
+                            e++;
+                        }
+                    }
+
+                    emitted = e;
+                }
+
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    // Producers only wake us up if they see us idle, so check for items published in between
+                    if (hasWork() && wip.getAndIncrement() == 0) {
+                        missed = 1;
+                        continue;
+                    }
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.multicast;
+
+import org.reactivestreams.example.wal.Serializer;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The overflow of a {@link MulticastPublisher} {@link org.reactivestreams.Subscriber} with {@link OverflowStrategy#SPILL}:
+ * a FIFO of serialized items in a temporary file, which is only created once something overflows, and deleted
+ * when closed (on most platforms, it disappears from the directory right away).
+ * <p>
+ * Producers append to a write buffer, which is written to the file with a single write whenever it fills up.
+ * The drain loop reads the file back with large reads, and takes the write buffer over once it has caught up with
+ * the file, so the heap only ever holds the two buffers and single records which don't fit into them. Once everything
+ * has been read, the file is truncated, so it doesn't keep growing while the subscriber goes in and out of lagging.
+ * <p>
+ * Appending is synchronized, reading is only done by the drain loop, which takes the lock for the parts that touch
+ * the state of the writer.
+ *
+ * @param <T> the element type
+ */
+final class SpillBuffer<T> {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The length in front of every record. */
+    static final int HEADER_SIZE = 4;
+
+    final Serializer<T> serializer;
+    final Path directory;
+
+    // The fields below are guarded by this
+
+    FileChannel channel;
+    ByteBuffer writeBuffer;
+
+    /** The number of bytes written to the file. */
+    long fileSize;
+
+    boolean closed;
+
+    // The fields below are only accessed by the drain loop
+
+    ByteBuffer readBuffer;
+
+    /** Where the next read from the file starts. */
+    long readPosition;
+
+    /** The number of items appended and read so far, they are equal when this is empty. */
+    final AtomicLong appended = new AtomicLong();
+    final AtomicLong taken = new AtomicLong();
+
+    final AtomicLong bytes = new AtomicLong();
+    final AtomicLong reads = new AtomicLong();
+    final AtomicLong readNanos = new AtomicLong();
+
+    SpillBuffer(Serializer<T> serializer, Path directory) {
+        this.serializer = serializer;
+        this.directory = directory;
+    }
+
+    boolean isEmpty() {
+        return taken.get() == appended.get();
+    }
+
+    /** Appends an item, writing the write buffer to the file if it is full. */
+    void offer(T item) throws IOException {
+        byte[] b = serializer.serialize(item);
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (channel == null) {
+                channel = FileChannel.open(Files.createTempFile(directory, "spill", ".bin"),
+                        StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+                writeBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+            }
+            if (writeBuffer.remaining() < HEADER_SIZE + b.length) {
+                flush();
+                if (writeBuffer.capacity() < HEADER_SIZE + b.length) {
+                    writeBuffer = ByteBuffer.allocate(HEADER_SIZE + b.length); // Only for this record, see `flush`
+                }
+            }
+            writeBuffer.putInt(b.length).put(b);
+            bytes.addAndGet(HEADER_SIZE + b.length);
+            // Counted while holding the lock, so `reset` never mistakes the bytes of an item for leftovers
+            appended.getAndIncrement();
+        }
+    }
+
+    /** Writes the write buffer to the end of the file, must be called holding the lock. */
+    void flush() throws IOException {
+        ((Buffer)writeBuffer).flip();
+        while (writeBuffer.hasRemaining()) {
+            fileSize += channel.write(writeBuffer, fileSize);
+        }
+        if (writeBuffer.capacity() != BUFFER_SIZE) {
+            writeBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+        } else {
+            ((Buffer)writeBuffer).clear();
+        }
+    }
+
+    /** @return the oldest item, or null if there is none */
+    T poll() throws IOException {
+        if (isEmpty()) {
+            return null;
+        }
+        ByteBuffer rb = readBuffer;
+        if (rb == null || rb.remaining() < HEADER_SIZE || rb.remaining() < HEADER_SIZE + rb.getInt(rb.position())) {
+            rb = fill();
+        }
+        int length = rb.getInt();
+        int limit = rb.limit();
+        ((Buffer)rb).limit(rb.position() + length);
+        T item = serializer.deserialize(rb.slice());
+        ((Buffer)rb).limit(limit);
+        ((Buffer)rb).position(rb.position() + length);
+        if (rb.capacity() != BUFFER_SIZE && !rb.hasRemaining()) {
+            readBuffer = null; // Let go of a buffer grown for a single large record
+        }
+        taken.getAndIncrement();
+        if (isEmpty()) {
+            reset();
+        }
+        return item;
+    }
+
+    /** Reads the next record completely into the read buffer, from the file or the write buffer. */
+    ByteBuffer fill() throws IOException {
+        ByteBuffer rb = readBuffer;
+        if (rb == null) {
+            rb = ByteBuffer.allocate(BUFFER_SIZE);
+            ((Buffer)rb).flip();
+        }
+        synchronized (this) {
+            if (readPosition == fileSize) {
+                // The file has been read, the rest is in the write buffer, which is written out and read like the file
+                flush();
+            }
+            long start = System.nanoTime();
+            for (;;) {
+                if (rb.remaining() >= HEADER_SIZE) {
+                    int need = HEADER_SIZE + rb.getInt(rb.position());
+                    if (rb.remaining() >= need) {
+                        break;
+                    }
+                    if (rb.capacity() < need) {
+                        ByteBuffer b = ByteBuffer.allocate(need);
+                        b.put(rb);
+                        ((Buffer)b).flip();
+                        rb = b;
+                    }
+                }
+                rb.compact();
+                int r = channel.read(rb, readPosition);
+                ((Buffer)rb).flip();
+                if (r <= 0) {
+                    throw new IOException("The spill file ended in the middle of a record");
+                }
+                readPosition += r;
+            }
+            reads.getAndIncrement();
+            readNanos.addAndGet(System.nanoTime() - start);
+        }
+        readBuffer = rb;
+        return rb;
+    }
+
+    /** Empties the file once everything in it has been read. */
+    void reset() throws IOException {
+        synchronized (this) {
+            if (isEmpty() && !closed && readPosition == fileSize && writeBuffer.position() == 0) {
+                channel.truncate(0L);
+                fileSize = 0L;
+                readPosition = 0L;
+                if (readBuffer != null) {
+                    ((Buffer)readBuffer).clear();
+                    ((Buffer)readBuffer).flip();
+                }
+            }
+        }
+    }
+
+    /** Deletes the file, further items are discarded. */
+    synchronized void close() {
+        closed = true;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // It is a temporary file anyway
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.multicast;
+
+import java.util.Arrays;
+
+/**
+ * The set of current subscribers of a multicasting {@link org.reactivestreams.Publisher},
+ * built for many subscribers which come and go all the time.
+ * <p>
+ * Every subscriber gets a slot in one of a number of fixed-size chunks, and the index of that slot
+ * is the handle to remove it again. Removing a subscriber leaves a tombstone which is pushed onto a
+ * free list and reused by the next subscriber, and trailing tombstones are given up right away, so
+ * the slots in use never reach much further than the current subscribers. Adding and removing are
+ * synchronized, as they are short.
+ * <p>
+ * Emission loops use {@link #view()}, which returns the current subscribers without locking. The chunks
+ * of a {@link View} are never modified: adding or removing copies the one chunk it changes, and the table
+ * of chunks, which is {@value #CHUNK_SIZE} times smaller than the number of slots, and publishes the copies
+ * as a new {@link View}. So an emitter never waits for, or pays for, the changes made since its last item.
+ *
+ * @param <E> the type of the subscribers
+ */
+public final class SubscriberRegistry<E> {
+
+    static final int CHUNK_SHIFT = 6;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /** The handle {@link #add(Object)} returns if this registry has been terminated. */
+    public static final int TERMINATED = -1;
+
+    static final View<Object> EMPTY = new View<Object>(new Object[0][], 0);
+
+    final E[] empty;
+
+    // The fields below are guarded by this
+
+    /** The slots, the same chunks as those of {@link #view}. */
+    Object[][] chunks = EMPTY.chunks;
+
+    /** The number of slots up to the last one in use, the rest of the chunks is empty. */
+    int highWater;
+
+    /**
+     * The stack of tombstones, which are reused before touching a new slot. Slots at or above
+     * {@link #highWater} have been given up since they were pushed, and are skipped.
+     */
+    int[] free = new int[CHUNK_SIZE];
+    int freeCount;
+
+    // The fields below are also read without holding the lock
+
+    volatile int size;
+
+    volatile boolean terminated;
+
+    /** The current subscribers. */
+    volatile View<E> view;
+
+    /**
+     * @param empty an empty array of the type {@link #terminate()} should return
+     */
+    @SuppressWarnings("unchecked")
+    public SubscriberRegistry(E[] empty) {
+        if (empty == null) throw new NullPointerException("empty is null");
+        if (empty.length != 0) throw new IllegalArgumentException("empty is not empty");
+        this.empty = empty;
+        this.view = (View<E>)EMPTY;
+    }
+
+    /**
+     * Adds a subscriber, unless this registry has been terminated.
+     * @param e the subscriber to add, not null
+     * @return the handle to pass to {@link #remove(int, Object)}, or {@link #TERMINATED}
+     */
+    public synchronized int add(E e) {
+        if (e == null) throw new NullPointerException("e is null");
+        if (terminated) {
+            return TERMINATED;
+        }
+        int slot = -1;
+        while (freeCount != 0) {
+            int f = free[--freeCount];
+            if (f < highWater) {
+                slot = f;
+                break;
+            }
+        }
+        Object[][] table;
+        if (slot < 0) {
+            slot = highWater++;
+            table = Arrays.copyOf(chunks, (highWater + CHUNK_MASK) >>> CHUNK_SHIFT);
+        } else {
+            table = chunks.clone();
+        }
+        int c = slot >>> CHUNK_SHIFT;
+        Object[] chunk = table[c] == null ? new Object[CHUNK_SIZE] : table[c].clone();
+        chunk[slot & CHUNK_MASK] = e;
+        table[c] = chunk;
+        publish(table);
+        size++;
+        return slot;
+    }
+
+    /**
+     * Removes a subscriber, if it is still registered under the given handle.
+     * @param slot the handle {@link #add(Object)} returned for the subscriber
+     * @param e the subscriber to remove
+     * @return true if it was removed, false if it wasn't there (anymore)
+     */
+    public synchronized boolean remove(int slot, E e) {
+        if (slot < 0 || slot >= highWater) {
+            return false;
+        }
+        int c = slot >>> CHUNK_SHIFT;
+        int offset = slot & CHUNK_MASK;
+        // Compare to the subscriber, the slot may have been reused since
+        if (chunks[c][offset] != e) {
+            return false;
+        }
+        Object[] chunk = chunks[c].clone();
+        chunk[offset] = null;
+        Object[][] table = chunks.clone();
+        table[c] = chunk;
+        if (slot == highWater - 1) {
+            // Give up the trailing tombstones, so emitters don't have to skip them, and neither the chunks they were in
+            do {
+                highWater--;
+            } while (highWater != 0 && table[(highWater - 1) >>> CHUNK_SHIFT][(highWater - 1) & CHUNK_MASK] == null);
+            table = Arrays.copyOf(table, (highWater + CHUNK_MASK) >>> CHUNK_SHIFT);
+        } else {
+            if (freeCount == free.length) {
+                free = Arrays.copyOf(free, freeCount << 1);
+            }
+            free[freeCount++] = slot;
+        }
+        publish(table);
+        size--;
+        return true;
+    }
+
+    void publish(Object[][] table) {
+        chunks = table;
+        view = new View<E>(table, highWater);
+    }
+
+    /**
+     * @return the current subscribers, which stay the same however the registry changes afterwards
+     */
+    public View<E> view() {
+        return view;
+    }
+
+    /**
+     * Removes all subscribers and makes all further {@link #add(Object)}s fail.
+     * @return the subscribers at the time of termination, empty if it was already terminated
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized E[] terminate() {
+        if (terminated) {
+            return empty;
+        }
+        View<E> v = view;
+        E[] s = Arrays.copyOf(empty, size);
+        int j = 0;
+        for (int i = 0; i < v.length; i++) {
+            E e = v.get(i);
+            if (e != null) {
+                s[j++] = e;
+            }
+        }
+        terminated = true;
+        chunks = EMPTY.chunks;
+        highWater = 0;
+        freeCount = 0;
+        size = 0;
+        view = (View<E>)EMPTY;
+        return s;
+    }
+
+    /**
+     * Terminates this registry if there are no subscribers left.
+     * @return true if this call terminated it
+     */
+    public synchronized boolean terminateIfEmpty() {
+        if (terminated || size != 0) {
+            return false;
+        }
+        terminate();
+        return true;
+    }
+
+    public boolean isTerminated() {
+        return terminated;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The subscribers of a {@link SubscriberRegistry} at one point in time, iterated by index:
+     * <pre>{@code
+     * for (int i = 0; i < view.length(); i++) {
+     *     E e = view.get(i);
+     *     if (e != null) { ... }
+     * }
+     * }</pre>
+     * A {@link View} never changes, so iterating it more than once visits the same subscribers.
+     *
+     * @param <E> the type of the subscribers
+     */
+    public static final class View<E> {
+        final Object[][] chunks;
+        final int length;
+
+        View(Object[][] chunks, int length) {
+            this.chunks = chunks;
+            this.length = length;
+        }
+
+        /**
+         * @return the number of slots, some of which may be empty
+         */
+        public int length() {
+            return length;
+        }
+
+        /**
+         * @param slot the index of the slot, from 0 to {@link #length()}, exclusive
+         * @return the subscriber in the slot, or null if it is empty
+         */
+        @SuppressWarnings("unchecked")
+        public E get(int slot) {
+            return (E)chunks[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK];
+        }
+    }
+}
@@ -4,25 +4,38 @@
 
 package org.reactivestreams.example.unicast;
 
+import org.reactivestreams.BatchSubscriber;
 import org.reactivestreams.Publisher;
+import org.reactivestreams.QueueSubscription;
 import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * AsyncIterablePublisher is an implementation of Reactive Streams `Publisher`
  * which executes asynchronously, using a provided `Executor` and produces elements
  * from a given `Iterable` in a "unicast" configuration to its `Subscribers`.
+ * A `BatchSubscriber` receives the elements in batches via `onNextBatch`.
+ *
+ * By default it hands its thread back to the `Executor` after every `batchSize` elements, to play nice with the
+ * other users of a pool. For a blocking `Iterable`, e.g. one reading from a file or a database, use `blocking` with
+ * an `Executor` of virtual threads (see `VirtualThreads`): it keeps iterating for as long as there is demand,
+ * and a `next` which blocks just parks the virtual thread instead of occupying a pool thread.
+ *
+ * Its `Subscription` is a `QueueSubscription`, which grants `SYNC` fusion: a fused `Subscriber` then iterates
+ * the `Iterable` itself, on its own thread, and this `Publisher` stays out of the way once it has signalled `onSubscribe`.
  *
  * NOTE: The code below uses a lot of try-catches to show the reader where exceptions can be expected, and where they are forbidden.
  */
 public class AsyncIterablePublisher<T> implements Publisher<T> {
   private final static int DEFAULT_BATCHSIZE = 1024;
+  private final static int MAX_ONNEXTBATCH = 128; // The largest number of elements we hand to a `BatchSubscriber` in a single call
 
   private final Iterable<T> elements; // This is our data source / generator
   private final Executor executor; // This is our thread pool, which will make sure that our Publisher runs asynchronously to its Subscribers
@@ -32,6 +45,13 @@ public class AsyncIterablePublisher<T> implements Publisher<T> {
     this(elements, DEFAULT_BATCHSIZE, executor);
   }
 
+  // Creates a Publisher which never splits the outstanding demand into batches, so that the whole stream is produced in
+  // as few tasks as possible. This is meant for blocking `Iterable`s on an `Executor` which starts a virtual thread per task,
+  // on a platform pool it would hold on to a pool thread for as long as the `Subscriber` keeps up.
+  public static <T> AsyncIterablePublisher<T> blocking(final Iterable<T> elements, final Executor executor) {
+    return new AsyncIterablePublisher<T>(elements, Integer.MAX_VALUE, executor);
+  }
+
   public AsyncIterablePublisher(final Iterable<T> elements, final int batchSize, final Executor executor) {
     if (elements == null) throw null;
     if (executor == null) throw null;
@@ -49,50 +69,45 @@ public class AsyncIterablePublisher<T> implements Publisher<T> {
     new SubscriptionImpl(s).init();
   }
 
-  // These represent the protocol of the `AsyncIterablePublishers` SubscriptionImpls
-  static interface Signal {};
-  enum Cancel implements Signal { Instance; };
-  enum Subscribe implements Signal { Instance; };
-  enum Send implements Signal { Instance; };
-  static final class Request implements Signal {
-    final long n;
-    Request(final long n) {
-      this.n = n;
-    }
-  };
-
   // This is our implementation of the Reactive Streams `Subscription`,
   // which represents the association between a `Publisher` and a `Subscriber`.
-  final class SubscriptionImpl implements Subscription, Runnable {
+  //
+  // Signals from the `Subscriber` do not allocate: demand is accumulated in an `AtomicLong`,
+  // cancellation is a volatile flag, and only the transition of `wip` from 0 to 1 submits this
+  // `Runnable` to the `Executor`, which then drains everything that has been signalled in the meantime.
+  final class SubscriptionImpl implements QueueSubscription<T>, Runnable {
     final Subscriber<? super T> subscriber; // We need a reference to the `Subscriber` so we can talk to it
-    private boolean cancelled = false; // This flag will track whether this `Subscription` is to be considered cancelled or not
-    private long demand = 0; // Here we track the current demand, i.e. what has been requested but not yet delivered
+    private final BatchSubscriber<? super T> batchSubscriber; // The same `Subscriber` if it can receive batches of elements, `null` otherwise
+    private final Object[] batch; // The array we reuse for the batches we hand to `batchSubscriber`, `null` if that is `null`
+    private volatile boolean cancelled = false; // This flag will track whether this `Subscription` is to be considered cancelled or not
+    private boolean subscribed = false; // This flag tracks whether `doSubscribe` has run, it is only accessed from within `run`
+    private boolean fused = false; // Set if the `Subscriber` has requested `SYNC` fusion from within `onSubscribe`, after which it owns `iterator`
     private Iterator<T> iterator; // This is our cursor into the data stream, which we will send to the `Subscriber`
 
+    // Here we track the current demand, i.e. what has been requested but not yet delivered.
+    // `request` adds to it from any thread, and `doSend` subtracts what it has delivered.
+    private final AtomicLong demand = new AtomicLong();
+
+    // Holds onto the IllegalArgumentException (containing the offending stacktrace)
+    // indicating there was a non-positive `request` call from the `Subscriber`, see rule 3.9
+    private volatile Throwable invalidRequest;
+
+    // We are using this `AtomicInteger` to make sure that this `Subscription` doesn't run concurrently with itself,
+    // which would violate rule 1.3 among others (no concurrent notifications).
+    // It counts the work that has been signalled, and only its 0 to 1 transition schedules `run` on the `Executor`.
+    private final AtomicInteger wip = new AtomicInteger();
+
+    @SuppressWarnings("unchecked")
     SubscriptionImpl(final Subscriber<? super T> subscriber) {
       // As per rule 1.09, we need to throw a `java.lang.NullPointerException` if the `Subscriber` is `null`
       if (subscriber == null) throw null;
       this.subscriber = subscriber;
-    }
-
-    // This `ConcurrentLinkedQueue` will track signals that are sent to this `Subscription`, like `request` and `cancel`
-    private final ConcurrentLinkedQueue<Signal> inboundSignals = new ConcurrentLinkedQueue<Signal>();
-
-    // We are using this `AtomicBoolean` to make sure that this `Subscription` doesn't run concurrently with itself,
-    // which would violate rule 1.3 among others (no concurrent notifications).
-    private final AtomicBoolean on = new AtomicBoolean(false);
-
-    // This method will register inbound demand from our `Subscriber` and validate it against rule 3.9 and rule 3.17
-    private void doRequest(final long n) {
-      if (n < 1)
-        terminateDueTo(new IllegalArgumentException(subscriber + " violated the Reactive Streams rule 3.9 by requesting a non-positive number of elements."));
-      else if (demand + n < 1) {
-        // As governed by rule 3.17, when demand overflows `Long.MAX_VALUE` we treat the signalled demand as "effectively unbounded"
-        demand = Long.MAX_VALUE;  // Here we protect from the overflow and treat it as "effectively unbounded"
-        doSend(); // Then we proceed with sending data downstream
+      if (subscriber instanceof BatchSubscriber) {
+        this.batchSubscriber = (BatchSubscriber<? super T>)subscriber;
+        this.batch = new Object[Math.min(batchSize, MAX_ONNEXTBATCH)];
       } else {
-        demand += n; // Here we record the downstream demand
-        doSend(); // Then we can proceed with sending data downstream
+        this.batchSubscriber = null;
+        this.batch = null;
       }
     }
 
@@ -125,6 +140,9 @@ public class AsyncIterablePublisher<T> implements Publisher<T> {
           terminateDueTo(new IllegalStateException(subscriber + " violated the Reactive Streams rule 2.13 by throwing an exception from onSubscribe.", t));
         }
 
+        if (fused)
+          return; // The `Subscriber` takes it from here, with `poll`, and will never `request`
+
         // Deal with already complete iterators promptly
         boolean hasElements = false;
         try {
@@ -146,40 +164,137 @@ public class AsyncIterablePublisher<T> implements Publisher<T> {
       }
     }
 
-    // This is our behavior for producing elements downstream
-    private void doSend() {
+    // This is our behavior for producing elements downstream, it returns `true` if it stopped
+    // because the batch was used up while there still is outstanding demand to satisfy.
+    private boolean doSend() {
       try {
         // In order to play nice with the `Executor` we will only send at-most `batchSize` before
         // rescheduing ourselves and relinquishing the current thread.
         int leftInBatch = batchSize;
-        do {
-          T next;
-          boolean hasNext;
-          try {
-            next = iterator.next(); // We have already checked `hasNext` when subscribing, so we can fall back to testing -after- `next` is called.
-            hasNext = iterator.hasNext(); // Need to keep track of End-of-Stream
-          } catch (final Throwable t) {
-            terminateDueTo(t); // If `next` or `hasNext` throws (they can, since it is user-provided), we need to treat the stream as errored as per rule 1.4
-            return;
-          }
-          subscriber.onNext(next); // Then we signal the next element downstream to the `Subscriber`
-          if (!hasNext) { // If we are at End-of-Stream
-            doCancel(); // We need to consider this `Subscription` as cancelled as per rule 1.6
-            subscriber.onComplete(); // Then we signal `onComplete` as per rule 1.2 and 1.5
+        long requested = demand.get();
+        long emitted = 0;
+        for (;;) {
+          while (emitted != requested) { // This makes sure that rule 1.1 is upheld (sending more than was demanded)
+            if (cancelled) // This makes sure that rule 1.8 is upheld, i.e. we need to stop signalling "eventually"
+              return false;
+            if (leftInBatch == 0) { // This makes sure that we only send `batchSize` number of elements in one go (so we can yield to other Runnables)
+              if (requested != Long.MAX_VALUE) // As per rule 3.17, "effectively unbounded" demand is never decremented
+                demand.addAndGet(-emitted);
+              return true;
+            }
+            if (batchSubscriber != null) {
+              final int sent = sendBatch((int)Math.min(Math.min(requested - emitted, leftInBatch), batch.length));
+              if (sent < 0)
+                return false; // We have reached End-of-Stream or have terminated due to an error
+              emitted += sent;
+              leftInBatch -= sent;
+              continue;
+            }
+            T next;
+            boolean hasNext;
+            Throwable failure = null;
+            try {
+              next = iterator.next(); // We have already checked `hasNext` when subscribing, so we can fall back to testing -after- `next` is called.
+            } catch (final Throwable t) {
+              terminateDueTo(t); // If `next` or `hasNext` throws (they can, since it is user-provided), we need to treat the stream as errored as per rule 1.4
+              return false;
+            }
+            try {
+              hasNext = iterator.hasNext(); // Need to keep track of End-of-Stream
+            } catch (final Throwable t) {
+              hasNext = false;
+              failure = t; // Just as in `sendBatch`, the element we already have is signalled before the error
+            }
+            subscriber.onNext(next); // Then we signal the next element downstream to the `Subscriber`
+            if (failure != null) {
+              terminateDueTo(failure);
+              return false;
+            }
+            emitted++;
+            leftInBatch--;
+            if (!hasNext) { // If we are at End-of-Stream
+              doCancel(); // We need to consider this `Subscription` as cancelled as per rule 1.6
+              subscriber.onComplete(); // Then we signal `onComplete` as per rule 1.2 and 1.5
+              return false;
+            }
           }
-        } while (!cancelled           // This makes sure that rule 1.8 is upheld, i.e. we need to stop signalling "eventually"
-                 && --leftInBatch > 0 // This makes sure that we only send `batchSize` number of elements in one go (so we can yield to other Runnables)
-                 && --demand > 0);    // This makes sure that rule 1.1 is upheld (sending more than was demanded)
-
-        if (!cancelled && demand > 0) // If the `Subscription` is still alive and well, and we have demand to satisfy, we signal ourselves to send more data
-          signal(Send.Instance);
+          // We have delivered everything that was demanded when we started, so we atomically subtract that,
+          // if more was requested in the meantime we just carry on, otherwise the next `request` will schedule us.
+          requested = demand.addAndGet(-emitted);
+          if (requested == 0L)
+            return false;
+          emitted = 0;
+        }
       } catch(final Throwable t) {
         // We can only get here if `onNext` or `onComplete` threw, and they are not allowed to according to 2.13, so we can only cancel and log here.
         doCancel(); // Make sure that we are cancelled, since we cannot do anything else since the `Subscriber` is faulty.
         (new IllegalStateException(subscriber + " violated the Reactive Streams rule 2.13 by throwing an exception from onNext or onComplete.", t)).printStackTrace(System.err);
+        return false;
       }
     }
 
+    // This pulls up to `max` elements into `batch` and signals them downstream with a single `onNextBatch`, it returns
+    // how many elements were signalled, or -1 if the stream has ended and `onComplete` or `onError` has been signalled
+    private int sendBatch(final int max) {
+      int n = 0;
+      boolean hasNext = true;
+      Throwable failure = null;
+      do {
+        try {
+          final T next = iterator.next(); // Just as in `doSend`, we have already checked `hasNext` before calling `next`
+          hasNext = iterator.hasNext(); // Need to keep track of End-of-Stream
+          batch[n++] = next;
+        } catch (final Throwable t) {
+          failure = t; // We first signal the elements we already have, and then treat the stream as errored as per rule 1.4
+          break;
+        }
+      } while (hasNext && n != max);
+
+      if (n != 0) {
+        try {
+          batchSubscriber.onNextBatch(batch, 0, n); // Then we signal the batch downstream to the `Subscriber`
+        } finally {
+          Arrays.fill(batch, 0, n, null); // We don't want to hold on to elements that have already been delivered
+        }
+      }
+      if (failure != null) {
+        terminateDueTo(failure);
+        return -1;
+      }
+      if (!hasNext) { // If we are at End-of-Stream
+        doCancel(); // We need to consider this `Subscription` as cancelled as per rule 1.6
+        subscriber.onComplete(); // Then we signal `onComplete` as per rule 1.2 and 1.5
+        return -1;
+      }
+      return n;
+    }
+
+    // Fusion is negotiated from within `onSubscribe`, while `doSubscribe` is still running, the `Iterable` can only be iterated synchronously
+    @Override public int requestFusion(final int requestedMode) {
+      if ((requestedMode & SYNC) == 0)
+        return NONE;
+      fused = true;
+      return SYNC;
+    }
+
+    // This takes the next element straight from the `Iterator`, on the fused `Subscriber`'s thread, returning `null` at End-of-Stream
+    // and throwing whatever the `Iterator` throws, which then stands in for `onError` as per rule 1.4
+    @Override public T poll() {
+      return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    @Override public boolean isEmpty() {
+      try {
+        return !iterator.hasNext();
+      } catch(final Throwable t) {
+        return false; // We can't signal it from here, so we let `poll` run into it
+      }
+    }
+
+    @Override public void clear() {
+      // There is nothing buffered, the `Iterator` is simply not used anymore
+    }
+
     // This is a helper method to ensure that we always `cancel` when we signal `onError` as per rule 1.6
     private void terminateDueTo(final Throwable t) {
       cancelled = true; // When we signal onError, the subscription must be considered as cancelled, as per rule 1.6
@@ -190,73 +305,84 @@ public class AsyncIterablePublisher<T> implements Publisher<T> {
       }
     }
 
-    // What `signal` does is that it sends signals to the `Subscription` asynchronously
-    private void signal(final Signal signal) {
-      if (inboundSignals.offer(signal)) // No need to null-check here as ConcurrentLinkedQueue does this for us
-        tryScheduleToExecute(); // Then we try to schedule it for execution, if it isn't already
-    }
-
     // This is the main "event loop" if you so will
     @Override public final void run() {
-      if(on.get()) { // establishes a happens-before relationship with the end of the previous run
-        try {
-          final Signal s = inboundSignals.poll(); // We take a signal off the queue
-          if (!cancelled) { // to make sure that we follow rule 1.8, 3.6 and 3.7
-
-            // Below we simply unpack the `Signal`s and invoke the corresponding methods
-            if (s instanceof Request)
-              doRequest(((Request)s).n);
-            else if (s == Send.Instance)
-              doSend();
-            else if (s == Cancel.Instance)
-              doCancel();
-            else if (s == Subscribe.Instance)
-              doSubscribe();
+      int missed = 1;
+      for (;;) { // The read-modify-write on `wip` at the end of each round establishes a happens-before relationship with the next run
+        if (!cancelled) { // to make sure that we follow rule 1.8, 3.6 and 3.7
+          if (!subscribed) {
+            subscribed = true;
+            doSubscribe();
+          } else {
+            final Throwable t = invalidRequest;
+            if (t != null)
+              terminateDueTo(t); // As per rule 3.9, a non-positive request must be signalled as `onError`
+            else if (demand.get() > 0L && doSend()) {
+              // The batch is used up but there is more demand, so we keep `wip` as it is and resubmit ourselves,
+              // which relinquishes the current thread and lets other `Runnable`s on the `Executor` make progress
+              scheduleOnExecutor();
+              return;
+            }
           }
-        } finally {
-          on.set(false); // establishes a happens-before relationship with the beginning of the next run
-          if(!inboundSignals.isEmpty()) // If we still have signals to process
-            tryScheduleToExecute(); // Then we try to schedule ourselves to execute again
         }
+        missed = wip.addAndGet(-missed);
+        if (missed == 0) // If no new work was signalled while we were running we are done for now
+          break;
       }
     }
 
     // This method makes sure that this `Subscription` is only running on one Thread at a time,
     // this is important to make sure that we follow rule 1.3
     private final void tryScheduleToExecute() {
-      if(on.compareAndSet(false, true)) {
-        try {
-          executor.execute(this);
-        } catch(Throwable t) { // If we can't run on the `Executor`, we need to fail gracefully
-          if (!cancelled) {
-            doCancel(); // First of all, this failure is not recoverable, so we need to follow rule 1.4 and 1.6
-            try {
-              terminateDueTo(new IllegalStateException("Publisher terminated due to unavailable Executor.", t));
-            } finally {
-              inboundSignals.clear(); // We're not going to need these anymore
-              // This subscription is cancelled by now, but letting it become schedulable again means
-              // that we can drain the inboundSignals queue if anything arrives after clearing
-              on.set(false);
-            }
-          }
+      if (wip.getAndIncrement() == 0)
+        scheduleOnExecutor();
+    }
+
+    private final void scheduleOnExecutor() {
+      try {
+        executor.execute(this);
+      } catch(Throwable t) { // If we can't run on the `Executor`, we need to fail gracefully
+        if (!cancelled) {
+          doCancel(); // First of all, this failure is not recoverable, so we need to follow rule 1.4 and 1.6
+          terminateDueTo(new IllegalStateException("Publisher terminated due to unavailable Executor.", t));
         }
+        // We deliberately leave `wip` non-zero, this `Subscription` is cancelled by now and must never be scheduled again
       }
     }
 
-    // Our implementation of `Subscription.request` sends a signal to the Subscription that more elements are in demand
+    // Our implementation of `Subscription.request` registers inbound demand from our `Subscriber` and validates it against rule 3.9 and rule 3.17
     @Override public void request(final long n) {
-      signal(new Request(n));
+      if (n < 1) {
+        invalidRequest = new IllegalArgumentException(subscriber + " violated the Reactive Streams rule 3.9 by requesting a non-positive number of elements.");
+        tryScheduleToExecute(); // The `onError` needs to be signalled from within `run`, so that it is not concurrent with `onNext`
+        return;
+      }
+      for (;;) {
+        final long current = demand.get();
+        if (current == Long.MAX_VALUE) // Demand is already "effectively unbounded", so there is nothing to add
+          return;
+        long update = current + n;
+        if (update < 1) // As governed by rule 3.17, when demand overflows `Long.MAX_VALUE` we treat the signalled demand as "effectively unbounded"
+          update = Long.MAX_VALUE;
+        if (demand.compareAndSet(current, update)) {
+          // If there was outstanding demand already, then `doSend` is either running or about to be run and will pick the
+          // new demand up when it subtracts what it has delivered, so only the transition from zero needs to schedule us
+          if (current == 0L)
+            tryScheduleToExecute();
+          return;
+        }
+      }
     }
-    // Our implementation of `Subscription.cancel` sends a signal to the Subscription that the `Subscriber` is not interested in any more elements
+    // Our implementation of `Subscription.cancel` marks this `Subscription` as cancelled, which `run` and `doSend` observe as per rule 3.5 and 3.7
     @Override public void cancel() {
-      signal(Cancel.Instance);
+      doCancel();
     }
     // The reason for the `init` method is that we want to ensure the `SubscriptionImpl`
     // is completely constructed before it is exposed to the thread pool, therefor this
     // method is only intended to be invoked once, and immediately after the constructor has
     // finished.
     void init() {
-      signal(Subscribe.Instance);
+      tryScheduleToExecute();
     }
   };
 }
\ No newline at end of file
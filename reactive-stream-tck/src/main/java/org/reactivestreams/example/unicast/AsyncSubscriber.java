@@ -7,47 +7,63 @@ package org.reactivestreams.example.unicast;
 import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * AsyncSubscriber is an implementation of Reactive Streams `Subscriber`,
  * it runs asynchronously (on an Executor), requests one element
  * at a time, and invokes a user-defined method to process each element.
  *
+ * Optionally a prefetch window can be configured: it then requests that many elements up front
+ * and replenishes them in a single `request` once 75% of the window has been consumed.
+ *
+ * Since this Subscriber controls its demand, at most `prefetch` elements can be outstanding at any time,
+ * so they are buffered in a bounded single-producer/single-consumer ring without any allocation per element.
+ *
+ * Subclasses which hold on to elements after `whenNext` returns can take over the replenishing:
+ * they then call `request` themselves once they have room for more elements.
+ *
+ * The `when*` methods run on the `Executor`, one at a time. If they block, e.g. writing each element to a file or a database,
+ * use an `Executor` which starts a virtual thread per task (see `VirtualThreads`), then blocking parks the virtual thread
+ * instead of taking a thread away from a pool.
+ *
  * NOTE: The code below uses a lot of try-catches to show the reader where exceptions can be expected, and where they are forbidden.
  */
 public abstract class AsyncSubscriber<T> implements Subscriber<T>, Runnable {
-
-  // Signal represents the asynchronous protocol between the Publisher and Subscriber
-  private static interface Signal {}
-
-  private enum OnComplete implements Signal { Instance; }
-
-  private static class OnError implements Signal {
-    public final Throwable error;
-    public OnError(final Throwable error) { this.error = error; }
-  }
-
-  private static class OnNext<T> implements Signal {
-    public final T next;
-    public OnNext(final T next) { this.next = next; }
-  }
-
-  private static class OnSubscribe implements Signal {
-    public final Subscription subscription;
-    public OnSubscribe(final Subscription subscription) { this.subscription = subscription; }
-  }
-
   private Subscription subscription; // Obeying rule 3.1, we make this private!
   private boolean done; // It's useful to keep track of whether this Subscriber is done or not
   private final Executor executor; // This is the Executor we'll use to be asynchronous, obeying rule 2.2
+  private final int prefetch; // How many elements we request up front
+  private final int limit; // After how many consumed elements we replenish the prefetch window
+  private final boolean replenishOnNext; // Whether we replenish the prefetch window ourselves, or leave that to the subclass
+  private int consumed; // How many elements we have consumed since we last called `request`
 
-  // Only one constructor, and it's only accessible for the subclasses
+  // The constructors are only accessible for the subclasses, this one requests one element at a time
   protected AsyncSubscriber(Executor executor) {
+    this(executor, 1);
+  }
+
+  // This one requests `prefetch` elements up front and replenishes them once 75% of them have been consumed
+  protected AsyncSubscriber(Executor executor, int prefetch) {
+    this(executor, prefetch, true);
+  }
+
+  // This one requests `prefetch` elements up front, and if `replenishOnNext` is false it leaves requesting more to the subclass
+  protected AsyncSubscriber(Executor executor, int prefetch, boolean replenishOnNext) {
     if (executor == null) throw null;
+    if (prefetch < 1) throw new IllegalArgumentException("prefetch must be positive but was " + prefetch);
     this.executor = executor;
+    this.prefetch = prefetch;
+    this.limit = prefetch - (prefetch >> 2);
+    this.replenishOnNext = replenishOnNext;
+    // There can never be more than `prefetch` elements outstanding, so that's all the room we need,
+    // rounded up to a power of two so we can use a mask instead of a modulo to find the slot of an element
+    final int capacity = Rings.capacity("prefetch", prefetch);
+    this.queue = new AtomicReferenceArray<T>(capacity);
+    this.mask = capacity - 1;
   }
 
   // Showcases a convenience method to idempotently marking the Subscriber as "done", so we don't want to process more elements
@@ -70,6 +86,20 @@ public abstract class AsyncSubscriber<T> implements Subscriber<T>, Runnable {
   // for convenience.
   protected abstract boolean whenNext(final T element);
 
+  // This method requests `n` more elements right away, for subclasses which don't replenish on `onNext`.
+  // It must only be invoked from within `whenNext`, so that it is not concurrent with our own use of the `Subscription`
+  protected final void request(final long n) {
+    if (!done) { // There's no point in asking for more elements once we're done
+      addDemand(n);
+      try {
+        subscription.request(n);
+      } catch(final Throwable t) {
+        // Subscription.request is not allowed to throw according to rule 3.16
+        (new IllegalStateException(subscription + " violated the Reactive Streams rule 3.16 by throwing an exception from request.", t)).printStackTrace(System.err);
+      }
+    }
+  }
+
   // This method is invoked when the OnComplete signal arrives
   // override this method to implement your own custom onComplete logic.
   protected void whenComplete() { }
@@ -78,28 +108,26 @@ public abstract class AsyncSubscriber<T> implements Subscriber<T>, Runnable {
   // override this method to implement your own custom onError logic.
   protected void whenError(Throwable error) { }
 
+  // Adds `n` to the demand `onNext` checks against, this has to happen before `request`, which may deliver synchronously
+  private final void addDemand(final long n) {
+    if (n > 0) { // A non-positive `n` is answered with `onError` as per rule 3.9, rather than with elements
+      final long r = requestedTotal + n;
+      requestedTotal = r < 0 ? Long.MAX_VALUE : r; // As per rule 3.17, we cap demand at "effectively unbounded"
+    }
+  }
+
   private final void handleOnSubscribe(final Subscription s) {
-    if (s == null) {
-      // Getting a null `Subscription` here is not valid so lets just ignore it.
-    } else if (subscription != null) { // If someone has made a mistake and added this Subscriber multiple times, let's handle it gracefully
-      try {
-        s.cancel(); // Cancel the additional subscription to follow rule 2.5
-      } catch(final Throwable t) {
-        //Subscription.cancel is not allowed to throw an exception, according to rule 3.15
-        (new IllegalStateException(s + " violated the Reactive Streams rule 3.15 by throwing an exception from cancel.", t)).printStackTrace(System.err);
-      }
-    } else {
-      // We have to assign it locally before we use it, if we want to be a synchronous `Subscriber`
-      // Because according to rule 3.10, the Subscription is allowed to call `onNext` synchronously from within `request`
-      subscription = s;
-      try {
-        // If we want elements, according to rule 2.1 we need to call `request`
-        // And, according to rule 3.2 we are allowed to call this synchronously from within the `onSubscribe` method
-        s.request(1); // Our Subscriber is unbuffered and modest, it requests one element at a time
-      } catch(final Throwable t) {
-        // Subscription.request is not allowed to throw according to rule 3.16
-        (new IllegalStateException(s + " violated the Reactive Streams rule 3.16 by throwing an exception from request.", t)).printStackTrace(System.err);
-      }
+    // We have to assign it locally before we use it, if we want to be a synchronous `Subscriber`
+    // Because according to rule 3.10, the Subscription is allowed to call `onNext` synchronously from within `request`
+    subscription = s;
+    addDemand(prefetch);
+    try {
+      // If we want elements, according to rule 2.1 we need to call `request`
+      // And, according to rule 3.2 we are allowed to call this synchronously from within the `onSubscribe` method
+      s.request(prefetch); // Our Subscriber is modest, it requests one element at a time unless told to prefetch more
+    } catch(final Throwable t) {
+      // Subscription.request is not allowed to throw according to rule 3.16
+      (new IllegalStateException(s + " violated the Reactive Streams rule 3.16 by throwing an exception from request.", t)).printStackTrace(System.err);
     }
   }
 
@@ -111,11 +139,16 @@ public abstract class AsyncSubscriber<T> implements Subscriber<T>, Runnable {
       } else {
         try {
           if (whenNext(element)) {
-            try {
-              subscription.request(1); // Our Subscriber is unbuffered and modest, it requests one element at a time
-            } catch(final Throwable t) {
-              // Subscription.request is not allowed to throw according to rule 3.16
-              (new IllegalStateException(subscription + " violated the Reactive Streams rule 3.16 by throwing an exception from request.", t)).printStackTrace(System.err);
+            if (replenishOnNext && ++consumed == limit) { // Only replenish once the low-water mark of the prefetch window is reached
+              final int n = consumed;
+              consumed = 0;
+              addDemand(n);
+              try {
+                subscription.request(n); // Top the outstanding demand back up to `prefetch` with a single call
+              } catch(final Throwable t) {
+                // Subscription.request is not allowed to throw according to rule 3.16
+                (new IllegalStateException(subscription + " violated the Reactive Streams rule 3.16 by throwing an exception from request.", t)).printStackTrace(System.err);
+              }
             }
           } else {
             done(); // This is legal according to rule 2.6
@@ -155,87 +188,172 @@ public abstract class AsyncSubscriber<T> implements Subscriber<T>, Runnable {
     }
   }
 
-  // We implement the OnX methods on `Subscriber` to send Signals that we will process asycnhronously, but only one at a time
+  // We implement the OnX methods on `Subscriber` to hand the signals over to the `Executor`, where we process them one at a time
 
   @Override public final void onSubscribe(final Subscription s) {
     // As per rule 2.13, we need to throw a `java.lang.NullPointerException` if the `Subscription` is `null`
     if (s == null) throw null;
 
-    signal(new OnSubscribe(s));
+    if (upstream.compareAndSet(null, s)) {
+      tryScheduleToExecute(); // The `request` happens on the `Executor`, in `handleOnSubscribe`
+    } else { // If someone has made a mistake and added this Subscriber multiple times, let's handle it gracefully
+      try {
+        s.cancel(); // Cancel the additional subscription to follow rule 2.5
+      } catch(final Throwable t) {
+        //Subscription.cancel is not allowed to throw an exception, according to rule 3.15
+        (new IllegalStateException(s + " violated the Reactive Streams rule 3.15 by throwing an exception from cancel.", t)).printStackTrace(System.err);
+      }
+    }
   }
 
   @Override public final void onNext(final T element) {
     // As per rule 2.13, we need to throw a `java.lang.NullPointerException` if the `element` is `null`
     if (element == null) throw null;
 
-    signal(new OnNext<T>(element));
+    // Rule 1.3 guarantees that `onNext` is never called concurrently, so we are the only producer of the queue
+    final int offset = (int) producerIndex & mask;
+    if (producerIndex == requestedTotal) {
+      // We count the demand rather than rely on a full queue, as the queue may have room for more than we requested
+      overflow = new IllegalStateException("Publisher violated the Reactive Streams rule 1.1 by signalling more elements than requested.");
+    } else if (queue.get(offset) != null) {
+      // The slot hasn't been consumed yet, so a subclass has requested more than the prefetch window can hold
+      overflow = new IllegalStateException(this + " requested more elements than its prefetch window of " + prefetch + " can hold.");
+    } else {
+      queue.lazySet(offset, element); // The `getAndIncrement` in `tryScheduleToExecute` publishes this to the consumer
+      producerIndex++;
+    }
+    tryScheduleToExecute();
   }
 
   @Override public final void onError(final Throwable t) {
     // As per rule 2.13, we need to throw a `java.lang.NullPointerException` if the `Throwable` is `null`
     if (t == null) throw null;
 
-    signal(new OnError(t));
+    error = t; // The volatile write to `terminated` below makes this visible to the consumer
+    terminated = true;
+    tryScheduleToExecute();
   }
 
   @Override public final void onComplete() {
-     signal(OnComplete.Instance);
+    terminated = true;
+    tryScheduleToExecute();
   }
 
-  // This `ConcurrentLinkedQueue` will track signals that are sent to this `Subscriber`, like `OnComplete` and `OnNext` ,
-  // and obeying rule 2.11
-  private final ConcurrentLinkedQueue<Signal> inboundSignals = new ConcurrentLinkedQueue<Signal>();
+  // This is the `Subscription` handed to us in `onSubscribe`, we use compareAndSet to detect additional ones, obeying rule 2.5
+  private final AtomicReference<Subscription> upstream = new AtomicReference<Subscription>();
 
-  // We are using this `AtomicBoolean` to make sure that this `Subscriber` doesn't run concurrently with itself,
-  // obeying rule 2.7 and 2.11
-  private final AtomicBoolean on = new AtomicBoolean(false);
+  // This ring buffer holds the elements that are sent to this `Subscriber` until we get to process them, obeying rule 2.11.
+  // `onNext` is its only producer and `run` its only consumer, and an empty slot is `null`
+  private final AtomicReferenceArray<T> queue;
+  private final int mask;
+  private long producerIndex; // Only accessed from `onNext`, which is also how many elements we have received
+  private long consumerIndex; // Only accessed from `run`
 
-   @SuppressWarnings("unchecked")
-   @Override public final void run() {
-    if(on.get()) { // establishes a happens-before relationship with the end of the previous run
-      try {
-        final Signal s = inboundSignals.poll(); // We take a signal off the queue
-        if (!done) { // If we're done, we shouldn't process any more signals, obeying rule 2.8
-          // Below we simply unpack the `Signal`s and invoke the corresponding methods
-          if (s instanceof OnNext<?>)
-            handleOnNext(((OnNext<T>)s).next);
-          else if (s instanceof OnSubscribe)
-            handleOnSubscribe(((OnSubscribe)s).subscription);
-          else if (s instanceof OnError) // We are always able to handle OnError, obeying rule 2.10
-            handleOnError(((OnError)s).error);
-          else if (s == OnComplete.Instance) // We are always able to handle OnComplete, obeying rule 2.9
-            handleOnComplete();
-        }
-      } finally {
-        on.set(false); // establishes a happens-before relationship with the beginning of the next run
-        if(!inboundSignals.isEmpty()) // If we still have signals to process
-          tryScheduleToExecute(); // Then we try to schedule ourselves to execute again
+  // How many elements we have requested in total, only written from `run`, before it calls `request`
+  private volatile long requestedTotal;
+
+  // The terminal signals are kept outside of the queue, as there can only be one of them and it comes after all elements
+  private volatile boolean terminated;
+  private Throwable error; // `null` if we terminated via `onComplete`
+
+  // Set if the Publisher has sent more elements than we have requested
+  private volatile IllegalStateException overflow;
+
+  // Set if the `Executor` refused to run us, then there's no point in processing any more signals
+  private volatile boolean rejected;
+
+  // We are using this `AtomicInteger` to make sure that this `Subscriber` doesn't run concurrently with itself,
+  // obeying rule 2.7 and 2.11. It counts the signals which have arrived since `run` last checked for them
+  private final AtomicInteger wip = new AtomicInteger();
+
+  @Override public final void run() {
+    if (wip.get() == 0) return; // We haven't been scheduled, establishes a happens-before relationship with the signals otherwise
+
+    int missed = 1;
+    for (;;) {
+      drain();
+
+      missed = wip.addAndGet(-missed); // establishes a happens-before relationship with the beginning of the next run
+      if (missed == 0) {
+        break;
+      }
+    }
+  }
+
+  // Processes all the signals which have arrived so far, one at a time
+  private void drain() {
+    if (!done && rejected) {
+      done(); // This failure is not recoverable, so we need to cancel our subscription
+    }
+
+    if (!done && subscription == null) {
+      final Subscription s = upstream.get();
+      if (s != null) {
+        handleOnSubscribe(s); // This may deliver elements synchronously, which then just get added to the queue
+      }
+    }
+
+    for (;;) {
+      if (done) { // If we're done, we shouldn't process any more signals, obeying rule 2.8
+        while (poll() != null) { } // We're not going to need these anymore
+        return;
+      }
+
+      final IllegalStateException o = overflow;
+      if (o != null) {
+        done(); // We can't trust this Publisher anymore, so we cancel our subscription
+        o.printStackTrace(System.err);
+        continue;
+      }
+
+      final boolean t = terminated; // We have to read this before polling, otherwise we could miss the last elements
+      final T element = poll();
+
+      if (element != null) {
+        handleOnNext(element);
+      } else if (t) { // All elements have been processed, so now it is the turn of the terminal signal
+        final Throwable e = error;
+        if (e != null)
+          handleOnError(e); // We are always able to handle OnError, obeying rule 2.10
+        else
+          handleOnComplete(); // We are always able to handle OnComplete, obeying rule 2.9
+        done = true; // Whatever happened above, there will be no more signals
+      } else {
+        return;
       }
     }
   }
 
-  // What `signal` does is that it sends signals to the `Subscription` asynchronously
-  private void signal(final Signal signal) {
-    if (inboundSignals.offer(signal)) // No need to null-check here as ConcurrentLinkedQueue does this for us
-      tryScheduleToExecute(); // Then we try to schedule it for execution, if it isn't already
+  // Takes the next element off the queue, or returns `null` if there is none
+  private T poll() {
+    final int offset = (int) consumerIndex & mask;
+    final T element = queue.get(offset);
+    if (element != null) {
+      queue.lazySet(offset, null); // Hand the slot back to the producer
+      consumerIndex++;
+    }
+    return element;
   }
 
   // This method makes sure that this `Subscriber` is only executing on one Thread at a time
   private final void tryScheduleToExecute() {
-    if(on.compareAndSet(false, true)) {
+    if (wip.getAndIncrement() == 0) {
       try {
         executor.execute(this);
       } catch(Throwable t) { // If we can't run on the `Executor`, we need to fail gracefully and not violate rule 2.13
-        if (!done) {
+        rejected = true; // Makes the next `run`, if there ever is one, drop everything
+        final Subscription s = upstream.get();
+        if (s != null) {
           try {
-            done(); // First of all, this failure is not recoverable, so we need to cancel our subscription
-          } finally {
-            inboundSignals.clear(); // We're not going to need these anymore
-            // This subscription is cancelled by now, but letting the Subscriber become schedulable again means
-            // that we can drain the inboundSignals queue if anything arrives after clearing
-            on.set(false);
+            s.cancel(); // First of all, this failure is not recoverable, so we need to cancel our subscription
+          } catch(final Throwable t2) {
+            //Subscription.cancel is not allowed to throw an exception, according to rule 3.15
+            (new IllegalStateException(s + " violated the Reactive Streams rule 3.15 by throwing an exception from cancel.", t2)).printStackTrace(System.err);
           }
         }
+        // This subscription is cancelled by now, but letting the Subscriber become schedulable again means
+        // that we can drain the queue if anything arrives later
+        wip.set(0);
       }
     }
   }
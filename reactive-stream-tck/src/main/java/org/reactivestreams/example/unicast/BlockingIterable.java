@@ -0,0 +1,259 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * BlockingIterable bridges a Reactive Streams `Publisher` to imperative code which wants to pull its elements,
+ * as an `Iterable` or as a `Stream`. Every `iterator` (and every `stream`) subscribes to the `Publisher` anew.
+ *
+ * The iterator prefetches: it requests `prefetch` elements up front, and replenishes them in a single `request`
+ * once 75% of them have been consumed, just like `AsyncSubscriber`. Since it never requests more than it has room for,
+ * the elements are buffered in a bounded single-producer/single-consumer ring without any allocation per element, and
+ * a consumer which has caught up with the `Publisher` parks, using `LockSupport`, until the next signal arrives.
+ *
+ * A failure of the `Publisher` is thrown from `hasNext` or `next` once the elements before it have been consumed,
+ * as is, if it is unchecked, and wrapped into an `IllegalStateException` otherwise.
+ *
+ * An iterator which is abandoned before the end should be closed, to cancel its `Subscription`: a `Stream` is closed
+ * by `close`, e.g. with try-with-resources, or an iterator by `BlockingIterator.close`.
+ */
+public final class BlockingIterable<T> implements Iterable<T> {
+  private final static int DEFAULT_PREFETCH = 128;
+
+  private final Publisher<? extends T> publisher;
+  private final int prefetch; // How many elements an iterator requests up front
+  private final int capacity; // The size of each iterator's ring, `prefetch` rounded up to a power of two
+
+  public BlockingIterable(final Publisher<? extends T> publisher) {
+    this(publisher, DEFAULT_PREFETCH);
+  }
+
+  public BlockingIterable(final Publisher<? extends T> publisher, final int prefetch) {
+    if (publisher == null) throw null;
+    if (prefetch < 1) throw new IllegalArgumentException("prefetch must be positive but was " + prefetch);
+    this.publisher = publisher;
+    this.prefetch = prefetch;
+    this.capacity = Rings.capacity("prefetch", prefetch);
+  }
+
+  // Subscribes to the `Publisher`, the first elements are requested by the first `hasNext` or `next`
+  @Override public BlockingIterator<T> iterator() {
+    final BlockingIterator<T> iterator = new BlockingIterator<T>(prefetch, capacity);
+    publisher.subscribe(iterator);
+    return iterator;
+  }
+
+  // Subscribes to the `Publisher`, closing the `Stream` cancels the `Subscription`
+  public Stream<T> stream() {
+    final BlockingIterator<T> iterator = iterator();
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+        .onClose(new Runnable() {
+          @Override public void run() {
+            iterator.close();
+          }
+        });
+  }
+
+  // The `Subscriber` which buffers the elements for the consumer, which pulls them through the `Iterator` methods.
+  // Those must be called serially, but not necessarily on the same thread, and it is also them which call `request`,
+  // so all calls on the `Subscription` are performed serially, obeying rule 2.7.
+  public static final class BlockingIterator<T> implements Iterator<T>, Subscriber<T>, AutoCloseable {
+    // Stands in for the `Subscription` once `close` has been called, so a late `onSubscribe` knows it has to cancel
+    private static final Subscription CANCELLED = new Subscription() {
+      @Override public void request(long n) {}
+      @Override public void cancel() {}
+    };
+
+    private final int prefetch; // How many elements we request up front
+    private final int limit; // After how many consumed elements we replenish the prefetch window
+    private int consumed; // How many elements we have consumed since we last called `request`, only accessed by the consumer
+    private boolean requested; // Whether the prefetch window has been requested yet, only accessed by the consumer
+
+    // This is the `Subscription` handed to us in `onSubscribe`, we use compareAndSet to detect additional ones, obeying rule 2.5
+    private final AtomicReference<Subscription> upstream = new AtomicReference<Subscription>();
+
+    // This ring buffer holds the elements until the consumer takes them, `onNext` is its only producer and `next` its only consumer,
+    // and an empty slot is `null`. There can never be more than `prefetch` elements outstanding, so that's all the room we need,
+    // rounded up to a power of two so we can use a mask instead of a modulo to find the slot of an element
+    private final AtomicReferenceArray<T> queue;
+    private final int mask;
+    private long producerIndex; // Only accessed from `onNext`, which is also how many elements we have received
+    private long consumerIndex; // Only accessed by the consumer
+
+    // How many elements we have requested in total, only written by the consumer, before it calls `request`.
+    // `onNext` compares it with `producerIndex` to detect a Publisher which signals more than that, as the ring may have
+    // room for a few more elements than we requested, which would otherwise go unnoticed.
+    private volatile long requestedTotal;
+
+    // The terminal signals are kept outside of the queue, as there can only be one of them and it comes after all elements
+    private volatile boolean terminated;
+    private Throwable error; // `null` if we terminated via `onComplete`, the volatile write to `terminated` makes it visible to the consumer
+
+    private volatile Thread consumer; // The thread which waits in `hasNext`, if any
+    private volatile boolean parked; // Set while the consumer waits, so only then the signals need to wake it up
+
+    BlockingIterator(final int prefetch, final int capacity) {
+      this.prefetch = prefetch;
+      this.limit = prefetch - (prefetch >> 2);
+      this.queue = new AtomicReferenceArray<T>(capacity);
+      this.mask = capacity - 1;
+    }
+
+    @Override public boolean hasNext() {
+      for (;;) {
+        final boolean t = terminated; // We have to read this before looking at the queue, otherwise we could miss the last elements
+        if (queue.get((int) consumerIndex & mask) != null)
+          return true;
+        if (t) {
+          final Throwable e = error;
+          if (e == null)
+            return false;
+          close(); // A NOP after `onError` as per rule 3.6, but we need to cancel if it is us who found the Publisher at fault
+          if (e instanceof RuntimeException) throw (RuntimeException) e;
+          if (e instanceof Error) throw (Error) e;
+          throw new IllegalStateException("The Publisher failed", e);
+        }
+        final Subscription s = upstream.get();
+        if (s == CANCELLED)
+          throw new IllegalStateException("The iterator has been closed");
+        if (s != null && !requested) {
+          requested = true;
+          request(s, prefetch); // We request from the consumer, rather than from `onSubscribe`, so our requests are serial
+          continue; // The `Publisher` may have delivered synchronously
+        }
+        await(s);
+      }
+    }
+
+    // Parks the consumer until the next signal, the volatile accesses of `parked` and the state it is waiting for
+    // make sure that either it sees the signal before parking, or that the signal sees that it is parking
+    private void await(final Subscription s) {
+      consumer = Thread.currentThread();
+      parked = true;
+      if (upstream.get() == s && !terminated && queue.get((int) consumerIndex & mask) == null)
+        LockSupport.park(this);
+      parked = false;
+      if (Thread.interrupted()) {
+        close(); // We have no way to give up waiting without throwing, so there won't be anyone consuming the rest
+        Thread.currentThread().interrupt(); // Restore the interrupt, for the caller to find out why
+        throw new IllegalStateException("Interrupted while waiting for the Publisher");
+      }
+    }
+
+    private void wakeUp() {
+      if (parked)
+        LockSupport.unpark(consumer);
+    }
+
+    @Override public T next() {
+      if (!hasNext())
+        throw new NoSuchElementException();
+      final int offset = (int) consumerIndex & mask;
+      final T element = queue.get(offset);
+      queue.lazySet(offset, null); // Hand the slot back to the producer
+      consumerIndex++;
+      if (++consumed == limit) { // Only replenish once the low-water mark of the prefetch window is reached
+        consumed = 0;
+        request(upstream.get(), limit); // Top the outstanding demand back up to `prefetch` with a single call
+      }
+      return element;
+    }
+
+    private void request(final Subscription s, final long n) {
+      if (s == CANCELLED)
+        return; // There's no point in asking for more elements once we're closed
+      requestedTotal += n; // Before `request`, which may deliver the elements synchronously
+      try {
+        s.request(n);
+      } catch(final Throwable t) {
+        // Subscription.request is not allowed to throw according to rule 3.16
+        (new IllegalStateException(s + " violated the Reactive Streams rule 3.16 by throwing an exception from request.", t)).printStackTrace(System.err);
+      }
+    }
+
+    @Override public void remove() {
+      throw new UnsupportedOperationException("remove");
+    }
+
+    // Cancels the `Subscription`, after which the iterator must not be used anymore
+    @Override public void close() {
+      final Subscription s = upstream.getAndSet(CANCELLED);
+      if (s != null && s != CANCELLED) {
+        try {
+          s.cancel();
+        } catch(final Throwable t) {
+          //Subscription.cancel is not allowed to throw an exception, according to rule 3.15
+          (new IllegalStateException(s + " violated the Reactive Streams rule 3.15 by throwing an exception from cancel.", t)).printStackTrace(System.err);
+        }
+      }
+      for (long i = consumerIndex; queue.get((int) i & mask) != null; i++)
+        queue.lazySet((int) i & mask, null); // We're not going to need these anymore
+    }
+
+    @Override public void onSubscribe(final Subscription s) {
+      // As per rule 2.13, we need to throw a `java.lang.NullPointerException` if the `Subscription` is `null`
+      if (s == null) throw null;
+
+      if (upstream.compareAndSet(null, s)) {
+        wakeUp(); // The consumer may already wait for the `Subscription`, to make its first request
+      } else { // We have been closed already, or someone has made a mistake and added this Subscriber multiple times
+        try {
+          s.cancel(); // Cancel the additional subscription to follow rule 2.5
+        } catch(final Throwable t) {
+          //Subscription.cancel is not allowed to throw an exception, according to rule 3.15
+          (new IllegalStateException(s + " violated the Reactive Streams rule 3.15 by throwing an exception from cancel.", t)).printStackTrace(System.err);
+        }
+      }
+    }
+
+    @Override public void onNext(final T element) {
+      // As per rule 2.13, we need to throw a `java.lang.NullPointerException` if the `element` is `null`
+      if (element == null) throw null;
+      if (terminated) return; // We have given up on a faulty Publisher already, rule 1.3 makes this check safe
+
+      // Rule 1.3 guarantees that `onNext` is never called concurrently, so we are the only producer of the queue
+      if (producerIndex == requestedTotal) {
+        // The Publisher has sent more than we requested. We only record that, the consumer cancels once it has taken
+        // the elements before it, as it is the consumer which calls `request`, and the calls must be serial as per rule 2.7
+        error = new IllegalStateException("Publisher violated the Reactive Streams rule 1.1 by signalling more elements than requested.");
+        terminated = true;
+      } else {
+        queue.set((int) producerIndex & mask, element); // A volatile write, so that `wakeUp` can't miss a consumer which is about to park
+        producerIndex++;
+      }
+      wakeUp();
+    }
+
+    @Override public void onError(final Throwable t) {
+      // As per rule 2.13, we need to throw a `java.lang.NullPointerException` if the `Throwable` is `null`
+      if (t == null) throw null;
+      if (terminated) return; // Keep the violation we have found, and don't race the consumer reading `error`
+
+      error = t; // The volatile write to `terminated` below makes this visible to the consumer
+      terminated = true;
+      wakeUp();
+    }
+
+    @Override public void onComplete() {
+      if (terminated) return;
+      terminated = true;
+      wakeUp();
+    }
+  }
+}
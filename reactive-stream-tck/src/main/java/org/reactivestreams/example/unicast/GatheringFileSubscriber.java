@@ -0,0 +1,136 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GatheringFileSubscriber is an `AsyncSubscriber` which writes the `ByteBuffer`s it receives to a `FileChannel`.
+ *
+ * Instead of writing every buffer on its own, it collects up to `maxBuffers` of them, or until they hold `maxBytes`,
+ * and then writes them all with a single gathering `FileChannel.write(ByteBuffer[])`. A buffer occupies its slot
+ * until it has been written, so this Subscriber only requests as many buffers as it has free slots: `maxBuffers`
+ * up front, and after every flush as many as it has just written.
+ *
+ * Whether and when the written bytes are forced to the storage device is decided by the `Force` policy.
+ * The `FileChannel` belongs to the caller, this Subscriber doesn't close it, `written()` tells when it is done with it.
+ */
+public class GatheringFileSubscriber extends AsyncSubscriber<ByteBuffer> {
+
+  // When to call `FileChannel.force`
+  public enum Force {
+    NEVER, // Leave it to the operating system
+    PER_BATCH, // After every gathering write
+    PERIODIC, // After a gathering write if at least `forceInterval` has passed since the last `force`, and on completion
+    ON_COMPLETE // Only once everything has been written
+  }
+
+  private final static int DEFAULT_MAXBUFFERS = 64;
+  private final static long DEFAULT_MAXBYTES = 1024 * 1024;
+
+  private final FileChannel channel; // Where we write to, we start at its current position
+  private final long maxBytes; // We flush once the collected buffers hold at least this many bytes
+  private final Force force;
+  private final long forceIntervalNanos; // Only used with `Force.PERIODIC`
+  private final CompletableFuture<Long> written = new CompletableFuture<Long>();
+
+  // The buffers collected since the last flush, and all of the below, are only accessed from within the `when` methods
+  private final ByteBuffer[] pending;
+  private int count;
+  private long pendingBytes;
+  private long total; // The number of bytes written so far
+  private long lastForce; // When we last forced the channel, in `System.nanoTime`
+
+  public GatheringFileSubscriber(final FileChannel channel, final Executor executor) {
+    this(channel, executor, DEFAULT_MAXBUFFERS, DEFAULT_MAXBYTES, Force.ON_COMPLETE, 0L, TimeUnit.NANOSECONDS);
+  }
+
+  public GatheringFileSubscriber(final FileChannel channel, final Executor executor, final int maxBuffers, final long maxBytes,
+                                 final Force force, final long forceInterval, final TimeUnit unit) {
+    super(executor, maxBuffers, false); // We request more buffers ourselves, once a flush has freed their slots
+    if (channel == null) throw null;
+    if (force == null) throw null;
+    if (unit == null) throw null;
+    if (maxBytes < 1) throw new IllegalArgumentException("maxBytes must be positive but was " + maxBytes);
+    if (force == Force.PERIODIC && forceInterval < 0) throw new IllegalArgumentException("forceInterval must not be negative but was " + forceInterval);
+    this.channel = channel;
+    this.maxBytes = maxBytes;
+    this.force = force;
+    this.forceIntervalNanos = unit.toNanos(forceInterval);
+    this.pending = new ByteBuffer[maxBuffers];
+    this.lastForce = System.nanoTime();
+  }
+
+  // Completes with the number of bytes written once everything has been written, and forced if the policy asks for it,
+  // or exceptionally if either the stream or writing failed
+  public CompletableFuture<Long> written() {
+    return written;
+  }
+
+  @Override protected boolean whenNext(final ByteBuffer element) {
+    pending[count++] = element;
+    pendingBytes += element.remaining();
+    if (count == pending.length || pendingBytes >= maxBytes) {
+      try {
+        flush();
+      } catch (final IOException e) {
+        written.completeExceptionally(e);
+        return false; // There's no point in receiving anything we can't write, so we cancel our `Subscription`
+      }
+    }
+    return true;
+  }
+
+  @Override protected void whenComplete() {
+    try {
+      flush();
+      if (force != Force.NEVER)
+        channel.force(false);
+      written.complete(total);
+    } catch (final Throwable t) { // As per rule 2.13, we must not throw from here, so we hand the failure to whoever waits for us
+      written.completeExceptionally(t);
+    }
+  }
+
+  @Override protected void whenError(final Throwable error) {
+    // The buffers that are still pending are not written, as the stream they belong to has failed
+    Arrays.fill(pending, 0, count, null);
+    count = 0;
+    written.completeExceptionally(error);
+  }
+
+  // Writes all pending buffers with as few gathering writes as the channel allows, and then requests as many new buffers
+  private void flush() throws IOException {
+    if (count == 0)
+      return;
+    int offset = 0;
+    while (offset < count) {
+      channel.write(pending, offset, count - offset); // A `FileChannel` in blocking mode usually writes everything at once
+      while (offset < count && !pending[offset].hasRemaining())
+        offset++;
+    }
+    total += pendingBytes;
+    if (force == Force.PER_BATCH) {
+      channel.force(false);
+    } else if (force == Force.PERIODIC) {
+      final long now = System.nanoTime();
+      if (now - lastForce >= forceIntervalNanos) {
+        channel.force(false);
+        lastForce = now;
+      }
+    }
+    final int freed = count;
+    Arrays.fill(pending, 0, count, null); // We don't want to hold on to buffers that have already been written
+    count = 0;
+    pendingBytes = 0;
+    request(freed); // As many slots as we have just freed, so the demand never exceeds our room for buffers
+  }
+}
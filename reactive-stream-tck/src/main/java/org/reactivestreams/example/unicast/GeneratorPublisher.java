@@ -0,0 +1,273 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * GeneratorPublisher is an implementation of Reactive Streams `Publisher` which adapts blocking producer code,
+ * e.g. a loop reading records from a file or from a legacy client, into a backpressured stream.
+ *
+ * For every `Subscriber` the `Generator` runs as a single task on the `Executor`, where it calls `Emitter.emit`
+ * for each element, and simply returns once it is done, or throws if it failed. `emit` parks the generator while
+ * there is no outstanding demand, and `request` wakes it up again. This is meant for an `Executor` which starts
+ * a virtual thread per task (see `VirtualThreads`), where parking, as well as the blocking reads of the generator,
+ * release the carrier thread, instead of holding on to a platform thread for the lifetime of the stream.
+ *
+ * Elements are handed over to the `Subscriber` through a small bounded single-producer/single-consumer ring:
+ * the generator never emits more than has been requested, and never more than fits into the ring, so it is never
+ * ahead of the `Subscriber` by more than `bufferSize` elements. Usually the generator signals an element itself, right
+ * after emitting it, but while another thread is signalling, e.g. an `onError` for a rule 3.9 violation, that thread takes over.
+ *
+ * NOTE: The code below uses a lot of try-catches to show the reader where exceptions can be expected, and where they are forbidden.
+ */
+public final class GeneratorPublisher<T> implements Publisher<T> {
+  private final static int DEFAULT_BUFFERSIZE = 16;
+
+  // The blocking producer code, it is invoked once per `Subscriber`
+  public interface Generator<T> {
+    // Emits the elements one by one, and returns when there are no more, or throws to signal `onError`
+    void generate(Emitter<T> emitter) throws Exception;
+  }
+
+  // This is handed to the `Generator`, and must only be used by the thread which runs it
+  public interface Emitter<T> {
+    // Hands over the next element, parking until there is demand for it. It returns `false` once the `Subscriber`
+    // has cancelled, after which the element is dropped and the generator should return.
+    boolean emit(T element) throws InterruptedException;
+
+    // Returns whether the `Subscriber` has cancelled, for generators which have more to do than emitting
+    boolean isCancelled();
+  }
+
+  private final Generator<T> generator;
+  private final Executor executor; // Every `Subscriber` occupies one task on it, from `subscribe` until the `Generator` returns
+  private final int bufferSize; // The largest number of elements the generator may be ahead of the `Subscriber`
+  private final int capacity; // The size of each `Subscriber`'s ring, `bufferSize` rounded up to a power of two
+
+  public GeneratorPublisher(final Generator<T> generator, final Executor executor) {
+    this(generator, DEFAULT_BUFFERSIZE, executor);
+  }
+
+  public GeneratorPublisher(final Generator<T> generator, final int bufferSize, final Executor executor) {
+    if (generator == null) throw null;
+    if (executor == null) throw null;
+    if (bufferSize < 1) throw new IllegalArgumentException("bufferSize must be greater than zero!");
+    this.generator = generator;
+    this.executor = executor;
+    this.bufferSize = bufferSize;
+    this.capacity = Rings.capacity("bufferSize", bufferSize);
+  }
+
+  @Override
+  public void subscribe(final Subscriber<? super T> s) {
+    // As per rule 1.09, we need to throw a `java.lang.NullPointerException` if the `Subscriber` is `null`
+    if (s == null) throw null;
+    final GeneratorSubscription sub = new GeneratorSubscription(s);
+    try {
+      executor.execute(sub);
+    } catch(final Throwable t) { // If we can't run on the `Executor`, there is no generator, and we need to fail gracefully
+      s.onSubscribe(new Subscription() { // We need to make sure we signal onSubscribe before onError, obeying rule 1.9
+        @Override public void cancel() {}
+        @Override public void request(long n) {}
+      });
+      s.onError(new IllegalStateException("Publisher terminated due to unavailable Executor.", t));
+    }
+  }
+
+  // This is both the `Subscription` handed to the `Subscriber`, and the `Emitter` handed to the `Generator`,
+  // and it is the task which runs the `Generator` on the `Executor`
+  final class GeneratorSubscription implements Subscription, Emitter<T>, Runnable {
+    final Subscriber<? super T> subscriber;
+
+    // The ring the generator hands the elements over in, its capacity is `bufferSize` rounded up to a power of two,
+    // so we can use a mask instead of a modulo to find the slot of an element, but it never holds more than `bufferSize`
+    private final AtomicReferenceArray<T> queue;
+    private final int mask;
+    private long producerIndex; // Only accessed by the generator
+    private long consumerIndex; // Only accessed from within `drain`
+    private final AtomicLong consumed = new AtomicLong(); // `consumerIndex` as seen by the generator, to find out if there is room
+
+    // The total number of elements requested so far, which "effectively unbounded" demand saturates at `Long.MAX_VALUE` as per rule 3.17.
+    // The generator compares it with `producerIndex`, so it never gets ahead of the demand.
+    private final AtomicLong requested = new AtomicLong();
+
+    private volatile boolean cancelled; // Set by `cancel`, and once a terminal signal has been sent, as per rule 1.6
+    private volatile boolean done; // Set once the generator has returned, or thrown
+    private Throwable error; // What the generator threw, the volatile write to `done` makes this visible to `drain`
+
+    // Holds onto the IllegalArgumentException (containing the offending stacktrace)
+    // indicating there was a non-positive `request` call from the `Subscriber`, see rule 3.9
+    private volatile Throwable invalidRequest;
+
+    private volatile Thread generatorThread; // The thread running the generator, once it has started
+    private volatile boolean parked; // Set while the generator waits for demand or room, so only then it needs to be woken up
+
+    // We are using this `AtomicInteger` to make sure that only one thread at a time signals the `Subscriber`,
+    // which obeys rule 1.3, it counts the calls to `drain` which have happened since the draining thread last checked
+    private final AtomicInteger wip = new AtomicInteger();
+
+    GeneratorSubscription(final Subscriber<? super T> subscriber) {
+      this.subscriber = subscriber;
+      this.queue = new AtomicReferenceArray<T>(capacity);
+      this.mask = capacity - 1;
+    }
+
+    // This runs the generator, it signals `onSubscribe` first, so that this happens before anything else, obeying rule 1.9
+    @Override public void run() {
+      generatorThread = Thread.currentThread();
+      try {
+        subscriber.onSubscribe(this);
+      } catch(final Throwable t) { // Due diligence to obey 2.13
+        cancelled = true;
+        (new IllegalStateException(subscriber + " violated the Reactive Streams rule 2.13 by throwing an exception from onSubscribe.", t)).printStackTrace(System.err);
+        return;
+      }
+      try {
+        if (!cancelled)
+          generator.generate(this);
+      } catch(final Throwable t) {
+        error = t; // Whatever the generator throws is signalled as `onError` as per rule 1.4, once the elements emitted before have been delivered
+      }
+      done = true;
+      drain();
+    }
+
+    @Override public boolean emit(final T element) throws InterruptedException {
+      if (element == null) throw null; // We are not allowed to signal `null` elements, as per rule 2.13
+      for (;;) {
+        if (cancelled)
+          return false;
+        if (hasRoom()) // The generator may only go ahead if there is demand, and room for the element
+          break;
+        parked = true;
+        if (!cancelled && !hasRoom()) // Checking again after announcing that we are parking, so we don't miss a wake up
+          LockSupport.park(this);
+        parked = false;
+        if (Thread.interrupted())
+          throw new InterruptedException();
+      }
+      queue.lazySet((int) producerIndex & mask, element); // The `getAndIncrement` in `drain` publishes this to the consumer
+      producerIndex++;
+      drain();
+      return !cancelled;
+    }
+
+    private boolean hasRoom() {
+      final long r = requested.get();
+      return (r == Long.MAX_VALUE || producerIndex != r) && producerIndex - consumed.get() != bufferSize;
+    }
+
+    @Override public boolean isCancelled() {
+      return cancelled;
+    }
+
+    // Wakes up the generator if it is waiting for demand or room, the volatile accesses of `parked` and the state it is
+    // waiting for make sure that either it sees the change before parking, or that we see that it is parking
+    private void wakeUp() {
+      if (parked)
+        LockSupport.unpark(generatorThread);
+    }
+
+    // Signals whatever is in the ring, followed by the terminal signal once the generator is done, from one thread at a time
+    private void drain() {
+      if (wip.getAndIncrement() != 0)
+        return; // Someone else is draining, and will do what we would have done, obeying rule 1.3
+      int missed = 1;
+      for (;;) {
+        for (;;) {
+          if (cancelled) { // This makes sure that rule 1.8 is upheld, we let go of the elements we will not deliver anymore
+            // An element the generator emits while we are at it is cleared by the `drain` which follows its `emit`
+            while (queue.get((int) consumerIndex & mask) != null)
+              queue.lazySet((int) consumerIndex++ & mask, null);
+            break;
+          }
+          final Throwable t = invalidRequest;
+          if (t != null) { // As per rule 3.9, a non-positive request must be signalled as `onError`
+            terminateDueTo(t);
+            continue;
+          }
+          final boolean d = done; // We have to read this before polling, otherwise we could miss the last elements
+          final int offset = (int) consumerIndex & mask;
+          final T element = queue.get(offset);
+          if (element != null) {
+            queue.lazySet(offset, null);
+            consumed.set(++consumerIndex); // A volatile write, which `wakeUp` needs to not miss a parking generator
+            wakeUp(); // There is room for another element now
+            try {
+              subscriber.onNext(element); // The generator only emits what has been requested, so this obeys rule 1.1
+            } catch(final Throwable ex) { // As per rule 2.13, `onNext` is not allowed to throw, so we can only cancel and log here
+              cancel();
+              (new IllegalStateException(subscriber + " violated the Reactive Streams rule 2.13 by throwing an exception from onNext.", ex)).printStackTrace(System.err);
+            }
+          } else if (d) { // All elements have been delivered, so now it is the turn of the terminal signal
+            final Throwable e = error;
+            if (e != null) {
+              terminateDueTo(e);
+            } else {
+              cancelled = true; // Rule 1.6 says we need to consider the `Subscription` cancelled when `onComplete` is signalled
+              try {
+                subscriber.onComplete();
+              } catch(final Throwable ex) { // As per rule 2.13, `onComplete` is not allowed to throw exceptions, so we do what we can, and log this.
+                (new IllegalStateException(subscriber + " violated the Reactive Streams rule 2.13 by throwing an exception from onComplete.", ex)).printStackTrace(System.err);
+              }
+            }
+          } else {
+            break;
+          }
+        }
+        missed = wip.addAndGet(-missed);
+        if (missed == 0)
+          break;
+      }
+    }
+
+    // This is a helper method to ensure that we always `cancel` when we signal `onError` as per rule 1.6
+    private void terminateDueTo(final Throwable t) {
+      cancel(); // The generator is told to stop, if it is still running
+      try {
+        subscriber.onError(t); // Then we signal the error downstream, to the `Subscriber`
+      } catch(final Throwable t2) { // If `onError` throws an exception, this is a spec violation according to rule 2.13, and all we can do is to log it.
+        (new IllegalStateException(subscriber + " violated the Reactive Streams rule 2.13 by throwing an exception from onError.", t2)).printStackTrace(System.err);
+      }
+    }
+
+    // Our implementation of `Subscription.request` registers inbound demand from our `Subscriber` and validates it against rule 3.9 and rule 3.17
+    @Override public void request(final long n) {
+      if (n < 1) {
+        invalidRequest = new IllegalArgumentException(subscriber + " violated the Reactive Streams rule 3.9 by requesting a non-positive number of elements.");
+        drain(); // The `onError` needs to be signalled from within `drain`, so that it is not concurrent with `onNext`
+        return;
+      }
+      for (;;) {
+        final long current = requested.get();
+        if (current == Long.MAX_VALUE) // Demand is already "effectively unbounded", so there is nothing to add
+          return;
+        long update = current + n;
+        if (update < 1) // As governed by rule 3.17, when demand overflows `Long.MAX_VALUE` we treat the signalled demand as "effectively unbounded"
+          update = Long.MAX_VALUE;
+        if (requested.compareAndSet(current, update)) {
+          wakeUp(); // The elements themselves are signalled by `emit`, or by `drain` if this `request` comes in while it is running
+          return;
+        }
+      }
+    }
+
+    // Our implementation of `Subscription.cancel` stops the generator at its next `emit`, and lets `drain` drop what it has emitted, as per rule 3.5 and 3.7
+    @Override public void cancel() {
+      cancelled = true;
+      wakeUp(); // A parked generator needs to find out that it can stop
+      drain();
+    }
+  }
+}
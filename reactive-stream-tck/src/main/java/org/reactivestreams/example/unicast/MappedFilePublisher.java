@@ -0,0 +1,328 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MappedFilePublisher is an implementation of Reactive Streams `Publisher`
+ * which executes asynchronously, using a provided `Executor` and produces the contents
+ * of a file as `ByteBuffer`s in a "unicast" configuration to its `Subscribers`.
+ *
+ * The file is mapped into memory with `FileChannel.map`, one window at a time, and every element is a read-only
+ * slice of `chunkSize` bytes of the current window (the last one may be shorter), so the bytes are never copied.
+ * A window is only mapped once there is demand for its first chunk, and the previous one is let go of at the same time.
+ * Since the slices we have emitted still point into it, a window is not unmapped explicitly, but once the `Subscriber`
+ * is done with them, by the garbage collector.
+ *
+ * NOTE: The code below uses a lot of try-catches to show the reader where exceptions can be expected, and where they are forbidden.
+ */
+public class MappedFilePublisher implements Publisher<ByteBuffer> {
+  private final static int DEFAULT_CHUNKSIZE = 64 * 1024;
+  private final static long DEFAULT_WINDOWSIZE = 64L * 1024 * 1024;
+  private final static int DEFAULT_BATCHSIZE = 1024;
+
+  private final Path file; // This is our data source, each `Subscriber` opens it anew and reads it from the start
+  private final int chunkSize; // The size of the slices we emit, in bytes
+  private final long windowSize; // How much of the file we map at a time, in bytes, always a multiple of `chunkSize`
+  private final Executor executor; // This is our thread pool, which will make sure that our Publisher runs asynchronously to its Subscribers
+  private final int batchSize; // In general, if one uses an `Executor`, one should be nice and not hog a thread for too long, this is the cap for that, in elements
+
+  public MappedFilePublisher(final Path file, final Executor executor) {
+    this(file, DEFAULT_CHUNKSIZE, DEFAULT_WINDOWSIZE, executor);
+  }
+
+  public MappedFilePublisher(final Path file, final int chunkSize, final long windowSize, final Executor executor) {
+    this(file, chunkSize, windowSize, DEFAULT_BATCHSIZE, executor);
+  }
+
+  public MappedFilePublisher(final Path file, final int chunkSize, final long windowSize, final int batchSize, final Executor executor) {
+    if (file == null) throw null;
+    if (executor == null) throw null;
+    if (chunkSize < 1) throw new IllegalArgumentException("chunkSize must be greater than zero!");
+    if (windowSize < chunkSize) throw new IllegalArgumentException("windowSize must not be smaller than chunkSize!");
+    if (windowSize > Integer.MAX_VALUE) throw new IllegalArgumentException("windowSize must not exceed Integer.MAX_VALUE, as FileChannel.map can't map more at a time!");
+    if (batchSize < 1) throw new IllegalArgumentException("batchSize must be greater than zero!");
+    this.file = file;
+    this.chunkSize = chunkSize;
+    this.windowSize = windowSize / chunkSize * chunkSize; // So that no chunk straddles two windows
+    this.executor = executor;
+    this.batchSize = batchSize;
+  }
+
+  @Override
+  public void subscribe(final Subscriber<? super ByteBuffer> s) {
+    // As per rule 1.11, we have decided to support multiple subscribers in a unicast configuration
+    // for this `Publisher` implementation.
+    // As per 2.13, this method must return normally (i.e. not throw)
+    new SubscriptionImpl(s).init();
+  }
+
+  // This is our implementation of the Reactive Streams `Subscription`,
+  // which represents the association between a `Publisher` and a `Subscriber`.
+  final class SubscriptionImpl implements Subscription, Runnable {
+    final Subscriber<? super ByteBuffer> subscriber; // We need a reference to the `Subscriber` so we can talk to it
+    private volatile boolean cancelled = false; // This flag will track whether this `Subscription` is to be considered cancelled or not
+    private boolean subscribed = false; // This flag tracks whether `doSubscribe` has run, it is only accessed from within `run`
+    private FileChannel channel; // The open file, only accessed from within `run`, and closed as soon as we are done with it
+    private long size; // The size of the file when we opened it, we don't follow it if it grows
+    private long position; // The offset in the file of the next chunk to emit
+    private MappedByteBuffer window; // The currently mapped part of the file, `null` until there is demand for it
+    private long windowStart; // The offset in the file where `window` starts
+    private long windowEnd; // The offset in the file right after `window`
+
+    // Here we track the current demand, i.e. what has been requested but not yet delivered.
+    // `request` adds to it from any thread, and `doSend` subtracts what it has delivered.
+    private final AtomicLong demand = new AtomicLong();
+
+    // Holds onto the IllegalArgumentException (containing the offending stacktrace)
+    // indicating there was a non-positive `request` call from the `Subscriber`, see rule 3.9
+    private volatile Throwable invalidRequest;
+
+    // We are using this `AtomicInteger` to make sure that this `Subscription` doesn't run concurrently with itself,
+    // which would violate rule 1.3 among others (no concurrent notifications).
+    // It counts the work that has been signalled, and only its 0 to 1 transition schedules `run` on the `Executor`.
+    private final AtomicInteger wip = new AtomicInteger();
+
+    SubscriptionImpl(final Subscriber<? super ByteBuffer> subscriber) {
+      // As per rule 1.09, we need to throw a `java.lang.NullPointerException` if the `Subscriber` is `null`
+      if (subscriber == null) throw null;
+      this.subscriber = subscriber;
+    }
+
+    // This handles cancellation requests, and is idempotent, thread-safe and not synchronously performing heavy computations as specified in rule 3.5
+    private void doCancel() {
+      cancelled = true;
+    }
+
+    // Instead of executing `subscriber.onSubscribe` synchronously from within `Publisher.subscribe`
+    // we execute it asynchronously, this is to avoid opening the file on the calling thread.
+    // It also makes it easier to follow rule 1.9
+    private void doSubscribe() {
+      try {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        size = channel.size();
+      } catch(final Throwable t) {
+        subscriber.onSubscribe(new Subscription() { // We need to make sure we signal onSubscribe before onError, obeying rule 1.9
+          @Override public void cancel() {}
+          @Override public void request(long n) {}
+        });
+        terminateDueTo(t); // Here we send onError, obeying rule 1.09
+        return;
+      }
+
+      // Deal with setting up the subscription with the subscriber
+      try {
+        subscriber.onSubscribe(this);
+      } catch(final Throwable t) { // Due diligence to obey 2.13
+        terminateDueTo(new IllegalStateException(subscriber + " violated the Reactive Streams rule 2.13 by throwing an exception from onSubscribe.", t));
+      }
+
+      // If the file is empty, we're already done, so lets do the right thing and
+      // not wait for demand to deliver `onComplete` as per rule 1.2 and 1.3
+      if (!cancelled && size == 0L) {
+        try {
+          doComplete();
+        } catch(final Throwable t) { // As per rule 2.13, `onComplete` is not allowed to throw exceptions, so we do what we can, and log this.
+          (new IllegalStateException(subscriber + " violated the Reactive Streams rule 2.13 by throwing an exception from onComplete.", t)).printStackTrace(System.err);
+        }
+      }
+    }
+
+    // This is our behavior for producing elements downstream, it returns `true` if it stopped
+    // because the batch was used up while there still is outstanding demand to satisfy.
+    private boolean doSend() {
+      try {
+        // In order to play nice with the `Executor` we will only send at-most `batchSize` before
+        // rescheduing ourselves and relinquishing the current thread.
+        int leftInBatch = batchSize;
+        long requested = demand.get();
+        long emitted = 0;
+        for (;;) {
+          while (emitted != requested) { // This makes sure that rule 1.1 is upheld (sending more than was demanded)
+            if (cancelled) // This makes sure that rule 1.8 is upheld, i.e. we need to stop signalling "eventually"
+              return false;
+            if (leftInBatch == 0) { // This makes sure that we only send `batchSize` number of elements in one go (so we can yield to other Runnables)
+              if (requested != Long.MAX_VALUE) // As per rule 3.17, "effectively unbounded" demand is never decremented
+                demand.addAndGet(-emitted);
+              return true;
+            }
+            final ByteBuffer next;
+            try {
+              next = nextChunk();
+            } catch (final Throwable t) {
+              terminateDueTo(t); // If mapping the file fails, we need to treat the stream as errored as per rule 1.4
+              return false;
+            }
+            subscriber.onNext(next); // Then we signal the next element downstream to the `Subscriber`
+            emitted++;
+            leftInBatch--;
+            if (position == size) { // If we are at End-of-Stream
+              doComplete();
+              return false;
+            }
+          }
+          // We have delivered everything that was demanded when we started, so we atomically subtract that,
+          // if more was requested in the meantime we just carry on, otherwise the next `request` will schedule us.
+          requested = demand.addAndGet(-emitted);
+          if (requested == 0L)
+            return false;
+          emitted = 0;
+        }
+      } catch(final Throwable t) {
+        // We can only get here if `onNext` or `onComplete` threw, and they are not allowed to according to 2.13, so we can only cancel and log here.
+        doCancel(); // Make sure that we are cancelled, since we cannot do anything else since the `Subscriber` is faulty.
+        (new IllegalStateException(subscriber + " violated the Reactive Streams rule 2.13 by throwing an exception from onNext or onComplete.", t)).printStackTrace(System.err);
+        return false;
+      }
+    }
+
+    // This slices the next chunk out of the current window, mapping the next window first if the current one is used up
+    private ByteBuffer nextChunk() throws IOException {
+      if (window == null || position == windowEnd) {
+        window = null; // We let go of the previous window before mapping the next one, so it can be unmapped as soon as possible
+        final long length = Math.min(windowSize, size - position);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        windowStart = position;
+        windowEnd = position + length;
+      }
+      final int offset = (int)(position - windowStart);
+      final int length = (int)Math.min(chunkSize, windowEnd - position);
+      final ByteBuffer chunk = window.duplicate();
+      // We go through `Buffer`, since the covariant overrides of `position` and `limit` only exist on `ByteBuffer` since Java 9
+      ((Buffer)chunk).position(offset);
+      ((Buffer)chunk).limit(offset + length);
+      position += length;
+      return chunk.slice(); // A slice of a read-only mapping is read-only as well
+    }
+
+    // This is a helper method to ensure that we always `cancel` when we signal `onComplete` as per rule 1.6
+    private void doComplete() {
+      doCancel(); // We need to consider this `Subscription` as cancelled as per rule 1.6
+      close();
+      subscriber.onComplete(); // Then we signal `onComplete` as per rule 1.2 and 1.5
+    }
+
+    // This is a helper method to ensure that we always `cancel` when we signal `onError` as per rule 1.6
+    private void terminateDueTo(final Throwable t) {
+      cancelled = true; // When we signal onError, the subscription must be considered as cancelled, as per rule 1.6
+      close();
+      try {
+        subscriber.onError(t); // Then we signal the error downstream, to the `Subscriber`
+      } catch(final Throwable t2) { // If `onError` throws an exception, this is a spec violation according to rule 1.9, and all we can do is to log it.
+        (new IllegalStateException(subscriber + " violated the Reactive Streams rule 2.13 by throwing an exception from onError.", t2)).printStackTrace(System.err);
+      }
+    }
+
+    // Closes the file, the mappings stay valid until they are garbage collected, so the slices we have emitted can still be read
+    private void close() {
+      window = null;
+      if (channel != null) {
+        try {
+          channel.close();
+        } catch (final IOException e) {
+          // There is nothing left to read, so there is nothing to be done about it
+        }
+        channel = null;
+      }
+    }
+
+    // This is the main "event loop" if you so will
+    @Override public final void run() {
+      int missed = 1;
+      for (;;) { // The read-modify-write on `wip` at the end of each round establishes a happens-before relationship with the next run
+        if (!cancelled) { // to make sure that we follow rule 1.8, 3.6 and 3.7
+          if (!subscribed) {
+            subscribed = true;
+            doSubscribe();
+          } else {
+            final Throwable t = invalidRequest;
+            if (t != null)
+              terminateDueTo(t); // As per rule 3.9, a non-positive request must be signalled as `onError`
+            else if (demand.get() > 0L && doSend()) {
+              // The batch is used up but there is more demand, so we keep `wip` as it is and resubmit ourselves,
+              // which relinquishes the current thread and lets other `Runnable`s on the `Executor` make progress
+              scheduleOnExecutor();
+              return;
+            }
+          }
+        }
+        if (cancelled)
+          close(); // A cancelled `Subscription` closes the file here, so that it doesn't race with `doSend`
+        missed = wip.addAndGet(-missed);
+        if (missed == 0) // If no new work was signalled while we were running we are done for now
+          break;
+      }
+    }
+
+    // This method makes sure that this `Subscription` is only running on one Thread at a time,
+    // this is important to make sure that we follow rule 1.3
+    private final void tryScheduleToExecute() {
+      if (wip.getAndIncrement() == 0)
+        scheduleOnExecutor();
+    }
+
+    private final void scheduleOnExecutor() {
+      try {
+        executor.execute(this);
+      } catch(Throwable t) { // If we can't run on the `Executor`, we need to fail gracefully
+        if (!cancelled) {
+          doCancel(); // First of all, this failure is not recoverable, so we need to follow rule 1.4 and 1.6
+          terminateDueTo(new IllegalStateException("Publisher terminated due to unavailable Executor.", t));
+        }
+        // We deliberately leave `wip` non-zero, this `Subscription` is cancelled by now and must never be scheduled again
+      }
+    }
+
+    // Our implementation of `Subscription.request` registers inbound demand from our `Subscriber` and validates it against rule 3.9 and rule 3.17
+    @Override public void request(final long n) {
+      if (n < 1) {
+        invalidRequest = new IllegalArgumentException(subscriber + " violated the Reactive Streams rule 3.9 by requesting a non-positive number of elements.");
+        tryScheduleToExecute(); // The `onError` needs to be signalled from within `run`, so that it is not concurrent with `onNext`
+        return;
+      }
+      for (;;) {
+        final long current = demand.get();
+        if (current == Long.MAX_VALUE) // Demand is already "effectively unbounded", so there is nothing to add
+          return;
+        long update = current + n;
+        if (update < 1) // As governed by rule 3.17, when demand overflows `Long.MAX_VALUE` we treat the signalled demand as "effectively unbounded"
+          update = Long.MAX_VALUE;
+        if (demand.compareAndSet(current, update)) {
+          // If there was outstanding demand already, then `doSend` is either running or about to be run and will pick the
+          // new demand up when it subtracts what it has delivered, so only the transition from zero needs to schedule us
+          if (current == 0L)
+            tryScheduleToExecute();
+          return;
+        }
+      }
+    }
+    // Our implementation of `Subscription.cancel` marks this `Subscription` as cancelled, and has `run` close the file as per rule 3.5 and 3.7
+    @Override public void cancel() {
+      doCancel();
+      tryScheduleToExecute();
+    }
+    // The reason for the `init` method is that we want to ensure the `SubscriptionImpl`
+    // is completely constructed before it is exposed to the thread pool, therefor this
+    // method is only intended to be invoked once, and immediately after the constructor has
+    // finished.
+    void init() {
+      tryScheduleToExecute();
+    }
+  };
+}
@@ -0,0 +1,574 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * ParallelPublisher splits a source into a number of "rails", each of which is an independent stream with its own
+ * `Subscriber`, its own demand and its own drain loop on a `ForkJoinPool`. Work attached to the rails, like `map`,
+ * therefore runs on as many threads as there are rails, while every rail stays backpressured on its own.
+ *
+ * The rails are brought back together into a single `Publisher` with `merge`, which emits the elements in whatever
+ * order the rails produce them, or `mergeOrdered`, which emits them in the order of the source.
+ *
+ * The source is a `Spliterator` which is split into contiguous parts with `trySplit`, so that rail `i` holds elements
+ * which all come before those of rail `i + 1`. `mergeOrdered` relies on that: it emits the rails one after the other,
+ * while the rails further along keep working ahead up to their prefetch.
+ *
+ * NOTE: Unlike the other publishers in this package, this is not a `Publisher` itself, as it has many `Subscriber`s at once.
+ */
+public abstract class ParallelPublisher<T> {
+
+  /**
+   * @return the number of rails, which is the number of `Subscriber`s `subscribe` expects
+   */
+  public abstract int parallelism();
+
+  /**
+   * Subscribes one `Subscriber` to each rail, every one of them receives `onSubscribe` and is signalled independently.
+   * As per rule 1.9, if the number of `Subscriber`s is not `parallelism()`, each of them receives `onSubscribe` followed by `onError`.
+   * @param subscribers the `Subscriber`s, one per rail
+   */
+  public abstract void subscribe(Subscriber<? super T>[] subscribers);
+
+  /**
+   * Splits the `Spliterator`s of `source` into `parallelism` rails, which run on `pool`.
+   * Each subscription gets a fresh `Spliterator`, which is split on the thread that subscribes. If it can't be split
+   * into enough parts, the remaining rails are empty.
+   */
+  public static <T> ParallelPublisher<T> from(final Supplier<? extends Spliterator<T>> source, final int parallelism, final ForkJoinPool pool) {
+    return new SpliteratorRails<T>(source, parallelism, pool);
+  }
+
+  /**
+   * Splits the range of `Integer`s from `from` (inclusive) to `to` (exclusive) into `parallelism` rails, which run on `pool`.
+   */
+  public static ParallelPublisher<Integer> range(final int from, final int to, final int parallelism, final ForkJoinPool pool) {
+    return from(new Supplier<Spliterator<Integer>>() {
+      @Override public Spliterator<Integer> get() {
+        // A `Spliterator.OfInt` is a `Spliterator<Integer>` which splits, unlike that of a sequential `boxed()` stream
+        return IntStream.range(from, to).spliterator();
+      }
+    }, parallelism, pool);
+  }
+
+  /**
+   * Applies `mapper` to every element on the thread of its rail, so the work scales with the number of rails.
+   * If `mapper` throws, that rail is cancelled and signals the exception.
+   */
+  public final <R> ParallelPublisher<R> map(final Function<? super T, ? extends R> mapper) {
+    if (mapper == null) throw null;
+    return new MapRails<T, R>(this, mapper);
+  }
+
+  /**
+   * @param prefetch the number of elements each rail may produce ahead of the `Subscriber`
+   * @return a `Publisher` which emits the elements of all rails in the order they arrive
+   */
+  public final Publisher<T> merge(final int prefetch) {
+    return new MergePublisher<T>(this, prefetch, false);
+  }
+
+  /**
+   * @param prefetch the number of elements each rail may produce ahead of the `Subscriber`
+   * @return a `Publisher` which emits the elements in the order of the source
+   */
+  public final Publisher<T> mergeOrdered(final int prefetch) {
+    return new MergePublisher<T>(this, prefetch, true);
+  }
+
+  // Checks the number of `Subscriber`s, and if it is wrong fails all of them as per rule 1.9
+  final boolean validate(final Subscriber<?>[] subscribers) {
+    if (subscribers == null) throw null;
+    if (subscribers.length == parallelism())
+      return true;
+    final IllegalArgumentException ex = new IllegalArgumentException("Expected " + parallelism() + " subscribers but got " + subscribers.length);
+    for (final Subscriber<?> s : subscribers) {
+      s.onSubscribe(new Subscription() {
+        @Override public void request(long n) {}
+        @Override public void cancel() {}
+      });
+      s.onError(ex);
+    }
+    return false;
+  }
+
+  static final class SpliteratorRails<T> extends ParallelPublisher<T> {
+    private final Supplier<? extends Spliterator<T>> source;
+    private final int parallelism;
+    private final ForkJoinPool pool;
+
+    SpliteratorRails(final Supplier<? extends Spliterator<T>> source, final int parallelism, final ForkJoinPool pool) {
+      if (source == null) throw null;
+      if (pool == null) throw null;
+      if (parallelism < 1) throw new IllegalArgumentException("parallelism must be greater than zero!");
+      this.source = source;
+      this.parallelism = parallelism;
+      this.pool = pool;
+    }
+
+    @Override public int parallelism() {
+      return parallelism;
+    }
+
+    @Override public void subscribe(final Subscriber<? super T>[] subscribers) {
+      if (!validate(subscribers))
+        return;
+
+      final List<Spliterator<T>> parts = new ArrayList<Spliterator<T>>(parallelism);
+      try {
+        final Spliterator<T> whole = source.get();
+        parts.add(whole != null ? whole : Spliterators.<T>emptySpliterator());
+        // Always split the largest part, `trySplit` returns the prefix, which goes in front to preserve the order
+        while (parts.size() < parallelism) {
+          int largest = 0;
+          for (int i = 1; i < parts.size(); i++) {
+            if (parts.get(i).estimateSize() > parts.get(largest).estimateSize())
+              largest = i;
+          }
+          final Spliterator<T> prefix = parts.get(largest).trySplit();
+          if (prefix == null)
+            break;
+          parts.add(largest, prefix);
+        }
+      } catch (final Throwable t) {
+        // The rails run the `Supplier`, which rethrows this on each of them, so they all signal `onSubscribe` before `onError` as per rule 1.9
+        for (final Subscriber<? super T> s : subscribers) {
+          new SpliteratorPublisher<T>(new Supplier<Spliterator<T>>() {
+            @Override public Spliterator<T> get() {
+              throw new IllegalStateException("Could not split the source", t);
+            }
+          }, pool).subscribe(s);
+        }
+        return;
+      }
+
+      for (int i = 0; i < parallelism; i++) {
+        final Spliterator<T> part = i < parts.size() ? parts.get(i) : Spliterators.<T>emptySpliterator();
+        new SpliteratorPublisher<T>(new Supplier<Spliterator<T>>() {
+          @Override public Spliterator<T> get() {
+            return part; // Each of these `SpliteratorPublisher`s is subscribed exactly once
+          }
+        }, pool).subscribe(subscribers[i]);
+      }
+    }
+  }
+
+  static final class MapRails<T, R> extends ParallelPublisher<R> {
+    private final ParallelPublisher<T> parent;
+    private final Function<? super T, ? extends R> mapper;
+
+    MapRails(final ParallelPublisher<T> parent, final Function<? super T, ? extends R> mapper) {
+      this.parent = parent;
+      this.mapper = mapper;
+    }
+
+    @Override public int parallelism() {
+      return parent.parallelism();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override public void subscribe(final Subscriber<? super R>[] subscribers) {
+      if (!validate(subscribers))
+        return;
+      final Subscriber<? super T>[] mapped = new Subscriber[subscribers.length];
+      for (int i = 0; i < subscribers.length; i++) {
+        mapped[i] = new MapSubscriber<T, R>(subscribers[i], mapper);
+      }
+      parent.subscribe(mapped);
+    }
+  }
+
+  // Applies the mapper on the way through, and passes `request` and `cancel` up. As a failing mapper cancels the rail
+  // from the rail's thread, while the `Subscriber` may be calling `request` or `cancel` at the same time, all calls on
+  // the upstream `Subscription` go through `forward`, which only one thread at a time runs, obeying rule 2.7.
+  static final class MapSubscriber<T, R> implements Subscriber<T>, Subscription {
+    private final Subscriber<? super R> actual;
+    private final Function<? super T, ? extends R> mapper;
+    private volatile Subscription upstream;
+    private boolean done; // Set once we have signalled `onError` because of the mapper, after which we ignore the rail as per rule 2.4
+
+    private final AtomicLong requested = new AtomicLong(); // The demand which has not been passed up yet
+    private volatile long invalidRequest = 1; // A non-positive `request`, passed up as it is so the rail signals `onError` as per rule 3.9
+    private volatile boolean cancelled;
+    private boolean upstreamCancelled; // Only accessed by the thread in `forward`
+    private final AtomicInteger wip = new AtomicInteger(); // Counts the calls to `forward`, only its 0 to 1 transition runs it
+
+    MapSubscriber(final Subscriber<? super R> actual, final Function<? super T, ? extends R> mapper) {
+      if (actual == null) throw null; // As per rule 1.9
+      this.actual = actual;
+      this.mapper = mapper;
+    }
+
+    @Override public void onSubscribe(final Subscription s) {
+      if (s == null) throw null;
+      upstream = s;
+      actual.onSubscribe(this);
+    }
+
+    @Override public void onNext(final T element) {
+      if (element == null) throw null;
+      if (done)
+        return;
+      final R result;
+      try {
+        result = mapper.apply(element);
+        if (result == null) throw new NullPointerException("The mapper returned null"); // As per rule 2.13, elements must not be null
+      } catch (final Throwable t) {
+        done = true;
+        cancel(); // As per rule 2.6, we must not wait for the rail to stop by itself
+        actual.onError(t);
+        return;
+      }
+      actual.onNext(result);
+    }
+
+    @Override public void onError(final Throwable t) {
+      if (t == null) throw null;
+      if (!done)
+        actual.onError(t);
+    }
+
+    @Override public void onComplete() {
+      if (!done)
+        actual.onComplete();
+    }
+
+    @Override public void request(final long n) {
+      if (n < 1) {
+        invalidRequest = n;
+      } else {
+        for (;;) {
+          final long current = requested.get();
+          long update = current + n;
+          if (update < 0) // As per rule 3.17, we cap demand at "effectively unbounded"
+            update = Long.MAX_VALUE;
+          if (requested.compareAndSet(current, update))
+            break;
+        }
+      }
+      forward();
+    }
+
+    @Override public void cancel() {
+      cancelled = true;
+      forward();
+    }
+
+    // Passes the demand and the cancellation up, whichever thread gets `wip` from 0 to 1 does so for all others
+    private void forward() {
+      if (wip.getAndIncrement() != 0)
+        return;
+      int missed = 1;
+      for (;;) {
+        if (cancelled) {
+          if (!upstreamCancelled) {
+            upstreamCancelled = true;
+            upstream.cancel();
+          }
+        } else {
+          final long invalid = invalidRequest;
+          if (invalid < 1) {
+            invalidRequest = 1;
+            upstream.request(invalid);
+          }
+          final long n = requested.getAndSet(0);
+          if (n != 0)
+            upstream.request(n);
+        }
+        missed = wip.addAndGet(-missed);
+        if (missed == 0)
+          break;
+      }
+    }
+  }
+
+  static final class MergePublisher<T> implements Publisher<T> {
+    private final ParallelPublisher<T> parent;
+    private final int prefetch;
+    private final int capacity; // The size of each rail's queue, `prefetch` rounded up to a power of two
+    private final boolean ordered;
+
+    MergePublisher(final ParallelPublisher<T> parent, final int prefetch, final boolean ordered) {
+      if (prefetch < 1) throw new IllegalArgumentException("prefetch must be greater than zero!");
+      this.parent = parent;
+      this.prefetch = prefetch;
+      this.capacity = Rings.capacity("prefetch", prefetch);
+      this.ordered = ordered;
+    }
+
+    @Override public void subscribe(final Subscriber<? super T> s) {
+      if (s == null) throw null; // As per rule 1.9
+      final MergeSubscription<T> merge = new MergeSubscription<T>(s, parent.parallelism(), prefetch, capacity, ordered);
+      s.onSubscribe(merge);
+      parent.subscribe(merge.rails);
+    }
+  }
+
+  // Collects the elements of all rails and emits them to a single `Subscriber`.
+  // The rails hand their elements over through bounded single-producer single-consumer queues, and whichever
+  // thread gets `wip` from 0 to 1 drains them, so the downstream `Subscriber` is never signalled concurrently (rule 1.3).
+  // It is also only the drain which calls `request` and `cancel` on the rails' `Subscription`s, so those calls are serial (rule 2.7).
+  static final class MergeSubscription<T> implements Subscription {
+    final Subscriber<? super T> actual;
+    final Rail<T>[] rails;
+    final boolean ordered;
+
+    final AtomicLong requested = new AtomicLong();
+    final AtomicReference<Throwable> error = new AtomicReference<Throwable>(); // The first error of any rail, or a violation of rule 3.9
+    final AtomicInteger wip = new AtomicInteger();
+    volatile boolean cancelled;
+
+    // Only accessed by the draining thread
+    long emitted;
+    int index; // The rail to look at next, for `mergeOrdered` it is the rail whose elements are emitted now
+    int started; // How many rails have had their prefetch requested
+
+    @SuppressWarnings("unchecked")
+    MergeSubscription(final Subscriber<? super T> actual, final int parallelism, final int prefetch, final int capacity, final boolean ordered) {
+      this.actual = actual;
+      this.ordered = ordered;
+      this.rails = new Rail[parallelism];
+      for (int i = 0; i < parallelism; i++) {
+        rails[i] = new Rail<T>(this, prefetch, capacity);
+      }
+    }
+
+    @Override public void request(final long n) {
+      if (n < 1) {
+        error.compareAndSet(null, new IllegalArgumentException(actual + " violated the Reactive Streams rule 3.9 by requesting a non-positive number of elements."));
+      } else {
+        for (;;) {
+          final long current = requested.get();
+          long update = current + n;
+          if (update < 0) // As per rule 3.17, we cap demand at "effectively unbounded"
+            update = Long.MAX_VALUE;
+          if (requested.compareAndSet(current, update))
+            break;
+        }
+      }
+      drain();
+    }
+
+    @Override public void cancel() {
+      if (!cancelled) {
+        cancelled = true;
+        drain(); // The draining thread cancels the rails and drops their queued elements
+      }
+    }
+
+    // Requests the prefetch of every rail which has received its `Subscription` since the last time
+    void startRails() {
+      for (final Rail<T> rail : rails) {
+        if (!rail.started) {
+          final Subscription s = rail.upstream.get();
+          if (s != null && s != CANCELLED) {
+            rail.started = true;
+            started++;
+            s.request(rail.prefetch);
+          }
+        }
+      }
+    }
+
+    void cancelRails() {
+      for (final Rail<T> rail : rails) {
+        rail.cancel();
+      }
+    }
+
+    void clearRails() {
+      for (final Rail<T> rail : rails) {
+        rail.clear();
+      }
+    }
+
+    void drain() {
+      if (wip.getAndIncrement() != 0)
+        return;
+      int missed = 1;
+      final Rail<T>[] rails = this.rails;
+      final int n = rails.length;
+      for (;;) {
+        if (started != n && !cancelled && error.get() == null)
+          startRails();
+        final long r = requested.get();
+        long e = emitted;
+        for (;;) {
+          if (cancelled) {
+            cancelRails(); // Also after `onComplete`, when the rails are done anyway and `cancel` is a no-op as per rule 3.7
+            clearRails();
+            break;
+          }
+          final Throwable ex = error.get();
+          if (ex != null) { // Errors are signalled right away, without emitting what the other rails have queued up
+            cancelled = true; // As per rule 1.6
+            cancelRails();
+            clearRails();
+            actual.onError(ex);
+            break;
+          }
+          if (ordered) {
+            if (index == n) {
+              cancelled = true;
+              actual.onComplete();
+              break;
+            }
+            final Rail<T> rail = rails[index];
+            final boolean done = rail.done; // Read before checking the queue, so no element of a completed rail is missed
+            final boolean empty = rail.isEmpty();
+            if (done && empty) {
+              index++; // This rail is exhausted, the elements of the next one come next
+              continue;
+            }
+            if (empty || e == r)
+              break;
+            actual.onNext(rail.poll());
+            e++;
+          } else {
+            // One element from each rail per round, so that no rail can starve the others
+            int exhausted = 0;
+            boolean progress = false;
+            for (int i = 0; i < n && !cancelled; i++) {
+              final Rail<T> rail = rails[index];
+              final boolean done = rail.done;
+              final boolean empty = rail.isEmpty();
+              if (done && empty) {
+                exhausted++;
+              } else if (!empty && e != r) {
+                actual.onNext(rail.poll());
+                e++;
+                progress = true;
+              }
+              if (++index == n)
+                index = 0;
+            }
+            if (exhausted == n) {
+              cancelled = true;
+              actual.onComplete();
+              break;
+            }
+            if (!progress)
+              break;
+          }
+        }
+        emitted = e;
+        missed = wip.addAndGet(-missed);
+        if (missed == 0)
+          break;
+      }
+    }
+  }
+
+  // Receives the elements of one rail into a bounded queue, and replenishes its demand as the merge consumes them
+  static final class Rail<T> implements Subscriber<T> {
+    final MergeSubscription<T> parent;
+    final int prefetch;
+    final int limit; // We request more once this many elements have been consumed, rather than one at a time
+    final AtomicReference<Subscription> upstream = new AtomicReference<Subscription>();
+    final AtomicReferenceArray<T> queue; // A slot is empty while it is `null`, elements are never `null` as per rule 2.13
+    final int mask;
+    volatile boolean done;
+
+    long producerIndex; // Only accessed by the rail's thread
+    long consumerIndex; // Only accessed by the draining thread
+    int consumed; // Only accessed by the draining thread
+    boolean started; // Only accessed by the draining thread, whether the prefetch has been requested
+
+    Rail(final MergeSubscription<T> parent, final int prefetch, final int capacity) {
+      this.parent = parent;
+      this.prefetch = prefetch;
+      this.limit = prefetch - (prefetch >> 2);
+      this.queue = new AtomicReferenceArray<T>(capacity);
+      this.mask = capacity - 1;
+    }
+
+    @Override public void onSubscribe(final Subscription s) {
+      if (s == null) throw null;
+      if (!upstream.compareAndSet(null, s)) {
+        s.cancel(); // As per rule 2.5, we cancel any additional `Subscription`, or this one if the merge was cancelled before
+        return;
+      }
+      parent.drain(); // Which requests the prefetch, or cancels `s` if the merge has been cancelled in the meantime
+    }
+
+    @Override public void onNext(final T element) {
+      if (element == null) throw null;
+      final int offset = (int)producerIndex & mask;
+      if (queue.get(offset) != null) { // The queue only fills up if the rail signals more than we requested
+        // The drain cancels this rail, along with all the others, once it sees the error
+        onError(new IllegalStateException("The rail violated the Reactive Streams rule 1.1 by signalling more elements than requested."));
+        return;
+      }
+      queue.lazySet(offset, element);
+      producerIndex++;
+      parent.drain();
+    }
+
+    @Override public void onError(final Throwable t) {
+      if (t == null) throw null;
+      parent.error.compareAndSet(null, t);
+      done = true;
+      parent.drain();
+    }
+
+    @Override public void onComplete() {
+      done = true;
+      parent.drain();
+    }
+
+    boolean isEmpty() {
+      return queue.get((int)consumerIndex & mask) == null;
+    }
+
+    T poll() {
+      final int offset = (int)consumerIndex & mask;
+      final T element = queue.get(offset);
+      queue.lazySet(offset, null);
+      consumerIndex++;
+      if (++consumed == limit) {
+        consumed = 0;
+        upstream.get().request(limit);
+      }
+      return element;
+    }
+
+    void clear() {
+      while (!isEmpty()) {
+        final int offset = (int)consumerIndex & mask;
+        queue.lazySet(offset, null);
+        consumerIndex++;
+      }
+    }
+
+    void cancel() {
+      final Subscription s = upstream.getAndSet(CANCELLED);
+      if (s != null && s != CANCELLED)
+        s.cancel();
+    }
+  }
+
+  // Marks a `Rail` as cancelled, so a `Subscription` which arrives afterwards is cancelled right away
+  static final Subscription CANCELLED = new Subscription() {
+    @Override public void request(long n) {}
+    @Override public void cancel() {}
+  };
+}
@@ -0,0 +1,456 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.QueueSubscription;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * PublishOnPublisher is an asynchronous boundary: it subscribes to a source `Publisher` and signals its `Subscriber`
+ * on the given `Executor`, whichever thread the source signals on.
+ *
+ * It requests `prefetch` elements from the source up front, and replenishes them in a single `request` once 75% of
+ * them have been emitted, so the source never has more than `prefetch` elements outstanding. They are buffered in
+ * a bounded single-producer/single-consumer ring without any allocation per element, and only the signal which finds
+ * the drain idle, the transition of `wip` from 0 to 1, submits a task to the `Executor`. That task then emits everything
+ * that has arrived in the meantime, so elements move between the threads in batches rather than one task per element.
+ *
+ * All calls on the source's `Subscription`, including the first `request` and `cancel`, are made from the drain,
+ * so they are serial as rule 2.7 demands, no matter which threads the `Subscriber` calls `request` and `cancel` on.
+ *
+ * If the source's `Subscription` is a `QueueSubscription`, it negotiates fusion: with `SYNC` fusion, e.g. with a `RangePublisher`,
+ * the drain polls the source directly, without any queue or `request`, with `ASYNC` fusion it polls the source's queue instead
+ * of its own. Likewise it grants `ASYNC` fusion to its `Subscriber`, which then polls the elements itself when the drain tells it
+ * that there are some, so there is no `onNext` per element either.
+ *
+ * NOTE: The code below uses a lot of try-catches to show the reader where exceptions can be expected, and where they are forbidden.
+ */
+public final class PublishOnPublisher<T> implements Publisher<T> {
+  private final static int DEFAULT_PREFETCH = 256;
+
+  private final Publisher<? extends T> source;
+  private final Executor executor; // This is where the `Subscriber` is signalled
+  private final int prefetch; // How many elements we request from the source up front
+  private final int capacity; // The size of each `Subscriber`'s ring, `prefetch` rounded up to a power of two
+
+  public PublishOnPublisher(final Publisher<? extends T> source, final Executor executor) {
+    this(source, DEFAULT_PREFETCH, executor);
+  }
+
+  public PublishOnPublisher(final Publisher<? extends T> source, final int prefetch, final Executor executor) {
+    if (source == null) throw null;
+    if (executor == null) throw null;
+    if (prefetch < 1) throw new IllegalArgumentException("prefetch must be positive but was " + prefetch);
+    this.source = source;
+    this.executor = executor;
+    this.prefetch = prefetch;
+    this.capacity = Rings.capacity("prefetch", prefetch);
+  }
+
+  @Override
+  public void subscribe(final Subscriber<? super T> s) {
+    // As per rule 1.09, we need to throw a `java.lang.NullPointerException` if the `Subscriber` is `null`
+    if (s == null) throw null;
+    source.subscribe(new PublishOnSubscriber(s));
+  }
+
+  // This is the `Subscriber` of the source, as well as the `Subscription` of our `Subscriber`, and the drain task
+  final class PublishOnSubscriber implements Subscriber<T>, QueueSubscription<T>, Runnable {
+    final Subscriber<? super T> subscriber;
+    private final int limit; // After how many emitted elements we replenish the prefetch window
+
+    private Subscription upstream; // Written in `onSubscribe`, before the first drain is scheduled, and only used by the drain
+    private boolean started; // Whether the drain has requested the prefetch window yet
+    private int consumed; // How many elements we have emitted since we last called `request`, only accessed by the drain
+    private long emitted; // The total number of elements emitted, only accessed by the drain
+    private boolean done; // Set once the drain has signalled a terminal signal, or cancelled the source
+
+    // If the source has granted fusion, this is its `Subscription`, which we poll instead of our own queue. Both are written
+    // in `onSubscribe`, before the first drain is scheduled
+    private QueueSubscription<T> fusedSource;
+    private int sourceMode = NONE;
+
+    private boolean outputFused; // Set if our `Subscriber` has requested `ASYNC` fusion, from within `onSubscribe`
+    // How many elements our fused `Subscriber` has polled since the drain last replenished the prefetch window.
+    // `poll` only counts them, it is the drain which calls `request`, so that it is not concurrent with `cancel`
+    private final AtomicInteger polled = new AtomicInteger();
+
+    // This ring buffer holds the elements the source sends until the drain emits them, `onNext` is its only producer
+    // and the drain its only consumer, and an empty slot is `null`. There can never be more than `prefetch` elements
+    // outstanding, rounded up to a power of two so we can use a mask instead of a modulo to find the slot of an element
+    private final AtomicReferenceArray<T> queue;
+    private final int mask;
+    private long producerIndex; // Only accessed from `onNext`
+    private long consumerIndex; // Only accessed by the drain
+
+    // The total number of elements requested by our `Subscriber`, which "effectively unbounded" demand saturates at `Long.MAX_VALUE` as per rule 3.17
+    private final AtomicLong requested = new AtomicLong();
+
+    // The terminal signals are kept outside of the queue, as there can only be one of them and it comes after all elements
+    private volatile boolean terminated;
+    private Throwable error; // `null` if the source terminated via `onComplete`, the `getAndIncrement` of `wip` makes it visible to the drain
+
+    private volatile boolean cancelled; // Set by `cancel`, the drain then cancels the source
+    private volatile Throwable invalidRequest; // Set by a non-positive `request`, which the drain signals as per rule 3.9
+
+    // We are using this `AtomicInteger` to make sure that the drain doesn't run concurrently with itself, obeying rule 1.3.
+    // It counts the signals which have arrived since the drain last checked for them, and only its 0 to 1 transition schedules it.
+    private final AtomicInteger wip = new AtomicInteger();
+
+    PublishOnSubscriber(final Subscriber<? super T> subscriber) {
+      this.subscriber = subscriber;
+      this.limit = prefetch - (prefetch >> 2);
+      this.queue = new AtomicReferenceArray<T>(capacity);
+      this.mask = capacity - 1;
+    }
+
+    @Override public void onSubscribe(final Subscription s) {
+      // As per rule 2.13, we need to throw a `java.lang.NullPointerException` if the `Subscription` is `null`
+      if (s == null) throw null;
+      if (upstream != null) { // If someone has made a mistake and added this Subscriber multiple times, let's handle it gracefully
+        s.cancel(); // Cancel the additional subscription to follow rule 2.5
+        return;
+      }
+      upstream = s;
+      // We hold `wip` while signalling `onSubscribe`, so that a `request` from within it can't start the drain,
+      // which would signal `onNext` before `onSubscribe` has returned, violating rule 1.3
+      wip.getAndIncrement();
+      try {
+        subscriber.onSubscribe(this);
+      } catch(final Throwable t) { // Due diligence to obey 2.13
+        cancelled = true;
+        (new IllegalStateException(subscriber + " violated the Reactive Streams rule 2.13 by throwing an exception from onSubscribe.", t)).printStackTrace(System.err);
+      }
+      if (!cancelled && s instanceof QueueSubscription) {
+        @SuppressWarnings("unchecked")
+        final QueueSubscription<T> qs = (QueueSubscription<T>) s;
+        // When our `Subscriber` polls us, we can't tell it that a `SYNC` source has ended, as `null` only means "empty" in `ASYNC` mode
+        final int mode = qs.requestFusion(outputFused ? ASYNC : ANY);
+        if (mode != NONE) {
+          fusedSource = qs;
+          sourceMode = mode;
+        }
+      }
+      scheduleOnExecutor(); // The prefetch window is requested by the drain
+    }
+
+    @Override public void onNext(final T element) {
+      if (sourceMode == ASYNC) { // The element is in the source's queue, this only tells us that there is something to poll
+        tryScheduleToExecute();
+        return;
+      }
+      // As per rule 2.13, we need to throw a `java.lang.NullPointerException` if the `element` is `null`
+      if (element == null) throw null;
+
+      // Rule 1.3 guarantees that `onNext` is never called concurrently, so we are the only producer of the queue
+      final int offset = (int) producerIndex & mask;
+      if (queue.get(offset) != null) {
+        // The slot hasn't been consumed yet, which means the source has sent more than we requested
+        error = new IllegalStateException("Publisher violated the Reactive Streams rule 1.1 by signalling more elements than requested.");
+        terminated = true;
+      } else {
+        queue.lazySet(offset, element); // The `getAndIncrement` in `tryScheduleToExecute` publishes this to the drain
+        producerIndex++;
+      }
+      tryScheduleToExecute();
+    }
+
+    @Override public void onError(final Throwable t) {
+      // As per rule 2.13, we need to throw a `java.lang.NullPointerException` if the `Throwable` is `null`
+      if (t == null) throw null;
+      error = t;
+      terminated = true;
+      tryScheduleToExecute();
+    }
+
+    @Override public void onComplete() {
+      terminated = true;
+      tryScheduleToExecute();
+    }
+
+    // Our implementation of `Subscription.request` registers inbound demand from our `Subscriber` and validates it against rule 3.9 and rule 3.17
+    @Override public void request(final long n) {
+      if (n < 1) {
+        invalidRequest = new IllegalArgumentException(subscriber + " violated the Reactive Streams rule 3.9 by requesting a non-positive number of elements.");
+        tryScheduleToExecute(); // The `onError` needs to be signalled from within the drain, so that it is not concurrent with `onNext`
+        return;
+      }
+      for (;;) {
+        final long current = requested.get();
+        if (current == Long.MAX_VALUE) // Demand is already "effectively unbounded", so there is nothing to add
+          return;
+        long update = current + n;
+        if (update < 1) // As governed by rule 3.17, when demand overflows `Long.MAX_VALUE` we treat the signalled demand as "effectively unbounded"
+          update = Long.MAX_VALUE;
+        if (requested.compareAndSet(current, update)) {
+          tryScheduleToExecute();
+          return;
+        }
+      }
+    }
+
+    @Override public void cancel() {
+      cancelled = true;
+      tryScheduleToExecute(); // The source is cancelled by the drain, so that it is not concurrent with its `request`
+    }
+
+    // This method makes sure that the drain is only running on one Thread at a time, and is only scheduled if it is idle
+    private void tryScheduleToExecute() {
+      if (wip.getAndIncrement() == 0)
+        scheduleOnExecutor();
+    }
+
+    private void scheduleOnExecutor() {
+      try {
+        executor.execute(this);
+      } catch(final Throwable t) { // If we can't run on the `Executor`, we need to fail gracefully
+        // We deliberately leave `wip` non-zero, so the drain never runs, which makes us the only one to touch the source and the `Subscriber`
+        if (!cancelled) {
+          cancelled = true;
+          cancelUpstream();
+          try {
+            subscriber.onError(new IllegalStateException("Publisher terminated due to unavailable Executor.", t));
+          } catch(final Throwable t2) { // If `onError` throws an exception, this is a spec violation according to rule 2.13, and all we can do is to log it.
+            (new IllegalStateException(subscriber + " violated the Reactive Streams rule 2.13 by throwing an exception from onError.", t2)).printStackTrace(System.err);
+          }
+        }
+      }
+    }
+
+    // This is the drain, it emits whatever has arrived and is demanded, and then the terminal signal once the queue is empty
+    @Override public void run() {
+      int missed = 1;
+      for (;;) {
+        if (!done)
+          drain();
+        missed = wip.addAndGet(-missed); // establishes a happens-before relationship with the beginning of the next run
+        if (missed == 0)
+          break;
+      }
+    }
+
+    private void drain() {
+      if (!started) {
+        started = true;
+        if (!cancelled && sourceMode != SYNC)
+          requestUpstream(prefetch); // The source may deliver synchronously, which then just adds to the queue
+      }
+      if (outputFused) {
+        drainFused();
+        return;
+      }
+      final long r = requested.get();
+      long e = emitted;
+      for (;;) {
+        if (cancelled) { // This makes sure that rule 3.6 and 3.7 are upheld, we stop signalling and let go of the elements
+          done = true;
+          cancelUpstream();
+          clearSource();
+          return;
+        }
+        final Throwable t = invalidRequest;
+        if (t != null) {
+          terminateDueTo(t);
+          return;
+        }
+        // We have to read this before polling, otherwise we could miss the last elements, a `SYNC` source ends when it is empty
+        final boolean d = sourceMode == SYNC || terminated;
+        if (e == r) { // As per rule 1.1, we don't emit more than was requested, but we don't need demand to terminate as per rule 1.2
+          final boolean empty;
+          try {
+            empty = isEmpty();
+          } catch(final Throwable ex) {
+            terminateDueTo(ex);
+            return;
+          }
+          if (d && empty)
+            terminate();
+          else
+            emitted = e;
+          return;
+        }
+        final T element;
+        try {
+          element = pollSource();
+        } catch(final Throwable ex) { // Only a fused source throws, for a `SYNC` source this stands in for `onError`
+          terminateDueTo(ex);
+          return;
+        }
+        if (element == null) {
+          if (d) // All elements have been emitted, so now it is the turn of the terminal signal
+            terminate();
+          else
+            emitted = e;
+          return;
+        }
+        e++;
+        try {
+          subscriber.onNext(element);
+        } catch(final Throwable ex) { // As per rule 2.13, `onNext` is not allowed to throw, so we can only cancel and log here
+          done = true;
+          cancelUpstream();
+          clearSource();
+          (new IllegalStateException(subscriber + " violated the Reactive Streams rule 2.13 by throwing an exception from onNext.", ex)).printStackTrace(System.err);
+          return;
+        }
+        replenish();
+      }
+    }
+
+    // This is the drain if our `Subscriber` has been granted `ASYNC` fusion: it polls the elements itself, we only tell it when
+    // there may be some, and pass the terminal signal on right away, upon which it polls the rest. We don't look at the queue here,
+    // as we must not use the source's concurrently with our `Subscriber`, but we replenish the prefetch window for what it has polled
+    private void drainFused() {
+      if (cancelled) {
+        done = true;
+        cancelUpstream();
+        return; // Our `Subscriber` clears the queue, if it wants to
+      }
+      final Throwable t = invalidRequest;
+      if (t != null) {
+        done = true;
+        cancelUpstream();
+        signalError(t);
+        return;
+      }
+      final int p = polled.get();
+      if (p >= limit) { // Only replenish once the low-water mark of the prefetch window is reached
+        polled.addAndGet(-p);
+        requestUpstream(p);
+      }
+      final boolean d = terminated;
+      try {
+        subscriber.onNext(null);
+      } catch(final Throwable ex) { // As per rule 2.13, `onNext` is not allowed to throw, so we can only cancel and log here
+        done = true;
+        cancelUpstream();
+        (new IllegalStateException(subscriber + " violated the Reactive Streams rule 2.13 by throwing an exception from onNext.", ex)).printStackTrace(System.err);
+        return;
+      }
+      if (d)
+        terminate();
+    }
+
+    // Replenishes the prefetch window once its low-water mark is reached, a `SYNC` source doesn't need to be requested from
+    private void replenish() {
+      if (sourceMode != SYNC && ++consumed == limit) {
+        consumed = 0;
+        requestUpstream(limit);
+      }
+    }
+
+    // Signals `onComplete`, or the error of the source, once everything has been emitted
+    private void terminate() {
+      done = true;
+      final Throwable ex = sourceMode == SYNC ? null : error;
+      if (ex != null) {
+        cancelUpstream(); // A NOP after `onError` as per rule 3.6, but needed if it is us who found the source at fault
+        signalError(ex);
+        return;
+      }
+      try {
+        subscriber.onComplete();
+      } catch(final Throwable t2) { // As per rule 2.13, `onComplete` is not allowed to throw exceptions, so we do what we can, and log this.
+        (new IllegalStateException(subscriber + " violated the Reactive Streams rule 2.13 by throwing an exception from onComplete.", t2)).printStackTrace(System.err);
+      }
+    }
+
+    // This is a helper method to ensure that we always cancel the source when we signal `onError`
+    private void terminateDueTo(final Throwable t) {
+      done = true;
+      cancelUpstream();
+      clearSource();
+      signalError(t);
+    }
+
+    private void signalError(final Throwable t) {
+      try {
+        subscriber.onError(t);
+      } catch(final Throwable t2) { // If `onError` throws an exception, this is a spec violation according to rule 2.13, and all we can do is to log it.
+        (new IllegalStateException(subscriber + " violated the Reactive Streams rule 2.13 by throwing an exception from onError.", t2)).printStackTrace(System.err);
+      }
+    }
+
+    private void requestUpstream(final long n) {
+      try {
+        upstream.request(n);
+      } catch(final Throwable t) {
+        // Subscription.request is not allowed to throw according to rule 3.16
+        (new IllegalStateException(upstream + " violated the Reactive Streams rule 3.16 by throwing an exception from request.", t)).printStackTrace(System.err);
+      }
+    }
+
+    private void cancelUpstream() {
+      try {
+        upstream.cancel();
+      } catch(final Throwable t) {
+        //Subscription.cancel is not allowed to throw an exception, according to rule 3.15
+        (new IllegalStateException(upstream + " violated the Reactive Streams rule 3.15 by throwing an exception from cancel.", t)).printStackTrace(System.err);
+      }
+    }
+
+    // Takes the next element off our queue, or from the fused source, returning `null` if there is none
+    private T pollSource() throws Exception {
+      if (sourceMode != NONE)
+        return fusedSource.poll();
+      final int offset = (int) consumerIndex & mask;
+      final T element = queue.get(offset);
+      if (element != null) {
+        queue.lazySet(offset, null); // Hand the slot back to the producer
+        consumerIndex++;
+      }
+      return element;
+    }
+
+    // Lets go of the elements which will not be emitted anymore, elements arriving after this are never looked at again
+    private void clearSource() {
+      if (sourceMode != NONE) {
+        fusedSource.clear();
+        return;
+      }
+      for (;;) {
+        final int offset = (int) consumerIndex & mask;
+        if (queue.get(offset) == null)
+          return;
+        queue.lazySet(offset, null);
+        consumerIndex++;
+      }
+    }
+
+    // We only grant `ASYNC` fusion, as elements only become available once the drain has run on the `Executor`
+    @Override public int requestFusion(final int requestedMode) {
+      if ((requestedMode & ASYNC) == 0)
+        return NONE;
+      outputFused = true;
+      return ASYNC;
+    }
+
+    // This is how our fused `Subscriber` takes the elements, once the low-water mark of the prefetch window is reached
+    // it schedules the drain to replenish it. The source is only ever called by the drain, obeying rule 2.7
+    @Override public T poll() throws Exception {
+      final T element = pollSource();
+      if (element != null && polled.incrementAndGet() == limit)
+        tryScheduleToExecute();
+      return element;
+    }
+
+    @Override public boolean isEmpty() {
+      if (sourceMode != NONE)
+        return fusedSource.isEmpty();
+      return queue.get((int) consumerIndex & mask) == null;
+    }
+
+    @Override public void clear() {
+      clearSource();
+    }
+  }
+}
@@ -4,7 +4,10 @@
 
 package org.reactivestreams.example.unicast;
 
+import org.reactivestreams.BatchSubscriber;
+import org.reactivestreams.IntSubscriber;
 import org.reactivestreams.Publisher;
+import org.reactivestreams.QueueSubscription;
 import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
 
@@ -14,6 +17,13 @@ import java.util.concurrent.atomic.AtomicLong;
  * A synchronous implementation of the {@link Publisher} that can
  * be subscribed to multiple times and each individual subscription
  * will receive range of monotonically increasing integer values on demand.
+ * <p>
+ * An {@link IntSubscriber} receives the values via {@link IntSubscriber#onNextInt(int)},
+ * without boxing them into {@link Integer}s, otherwise a {@link BatchSubscriber} receives
+ * them via {@link BatchSubscriber#onNextBatch(Object[], int, int)}.
+ * <p>
+ * Its {@link Subscription} is a {@link QueueSubscription}, which grants {@link QueueSubscription#SYNC} fusion:
+ * a fused {@link Subscriber} then polls the values itself, without any {@code request} or {@code onNext} calls.
  */
 public final class RangePublisher implements Publisher<Integer> {
 
@@ -65,13 +75,31 @@ public final class RangePublisher implements Publisher<Integer> {
             // doesn't run concurrently with itself, which would violate rule 1.3
             // among others (no concurrent notifications).
             // The atomic transition from 0L to N > 0L will ensure this.
-            extends AtomicLong implements Subscription {
+            extends AtomicLong implements QueueSubscription<Integer> {
 
         private static final long serialVersionUID = -9000845542177067735L;
 
+        /** The largest number of values handed to a {@link BatchSubscriber} in one call. */
+        static final int MAX_BATCH = 128;
+
         /** The Subscriber we are emitting integer values to. */
         final Subscriber<? super Integer> downstream;
 
+        /**
+         * The same Subscriber as {@link #downstream} if it can receive unboxed
+         * integer values, null otherwise.
+         */
+        final IntSubscriber primitiveDownstream;
+
+        /**
+         * The same Subscriber as {@link #downstream} if it can receive batches of
+         * values and is not an {@link IntSubscriber}, null otherwise.
+         */
+        final BatchSubscriber<? super Integer> batchDownstream;
+
+        /** The reusable array handed to {@link #batchDownstream}, null if that is null. */
+        final Object[] batch;
+
         /** The end index (exclusive). */
         final int end;
 
@@ -99,8 +127,17 @@ public final class RangePublisher implements Publisher<Integer> {
          * @param start the first integer value emitted, start of the range
          * @param end the end of the range, exclusive
          */
+        @SuppressWarnings("unchecked")
         RangeSubscription(Subscriber<? super Integer> downstream, int start, int end) {
             this.downstream = downstream;
+            this.primitiveDownstream = downstream instanceof IntSubscriber ? (IntSubscriber) downstream : null;
+            if (primitiveDownstream == null && downstream instanceof BatchSubscriber) {
+                this.batchDownstream = (BatchSubscriber<? super Integer>) downstream;
+                this.batch = new Object[MAX_BATCH];
+            } else {
+                this.batchDownstream = null;
+                this.batch = null;
+            }
             this.index = start;
             this.end = end;
         }
@@ -142,9 +179,35 @@ public final class RangePublisher implements Publisher<Integer> {
             cancelled = true;
         }
 
+        // The values are all there, so we can hand them out synchronously, on the thread of the fused `Subscriber`,
+        // which then never calls `request`, so `emit` never runs
+        @Override
+        public int requestFusion(int requestedMode) {
+            return (requestedMode & SYNC) != 0 ? SYNC : NONE;
+        }
+
+        @Override
+        public Integer poll() {
+            // Returning null tells the fused `Subscriber` that the range is complete
+            return index == end ? null : index++;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return index == end;
+        }
+
+        @Override
+        public void clear() {
+            index = end;
+        }
+
         void emit(long currentRequested) {
             // Load fields to avoid re-reading them from memory due to volatile accesses in the loop.
             Subscriber<? super Integer> downstream = this.downstream;
+            IntSubscriber primitiveDownstream = this.primitiveDownstream;
+            BatchSubscriber<? super Integer> batchDownstream = this.batchDownstream;
+            Object[] batch = this.batch;
             int index = this.index;
             int end = this.end;
             int emitted = 0;
@@ -172,12 +235,32 @@ public final class RangePublisher implements Publisher<Integer> {
                             return;
                         }
 
-                        downstream.onNext(index);
+                        if (batchDownstream != null) {
+                            // Hand over as many values as are both remaining and requested,
+                            // up to the size of the batch, with a single call.
+                            // The int subtraction is deliberate: end may have wrapped around, like index does.
+                            int n = (int) Math.min(Math.min(end - index, currentRequested - emitted), batch.length);
+                            for (int i = 0; i < n; i++) {
+                                batch[i] = index + i;
+                            }
+                            batchDownstream.onNextBatch(batch, 0, n);
 
-                        // Increment the index for the next possible emission.
-                        index++;
-                        // Increment the emitted count to prevent overflowing the downstream.
-                        emitted++;
+                            // Advance the index and the emitted count by the size of the batch.
+                            index += n;
+                            emitted += n;
+                        } else {
+                            if (primitiveDownstream != null) {
+                                // Skip boxing the value if the Subscriber can take it as an int
+                                primitiveDownstream.onNextInt(index);
+                            } else {
+                                downstream.onNext(index);
+                            }
+
+                            // Increment the index for the next possible emission.
+                            index++;
+                            // Increment the emitted count to prevent overflowing the downstream.
+                            emitted++;
+                        }
                     }
 
                     // If the index reached the end, we complete the downstream.
@@ -0,0 +1,23 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+/**
+ * Rings sizes the single-producer single-consumer rings which the examples in this package buffer their elements in.
+ * A ring which has to hold up to `n` elements gets `n` rounded up to a power of two slots, so the slot of an element
+ * can be found with a mask instead of a modulo.
+ */
+final class Rings {
+  static final int MAX_CAPACITY = 1 << 30; // The largest power of two an `int` can hold
+
+  private Rings() { }
+
+  // Returns `n` rounded up to a power of two, or throws an `IllegalArgumentException` which names the parameter `name`
+  // if that doesn't fit into an `int`, `n` must be positive
+  static int capacity(final String name, final int n) {
+    if (n > MAX_CAPACITY) throw new IllegalArgumentException(name + " must be at most " + MAX_CAPACITY + " but was " + n);
+    return 1 << (32 - Integer.numberOfLeadingZeros(n - 1));
+  }
+}
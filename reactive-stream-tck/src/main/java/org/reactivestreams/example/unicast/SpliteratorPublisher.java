@@ -0,0 +1,400 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+import org.reactivestreams.BatchSubscriber;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * SpliteratorPublisher is an implementation of Reactive Streams `Publisher`
+ * which executes asynchronously, using a provided `Executor` and produces elements
+ * from the `Spliterator`s of a given `Supplier` in a "unicast" configuration to its `Subscribers`.
+ *
+ * It is the sibling of `AsyncIterablePublisher`: where that needs a `hasNext` and a `next` call per element,
+ * this needs a single `tryAdvance`, and if the `Spliterator` is `SIZED` it knows when it has delivered the last
+ * element without probing for another one. When the demand is unbounded and the rest of the elements fit into
+ * the current batch, they are delivered using a single `forEachRemaining`, which array and list backed
+ * `Spliterator`s implement as a plain loop.
+ * A `BatchSubscriber` receives the elements in batches via `onNextBatch`.
+ *
+ * NOTE: The code below uses a lot of try-catches to show the reader where exceptions can be expected, and where they are forbidden.
+ */
+public class SpliteratorPublisher<T> implements Publisher<T> {
+  private final static int DEFAULT_BATCHSIZE = 1024;
+  private final static int MAX_ONNEXTBATCH = 128; // The largest number of elements we hand to a `BatchSubscriber` in a single call
+
+  private final Supplier<? extends Spliterator<T>> elements; // This is our data source, each `Subscriber` gets a fresh `Spliterator`, as they can only be traversed once
+  private final Executor executor; // This is our thread pool, which will make sure that our Publisher runs asynchronously to its Subscribers
+  private final int batchSize; // In general, if one uses an `Executor`, one should be nice and not hog a thread for too long, this is the cap for that, in elements
+
+  public SpliteratorPublisher(final Supplier<? extends Spliterator<T>> elements, final Executor executor) {
+    this(elements, DEFAULT_BATCHSIZE, executor);
+  }
+
+  public SpliteratorPublisher(final Supplier<? extends Spliterator<T>> elements, final int batchSize, final Executor executor) {
+    if (elements == null) throw null;
+    if (executor == null) throw null;
+    if (batchSize < 1) throw new IllegalArgumentException("batchSize must be greater than zero!");
+    this.elements = elements;
+    this.executor = executor;
+    this.batchSize = batchSize;
+  }
+
+  @Override
+  public void subscribe(final Subscriber<? super T> s) {
+    // As per rule 1.11, we have decided to support multiple subscribers in a unicast configuration
+    // for this `Publisher` implementation.
+    // As per 2.13, this method must return normally (i.e. not throw)
+    new SubscriptionImpl(s).init();
+  }
+
+  // This is our implementation of the Reactive Streams `Subscription`,
+  // which represents the association between a `Publisher` and a `Subscriber`.
+  //
+  // It is also the `Consumer` we pass to `tryAdvance`, which just hands the element over in `next`,
+  // so that we can tell exceptions thrown by the `Spliterator` apart from those thrown by the `Subscriber`.
+  final class SubscriptionImpl implements Subscription, Runnable, Consumer<T> {
+    final Subscriber<? super T> subscriber; // We need a reference to the `Subscriber` so we can talk to it
+    private final BatchSubscriber<? super T> batchSubscriber; // The same `Subscriber` if it can receive batches of elements, `null` otherwise
+    private final Object[] batch; // The array we reuse for the batches we hand to `batchSubscriber`, `null` if that is `null`
+    private volatile boolean cancelled = false; // This flag will track whether this `Subscription` is to be considered cancelled or not
+    private boolean subscribed = false; // This flag tracks whether `doSubscribe` has run, it is only accessed from within `run`
+    private Spliterator<T> spliterator; // This is our cursor into the data stream, which we will send to the `Subscriber`
+    private long remaining; // The number of elements left if the `Spliterator` is `SIZED`, -1 otherwise
+    private T next; // The element `tryAdvance` has just handed to us
+
+    // Set by `emitter` if the `Subscriber` threw from `onNext` during `forEachRemaining`
+    private boolean subscriberFailed;
+
+    // The `Consumer` we pass to `forEachRemaining`, which signals the elements straight to the `Subscriber`
+    private final Consumer<T> emitter = new Consumer<T>() {
+      @Override public void accept(final T element) {
+        if (cancelled) // `forEachRemaining` can't be stopped, but we can stop signalling as per rule 1.8
+          return;
+        try {
+          subscriber.onNext(element);
+        } catch (final Throwable t) {
+          subscriberFailed = true; // So `sendRemaining` doesn't mistake this for a failure of the `Spliterator`
+          throw t;
+        }
+      }
+    };
+
+    // Here we track the current demand, i.e. what has been requested but not yet delivered.
+    // `request` adds to it from any thread, and `doSend` subtracts what it has delivered.
+    private final AtomicLong demand = new AtomicLong();
+
+    // Holds onto the IllegalArgumentException (containing the offending stacktrace)
+    // indicating there was a non-positive `request` call from the `Subscriber`, see rule 3.9
+    private volatile Throwable invalidRequest;
+
+    // We are using this `AtomicInteger` to make sure that this `Subscription` doesn't run concurrently with itself,
+    // which would violate rule 1.3 among others (no concurrent notifications).
+    // It counts the work that has been signalled, and only its 0 to 1 transition schedules `run` on the `Executor`.
+    private final AtomicInteger wip = new AtomicInteger();
+
+    @SuppressWarnings("unchecked")
+    SubscriptionImpl(final Subscriber<? super T> subscriber) {
+      // As per rule 1.09, we need to throw a `java.lang.NullPointerException` if the `Subscriber` is `null`
+      if (subscriber == null) throw null;
+      this.subscriber = subscriber;
+      if (subscriber instanceof BatchSubscriber) {
+        this.batchSubscriber = (BatchSubscriber<? super T>)subscriber;
+        this.batch = new Object[Math.min(batchSize, MAX_ONNEXTBATCH)];
+      } else {
+        this.batchSubscriber = null;
+        this.batch = null;
+      }
+    }
+
+    @Override public void accept(final T element) {
+      next = element;
+    }
+
+    // This handles cancellation requests, and is idempotent, thread-safe and not synchronously performing heavy computations as specified in rule 3.5
+    private void doCancel() {
+      cancelled = true;
+    }
+
+    // Instead of executing `subscriber.onSubscribe` synchronously from within `Publisher.subscribe`
+    // we execute it asynchronously, this is to avoid executing the user code (`Supplier.get`) on the calling thread.
+    // It also makes it easier to follow rule 1.9
+    private void doSubscribe() {
+      try {
+        spliterator = elements.get();
+        if (spliterator == null)
+          spliterator = Spliterators.<T>emptySpliterator(); // So we can assume that `spliterator` is never null
+        remaining = spliterator.getExactSizeIfKnown(); // This is -1 unless the `Spliterator` is `SIZED`
+      } catch(final Throwable t) {
+        subscriber.onSubscribe(new Subscription() { // We need to make sure we signal onSubscribe before onError, obeying rule 1.9
+          @Override public void cancel() {}
+          @Override public void request(long n) {}
+        });
+        terminateDueTo(t); // Here we send onError, obeying rule 1.09
+        return;
+      }
+
+      // Deal with setting up the subscription with the subscriber
+      try {
+        subscriber.onSubscribe(this);
+      } catch(final Throwable t) { // Due diligence to obey 2.13
+        terminateDueTo(new IllegalStateException(subscriber + " violated the Reactive Streams rule 2.13 by throwing an exception from onSubscribe.", t));
+      }
+
+      // If we know that there is nothing to deliver, we're already done, so lets do the right thing and
+      // not wait for demand to deliver `onComplete` as per rule 1.2 and 1.3.
+      // If we don't know the size, we find out on the first `tryAdvance`, rather than probing for an element here.
+      if (!cancelled && remaining == 0L) {
+        try {
+          doComplete();
+        } catch(final Throwable t) { // As per rule 2.13, `onComplete` is not allowed to throw exceptions, so we do what we can, and log this.
+          (new IllegalStateException(subscriber + " violated the Reactive Streams rule 2.13 by throwing an exception from onComplete.", t)).printStackTrace(System.err);
+        }
+      }
+    }
+
+    // This is our behavior for producing elements downstream, it returns `true` if it stopped
+    // because the batch was used up while there still is outstanding demand to satisfy.
+    private boolean doSend() {
+      try {
+        // In order to play nice with the `Executor` we will only send at-most `batchSize` before
+        // rescheduing ourselves and relinquishing the current thread.
+        int leftInBatch = batchSize;
+        long requested = demand.get();
+        long emitted = 0;
+        for (;;) {
+          while (emitted != requested) { // This makes sure that rule 1.1 is upheld (sending more than was demanded)
+            if (cancelled) // This makes sure that rule 1.8 is upheld, i.e. we need to stop signalling "eventually"
+              return false;
+            if (leftInBatch == 0) { // This makes sure that we only send `batchSize` number of elements in one go (so we can yield to other Runnables)
+              if (requested != Long.MAX_VALUE) // As per rule 3.17, "effectively unbounded" demand is never decremented
+                demand.addAndGet(-emitted);
+              return true;
+            }
+            final int max = (int)Math.min(requested - emitted, leftInBatch);
+            final int sent;
+            if (batchSubscriber != null)
+              sent = sendBatch(Math.min(max, batch.length));
+            else if (requested == Long.MAX_VALUE && remaining > 0L && remaining <= max)
+              sent = sendRemaining(); // Everything that is left is demanded and fits into this batch, so we can let the `Spliterator` loop
+            else
+              sent = sendEach(max);
+            if (sent < 0)
+              return false; // We have reached End-of-Stream or have terminated due to an error
+            emitted += sent;
+            leftInBatch -= sent;
+          }
+          // We have delivered everything that was demanded when we started, so we atomically subtract that,
+          // if more was requested in the meantime we just carry on, otherwise the next `request` will schedule us.
+          requested = demand.addAndGet(-emitted);
+          if (requested == 0L)
+            return false;
+          emitted = 0;
+        }
+      } catch(final Throwable t) {
+        // We can only get here if `onNext` or `onComplete` threw, and they are not allowed to according to 2.13, so we can only cancel and log here.
+        doCancel(); // Make sure that we are cancelled, since we cannot do anything else since the `Subscriber` is faulty.
+        (new IllegalStateException(subscriber + " violated the Reactive Streams rule 2.13 by throwing an exception from onNext or onComplete.", t)).printStackTrace(System.err);
+        return false;
+      }
+    }
+
+    // This signals up to `max` elements one at a time, it returns how many elements were signalled,
+    // or -1 if the stream has ended and `onComplete` or `onError` has been signalled
+    private int sendEach(final int max) {
+      int n = 0;
+      while (n != max) {
+        if (cancelled) // This makes sure that rule 1.8 is upheld, `doSend` will notice as well
+          return n;
+        final boolean advanced;
+        try {
+          advanced = spliterator.tryAdvance(this); // One call both tells us whether there is an element and gets it
+        } catch (final Throwable t) {
+          terminateDueTo(t); // If `tryAdvance` throws (it can, since it is user-provided), we need to treat the stream as errored as per rule 1.4
+          return -1;
+        }
+        if (!advanced) { // If we are at End-of-Stream
+          doComplete();
+          return -1;
+        }
+        final T element = next;
+        next = null; // We don't want to hold on to elements that have already been delivered
+        subscriber.onNext(element); // Then we signal the next element downstream to the `Subscriber`
+        n++;
+        if (remaining > 0L && --remaining == 0L) { // If the `Spliterator` is `SIZED`, we know we have reached End-of-Stream without asking it
+          doComplete();
+          return -1;
+        }
+      }
+      return n;
+    }
+
+    // This signals all the remaining elements of a `SIZED` `Spliterator` with a single `forEachRemaining`,
+    // and then `onComplete`, it is only used if they are all demanded, and it always returns -1
+    private int sendRemaining() {
+      try {
+        spliterator.forEachRemaining(emitter);
+      } catch (final Throwable t) {
+        if (subscriberFailed)
+          throw t; // `doSend` deals with faulty `Subscriber`s
+        terminateDueTo(t); // If `forEachRemaining` throws (it can, since it is user-provided), we need to treat the stream as errored as per rule 1.4
+        return -1;
+      }
+      remaining = 0L;
+      if (!cancelled)
+        doComplete();
+      return -1;
+    }
+
+    // This pulls up to `max` elements into `batch` and signals them downstream with a single `onNextBatch`, it returns
+    // how many elements were signalled, or -1 if the stream has ended and `onComplete` or `onError` has been signalled
+    private int sendBatch(final int max) {
+      int n = 0;
+      boolean ended = false;
+      Throwable failure = null;
+      while (n != max) {
+        try {
+          if (!spliterator.tryAdvance(this)) {
+            ended = true; // Need to keep track of End-of-Stream
+            break;
+          }
+        } catch (final Throwable t) {
+          failure = t; // We first signal the elements we already have, and then treat the stream as errored as per rule 1.4
+          break;
+        }
+        batch[n++] = next;
+        next = null;
+        if (remaining > 0L && --remaining == 0L) { // Just as in `sendEach`, a `SIZED` `Spliterator` needs no further probing
+          ended = true;
+          break;
+        }
+      }
+
+      if (n != 0) {
+        try {
+          batchSubscriber.onNextBatch(batch, 0, n); // Then we signal the batch downstream to the `Subscriber`
+        } finally {
+          Arrays.fill(batch, 0, n, null); // We don't want to hold on to elements that have already been delivered
+        }
+      }
+      if (failure != null) {
+        terminateDueTo(failure);
+        return -1;
+      }
+      if (ended) {
+        doComplete();
+        return -1;
+      }
+      return n;
+    }
+
+    // This is a helper method to ensure that we always `cancel` when we signal `onComplete` as per rule 1.6
+    private void doComplete() {
+      doCancel(); // We need to consider this `Subscription` as cancelled as per rule 1.6
+      subscriber.onComplete(); // Then we signal `onComplete` as per rule 1.2 and 1.5
+    }
+
+    // This is a helper method to ensure that we always `cancel` when we signal `onError` as per rule 1.6
+    private void terminateDueTo(final Throwable t) {
+      cancelled = true; // When we signal onError, the subscription must be considered as cancelled, as per rule 1.6
+      try {
+        subscriber.onError(t); // Then we signal the error downstream, to the `Subscriber`
+      } catch(final Throwable t2) { // If `onError` throws an exception, this is a spec violation according to rule 1.9, and all we can do is to log it.
+        (new IllegalStateException(subscriber + " violated the Reactive Streams rule 2.13 by throwing an exception from onError.", t2)).printStackTrace(System.err);
+      }
+    }
+
+    // This is the main "event loop" if you so will
+    @Override public final void run() {
+      int missed = 1;
+      for (;;) { // The read-modify-write on `wip` at the end of each round establishes a happens-before relationship with the next run
+        if (!cancelled) { // to make sure that we follow rule 1.8, 3.6 and 3.7
+          if (!subscribed) {
+            subscribed = true;
+            doSubscribe();
+          } else {
+            final Throwable t = invalidRequest;
+            if (t != null)
+              terminateDueTo(t); // As per rule 3.9, a non-positive request must be signalled as `onError`
+            else if (demand.get() > 0L && doSend()) {
+              // The batch is used up but there is more demand, so we keep `wip` as it is and resubmit ourselves,
+              // which relinquishes the current thread and lets other `Runnable`s on the `Executor` make progress
+              scheduleOnExecutor();
+              return;
+            }
+          }
+        }
+        missed = wip.addAndGet(-missed);
+        if (missed == 0) // If no new work was signalled while we were running we are done for now
+          break;
+      }
+    }
+
+    // This method makes sure that this `Subscription` is only running on one Thread at a time,
+    // this is important to make sure that we follow rule 1.3
+    private final void tryScheduleToExecute() {
+      if (wip.getAndIncrement() == 0)
+        scheduleOnExecutor();
+    }
+
+    private final void scheduleOnExecutor() {
+      try {
+        executor.execute(this);
+      } catch(Throwable t) { // If we can't run on the `Executor`, we need to fail gracefully
+        if (!cancelled) {
+          doCancel(); // First of all, this failure is not recoverable, so we need to follow rule 1.4 and 1.6
+          terminateDueTo(new IllegalStateException("Publisher terminated due to unavailable Executor.", t));
+        }
+        // We deliberately leave `wip` non-zero, this `Subscription` is cancelled by now and must never be scheduled again
+      }
+    }
+
+    // Our implementation of `Subscription.request` registers inbound demand from our `Subscriber` and validates it against rule 3.9 and rule 3.17
+    @Override public void request(final long n) {
+      if (n < 1) {
+        invalidRequest = new IllegalArgumentException(subscriber + " violated the Reactive Streams rule 3.9 by requesting a non-positive number of elements.");
+        tryScheduleToExecute(); // The `onError` needs to be signalled from within `run`, so that it is not concurrent with `onNext`
+        return;
+      }
+      for (;;) {
+        final long current = demand.get();
+        if (current == Long.MAX_VALUE) // Demand is already "effectively unbounded", so there is nothing to add
+          return;
+        long update = current + n;
+        if (update < 1) // As governed by rule 3.17, when demand overflows `Long.MAX_VALUE` we treat the signalled demand as "effectively unbounded"
+          update = Long.MAX_VALUE;
+        if (demand.compareAndSet(current, update)) {
+          // If there was outstanding demand already, then `doSend` is either running or about to be run and will pick the
+          // new demand up when it subtracts what it has delivered, so only the transition from zero needs to schedule us
+          if (current == 0L)
+            tryScheduleToExecute();
+          return;
+        }
+      }
+    }
+    // Our implementation of `Subscription.cancel` marks this `Subscription` as cancelled, which `run` and `doSend` observe as per rule 3.5 and 3.7
+    @Override public void cancel() {
+      doCancel();
+    }
+    // The reason for the `init` method is that we want to ensure the `SubscriptionImpl`
+    // is completely constructed before it is exposed to the thread pool, therefor this
+    // method is only intended to be invoked once, and immediately after the constructor has
+    // finished.
+    void init() {
+      tryScheduleToExecute();
+    }
+  };
+}
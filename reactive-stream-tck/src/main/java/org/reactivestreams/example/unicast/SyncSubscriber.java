@@ -12,11 +12,29 @@ import org.reactivestreams.Subscription;
  * it runs synchronously (on the Publisher's thread) and requests one element
  * at a time and invokes a user-defined method to process each element.
  *
+ * Optionally a prefetch window can be configured: it then requests that many elements up front
+ * and replenishes them in a single `request` once 75% of the window has been consumed.
+ *
  * NOTE: The code below uses a lot of try-catches to show the reader where exceptions can be expected, and where they are forbidden.
  */
 public abstract class SyncSubscriber<T> implements Subscriber<T> {
   private Subscription subscription; // Obeying rule 3.1, we make this private!
   private boolean done = false;
+  private final int prefetch; // How many elements we request up front
+  private final int limit; // After how many consumed elements we replenish the prefetch window
+  private int consumed; // How many elements we have consumed since we last called `request`
+
+  // This constructor makes the Subscriber request one element at a time
+  protected SyncSubscriber() {
+    this(1);
+  }
+
+  // This one requests `prefetch` elements up front and replenishes them once 75% of them have been consumed
+  protected SyncSubscriber(int prefetch) {
+    if (prefetch < 1) throw new IllegalArgumentException("prefetch must be positive but was " + prefetch);
+    this.prefetch = prefetch;
+    this.limit = prefetch - (prefetch >> 2);
+  }
 
   @Override public void onSubscribe(final Subscription s) {
     // As per rule 2.13, we need to throw a `java.lang.NullPointerException` if the `Subscription` is `null`
@@ -36,7 +54,7 @@ public abstract class SyncSubscriber<T> implements Subscriber<T> {
       try {
         // If we want elements, according to rule 2.1 we need to call `request`
         // And, according to rule 3.2 we are allowed to call this synchronously from within the `onSubscribe` method
-        s.request(1); // Our Subscriber is unbuffered and modest, it requests one element at a time
+        s.request(prefetch); // Our Subscriber is modest, it requests one element at a time unless told to prefetch more
       } catch(final Throwable t) {
         // Subscription.request is not allowed to throw according to rule 3.16
         (new IllegalStateException(s + " violated the Reactive Streams rule 3.16 by throwing an exception from request.", t)).printStackTrace(System.err);
@@ -54,11 +72,15 @@ public abstract class SyncSubscriber<T> implements Subscriber<T> {
       if (!done) { // If we aren't already done
         try {
           if (whenNext(element)) {
-            try {
-              subscription.request(1); // Our Subscriber is unbuffered and modest, it requests one element at a time
-            } catch (final Throwable t) {
-              // Subscription.request is not allowed to throw according to rule 3.16
-              (new IllegalStateException(subscription + " violated the Reactive Streams rule 3.16 by throwing an exception from request.", t)).printStackTrace(System.err);
+            if (++consumed == limit) { // Only replenish once the low-water mark of the prefetch window is reached
+              final int n = consumed;
+              consumed = 0;
+              try {
+                subscription.request(n); // Top the outstanding demand back up to `prefetch` with a single call
+              } catch (final Throwable t) {
+                // Subscription.request is not allowed to throw according to rule 3.16
+                (new IllegalStateException(subscription + " violated the Reactive Streams rule 3.16 by throwing an exception from request.", t)).printStackTrace(System.err);
+              }
             }
           } else {
             done();
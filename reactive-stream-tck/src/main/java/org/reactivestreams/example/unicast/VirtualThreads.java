@@ -0,0 +1,63 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * VirtualThreads gives access to the virtual threads of Java 21 and later, while these examples
+ * still compile and run on older JDKs, where `isSupported` simply returns `false`.
+ *
+ * An `Executor` which starts a virtual thread per task is a good fit for `AsyncIterablePublisher.blocking`
+ * and for `AsyncSubscriber`s whose `whenNext` blocks: a blocked virtual thread parks and releases its carrier thread,
+ * so there is no need to keep the tasks short to be fair to the other users of a pool.
+ */
+public final class VirtualThreads {
+  private static final Method NEW_EXECUTOR = find(Executors.class, "newVirtualThreadPerTaskExecutor"); // `null` before Java 21
+  private static final Method IS_VIRTUAL = find(Thread.class, "isVirtual"); // `null` before Java 21
+
+  private VirtualThreads() { }
+
+  private static Method find(final Class<?> type, final String name) {
+    try {
+      return type.getMethod(name);
+    } catch(final NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  // Returns whether this JDK has virtual threads
+  public static boolean isSupported() {
+    return NEW_EXECUTOR != null;
+  }
+
+  // Returns `Executors.newVirtualThreadPerTaskExecutor()`, or throws `UnsupportedOperationException` before Java 21
+  public static ExecutorService newVirtualThreadPerTaskExecutor() {
+    if (NEW_EXECUTOR == null) throw new UnsupportedOperationException("Virtual threads require Java 21 or later, this is Java " + System.getProperty("java.version"));
+    return (ExecutorService)invoke(NEW_EXECUTOR, null);
+  }
+
+  // Returns whether `thread` is a virtual thread, which is never the case before Java 21
+  public static boolean isVirtual(final Thread thread) {
+    if (thread == null) throw null;
+    return IS_VIRTUAL != null && (Boolean)invoke(IS_VIRTUAL, thread);
+  }
+
+  private static Object invoke(final Method method, final Object target) {
+    try {
+      return method.invoke(target);
+    } catch(final IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    } catch(final InvocationTargetException e) {
+      final Throwable t = e.getCause();
+      if (t instanceof RuntimeException) throw (RuntimeException)t;
+      if (t instanceof Error) throw (Error)t;
+      throw new IllegalStateException(t);
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.wal;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the records of a segment sequentially, through a buffer which is refilled with as large reads as possible
+ * and only grows if a single record doesn't fit into it.
+ */
+final class RecordReader {
+
+    FileChannel channel;
+
+    ByteBuffer buffer;
+
+    /** Where the next read from the file starts. */
+    long filePosition;
+
+    /** The checksum in the header of the record last returned by {@link #next(long)}. */
+    int checksum;
+
+    RecordReader(FileChannel channel, long position, int bufferSize) {
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        reset(channel, position);
+    }
+
+    /** Continues at the record starting at {@code position} of the given file, dropping whatever was buffered. */
+    void reset(FileChannel channel, long position) {
+        this.channel = channel;
+        this.filePosition = position;
+        ((Buffer)buffer).clear();
+        ((Buffer)buffer).flip();
+    }
+
+    /**
+     * @param limit the size of the file as far as it may be read, the bytes after it may still be being written
+     * @return the body of the next record, only valid until the next call, or null if the file ends before the record does
+     */
+    ByteBuffer next(long limit) throws IOException {
+        if (!fill(Segment.HEADER_SIZE, limit)) {
+            return null;
+        }
+        int p = buffer.position();
+        int length = buffer.getInt(p);
+        if (length < 0 || length > Integer.MAX_VALUE - Segment.HEADER_SIZE) {
+            return null;
+        }
+        checksum = buffer.getInt(p + 4);
+        if (!fill(Segment.HEADER_SIZE + length, limit)) {
+            return null;
+        }
+        p = buffer.position(); // Filling may have moved the record to the start of the buffer
+        ByteBuffer body = buffer.duplicate();
+        ((Buffer)body).position(p + Segment.HEADER_SIZE);
+        ((Buffer)body).limit(p + Segment.HEADER_SIZE + length);
+        ((Buffer)buffer).position(p + Segment.HEADER_SIZE + length);
+        return body;
+    }
+
+    /** Makes sure the buffer holds at least {@code n} bytes, reading no further than {@code limit}. */
+    boolean fill(int n, long limit) throws IOException {
+        if (buffer.remaining() >= n) {
+            return true;
+        }
+        if (buffer.capacity() < n) {
+            ByteBuffer b = ByteBuffer.allocate(Math.max(n, buffer.capacity() << 1));
+            b.put(buffer);
+            buffer = b;
+        } else {
+            buffer.compact();
+        }
+        while (buffer.position() < n && filePosition < limit) {
+            int l = buffer.limit();
+            ((Buffer)buffer).limit((int)Math.min(l, buffer.position() + (limit - filePosition)));
+            int r = channel.read(buffer, filePosition);
+            ((Buffer)buffer).limit(l);
+            if (r < 0) {
+                break;
+            }
+            filePosition += r;
+        }
+        ((Buffer)buffer).flip();
+        return buffer.remaining() >= n;
+    }
+}
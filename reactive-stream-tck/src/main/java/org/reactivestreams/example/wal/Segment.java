@@ -0,0 +1,269 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.wal;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * A file of a {@link WriteAheadLogPublisher}, holding the records from offset {@link #base} on, each made of its
+ * length, the CRC32 of its bytes and the bytes themselves.
+ * <p>
+ * Next to it, a sparse index file holds an entry for the first record after every {@link #INDEX_INTERVAL} bytes:
+ * its offset relative to {@link #base} in the upper and its position in the lower 32 bits. The entries are also
+ * kept in memory, so a reader finds where to start reading for any offset with a binary search.
+ * <p>
+ * Only the writer of the log appends, the readers never look past {@link #size}, which covers complete records only.
+ */
+final class Segment {
+
+    /** The length and the checksum in front of every record. */
+    static final int HEADER_SIZE = 8;
+
+    /** The number of bytes after which the next record gets an index entry. */
+    static final int INDEX_INTERVAL = 4096;
+
+    static final String LOG_SUFFIX = ".log";
+    static final String INDEX_SUFFIX = ".index";
+
+    static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+    final long base;
+    final Path log;
+    final Path index;
+
+    /** The number of bytes of the records appended so far. */
+    volatile long size;
+
+    /** The number of records appended so far. */
+    volatile int count;
+
+    /** When a record was last appended, in {@code System.currentTimeMillis()}, which retention by age is based on. */
+    volatile long lastModified;
+
+    /** The index, the array is replaced when it grows, before {@link #entryCount} publishes the new entry. */
+    volatile long[] entries = new long[16];
+    volatile int entryCount;
+
+    // The fields below are only accessed by the writer, while this is the segment being appended to
+
+    FileChannel channel;
+    FileChannel indexChannel;
+
+    long written;
+    int writtenCount;
+
+    /** The position of the latest index entry, the start of the file has an implicit one. */
+    long lastIndexed;
+
+    /** The number of entries which are in the index file already. */
+    int entriesWritten;
+
+    Segment(Path directory, long base) {
+        this.base = base;
+        String name = String.format("%020d", base);
+        this.log = directory.resolve(name + LOG_SUFFIX);
+        this.index = directory.resolve(name + INDEX_SUFFIX);
+    }
+
+    /** Creates a new, empty segment to append to. */
+    static Segment create(Path directory, long base) throws IOException {
+        Segment s = new Segment(directory, base);
+        s.channel = FileChannel.open(s.log, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        s.indexChannel = FileChannel.open(s.index, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        s.lastModified = System.currentTimeMillis();
+        return s;
+    }
+
+    /**
+     * Opens an existing segment. The last one of the log is scanned to find where its last complete record ends,
+     * anything after it is the remains of a write that didn't make it and is truncated, and it is opened for appending.
+     * The others only load their index file, unless it is missing or damaged.
+     */
+    static Segment recover(Path directory, long base, boolean last) throws IOException {
+        Segment s = new Segment(directory, base);
+        s.lastModified = Files.getLastModifiedTime(s.log).toMillis();
+        if (!last && s.loadIndex()) {
+            s.size = Files.size(s.log);
+            return s;
+        }
+        s.scan();
+        if (last) {
+            s.channel = FileChannel.open(s.log, StandardOpenOption.WRITE);
+            s.channel.truncate(s.size);
+            s.channel.position(s.size);
+            s.written = s.size;
+            s.writtenCount = s.count;
+            s.lastIndexed = s.entryCount == 0 ? 0L : s.entries[s.entryCount - 1] & 0xFFFFFFFFL;
+        }
+        s.indexChannel = FileChannel.open(s.index, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        s.writeIndex();
+        if (!last) {
+            s.indexChannel.close();
+            s.indexChannel = null;
+        }
+        return s;
+    }
+
+    boolean loadIndex() throws IOException {
+        if (!Files.exists(index)) {
+            return false;
+        }
+        byte[] bytes = Files.readAllBytes(index);
+        if (bytes.length % 8 != 0) {
+            return false;
+        }
+        ByteBuffer b = ByteBuffer.wrap(bytes);
+        long[] a = new long[Math.max(16, bytes.length / 8)];
+        int n = 0;
+        long previous = -1L;
+        while (b.hasRemaining()) {
+            long e = b.getLong();
+            if (e <= previous) {
+                return false;
+            }
+            a[n++] = previous = e;
+        }
+        entries = a;
+        entryCount = n;
+        return true;
+    }
+
+    /** Reads through all records, verifying their checksums, and rebuilds the index on the way. */
+    void scan() throws IOException {
+        CRC32 crc = new CRC32();
+        long position = 0L;
+        int n = 0;
+        long indexed = 0L;
+        try (FileChannel ch = FileChannel.open(log, StandardOpenOption.READ)) {
+            RecordReader reader = new RecordReader(ch, 0L, SCAN_BUFFER_SIZE);
+            long limit = ch.size();
+            ByteBuffer body;
+            while ((body = reader.next(limit)) != null) {
+                int length = body.remaining();
+                crc.reset();
+                crc.update(body);
+                if ((int)crc.getValue() != reader.checksum) {
+                    break;
+                }
+                if (position - indexed >= INDEX_INTERVAL) {
+                    addEntry(n, position);
+                    indexed = position;
+                }
+                position += HEADER_SIZE + length;
+                n++;
+            }
+        }
+        size = position;
+        count = n;
+    }
+
+    void addEntry(int relative, long position) {
+        long[] a = entries;
+        int n = entryCount;
+        if (n == a.length) {
+            a = Arrays.copyOf(a, n << 1);
+            entries = a;
+        }
+        a[n] = ((long)relative << 32) | position;
+        entryCount = n + 1;
+    }
+
+    /**
+     * @param relative the offset of a record relative to {@link #base}
+     * @return the entry of the nearest record at or before it
+     */
+    long lookup(int relative) {
+        int n = entryCount; // Read before the array, which holds at least as many entries
+        long[] a = entries;
+        long found = 0L;
+        int lo = 0;
+        int hi = n - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long e = a[mid];
+            if ((int)(e >>> 32) <= relative) {
+                found = e;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /** Accounts for a record of {@code length} bytes about to be written, indexing it if it is due. */
+    void append(int length) {
+        if (written - lastIndexed >= INDEX_INTERVAL) {
+            addEntry(writtenCount, written);
+            lastIndexed = written;
+        }
+        written += length;
+        writtenCount++;
+    }
+
+    /** Writes the buffers with as few gathering writes as the channel allows, and the new index entries. */
+    void write(ByteBuffer[] buffers, int n) throws IOException {
+        int first = 0;
+        while (first != n) {
+            channel.write(buffers, first, n - first);
+            while (first != n && !buffers[first].hasRemaining()) {
+                first++;
+            }
+        }
+        writeIndex();
+    }
+
+    void writeIndex() throws IOException {
+        int n = entryCount;
+        if (entriesWritten == n) {
+            return;
+        }
+        ByteBuffer b = ByteBuffer.allocate((n - entriesWritten) * 8);
+        for (int i = entriesWritten; i != n; i++) {
+            b.putLong(entries[i]);
+        }
+        ((Buffer)b).flip();
+        while (b.hasRemaining()) {
+            indexChannel.write(b);
+        }
+        entriesWritten = n;
+    }
+
+    /** Makes what was written so far visible to the readers. */
+    void commit() {
+        size = written;
+        count = writtenCount;
+        lastModified = System.currentTimeMillis();
+    }
+
+    /** Stops appending to this segment. */
+    void seal() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            indexChannel.close();
+            channel = null;
+            indexChannel = null;
+        }
+    }
+
+    /** Deletes the files, readers which opened the log already can keep reading it on most platforms. */
+    void delete() {
+        try {
+            Files.deleteIfExists(log);
+            Files.deleteIfExists(index);
+        } catch (IOException ex) {
+            // It comes back as the oldest segment on the next start, and is deleted then
+        }
+    }
+}
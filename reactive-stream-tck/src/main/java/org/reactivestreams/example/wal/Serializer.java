@@ -0,0 +1,26 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.wal;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Turns the items of a {@link WriteAheadLogPublisher} into the bytes of its records and back.
+ *
+ * @param <T> the element type
+ */
+public interface Serializer<T> {
+    /**
+     * @param item the item to serialize, not null
+     * @return the bytes of the record, which must not be modified afterwards
+     */
+    byte[] serialize(T item);
+
+    /**
+     * @param bytes the bytes of a record, from its position up to its limit, only valid during this call
+     * @return the item, not null
+     */
+    T deserialize(ByteBuffer bytes);
+}
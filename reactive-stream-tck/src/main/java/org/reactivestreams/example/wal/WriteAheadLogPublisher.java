@@ -0,0 +1,674 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.wal;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.reactivestreams.example.multicast.MulticastPublisher;
+import org.reactivestreams.example.multicast.SubscriberRegistry;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.CRC32;
+
+/**
+ * A durable {@link Publisher} which, unlike the in-memory {@link MulticastPublisher}, appends every item offered
+ * to it to a log of files in a directory, and lets each {@link Subscriber} start at any offset still in the log.
+ * <p>
+ * Items are turned into records by a {@link Serializer} on the offering thread, and every item gets the next offset,
+ * starting at 0. A single writer on the provided {@link Executor} appends all records offered since its last write
+ * with one gathering write, and forces them to the storage device with one {@code force}, if asked to: this group
+ * commit amortizes the cost of the {@code force} over however many items were offered concurrently. Only then are
+ * the items visible to the {@link Subscriber}s, and the futures {@link #offer(Object)} returned complete.
+ * <p>
+ * The log is split into segments of about {@code segmentBytes}, each with a sparse index, so a {@link Subscriber}
+ * finds where to start reading for any offset with binary searches, and then reads sequentially with large reads.
+ * The most recently committed items are also kept in memory, so a {@link Subscriber} which keeps up with the log
+ * switches from reading the files to receiving the live items without deserializing them.
+ * Whole segments are deleted once the log exceeds {@code retentionBytes} or they are older than {@code retentionAge},
+ * a {@link Subscriber} which needs an offset which has been deleted is signalled an {@link IllegalStateException}.
+ * <p>
+ * Opening a directory which holds a log continues it, after truncating whatever an interrupted write left behind.
+ *
+ * @param <T> the element type
+ */
+public final class WriteAheadLogPublisher<T> implements Publisher<T>, AutoCloseable {
+
+    static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    /** The number of the latest items kept in memory for the {@link Subscriber}s which keep up. */
+    static final int TAIL_SIZE = 1024;
+
+    static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    final Path directory;
+    final Serializer<T> serializer;
+    final Executor executor;
+    final long segmentBytes;
+    final long retentionBytes;
+    final long retentionMillis;
+    final boolean force;
+
+    final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<Long, Segment>();
+
+    /** The segment being appended to, only accessed by the writer. */
+    Segment active;
+
+    // The fields below are guarded by this
+
+    List<Record<T>> pending = new ArrayList<Record<T>>();
+    long nextOffset;
+    boolean closed;
+
+    final AtomicInteger wip = new AtomicInteger();
+
+    final Runnable writer = new Runnable() {
+        @Override
+        public void run() {
+            writeAll();
+        }
+    };
+
+    /** The offset after the last item that has been written, and forced if asked to. */
+    volatile long committed;
+
+    volatile boolean done;
+    Throwable error;
+
+    /** The latest committed items, at their offset modulo {@link #TAIL_SIZE}. */
+    final AtomicReferenceArray<T> tail = new AtomicReferenceArray<T>(TAIL_SIZE);
+
+    /** The offset after the last item stored in {@link #tail}, updated before it is stored. */
+    volatile long tailWritten;
+
+    /** The first offset of this run, the items before it are only in the files. */
+    final long tailStart;
+
+    final CompletableFuture<Void> terminated = new CompletableFuture<Void>();
+
+    @SuppressWarnings("unchecked")
+    final SubscriberRegistry<LogSubscription<T>> subscribers =
+            new SubscriberRegistry<LogSubscription<T>>(new LogSubscription[0]);
+
+    WriteAheadLogPublisher(Path directory, Serializer<T> serializer, Executor executor, long segmentBytes,
+                           long retentionBytes, long retentionMillis, boolean force) throws IOException {
+        this.directory = directory;
+        this.serializer = serializer;
+        this.executor = executor;
+        this.segmentBytes = segmentBytes;
+        this.retentionBytes = retentionBytes;
+        this.retentionMillis = retentionMillis;
+        this.force = force;
+        recover();
+        this.tailStart = this.tailWritten = this.committed = this.nextOffset;
+    }
+
+    /**
+     * Opens the log in the given directory, creating it if necessary, with segments of 64 MiB, no retention limits,
+     * and forcing every write.
+     * @param directory where the segments are stored
+     * @param serializer turns the items into records and back
+     * @param executor where the writer and the {@link Subscriber}s run
+     * @return the publisher, continuing the log in the directory
+     * @throws IOException if the log can't be opened
+     */
+    public static <T> WriteAheadLogPublisher<T> open(Path directory, Serializer<T> serializer, Executor executor) throws IOException {
+        return open(directory, serializer, executor, DEFAULT_SEGMENT_BYTES, Long.MAX_VALUE, Long.MAX_VALUE, TimeUnit.MILLISECONDS, true);
+    }
+
+    /**
+     * @param directory where the segments are stored
+     * @param serializer turns the items into records and back
+     * @param executor where the writer and the {@link Subscriber}s run
+     * @param segmentBytes the size after which a new segment is started
+     * @param retentionBytes the size of the log after which the oldest segments are deleted, {@code Long.MAX_VALUE} for no limit
+     * @param retentionAge how long after their last write segments are deleted, {@code Long.MAX_VALUE} for no limit
+     * @param unit the unit of {@code retentionAge}
+     * @param force whether the records are forced to the storage device before they are committed
+     * @return the publisher, continuing the log in the directory
+     * @throws IOException if the log can't be opened
+     */
+    public static <T> WriteAheadLogPublisher<T> open(Path directory, Serializer<T> serializer, Executor executor, long segmentBytes,
+                                                     long retentionBytes, long retentionAge, TimeUnit unit, boolean force) throws IOException {
+        if (directory == null) throw new NullPointerException("directory is null");
+        if (serializer == null) throw new NullPointerException("serializer is null");
+        if (executor == null) throw new NullPointerException("executor is null");
+        if (unit == null) throw new NullPointerException("unit is null");
+        if (segmentBytes < 1L || segmentBytes > Integer.MAX_VALUE) throw new IllegalArgumentException("segmentBytes must be positive and fit into an int but was " + segmentBytes);
+        if (retentionBytes < 0L) throw new IllegalArgumentException("retentionBytes must not be negative but was " + retentionBytes);
+        if (retentionAge < 0L) throw new IllegalArgumentException("retentionAge must not be negative but was " + retentionAge);
+        return new WriteAheadLogPublisher<T>(directory, serializer, executor, segmentBytes, retentionBytes,
+                retentionAge == Long.MAX_VALUE ? Long.MAX_VALUE : unit.toMillis(retentionAge), force);
+    }
+
+    void recover() throws IOException {
+        Files.createDirectories(directory);
+        List<Long> bases = new ArrayList<Long>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + Segment.LOG_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    bases.add(Long.parseLong(name.substring(0, name.length() - Segment.LOG_SUFFIX.length())));
+                } catch (NumberFormatException ex) {
+                    // Not one of ours
+                }
+            }
+        }
+        Collections.sort(bases);
+        for (int i = 0; i < bases.size(); i++) {
+            boolean last = i == bases.size() - 1;
+            Segment s = Segment.recover(directory, bases.get(i), last);
+            if (!last) {
+                s.count = (int)(bases.get(i + 1) - s.base);
+            }
+            segments.put(s.base, s);
+        }
+        if (segments.isEmpty()) {
+            active = Segment.create(directory, 0L);
+            segments.put(0L, active);
+        } else {
+            active = segments.lastEntry().getValue();
+        }
+        nextOffset = active.base + active.count;
+    }
+
+    /**
+     * Appends the item to the log, the {@link Subscriber}s receive it once it has been committed.
+     * @param item the item to append, not null
+     * @return a future which completes with the offset of the item once it has been committed, or exceptionally
+     *         if the log is closed or writing it failed
+     */
+    public CompletableFuture<Long> offer(T item) {
+        if (item == null) throw new NullPointerException("item is null");
+        // Serialize and checksum on the offering thread, so the writer only writes
+        byte[] bytes = serializer.serialize(item);
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        ByteBuffer header = ByteBuffer.allocate(Segment.HEADER_SIZE);
+        header.putInt(bytes.length).putInt((int)crc.getValue());
+        ((Buffer)header).flip();
+        Record<T> r = new Record<T>(item, header, ByteBuffer.wrap(bytes));
+        synchronized (this) {
+            if (closed) {
+                r.future.completeExceptionally(error != null ? error : new IllegalStateException("The log is closed"));
+                return r.future;
+            }
+            r.offset = nextOffset++;
+            pending.add(r);
+        }
+        drainWriter();
+        return r.future;
+    }
+
+    void drainWriter() {
+        if (wip.getAndIncrement() == 0) {
+            executor.execute(writer);
+        }
+    }
+
+    void writeAll() {
+        int missed = 1;
+        for (;;) {
+            List<Record<T>> batch;
+            boolean close;
+            synchronized (this) {
+                batch = pending;
+                if (!batch.isEmpty()) {
+                    pending = new ArrayList<Record<T>>();
+                }
+                close = closed;
+            }
+            if (!done) {
+                if (!batch.isEmpty()) {
+                    try {
+                        append(batch);
+                    } catch (Throwable ex) {
+                        fail(ex, batch);
+                    }
+                }
+                if (close && !done) {
+                    try {
+                        active.seal();
+                    } catch (IOException ex) {
+                        error = ex;
+                    }
+                    terminate();
+                }
+            }
+
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) {
+                break;
+            }
+        }
+    }
+
+    /** Writes a batch of records, rolling over to new segments as they fill up, and commits them. */
+    void append(List<Record<T>> batch) throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[batch.size() * 2];
+        int n = 0;
+        Segment s = active;
+        for (Record<T> r : batch) {
+            int length = r.header.remaining() + r.body.remaining();
+            if (s.writtenCount != 0 && s.written + length > segmentBytes) {
+                s.write(buffers, n);
+                n = 0;
+                s = roll(s);
+            }
+            s.append(length);
+            buffers[n++] = r.header;
+            buffers[n++] = r.body;
+        }
+        s.write(buffers, n);
+        if (force) {
+            s.channel.force(false);
+        }
+        s.commit();
+
+        for (Record<T> r : batch) {
+            tailWritten = r.offset + 1;
+            tail.set((int)r.offset & (TAIL_SIZE - 1), r.item);
+        }
+        committed = batch.get(batch.size() - 1).offset + 1;
+        retain();
+        for (Record<T> r : batch) {
+            r.future.complete(r.offset);
+        }
+        SubscriberRegistry.View<LogSubscription<T>> inners = subscribers.view();
+        for (int i = 0; i < inners.length(); i++) {
+            LogSubscription<T> inner = inners.get(i);
+            if (inner != null) {
+                inner.drain();
+            }
+        }
+    }
+
+    Segment roll(Segment s) throws IOException {
+        if (force) {
+            s.channel.force(false);
+        }
+        s.commit();
+        s.seal();
+        Segment next = Segment.create(directory, s.base + s.count);
+        segments.put(next.base, next);
+        active = next;
+        return next;
+    }
+
+    /** Deletes the oldest segments until the log is within its retention limits again, never the active one. */
+    void retain() {
+        if (retentionBytes == Long.MAX_VALUE && retentionMillis == Long.MAX_VALUE) {
+            return;
+        }
+        long total = 0L;
+        for (Segment s : segments.values()) {
+            total += s.size;
+        }
+        long now = System.currentTimeMillis();
+        for (;;) {
+            Map.Entry<Long, Segment> first = segments.firstEntry();
+            Segment s = first.getValue();
+            if (s == active || (total <= retentionBytes && now - s.lastModified <= retentionMillis)) {
+                break;
+            }
+            segments.remove(first.getKey());
+            total -= s.size;
+            s.delete();
+        }
+    }
+
+    void fail(Throwable ex, List<Record<T>> batch) {
+        List<Record<T>> rest;
+        synchronized (this) {
+            error = ex;
+            closed = true;
+            rest = pending;
+            pending = new ArrayList<Record<T>>();
+        }
+        for (Record<T> r : batch) {
+            r.future.completeExceptionally(ex); // Those which were committed before the failure stay completed
+        }
+        for (Record<T> r : rest) {
+            r.future.completeExceptionally(ex);
+        }
+        try {
+            active.seal();
+        } catch (IOException ignored) {
+            // We are already failing with `ex`
+        }
+        terminate();
+    }
+
+    /** Lets the {@link Subscriber}s complete once they have read everything that was committed. */
+    void terminate() {
+        done = true;
+        for (LogSubscription<T> inner : subscribers.terminate()) {
+            inner.drain();
+        }
+        terminated.complete(null);
+    }
+
+    /**
+     * Stops accepting items, waits until everything offered before has been committed, and closes the log.
+     * The {@link Subscriber}s complete once they have received everything, or fail if writing failed.
+     * As the writer runs on the {@link Executor}, this must not be called from a task which keeps it from running.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        drainWriter();
+        terminated.join();
+    }
+
+    /** @return the offset of the oldest item still in the log */
+    public long earliestOffset() {
+        return segments.firstKey();
+    }
+
+    /** @return the offset the next committed item will have, new {@link Subscriber}s start here by default */
+    public long committedOffset() {
+        return committed;
+    }
+
+    /** Subscribes to the items committed from now on. */
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        subscribe(subscriber, committed);
+    }
+
+    /**
+     * Subscribes to the items from the given offset on: the items already in the log are read from its files,
+     * and then the live items follow.
+     * @param subscriber the {@link Subscriber} to replay the log to
+     * @param offset the offset of the first item to receive, at most the offset of the next item offered
+     */
+    public void subscribe(Subscriber<? super T> subscriber, long offset) {
+        if (subscriber == null) throw new NullPointerException("subscriber is null");
+        LogSubscription<T> inner = new LogSubscription<T>(subscriber, this, offset);
+        long next;
+        synchronized (this) {
+            next = nextOffset;
+        }
+        if (offset < 0L || offset > next) {
+            inner.invalidOffset = new IllegalArgumentException("offset must be between 0 and " + next + " but was " + offset);
+        } else if (!done) {
+            // Once done, the subscriber reads the log and terminates without being registered
+            inner.slot = subscribers.add(inner);
+        }
+        inner.drain();
+    }
+
+    public boolean hasSubscribers() {
+        return subscribers.size() != 0;
+    }
+
+    void remove(LogSubscription<T> inner) {
+        subscribers.remove(inner.slot, inner);
+    }
+
+    /** @return the item at the given committed offset if it is still in memory, null otherwise */
+    T tailItem(long offset) {
+        if (offset < tailStart) {
+            return null;
+        }
+        T v = tail.get((int)offset & (TAIL_SIZE - 1));
+        // Read after the item: if it has been overwritten by a later one meanwhile, this tells
+        if (tailWritten - TAIL_SIZE > offset) {
+            return null;
+        }
+        return v;
+    }
+
+    static final class Record<T> {
+        final T item;
+        final ByteBuffer header;
+        final ByteBuffer body;
+        final CompletableFuture<Long> future = new CompletableFuture<Long>();
+        long offset;
+
+        Record(T item, ByteBuffer header, ByteBuffer body) {
+            this.item = item;
+            this.header = header;
+            this.body = body;
+        }
+    }
+
+    static final class LogSubscription<T> implements Subscription, Runnable {
+
+        final Subscriber<? super T> actual;
+        final WriteAheadLogPublisher<T> parent;
+
+        volatile boolean badRequest;
+        final AtomicBoolean cancelled = new AtomicBoolean();
+
+        /** Set if the subscriber asked for an offset outside of the log, it is signalled after onSubscribe. */
+        Throwable invalidOffset;
+
+        boolean subscribed;
+        long emitted;
+
+        /** The offset of the next item to emit. */
+        long offset;
+
+        // The fields below are for reading the files, the reader is at `readerOffset` in `segment`
+
+        Segment segment;
+        FileChannel channel;
+        RecordReader reader;
+        long readerOffset;
+
+        final AtomicLong requested = new AtomicLong();
+
+        final AtomicInteger wip = new AtomicInteger();
+
+        /** The handle of this subscription in {@link #parent}'s registry. */
+        volatile int slot = SubscriberRegistry.TERMINATED;
+
+        LogSubscription(Subscriber<? super T> actual, WriteAheadLogPublisher<T> parent, long offset) {
+            this.actual = actual;
+            this.parent = parent;
+            this.offset = offset;
+        }
+
+        void drain() {
+            if (wip.getAndIncrement() == 0) {
+                parent.executor.execute(this);
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0L) {
+                badRequest = true;
+            } else {
+                for (;;) {
+                    long r = requested.get();
+                    long u = r + n;
+                    if (u < 0) {
+                        u = Long.MAX_VALUE;
+                    }
+                    if (requested.compareAndSet(r, u)) {
+                        break;
+                    }
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled.compareAndSet(false, true)) {
+                parent.remove(this);
+                drain(); // Closes the file
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            Subscriber<? super T> a = actual;
+            WriteAheadLogPublisher<T> p = parent;
+
+            for (;;) {
+
+                if (!subscribed) {
+                    subscribed = true;
+                    a.onSubscribe(this);
+                    if (invalidOffset != null && cancelled.compareAndSet(false, true)) {
+                        a.onError(invalidOffset);
+                    }
+                }
+
+                if (cancelled.get()) {
+                    closeFile();
+                } else {
+                    long r = requested.get();
+                    long e = emitted;
+
+                    for (;;) {
+                        if (cancelled.get()) {
+                            closeFile();
+                            break;
+                        }
+
+                        if (badRequest) {
+                            terminate();
+                            a.onError(new IllegalArgumentException("§3.9 violated: request was not positive"));
+                            break;
+                        }
+
+                        // Read done before committed, so no item committed before termination is missed
+                        boolean d = p.done;
+                        if (offset >= p.committed) {
+                            if (d) {
+                                terminate();
+                                Throwable ex = p.error;
+                                if (ex != null) {
+                                    a.onError(ex);
+                                } else {
+                                    a.onComplete();
+                                }
+                            }
+                            break;
+                        }
+
+                        if (e == r) {
+                            break;
+                        }
+
+                        T v;
+                        try {
+                            v = read(offset);
+                        } catch (Throwable ex) {
+                            terminate();
+                            a.onError(ex);
+                            break;
+                        }
+                        offset++;
+
+                        a.onNext(v);
+
+                        e++;
+                    }
+
+                    emitted = e;
+                }
+
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+
+        void terminate() {
+            cancelled.lazySet(true);
+            parent.remove(this);
+            closeFile();
+        }
+
+        /** Takes the item from memory if it is still there, otherwise reads it from the files. */
+        T read(long i) throws IOException {
+            WriteAheadLogPublisher<T> p = parent;
+            T v = p.tailItem(i);
+            if (v != null) {
+                return v;
+            }
+            Segment s = segment;
+            if (s == null || readerOffset != i || i - s.base >= s.count) {
+                seek(i);
+                s = segment;
+            }
+            ByteBuffer body = reader.next(s.size);
+            if (body == null) {
+                throw new IOException("The record at offset " + i + " is incomplete in " + s.log);
+            }
+            readerOffset++;
+            return p.serializer.deserialize(body);
+        }
+
+        /** Positions the reader at the given offset, starting at the nearest index entry before it. */
+        void seek(long i) throws IOException {
+            Map.Entry<Long, Segment> en = parent.segments.floorEntry(i);
+            if (en == null) {
+                throw new IllegalStateException("The item at offset " + i + " has been deleted, the earliest offset is " + parent.earliestOffset());
+            }
+            Segment s = en.getValue();
+            if (s != segment) {
+                closeFile();
+                channel = FileChannel.open(s.log, StandardOpenOption.READ);
+                segment = s;
+            }
+            long entry = s.lookup((int)(i - s.base));
+            long position = entry & 0xFFFFFFFFL;
+            if (reader == null) {
+                reader = new RecordReader(channel, position, READ_BUFFER_SIZE);
+            } else {
+                reader.reset(channel, position);
+            }
+            readerOffset = s.base + (entry >>> 32);
+            while (readerOffset != i) {
+                if (reader.next(s.size) == null) {
+                    throw new IOException("The record at offset " + readerOffset + " is incomplete in " + s.log);
+                }
+                readerOffset++;
+            }
+        }
+
+        void closeFile() {
+            FileChannel c = channel;
+            if (c != null) {
+                channel = null;
+                segment = null;
+                try {
+                    c.close();
+                } catch (IOException ignored) {
+                    // We only read from it
+                }
+            }
+        }
+    }
+}
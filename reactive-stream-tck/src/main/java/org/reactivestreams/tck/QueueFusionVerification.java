@@ -0,0 +1,219 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.tck;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.QueueSubscription;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * Provides tests for verifying that a {@code Publisher} whose {@code Subscription} is a {@link QueueSubscription}
+ * signals exactly the same elements, and the same terminal signal, whether the {@code Subscriber} fuses or not.
+ * Tests for a fusion mode which the {@code Publisher} doesn't grant are skipped.
+ *
+ * @see org.reactivestreams.QueueSubscription
+ */
+public abstract class QueueFusionVerification<T> {
+
+  private final TestEnvironment env;
+
+  public QueueFusionVerification(TestEnvironment env) {
+    this.env = env;
+  }
+
+  /**
+   * It must create a Publisher for a stream with exactly the given number of elements, every time with the same elements.
+   */
+  public abstract Publisher<T> createPublisher(long elements);
+
+  /**
+   * It must create a Publisher which hands out a subscription and then fails, possibly after some elements.
+   * If you ignore these tests, return {@code null} from this method.
+   */
+  public abstract Publisher<T> createFailedPublisher();
+
+  /**
+   * Override and return a lower value if your Publisher can't produce as many elements, the tests use up to 1000.
+   */
+  public long maxElementsFromPublisher() {
+    return Long.MAX_VALUE - 1;
+  }
+
+  // The signals a Subscriber has received, the elements followed by the terminal signal
+  static final class Recorder<T> implements Subscriber<T> {
+    static final String COMPLETE = "onComplete";
+
+    final int mode; // The mode requested, NONE for an unfused Subscriber
+    final List<Object> signals = Collections.synchronizedList(new ArrayList<Object>());
+    final CountDownLatch subscribed = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(1);
+    volatile String violation;
+    volatile QueueSubscription<T> fused;
+    volatile int granted = -1;
+    Subscription subscription;
+    long outstanding;
+
+    Recorder(int mode) {
+      this.mode = mode;
+    }
+
+    @Override @SuppressWarnings("unchecked") public void onSubscribe(Subscription s) {
+      subscription = s;
+      if (mode != QueueSubscription.NONE && s instanceof QueueSubscription) {
+        final QueueSubscription<T> qs = (QueueSubscription<T>) s;
+        granted = qs.requestFusion(mode);
+        if (granted != QueueSubscription.NONE && granted != mode) {
+          violation = "Requested mode " + mode + " but was granted " + granted;
+        }
+        if (granted == mode) {
+          fused = qs;
+        }
+      } else {
+        granted = QueueSubscription.NONE;
+      }
+      if (granted == QueueSubscription.SYNC) {
+        subscribed.countDown(); // The test polls on its own thread from here
+        return;
+      }
+      if (granted == QueueSubscription.ASYNC) {
+        s.request(Long.MAX_VALUE);
+      } else {
+        outstanding = 7; // Requests in small chunks, so the unfused path has to deal with demand as well
+        s.request(outstanding);
+      }
+      subscribed.countDown();
+    }
+
+    @Override public void onNext(T t) {
+      if (granted == QueueSubscription.ASYNC) {
+        if (t != null) {
+          violation = "onNext was signalled with an element in ASYNC mode: " + t;
+        }
+        drainAsync();
+        return;
+      }
+      signals.add(t);
+      if (--outstanding == 0) {
+        outstanding = 7;
+        subscription.request(outstanding);
+      }
+    }
+
+    void drainAsync() {
+      try {
+        for (;;) {
+          final T t = fused.poll();
+          if (t == null) {
+            return;
+          }
+          signals.add(t);
+        }
+      } catch (Throwable ex) {
+        violation = "poll threw in ASYNC mode: " + ex;
+      }
+    }
+
+    @Override public void onError(Throwable t) {
+      if (granted == QueueSubscription.ASYNC) {
+        drainAsync();
+      }
+      signals.add(t.getClass().getName());
+      done.countDown();
+    }
+
+    @Override public void onComplete() {
+      if (granted == QueueSubscription.ASYNC) {
+        drainAsync();
+      }
+      signals.add(COMPLETE);
+      done.countDown();
+    }
+
+    // Polls a SYNC fused Subscription on the calling thread
+    void drainSync() {
+      try {
+        for (;;) {
+          final T t = fused.poll();
+          if (t == null) {
+            signals.add(COMPLETE);
+            break;
+          }
+          signals.add(t);
+        }
+      } catch (Throwable ex) {
+        signals.add(ex.getClass().getName());
+      }
+      done.countDown();
+    }
+  }
+
+  // Subscribes with the given mode and returns the signals, or `null` if the mode was not granted
+  List<Object> signals(Publisher<T> publisher, int mode) throws InterruptedException {
+    final Recorder<T> recorder = new Recorder<T>(mode);
+    publisher.subscribe(recorder);
+    assertTrue(recorder.subscribed.await(env.defaultTimeoutMillis(), TimeUnit.MILLISECONDS), "Did not receive onSubscribe");
+    if (recorder.violation != null) fail(recorder.violation);
+    if (mode != QueueSubscription.NONE && recorder.granted != mode) {
+      return null;
+    }
+    if (mode == QueueSubscription.SYNC) {
+      recorder.drainSync();
+    }
+    assertTrue(recorder.done.await(env.defaultTimeoutMillis() * 10, TimeUnit.MILLISECONDS), "Did not receive a terminal signal");
+    if (recorder.violation != null) fail(recorder.violation);
+    return new ArrayList<Object>(recorder.signals);
+  }
+
+  void verifySameSignals(int mode) throws Throwable {
+    for (long elements : new long[] { 0, 1, 10, 1000 }) {
+      if (elements > maxElementsFromPublisher()) break;
+      final List<Object> unfused = signals(createPublisher(elements), QueueSubscription.NONE);
+      final List<Object> fused = signals(createPublisher(elements), mode);
+      if (fused == null) throw new SkipException("The Publisher doesn't grant this fusion mode");
+      assertEquals(fused, unfused, "Different signals for a stream of " + elements + " elements");
+    }
+  }
+
+  void verifySameFailure(int mode) throws Throwable {
+    if (createFailedPublisher() == null) throw new SkipException("No failed Publisher");
+    final List<Object> unfused = signals(createFailedPublisher(), QueueSubscription.NONE);
+    final List<Object> fused = signals(createFailedPublisher(), mode);
+    if (fused == null) throw new SkipException("The Publisher doesn't grant this fusion mode");
+    assertEquals(fused, unfused, "Different signals for a failed stream");
+  }
+
+  @Test
+  public void optional_syncFusedMustSignalTheSameAsUnfused() throws Throwable {
+    verifySameSignals(QueueSubscription.SYNC);
+  }
+
+  @Test
+  public void optional_asyncFusedMustSignalTheSameAsUnfused() throws Throwable {
+    verifySameSignals(QueueSubscription.ASYNC);
+  }
+
+  @Test
+  public void optional_syncFusedMustFailTheSameAsUnfused() throws Throwable {
+    verifySameFailure(QueueSubscription.SYNC);
+  }
+
+  @Test
+  public void optional_asyncFusedMustFailTheSameAsUnfused() throws Throwable {
+    verifySameFailure(QueueSubscription.ASYNC);
+  }
+}
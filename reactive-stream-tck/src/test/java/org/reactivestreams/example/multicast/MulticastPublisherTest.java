@@ -0,0 +1,357 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.multicast;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.reactivestreams.example.wal.Serializer;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+@Test // Must be here for TestNG to find and run this, do not remove
+public class MulticastPublisherTest {
+
+  private ExecutorService e;
+  private Path dir;
+  @BeforeClass void before() throws IOException { e = Executors.newFixedThreadPool(4); dir = Files.createTempDirectory("spill"); }
+  @AfterClass void after() throws IOException { if (e != null) e.shutdown(); if (dir != null) Files.delete(dir); }
+
+  static final Serializer<Integer> INTS = new Serializer<Integer>() {
+    @Override public byte[] serialize(Integer item) { return ByteBuffer.allocate(4).putInt(item).array(); }
+    @Override public Integer deserialize(ByteBuffer bytes) { return bytes.getInt(); }
+  };
+
+  int spillFiles() throws IOException {
+    int n = 0;
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+      for (Path ignored : files) n++;
+    }
+    return n;
+  }
+
+  static final Executor INLINE = new Executor() {
+    @Override public void execute(Runnable command) { command.run(); }
+  };
+
+  // Records what it receives and lets the test decide how much to request
+  static final class RecordingSubscriber<T> implements Subscriber<T> {
+    final List<T> items = new ArrayList<T>();
+    final CountDownLatch done = new CountDownLatch(1);
+    final long initialRequest;
+    volatile Subscription subscription;
+    volatile Throwable error;
+    RecordingSubscriber(long initialRequest) { this.initialRequest = initialRequest; }
+    @Override public void onSubscribe(Subscription s) { subscription = s; if (initialRequest > 0) s.request(initialRequest); }
+    @Override public void onNext(T t) { items.add(t); }
+    @Override public void onError(Throwable t) { error = t; done.countDown(); }
+    @Override public void onComplete() { done.countDown(); }
+  }
+
+  @Test public void tryOfferIsAllOrNothing() {
+    MulticastPublisher<Integer> p = new MulticastPublisher<Integer>(INLINE, 2);
+    RecordingSubscriber<Integer> fast = new RecordingSubscriber<Integer>(Long.MAX_VALUE);
+    RecordingSubscriber<Integer> slow = new RecordingSubscriber<Integer>(0);
+    p.subscribe(fast);
+    p.subscribe(slow);
+
+    assertTrue(p.tryOffer(1));
+    assertTrue(p.tryOffer(2));
+    assertFalse(p.tryOffer(3)); // The slow subscriber's buffer is full, so the fast one doesn't get it either
+
+    slow.subscription.request(1);
+    assertTrue(p.tryOffer(4));
+
+    p.complete();
+    slow.subscription.request(Long.MAX_VALUE);
+
+    assertEquals(fast.items, Arrays.asList(1, 2, 4));
+    assertEquals(slow.items, Arrays.asList(1, 2, 4));
+    assertEquals(fast.done.getCount(), 0L);
+    assertEquals(slow.done.getCount(), 0L);
+  }
+
+  // Offers 1 to 5 to a fast subscriber and a slow one with a buffer of 2, then lets the slow one catch up
+  RecordingSubscriber<Integer> overflow(OverflowStrategy strategy, long expectedDrops) {
+    MulticastPublisher<Integer> p = new MulticastPublisher<Integer>(INLINE, 2);
+    RecordingSubscriber<Integer> fast = new RecordingSubscriber<Integer>(Long.MAX_VALUE);
+    RecordingSubscriber<Integer> slow = new RecordingSubscriber<Integer>(0);
+    p.subscribe(fast);
+    MulticastPublisher.OverflowSubscription subscription = p.subscribe(slow, strategy);
+    assertEquals(subscription.overflowStrategy(), strategy);
+
+    for (int i = 1; i <= 5; i++) {
+      assertTrue(p.tryOffer(i));
+    }
+    p.complete();
+    slow.subscription.request(Long.MAX_VALUE);
+
+    assertEquals(fast.items, Arrays.asList(1, 2, 3, 4, 5));
+    assertEquals(fast.done.getCount(), 0L);
+    assertEquals(slow.done.getCount(), 0L);
+    assertEquals(subscription.droppedCount(), expectedDrops);
+    return slow;
+  }
+
+  @Test public void dropOldest() {
+    assertEquals(overflow(OverflowStrategy.DROP_OLDEST, 3).items, Arrays.asList(4, 5));
+  }
+
+  @Test public void dropNewest() {
+    assertEquals(overflow(OverflowStrategy.DROP_NEWEST, 3).items, Arrays.asList(1, 2));
+  }
+
+  @Test public void keepLatest() {
+    assertEquals(overflow(OverflowStrategy.KEEP_LATEST, 2).items, Arrays.asList(1, 2, 5));
+  }
+
+  @Test public void errorDisconnectsOnlyTheSlowSubscriber() {
+    RecordingSubscriber<Integer> slow = overflow(OverflowStrategy.ERROR, 1);
+    assertEquals(slow.items, Collections.<Integer>emptyList());
+    assertTrue(slow.error instanceof IllegalStateException);
+  }
+
+  @Test public void spillDeliversEverythingInOrder() throws IOException {
+    MulticastPublisher<Integer> p = new MulticastPublisher<Integer>(INLINE, 2);
+    RecordingSubscriber<Integer> fast = new RecordingSubscriber<Integer>(Long.MAX_VALUE);
+    RecordingSubscriber<Integer> slow = new RecordingSubscriber<Integer>(0);
+    p.subscribe(fast);
+    MulticastPublisher.SpillSubscription subscription = p.subscribe(slow, INTS, dir);
+    assertEquals(subscription.overflowStrategy(), OverflowStrategy.SPILL);
+
+    for (int i = 1; i <= 10; i++) {
+      assertTrue(p.tryOffer(i));
+    }
+    assertEquals(subscription.spilledBytes(), 8 * 8L); // 3 to 10, each with its length in front
+
+    slow.subscription.request(3);
+    assertEquals(slow.items, Arrays.asList(1, 2, 3));
+    // There is room in the buffer again, but this must still come after the spilled items
+    assertTrue(p.tryOffer(11));
+    p.complete();
+    slow.subscription.request(Long.MAX_VALUE);
+
+    assertEquals(fast.items, Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11));
+    assertEquals(slow.items, Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11));
+    assertEquals(slow.done.getCount(), 0L);
+    assertEquals(subscription.droppedCount(), 0L);
+    assertTrue(subscription.spillReads() > 0L);
+    assertEquals(spillFiles(), 0); // Nothing is left behind once the subscriber is done
+  }
+
+  @Test public void spillKeepsUpWithAFastProducer() throws Exception {
+    final int n = 200000;
+    final MulticastPublisher<Integer> p = new MulticastPublisher<Integer>(e, 16);
+    // Requests in small bites, so it lags far behind, and the spill file is emptied and refilled in between
+    final List<Integer> items = new ArrayList<Integer>();
+    final CountDownLatch done = new CountDownLatch(1);
+    final Throwable[] error = new Throwable[1];
+    MulticastPublisher.SpillSubscription subscription = p.subscribe(new Subscriber<Integer>() {
+      Subscription s;
+      @Override public void onSubscribe(Subscription s) { this.s = s; s.request(64); }
+      @Override public void onNext(Integer t) { items.add(t); if (items.size() % 64 == 0) s.request(64); }
+      @Override public void onError(Throwable t) { error[0] = t; done.countDown(); }
+      @Override public void onComplete() { done.countDown(); }
+    }, INTS, dir);
+
+    for (int i = 0; i < n; i++) {
+      assertTrue(p.tryOffer(i)); // Never rejected, however far behind the subscriber is
+    }
+    p.complete();
+
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertEquals(error[0], null);
+    assertEquals(items.size(), n);
+    for (int i = 0; i < n; i++) {
+      assertEquals(items.get(i).intValue(), i);
+    }
+    assertTrue(subscription.spilledBytes() > 0L);
+    assertEquals(spillFiles(), 0);
+  }
+
+  @Test public void blockTimesOutIntoReject() throws InterruptedException {
+    MulticastPublisher<Integer> p = new MulticastPublisher<Integer>(INLINE, 2);
+    RecordingSubscriber<Integer> fast = new RecordingSubscriber<Integer>(Long.MAX_VALUE);
+    final RecordingSubscriber<Integer> slow = new RecordingSubscriber<Integer>(0);
+    p.subscribe(fast);
+    p.subscribe(slow, OverflowStrategy.BLOCK, 10, TimeUnit.MILLISECONDS);
+
+    assertTrue(p.tryOffer(1));
+    assertTrue(p.tryOffer(2));
+    assertFalse(p.tryOffer(3));
+    assertEquals(fast.items, Arrays.asList(1, 2));
+
+    e.execute(new Runnable() {
+      @Override public void run() {
+        try { Thread.sleep(5); } catch (InterruptedException ignored) { }
+        slow.subscription.request(1);
+      }
+    });
+    assertTrue(p.offer(4, 5, TimeUnit.SECONDS));
+    assertEquals(fast.items, Arrays.asList(1, 2, 4));
+  }
+
+  @Test public void blockOnlyWaitsInOfferWithTimeout() throws InterruptedException {
+    MulticastPublisher<Integer> p = new MulticastPublisher<Integer>(INLINE, 2);
+    RecordingSubscriber<Integer> fast = new RecordingSubscriber<Integer>(Long.MAX_VALUE);
+    RecordingSubscriber<Integer> slow = new RecordingSubscriber<Integer>(0);
+    p.subscribe(fast);
+    p.subscribe(slow, OverflowStrategy.BLOCK, 10, TimeUnit.SECONDS);
+    assertTrue(p.tryOffer(1));
+    assertTrue(p.tryOffer(2));
+
+    long start = System.nanoTime();
+    assertFalse(p.tryOffer(3));
+    assertFalse(p.offer(3));
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5), "tryOffer waited for the BLOCK subscriber");
+
+    // The caller's timeout applies if it is shorter than the subscriber's
+    start = System.nanoTime();
+    assertFalse(p.offer(3, 50, TimeUnit.MILLISECONDS));
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    assertEquals(fast.items, Arrays.asList(1, 2));
+  }
+
+  @Test public void offerWithTimeoutWaitsNoLongerThanTheBlockTimeout() throws InterruptedException {
+    MulticastPublisher<Integer> p = new MulticastPublisher<Integer>(INLINE, 1);
+    p.subscribe(new RecordingSubscriber<Integer>(0), OverflowStrategy.BLOCK, 50, TimeUnit.MILLISECONDS);
+    assertTrue(p.tryOffer(1));
+
+    long start = System.nanoTime();
+    assertFalse(p.offer(2, 10, TimeUnit.SECONDS));
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+  }
+
+  @Test public void offerAfterCompleteIsRejected() throws InterruptedException {
+    MulticastPublisher<Integer> p = new MulticastPublisher<Integer>(INLINE, 2);
+    p.complete();
+    assertFalse(p.tryOffer(1));
+    assertFalse(p.offer(1, 1, TimeUnit.SECONDS));
+  }
+
+  @Test public void offerWithTimeoutWaitsForRoom() throws InterruptedException {
+    MulticastPublisher<Integer> p = new MulticastPublisher<Integer>(e, 1);
+    final RecordingSubscriber<Integer> s = new RecordingSubscriber<Integer>(0);
+    p.subscribe(s);
+    while (s.subscription == null) Thread.yield();
+
+    assertTrue(p.tryOffer(1));
+    assertFalse(p.offer(2, 10, TimeUnit.MILLISECONDS));
+
+    e.execute(new Runnable() {
+      @Override public void run() {
+        try { Thread.sleep(50); } catch (InterruptedException ignored) { }
+        s.subscription.request(Long.MAX_VALUE);
+      }
+    });
+    assertTrue(p.offer(2, 5, TimeUnit.SECONDS));
+    p.complete();
+
+    assertTrue(s.done.await(5, TimeUnit.SECONDS));
+    assertEquals(s.items, Arrays.asList(1, 2));
+  }
+
+  @Test public void subscribersChurnWhileOffering() throws InterruptedException {
+    final int items = 20000;
+    final MulticastPublisher<Integer> p = new MulticastPublisher<Integer>(e, 64);
+    final RecordingSubscriber<Integer> stable = new RecordingSubscriber<Integer>(Long.MAX_VALUE);
+    p.subscribe(stable);
+    while (stable.subscription == null) Thread.yield();
+
+    final CountDownLatch offered = new CountDownLatch(1);
+    Thread[] churners = new Thread[3];
+    for (int t = 0; t < churners.length; t++) {
+      churners[t] = new Thread(new Runnable() {
+        @Override public void run() {
+          while (offered.getCount() != 0) {
+            RecordingSubscriber<Integer> s = new RecordingSubscriber<Integer>(Long.MAX_VALUE);
+            p.subscribe(s);
+            while (s.subscription == null) Thread.yield();
+            s.subscription.cancel();
+          }
+        }
+      });
+      churners[t].start();
+    }
+    for (int i = 0; i < items; i++) {
+      assertTrue(p.offer(i, 10, TimeUnit.SECONDS));
+    }
+    offered.countDown();
+    for (Thread t : churners) t.join();
+    p.complete();
+
+    assertTrue(stable.done.await(10, TimeUnit.SECONDS));
+    assertEquals(stable.items.size(), items);
+    for (int i = 0; i < items; i++) {
+      assertEquals(stable.items.get(i).intValue(), i);
+    }
+  }
+
+  @Test public void concurrentProducersDeliverEverythingToEverySubscriber() throws InterruptedException {
+    final int producers = 4;
+    final int perProducer = 10000;
+    final MulticastPublisher<Integer> p = new MulticastPublisher<Integer>(e, 64);
+    List<RecordingSubscriber<Integer>> subscribers = new ArrayList<RecordingSubscriber<Integer>>();
+    for (int i = 0; i < 3; i++) {
+      RecordingSubscriber<Integer> s = new RecordingSubscriber<Integer>(Long.MAX_VALUE);
+      subscribers.add(s);
+      p.subscribe(s);
+    }
+    for (RecordingSubscriber<Integer> s : subscribers) {
+      while (s.subscription == null) Thread.yield();
+    }
+
+    Thread[] threads = new Thread[producers];
+    for (int t = 0; t < producers; t++) {
+      final int base = t * perProducer;
+      threads[t] = new Thread(new Runnable() {
+        @Override public void run() {
+          try {
+            for (int i = 0; i < perProducer; i++) {
+              assertTrue(p.offer(base + i, 10, TimeUnit.SECONDS));
+            }
+          } catch (InterruptedException ex) {
+            throw new RuntimeException(ex);
+          }
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread t : threads) t.join();
+    p.complete();
+
+    for (RecordingSubscriber<Integer> s : subscribers) {
+      assertTrue(s.done.await(10, TimeUnit.SECONDS));
+      assertEquals(s.items.size(), producers * perProducer);
+      // Each producer's items arrive in the order they were offered
+      int[] last = new int[producers];
+      Arrays.fill(last, -1);
+      for (int v : s.items) {
+        int producer = v / perProducer;
+        assertTrue(v % perProducer > last[producer]);
+        last[producer] = v % perProducer;
+      }
+    }
+  }
+}
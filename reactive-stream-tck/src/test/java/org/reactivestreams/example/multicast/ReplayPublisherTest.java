@@ -0,0 +1,208 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.multicast;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.reactivestreams.example.unicast.NumberIterablePublisher;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+@Test // Must be here for TestNG to find and run this, do not remove
+public class ReplayPublisherTest extends PublisherVerification<Integer> {
+
+  private ExecutorService e;
+  @BeforeClass void before() { e = Executors.newFixedThreadPool(4); }
+  @AfterClass void after() { if (e != null) e.shutdown(); }
+
+  public ReplayPublisherTest() {
+    super(new TestEnvironment());
+  }
+
+  @Override public Publisher<Integer> createPublisher(final long elements) {
+    assert(elements <= maxElementsFromPublisher());
+    ReplayPublisher<Integer> p = ReplayPublisher.boundedByCount(e, (int)elements);
+    for (int i = 0; i < elements; i++) {
+      p.offer(i);
+    }
+    p.complete();
+    return p;
+  }
+
+  @Override public Publisher<Integer> createFailedPublisher() {
+    ReplayPublisher<Integer> p = ReplayPublisher.boundedByCount(e, 16);
+    p.completeExceptionally(new RuntimeException("Error state signal!"));
+    return p;
+  }
+
+  @Override public long maxElementsFromPublisher() {
+    return 1024;
+  }
+
+  static final Executor INLINE = new Executor() {
+    @Override public void execute(Runnable command) { command.run(); }
+  };
+
+  // Records what it receives and lets the test decide how much to request
+  static class RecordingSubscriber<T> implements Subscriber<T> {
+    final List<T> items = new ArrayList<T>();
+    final CountDownLatch done = new CountDownLatch(1);
+    final long initialRequest;
+    volatile Subscription subscription;
+    volatile Throwable error;
+    RecordingSubscriber(long initialRequest) { this.initialRequest = initialRequest; }
+    @Override public void onSubscribe(Subscription s) { subscription = s; if (initialRequest > 0) s.request(initialRequest); }
+    @Override public void onNext(T t) { items.add(t); }
+    @Override public void onError(Throwable t) { error = t; done.countDown(); }
+    @Override public void onComplete() { done.countDown(); }
+  }
+
+  @Test public void lateSubscriberReplaysTheLastItems() {
+    ReplayPublisher<Integer> p = ReplayPublisher.boundedByCount(INLINE, 3);
+    RecordingSubscriber<Integer> early = new RecordingSubscriber<Integer>(Long.MAX_VALUE);
+    p.subscribe(early);
+    for (int i = 0; i < 100; i++) {
+      assertTrue(p.offer(i));
+    }
+    assertEquals(p.historySize(), 3L);
+
+    RecordingSubscriber<Integer> late = new RecordingSubscriber<Integer>(Long.MAX_VALUE);
+    p.subscribe(late);
+    assertTrue(p.offer(100));
+    p.complete();
+    assertFalse(p.offer(101));
+
+    assertEquals(early.items.size(), 101);
+    assertEquals(late.items, Arrays.asList(97, 98, 99, 100));
+    assertEquals(late.done.getCount(), 0L);
+
+    RecordingSubscriber<Integer> afterwards = new RecordingSubscriber<Integer>(Long.MAX_VALUE);
+    p.subscribe(afterwards);
+    assertEquals(afterwards.items, Arrays.asList(98, 99, 100));
+    assertEquals(afterwards.done.getCount(), 0L);
+  }
+
+  @Test public void evictionDoesNotAffectSubscribersWhichAreBehind() {
+    ReplayPublisher<Integer> p = ReplayPublisher.boundedByCount(INLINE, 2);
+    RecordingSubscriber<Integer> slow = new RecordingSubscriber<Integer>(0);
+    p.subscribe(slow);
+    for (int i = 0; i < 3 * ReplayPublisher.SEGMENT_SIZE; i++) {
+      assertTrue(p.offer(i));
+    }
+    p.completeExceptionally(new IllegalStateException());
+    assertEquals(slow.items.size(), 0);
+
+    slow.subscription.request(5);
+    assertEquals(slow.items, Arrays.asList(0, 1, 2, 3, 4));
+    slow.subscription.request(Long.MAX_VALUE);
+    assertEquals(slow.items.size(), 3 * ReplayPublisher.SEGMENT_SIZE);
+    assertTrue(slow.error instanceof IllegalStateException);
+  }
+
+  @Test public void itemsExpireByAge() throws InterruptedException {
+    ReplayPublisher<Integer> p = ReplayPublisher.boundedByAge(INLINE, 50, TimeUnit.MILLISECONDS);
+    p.offer(1);
+    p.offer(2);
+    assertEquals(p.historySize(), 2L);
+    Thread.sleep(100);
+    p.offer(3);
+
+    RecordingSubscriber<Integer> s = new RecordingSubscriber<Integer>(Long.MAX_VALUE);
+    p.subscribe(s);
+    assertEquals(s.items, Arrays.asList(3));
+
+    Thread.sleep(100);
+    assertEquals(p.historySize(), 0L);
+  }
+
+  @Test public void historyIsBoundedByWeight() {
+    ReplayPublisher<String> p = ReplayPublisher.boundedByWeight(INLINE, 10, new ReplayPublisher.Weigher<String>() {
+      @Override public long weigh(String item) { return item.length(); }
+    });
+    p.offer("aaaa");
+    p.offer("bbbb");
+    p.offer("cc");
+    assertEquals(p.historySize(), 3L);
+    p.offer("d");
+    assertEquals(p.historySize(), 3L);
+    p.offer("eeeeeeeeeeee"); // Heavier than the whole history may be
+    assertEquals(p.historySize(), 0L);
+    p.offer("ff");
+    p.complete();
+
+    RecordingSubscriber<String> s = new RecordingSubscriber<String>(Long.MAX_VALUE);
+    p.subscribe(s);
+    assertEquals(s.items, Arrays.asList("ff"));
+    assertEquals(s.done.getCount(), 0L);
+  }
+
+  @Test public void runsTheSourceOnlyOnce() throws InterruptedException {
+    final int[] iterations = new int[1];
+    ReplayPublisher<Integer> p = ReplayPublisher.boundedByCount(e, 100);
+    new NumberIterablePublisher(0, 10, e) {
+      @Override public void subscribe(Subscriber<? super Integer> s) {
+        iterations[0]++;
+        super.subscribe(s);
+      }
+    }.subscribe(p);
+
+    for (int i = 0; i < 3; i++) {
+      RecordingSubscriber<Integer> s = new RecordingSubscriber<Integer>(Long.MAX_VALUE);
+      p.subscribe(s);
+      assertTrue(s.done.await(10, TimeUnit.SECONDS));
+      assertEquals(s.items, Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9));
+    }
+    assertEquals(iterations[0], 1);
+  }
+
+  // Subscribes `p` to a source which only records the calls on its Subscription
+  static List<Object> subscribeToRecordingSource(ReplayPublisher<Integer> p) {
+    final List<Object> calls = new ArrayList<Object>();
+    p.onSubscribe(new Subscription() {
+      @Override public void request(long n) { calls.add(n); }
+      @Override public void cancel() { calls.add("cancel"); }
+    });
+    return calls;
+  }
+
+  @Test public void closeCancelsTheSource() {
+    ReplayPublisher<Integer> p = ReplayPublisher.boundedByCount(INLINE, 16);
+    List<Object> calls = subscribeToRecordingSource(p);
+    p.close();
+    assertEquals(calls, Arrays.<Object>asList(Long.MAX_VALUE, "cancel"));
+    assertEquals(subscribeToRecordingSource(p), Arrays.<Object>asList("cancel")); // A later source is cancelled right away
+  }
+
+  @Test public void completeExceptionallyCancelsTheSource() {
+    ReplayPublisher<Integer> p = ReplayPublisher.boundedByCount(INLINE, 16);
+    List<Object> calls = subscribeToRecordingSource(p);
+    p.completeExceptionally(new IllegalStateException("stop"));
+    assertEquals(calls, Arrays.<Object>asList(Long.MAX_VALUE, "cancel"));
+  }
+
+  @Test public void sourceTerminationDoesNotCancel() {
+    ReplayPublisher<Integer> p = ReplayPublisher.boundedByCount(INLINE, 16);
+    List<Object> calls = subscribeToRecordingSource(p);
+    p.onError(new IllegalStateException("failed")); // As per rule 2.4, the Subscription is considered cancelled already
+    assertEquals(calls, Arrays.<Object>asList(Long.MAX_VALUE));
+  }
+}
@@ -0,0 +1,237 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.multicast;
+
+import org.reactivestreams.BatchSubscriber;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+@Test // Must be here for TestNG to find and run this, do not remove
+public class SharedRingMulticastPublisherTest {
+
+  private ExecutorService e;
+  @BeforeClass void before() { e = Executors.newFixedThreadPool(4); }
+  @AfterClass void after() { if (e != null) e.shutdown(); }
+
+  static final Executor INLINE = new Executor() {
+    @Override public void execute(Runnable command) { command.run(); }
+  };
+
+  // Records what it receives and lets the test decide how much to request
+  static class RecordingSubscriber<T> implements Subscriber<T> {
+    final List<T> items = new ArrayList<T>();
+    final CountDownLatch done = new CountDownLatch(1);
+    final long initialRequest;
+    volatile Subscription subscription;
+    volatile Throwable error;
+    RecordingSubscriber(long initialRequest) { this.initialRequest = initialRequest; }
+    @Override public void onSubscribe(Subscription s) { subscription = s; if (initialRequest > 0) s.request(initialRequest); }
+    @Override public void onNext(T t) { items.add(t); }
+    @Override public void onError(Throwable t) { error = t; done.countDown(); }
+    @Override public void onComplete() { done.countDown(); }
+  }
+
+  @Test public void slowestSubscriberGatesProducers() {
+    SharedRingMulticastPublisher<Integer> p = new SharedRingMulticastPublisher<Integer>(INLINE, 2);
+    RecordingSubscriber<Integer> fast = new RecordingSubscriber<Integer>(Long.MAX_VALUE);
+    RecordingSubscriber<Integer> slow = new RecordingSubscriber<Integer>(0);
+    p.subscribe(fast);
+    p.subscribe(slow);
+
+    assertTrue(p.tryOffer(1));
+    assertTrue(p.tryOffer(2));
+    assertFalse(p.tryOffer(3)); // The slow subscriber hasn't read anything, so the ring is full
+
+    slow.subscription.request(1);
+    assertTrue(p.tryOffer(4));
+    assertFalse(p.tryOffer(5));
+
+    p.complete();
+    assertFalse(p.tryOffer(6));
+    slow.subscription.request(Long.MAX_VALUE);
+
+    assertEquals(fast.items, Arrays.asList(1, 2, 4));
+    assertEquals(slow.items, Arrays.asList(1, 2, 4));
+    assertEquals(fast.done.getCount(), 0L);
+    assertEquals(slow.done.getCount(), 0L);
+  }
+
+  @Test public void cancelledSubscriberNoLongerGates() {
+    SharedRingMulticastPublisher<Integer> p = new SharedRingMulticastPublisher<Integer>(INLINE, 2);
+    RecordingSubscriber<Integer> slow = new RecordingSubscriber<Integer>(0);
+    p.subscribe(slow);
+
+    assertTrue(p.tryOffer(1));
+    assertTrue(p.tryOffer(2));
+    assertFalse(p.tryOffer(3));
+
+    slow.subscription.cancel();
+    assertTrue(p.tryOffer(3));
+    assertFalse(p.hasSubscribers());
+  }
+
+  @Test public void lateSubscriberOnlySeesLaterItems() {
+    SharedRingMulticastPublisher<Integer> p = new SharedRingMulticastPublisher<Integer>(INLINE, 4);
+    assertTrue(p.tryOffer(1));
+    RecordingSubscriber<Integer> s = new RecordingSubscriber<Integer>(Long.MAX_VALUE);
+    p.subscribe(s);
+    assertTrue(p.tryOffer(2));
+    p.completeExceptionally(new IllegalStateException());
+
+    assertEquals(s.items, Arrays.asList(2));
+    assertTrue(s.error instanceof IllegalStateException);
+
+    RecordingSubscriber<Integer> after = new RecordingSubscriber<Integer>(0);
+    p.subscribe(after);
+    assertTrue(after.error instanceof IllegalStateException);
+  }
+
+  @Test public void batchSubscriberReceivesBatches() {
+    SharedRingMulticastPublisher<Integer> p = new SharedRingMulticastPublisher<Integer>(INLINE, 8);
+    final List<Integer> sizes = new ArrayList<Integer>();
+    final RecordingSubscriber<Integer> s = new RecordingSubscriber<Integer>(0);
+    class Batched extends RecordingSubscriber<Integer> implements BatchSubscriber<Integer> {
+      Batched() { super(0); }
+      @Override public void onNextBatch(Object[] batch, int from, int to) {
+        sizes.add(to - from);
+        for (int i = from; i < to; i++) items.add((Integer)batch[i]);
+      }
+      @Override public void onNext(Integer t) { throw new AssertionError("Expected a batch"); }
+    }
+    Batched b = new Batched();
+    p.subscribe(b);
+    for (int i = 0; i < 5; i++) {
+      assertTrue(p.tryOffer(i));
+    }
+    b.subscription.request(3);
+    b.subscription.request(10);
+    p.complete();
+
+    assertEquals(b.items, Arrays.asList(0, 1, 2, 3, 4));
+    assertEquals(sizes, Arrays.asList(3, 2));
+    assertEquals(b.done.getCount(), 0L);
+    assertNull(s.subscription);
+  }
+
+  @Test public void concurrentProducersDeliverTheSameOrderToEverySubscriber() throws InterruptedException {
+    final int producers = 4;
+    final int perProducer = 10000;
+    final SharedRingMulticastPublisher<Integer> p = new SharedRingMulticastPublisher<Integer>(e, 64);
+    List<RecordingSubscriber<Integer>> subscribers = new ArrayList<RecordingSubscriber<Integer>>();
+    for (int i = 0; i < 3; i++) {
+      RecordingSubscriber<Integer> s = new RecordingSubscriber<Integer>(Long.MAX_VALUE);
+      subscribers.add(s);
+      p.subscribe(s);
+    }
+    for (RecordingSubscriber<Integer> s : subscribers) {
+      while (s.subscription == null) Thread.yield();
+    }
+
+    Thread[] threads = new Thread[producers];
+    for (int t = 0; t < producers; t++) {
+      final int base = t * perProducer;
+      threads[t] = new Thread(new Runnable() {
+        @Override public void run() {
+          try {
+            for (int i = 0; i < perProducer; i++) {
+              if (!p.offer(base + i, 10, TimeUnit.SECONDS)) throw new IllegalStateException("Timed out offering " + (base + i));
+            }
+          } catch (InterruptedException ex) {
+            throw new RuntimeException(ex);
+          }
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread t : threads) t.join();
+    p.complete();
+
+    for (RecordingSubscriber<Integer> s : subscribers) {
+      assertTrue(s.done.await(10, TimeUnit.SECONDS));
+      assertEquals(s.items.size(), producers * perProducer);
+    }
+    assertEquals(subscribers.get(1).items, subscribers.get(0).items);
+    assertEquals(subscribers.get(2).items, subscribers.get(0).items);
+  }
+
+  // Counts down once it has received `expected` items
+  static final class CountingSubscriber extends RecordingSubscriber<Integer> {
+    final CountDownLatch received;
+    CountingSubscriber(int expected) { super(Long.MAX_VALUE); received = new CountDownLatch(expected); }
+    @Override public void onNext(Integer t) { super.onNext(t); received.countDown(); }
+  }
+
+  @Test public void lateSingleSubscriberIsNotLappedByAFastProducer() throws InterruptedException {
+    final SharedRingMulticastPublisher<Integer> p = new SharedRingMulticastPublisher<Integer>(e, 2);
+    final CountingSubscriber s = new CountingSubscriber(3);
+    Thread subscribing = new Thread(new Runnable() {
+      @Override public void run() { p.subscribe(s); }
+    });
+    // Holding the registry's lock stops the subscription right before it is registered,
+    // so producers don't see it yet and are free to go round the whole ring
+    synchronized (p.subscribers) {
+      subscribing.start();
+      while (subscribing.getState() != Thread.State.BLOCKED) Thread.yield();
+      for (int i = 0; i < 5; i++) {
+        assertTrue(p.tryOffer(i));
+      }
+    }
+    subscribing.join();
+    for (int i = 5; i < 8; i++) {
+      assertTrue(p.offer(i, 10, TimeUnit.SECONDS));
+    }
+    assertTrue(s.received.await(10, TimeUnit.SECONDS), "The subscriber stalled");
+    p.complete();
+    assertTrue(s.done.await(10, TimeUnit.SECONDS));
+    assertEquals(s.items, Arrays.asList(5, 6, 7));
+  }
+
+  // Offers increasing numbers, as fast as the ring allows, until stopped
+  static Thread producer(final SharedRingMulticastPublisher<Integer> p, final AtomicBoolean stop) {
+    Thread t = new Thread(new Runnable() {
+      @Override public void run() {
+        int i = 0;
+        while (!stop.get()) {
+          if (p.tryOffer(i)) i++;
+        }
+      }
+    });
+    t.start();
+    return t;
+  }
+
+  @Test public void completionRacingAProducerIsSignalled() throws InterruptedException {
+    for (int round = 0; round < 200; round++) {
+      SharedRingMulticastPublisher<Integer> p = new SharedRingMulticastPublisher<Integer>(e, 2);
+      CountingSubscriber s = new CountingSubscriber(1);
+      p.subscribe(s);
+      AtomicBoolean stop = new AtomicBoolean();
+      Thread t = producer(p, stop);
+      assertTrue(s.received.await(10, TimeUnit.SECONDS));
+      p.complete();
+      stop.set(true);
+      t.join();
+      assertTrue(s.done.await(10, TimeUnit.SECONDS), "No onComplete in round " + round);
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.multicast;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+@Test // Must be here for TestNG to find and run this, do not remove
+public class SubscriberRegistryTest {
+
+  // The subscribers of a view, in slot order
+  static <E> List<E> list(SubscriberRegistry.View<E> v) {
+    List<E> list = new ArrayList<E>();
+    for (int i = 0; i < v.length(); i++) {
+      E e = v.get(i);
+      if (e != null) list.add(e);
+    }
+    return list;
+  }
+
+  static List<String> list(String... items) {
+    List<String> list = new ArrayList<String>();
+    for (String item : items) list.add(item);
+    return list;
+  }
+
+  @Test public void addRemoveAndView() {
+    SubscriberRegistry<String> r = new SubscriberRegistry<String>(new String[0]);
+    int a = r.add("a");
+    int b = r.add("b");
+    int c = r.add("c");
+    assertEquals(r.size(), 3);
+    assertEquals(list(r.view()), list("a", "b", "c"));
+
+    assertTrue(r.remove(b, "b"));
+    assertFalse(r.remove(b, "b"));
+    assertEquals(list(r.view()), list("a", "c"));
+
+    // The tombstone is reused, and the stale handle doesn't remove the new occupant
+    int d = r.add("d");
+    assertEquals(d, b);
+    assertFalse(r.remove(b, "b"));
+    assertEquals(list(r.view()), list("a", "d", "c"));
+
+    assertTrue(r.remove(a, "a"));
+    assertTrue(r.remove(c, "c"));
+    assertTrue(r.remove(d, "d"));
+    assertEquals(r.size(), 0);
+    assertEquals(r.view().length(), 0);
+  }
+
+  @Test public void viewDoesNotChangeAfterwards() {
+    SubscriberRegistry<String> r = new SubscriberRegistry<String>(new String[0]);
+    int a = r.add("a");
+    SubscriberRegistry.View<String> v = r.view();
+    r.add("b");
+    r.remove(a, "a");
+    assertEquals(list(v), list("a"));
+    assertEquals(list(r.view()), list("b"));
+  }
+
+  @Test public void trailingTombstonesAreGivenUp() {
+    SubscriberRegistry<String> r = new SubscriberRegistry<String>(new String[0]);
+    int a = r.add("a");
+    int b = r.add("b");
+    int c = r.add("c");
+    assertTrue(r.remove(b, "b"));
+    assertEquals(r.view().length(), 3); // A tombstone in the middle stays, to be reused
+    assertTrue(r.remove(c, "c"));
+    assertEquals(r.view().length(), 1); // Along with the last one, the tombstone before it is given up
+    assertEquals(r.add("d"), 1); // The next one is appended, rather than taking a slot which was given up
+    assertEquals(r.add("e"), 2);
+    assertEquals(list(r.view()), list("a", "d", "e"));
+    assertTrue(r.remove(a, "a"));
+    assertEquals(r.view().length(), 3);
+  }
+
+  @Test public void manySubscribersChurn() {
+    SubscriberRegistry<Integer> r = new SubscriberRegistry<Integer>(new Integer[0]);
+    int n = 10000;
+    int[] slots = new int[n];
+    Integer[] subscribers = new Integer[n]; // Subscribers are compared by identity, so keep the boxes
+    for (int i = 0; i < n; i++) {
+      subscribers[i] = i;
+      slots[i] = r.add(subscribers[i]);
+    }
+    for (int i = 0; i < n; i += 2) {
+      assertTrue(r.remove(slots[i], subscribers[i]));
+    }
+    for (int i = 0; i < n; i += 2) {
+      slots[i] = r.add(n + i);
+    }
+    assertEquals(r.size(), n);
+    Set<Integer> seen = new HashSet<Integer>(list(r.view()));
+    assertEquals(seen.size(), n);
+    assertTrue(seen.contains(1) && seen.contains(n) && !seen.contains(0));
+  }
+
+  @Test public void terminate() {
+    SubscriberRegistry<String> r = new SubscriberRegistry<String>(new String[0]);
+    int a = r.add("a");
+    assertFalse(r.terminateIfEmpty());
+    assertTrue(r.remove(a, "a"));
+    assertTrue(r.terminateIfEmpty());
+    assertTrue(r.isTerminated());
+    assertEquals(r.add("b"), SubscriberRegistry.TERMINATED);
+
+    SubscriberRegistry<String> r2 = new SubscriberRegistry<String>(new String[0]);
+    r2.add("a");
+    assertEquals(r2.terminate(), new String[] { "a" });
+    assertEquals(r2.terminate().length, 0);
+    assertEquals(r2.view().length(), 0);
+  }
+}
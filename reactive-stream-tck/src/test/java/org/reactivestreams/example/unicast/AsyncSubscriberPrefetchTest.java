@@ -0,0 +1,149 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.reactivestreams.tck.SubscriberBlackboxVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+@Test // Must be here for TestNG to find and run this, do not remove
+public class AsyncSubscriberPrefetchTest extends SubscriberBlackboxVerification<Integer> {
+
+  private ExecutorService e;
+  @BeforeClass void before() { e = Executors.newFixedThreadPool(4); }
+  @AfterClass void after() { if (e != null) e.shutdown(); }
+
+  public AsyncSubscriberPrefetchTest() {
+    super(new TestEnvironment());
+  }
+
+  @Override public Subscriber<Integer> createSubscriber() {
+    return new AsyncSubscriber<Integer>(e, 16) {
+      @Override protected boolean whenNext(final Integer element) {
+        return true;
+      }
+    };
+  }
+
+  @Test public void testRequestsAreBatched() throws InterruptedException {
+    final List<Long> requests = Collections.synchronizedList(new ArrayList<Long>());
+    final CountDownLatch latch = new CountDownLatch(1);
+    final Subscriber<Integer> sub = new AsyncSubscriber<Integer>(e, 16) {
+      @Override protected boolean whenNext(final Integer element) {
+        return true;
+      }
+
+      @Override protected void whenComplete() {
+        latch.countDown();
+      }
+    };
+
+    // Records every request made by the Subscriber while forwarding it to the actual Publisher
+    new RangePublisher(0, 30).subscribe(new Subscriber<Integer>() {
+      @Override public void onSubscribe(final Subscription s) {
+        sub.onSubscribe(new Subscription() {
+          @Override public void request(long n) { requests.add(n); s.request(n); }
+          @Override public void cancel() { s.cancel(); }
+        });
+      }
+      @Override public void onNext(Integer element) { sub.onNext(element); }
+      @Override public void onError(Throwable t) { sub.onError(t); }
+      @Override public void onComplete() { sub.onComplete(); }
+    });
+
+    assertTrue(latch.await(env.defaultTimeoutMillis() * 10, TimeUnit.MILLISECONDS));
+    // 16 up front, then 12 each time 75% of the window has been consumed
+    assertEquals(requests, Arrays.asList(16L, 12L, 12L));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testPrefetchAboveMaximumIsRejected() {
+    new AsyncSubscriber<Integer>(e, (1 << 30) + 1) {
+      @Override protected boolean whenNext(final Integer element) {
+        return true;
+      }
+    };
+  }
+
+  @Test public void testOverflowCancels() {
+    final List<Runnable> tasks = new ArrayList<Runnable>();
+    final List<Integer> received = new ArrayList<Integer>();
+    final boolean[] cancelled = { false };
+    final AsyncSubscriber<Integer> sub = new AsyncSubscriber<Integer>(new Executor() {
+      @Override public void execute(Runnable command) { tasks.add(command); } // Runs nothing until we say so
+    }, 2) {
+      @Override protected boolean whenNext(final Integer element) {
+        received.add(element);
+        return true;
+      }
+    };
+
+    sub.onSubscribe(new Subscription() {
+      @Override public void request(long n) { }
+      @Override public void cancel() { cancelled[0] = true; }
+    });
+    tasks.remove(0).run(); // Processes onSubscribe and requests 2
+
+    sub.onNext(1);
+    sub.onNext(2);
+    sub.onNext(3); // One more than requested
+    assertTrue(tasks.size() == 1);
+    tasks.remove(0).run();
+
+    assertTrue(cancelled[0]);
+    assertEquals(received, Collections.<Integer>emptyList());
+  }
+
+  @Test public void testOverflowBeforeTheRingIsFullCancels() {
+    final List<Runnable> tasks = new ArrayList<Runnable>();
+    final List<Integer> received = new ArrayList<Integer>();
+    final boolean[] cancelled = { false };
+    final AsyncSubscriber<Integer> sub = new AsyncSubscriber<Integer>(new Executor() {
+      @Override public void execute(Runnable command) { tasks.add(command); } // Runs nothing until we say so
+    }, 3) { // The ring holds 4 elements, but only 3 are requested
+      @Override protected boolean whenNext(final Integer element) {
+        received.add(element);
+        return true;
+      }
+    };
+
+    sub.onSubscribe(new Subscription() {
+      @Override public void request(long n) { }
+      @Override public void cancel() { cancelled[0] = true; }
+    });
+    tasks.remove(0).run(); // Processes onSubscribe and requests 3
+
+    sub.onNext(1);
+    sub.onNext(2);
+    sub.onNext(3);
+    sub.onNext(4); // One more than requested, while there is still room for it
+    assertTrue(tasks.size() == 1);
+    tasks.remove(0).run();
+
+    assertTrue(cancelled[0]);
+    assertEquals(received, Collections.<Integer>emptyList());
+  }
+
+  @Override public Integer createElement(int element) {
+    return element;
+  }
+}
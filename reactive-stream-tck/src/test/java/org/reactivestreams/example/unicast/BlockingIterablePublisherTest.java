@@ -0,0 +1,90 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+@Test // Must be here for TestNG to find and run this, do not remove
+public class BlockingIterablePublisherTest extends PublisherVerification<Integer> {
+
+  private ExecutorService e;
+  @BeforeClass void before() { e = Executors.newCachedThreadPool(); }
+  @AfterClass void after() { if (e != null) e.shutdown(); }
+
+  public BlockingIterablePublisherTest() {
+    super(new TestEnvironment());
+  }
+
+  static Iterable<Integer> range(final int elements) {
+    final List<Integer> list = new ArrayList<Integer>(elements);
+    for (int i = 0; i < elements; i++) list.add(i);
+    return list;
+  }
+
+  @Override public Publisher<Integer> createPublisher(final long elements) {
+    assert(elements <= maxElementsFromPublisher());
+    return AsyncIterablePublisher.blocking(range((int)elements), e);
+  }
+
+  @Override public Publisher<Integer> createFailedPublisher() {
+    return AsyncIterablePublisher.blocking(new Iterable<Integer>() {
+      @Override public Iterator<Integer> iterator() {
+        throw new RuntimeException("Error state signal!");
+      }
+    }, e);
+  }
+
+  @Override public long maxElementsFromPublisher() {
+    return 1024 * 16;
+  }
+
+  // Counts how many tasks a publisher submits for a stream of 10000 elements with unbounded demand
+  int tasksFor(final boolean blocking) throws InterruptedException {
+    final AtomicInteger tasks = new AtomicInteger();
+    final Executor counting = new Executor() {
+      @Override public void execute(Runnable command) {
+        tasks.getAndIncrement();
+        e.execute(command);
+      }
+    };
+    final Publisher<Integer> p = blocking ? AsyncIterablePublisher.blocking(range(10000), counting) : new AsyncIterablePublisher<Integer>(range(10000), counting);
+    final AtomicInteger received = new AtomicInteger();
+    final CountDownLatch done = new CountDownLatch(1);
+    p.subscribe(new Subscriber<Integer>() {
+      @Override public void onSubscribe(Subscription s) { s.request(Long.MAX_VALUE); }
+      @Override public void onNext(Integer t) { received.getAndIncrement(); }
+      @Override public void onError(Throwable t) { done.countDown(); }
+      @Override public void onComplete() { done.countDown(); }
+    });
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertEquals(received.get(), 10000);
+    return tasks.get();
+  }
+
+  @Test public void blockingModeProducesTheWholeStreamInASingleTask() throws InterruptedException {
+    assertEquals(tasksFor(true), 1);
+    assertTrue(tasksFor(false) >= 10000 / 1024, "The default mode is expected to reschedule after every batch");
+  }
+}
@@ -0,0 +1,208 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+@Test // Must be here for TestNG to find and run this, do not remove
+public class BlockingIterableTest {
+
+  private ExecutorService e;
+  @BeforeClass void before() { e = Executors.newFixedThreadPool(4); }
+  @AfterClass void after() { if (e != null) e.shutdown(); }
+
+  // Records the `request` and `cancel` calls of the `Subscriber`s of `source`
+  static final class RecordingPublisher<T> implements Publisher<T> {
+    final Publisher<T> source;
+    final List<Object> calls = Collections.synchronizedList(new ArrayList<Object>());
+    RecordingPublisher(Publisher<T> source) { this.source = source; }
+    @Override public void subscribe(final Subscriber<? super T> s) {
+      source.subscribe(new Subscriber<T>() {
+        @Override public void onSubscribe(final Subscription sub) {
+          s.onSubscribe(new Subscription() {
+            @Override public void request(long n) { calls.add(n); sub.request(n); }
+            @Override public void cancel() { calls.add("cancel"); sub.cancel(); }
+          });
+        }
+        @Override public void onNext(T t) { s.onNext(t); }
+        @Override public void onError(Throwable t) { s.onError(t); }
+        @Override public void onComplete() { s.onComplete(); }
+      });
+    }
+  }
+
+  @Test public void iteratesAnAsynchronousPublisher() {
+    int expected = 0;
+    for (Integer i : new BlockingIterable<Integer>(new NumberIterablePublisher(0, 10000, e), 16)) {
+      assertEquals(i.intValue(), expected++);
+    }
+    assertEquals(expected, 10000);
+  }
+
+  @Test public void streamsASynchronousPublisher() {
+    try (Stream<Integer> s = new BlockingIterable<Integer>(new RangePublisher(0, 100)).stream()) {
+      assertEquals(s.collect(Collectors.toList()), GeneratorPublisherTest.range(100));
+    }
+  }
+
+  @Test public void replenishesOnceTheLowWaterMarkIsReached() {
+    final RecordingPublisher<Integer> p = new RecordingPublisher<Integer>(new RangePublisher(0, 40));
+    int count = 0;
+    for (Integer ignored : new BlockingIterable<Integer>(p, 16)) count++;
+    assertEquals(count, 40);
+    assertEquals(p.calls, Arrays.<Object>asList(16L, 12L, 12L, 12L));
+  }
+
+  @Test public void rethrowsTheFailureAfterTheElementsBeforeIt() {
+    final Publisher<Integer> failing = new AsyncIterablePublisher<Integer>(new Iterable<Integer>() {
+      @Override public Iterator<Integer> iterator() {
+        return new Iterator<Integer>() {
+          int next;
+          @Override public boolean hasNext() { return true; }
+          @Override public Integer next() {
+            if (next == 3) throw new IllegalArgumentException("test");
+            return next++;
+          }
+          @Override public void remove() { throw new UnsupportedOperationException(); }
+        };
+      }
+    }, e);
+    final Iterator<Integer> it = new BlockingIterable<Integer>(failing).iterator();
+    for (int i = 0; i < 3; i++) {
+      assertTrue(it.hasNext());
+      assertEquals(it.next().intValue(), i);
+    }
+    try {
+      it.hasNext();
+      fail("Expected the failure of the Publisher");
+    } catch (IllegalArgumentException expected) {
+      assertEquals(expected.getMessage(), "test");
+    }
+  }
+
+  @Test public void wrapsCheckedFailures() {
+    final IOException failure = new IOException("test");
+    final Iterator<Integer> it = new BlockingIterable<Integer>(new Publisher<Integer>() {
+      @Override public void subscribe(Subscriber<? super Integer> s) {
+        s.onSubscribe(new Subscription() {
+          @Override public void request(long n) { }
+          @Override public void cancel() { }
+        });
+        s.onError(failure);
+      }
+    }).iterator();
+    try {
+      it.next();
+      fail("Expected the failure of the Publisher");
+    } catch (IllegalStateException expected) {
+      assertEquals(expected.getCause(), failure);
+    }
+  }
+
+  @Test public void closingTheStreamCancels() {
+    final RecordingPublisher<Integer> p = new RecordingPublisher<Integer>(new RangePublisher(0, 1000));
+    try (Stream<Integer> s = new BlockingIterable<Integer>(p, 16).stream()) {
+      assertEquals(s.limit(5).count(), 5L);
+    }
+    assertEquals(p.calls, Arrays.<Object>asList(16L, "cancel"));
+  }
+
+  @Test public void closingBeforeTheSubscriptionArrivesCancelsIt() {
+    final List<Subscriber<? super Integer>> subscribers = new ArrayList<Subscriber<? super Integer>>();
+    final BlockingIterable.BlockingIterator<Integer> it = new BlockingIterable<Integer>(new Publisher<Integer>() {
+      @Override public void subscribe(Subscriber<? super Integer> s) { subscribers.add(s); }
+    }).iterator();
+    it.close();
+
+    final boolean[] cancelled = new boolean[1];
+    subscribers.get(0).onSubscribe(new Subscription() {
+      @Override public void request(long n) { fail("Requested after close"); }
+      @Override public void cancel() { cancelled[0] = true; }
+    });
+    assertTrue(cancelled[0]);
+  }
+
+  // A Publisher which answers the first `request` with `elements` elements, whatever the demand, and then fails
+  static Publisher<Integer> overflowing(final int elements, final List<Object> calls) {
+    return new Publisher<Integer>() {
+      @Override public void subscribe(final Subscriber<? super Integer> s) {
+        s.onSubscribe(new Subscription() {
+          boolean emitted;
+          @Override public void request(long n) {
+            calls.add(n);
+            if (emitted) return;
+            emitted = true;
+            for (int i = 0; i < elements; i++) s.onNext(i);
+            s.onError(new IOException("ignored"));
+          }
+          @Override public void cancel() { calls.add("cancel"); }
+        });
+      }
+    };
+  }
+
+  @Test public void overflowCancelsOnceTheElementsBeforeItAreConsumed() {
+    final List<Object> calls = new ArrayList<Object>();
+    final Iterator<Integer> it = new BlockingIterable<Integer>(overflowing(4, calls), 2).iterator();
+
+    assertEquals(it.next().intValue(), 0);
+    assertEquals(calls, Arrays.<Object>asList(2L)); // `onNext` only records the violation, the consumer cancels
+    assertEquals(it.next().intValue(), 1);
+    try {
+      it.hasNext();
+      fail("Expected the rule 1.1 violation");
+    } catch (IllegalStateException expected) {
+      assertTrue(expected.getMessage().contains("1.1"), expected.getMessage());
+    }
+    assertEquals(calls, Arrays.<Object>asList(2L, 2L, "cancel"));
+  }
+
+  @Test public void overflowIsDetectedBeforeTheRingIsFull() {
+    final List<Object> calls = new ArrayList<Object>();
+    // The ring holds 4 elements, but only 3 have been requested
+    final Iterator<Integer> it = new BlockingIterable<Integer>(overflowing(4, calls), 3).iterator();
+
+    for (int i = 0; i < 3; i++) {
+      assertEquals(it.next().intValue(), i);
+    }
+    try {
+      it.hasNext();
+      fail("Expected the rule 1.1 violation");
+    } catch (IllegalStateException expected) {
+      assertTrue(expected.getMessage().contains("1.1"), expected.getMessage());
+    }
+    assertTrue(calls.contains("cancel"));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void rejectsAPrefetchTooLargeForTheRing() {
+    new BlockingIterable<Integer>(new RangePublisher(0, 1), (1 << 30) + 1);
+  }
+
+  @Test public void emptyPublisherHasNoElements() {
+    assertFalse(new BlockingIterable<Integer>(new RangePublisher(0, 0)).iterator().hasNext());
+  }
+}
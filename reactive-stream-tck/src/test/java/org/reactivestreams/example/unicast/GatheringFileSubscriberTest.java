@@ -0,0 +1,154 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.reactivestreams.tck.SubscriberBlackboxVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+@Test // Must be here for TestNG to find and run this, do not remove
+public class GatheringFileSubscriberTest extends SubscriberBlackboxVerification<ByteBuffer> {
+
+  private ExecutorService e;
+  private Path dir;
+  private final List<FileChannel> channels = Collections.synchronizedList(new ArrayList<FileChannel>());
+  @BeforeClass void before() throws IOException { e = Executors.newFixedThreadPool(4); dir = Files.createTempDirectory("gathering"); }
+  @AfterClass void after() throws IOException {
+    if (e != null) e.shutdown();
+    for (FileChannel c : channels) c.close();
+    if (dir != null) {
+      for (Path p : Files.newDirectoryStream(dir)) Files.delete(p);
+      Files.delete(dir);
+    }
+  }
+
+  public GatheringFileSubscriberTest() {
+    super(new TestEnvironment());
+  }
+
+  FileChannel channel(Path file) throws IOException {
+    final FileChannel c = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    channels.add(c);
+    return c;
+  }
+
+  @Override public Subscriber<ByteBuffer> createSubscriber() {
+    try {
+      return new GatheringFileSubscriber(channel(Files.createTempFile(dir, "tck", ".bin")), e, 4, 1024, GatheringFileSubscriber.Force.NEVER, 0, TimeUnit.NANOSECONDS);
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  @Override public ByteBuffer createElement(int element) {
+    return ByteBuffer.wrap(new byte[] { (byte)element });
+  }
+
+  // Buffers of 1 to 10 bytes, holding the numbers from 0 on
+  static List<ByteBuffer> buffers(int n, ByteArrayOutputStream expected) {
+    final List<ByteBuffer> list = new ArrayList<ByteBuffer>();
+    int b = 0;
+    for (int i = 0; i < n; i++) {
+      final byte[] bytes = new byte[i % 10 + 1];
+      for (int j = 0; j < bytes.length; j++) bytes[j] = (byte)b++;
+      expected.write(bytes, 0, bytes.length);
+      list.add(ByteBuffer.wrap(bytes));
+    }
+    return list;
+  }
+
+  // Records every request made by the Subscriber while forwarding it to the actual Publisher
+  static void subscribeRecording(Publisher<ByteBuffer> publisher, final Subscriber<ByteBuffer> sub, final List<Long> requests) {
+    publisher.subscribe(new Subscriber<ByteBuffer>() {
+      @Override public void onSubscribe(final Subscription s) {
+        sub.onSubscribe(new Subscription() {
+          @Override public void request(long n) { requests.add(n); s.request(n); }
+          @Override public void cancel() { s.cancel(); }
+        });
+      }
+      @Override public void onNext(ByteBuffer element) { sub.onNext(element); }
+      @Override public void onError(Throwable t) { sub.onError(t); }
+      @Override public void onComplete() { sub.onComplete(); }
+    });
+  }
+
+  @Test public void writesEverythingAndRequestsPerFreedSlot() throws Exception {
+    final Path file = Files.createTempFile(dir, "all", ".bin");
+    final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    final List<ByteBuffer> input = buffers(10, expected);
+    final List<Long> requests = Collections.synchronizedList(new ArrayList<Long>());
+    final GatheringFileSubscriber sub = new GatheringFileSubscriber(channel(file), e, 4, 1024, GatheringFileSubscriber.Force.PER_BATCH, 0, TimeUnit.NANOSECONDS);
+
+    subscribeRecording(new AsyncIterablePublisher<ByteBuffer>(input, e), sub, requests);
+
+    assertEquals(sub.written().get(env.defaultTimeoutMillis() * 10, TimeUnit.MILLISECONDS), Long.valueOf(expected.size()));
+    assertTrue(Arrays.equals(Files.readAllBytes(file), expected.toByteArray()));
+    // 4 slots up front, then 4 after each full batch, the last 2 buffers are written on completion
+    assertEquals(requests, Arrays.asList(4L, 4L, 4L));
+  }
+
+  @Test public void flushesEarlyOnceEnoughBytesArePending() throws Exception {
+    final Path file = Files.createTempFile(dir, "bytes", ".bin");
+    final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    final List<ByteBuffer> input = buffers(4, expected); // 1, 2, 3 and 4 bytes
+    final List<Long> requests = Collections.synchronizedList(new ArrayList<Long>());
+    final GatheringFileSubscriber sub = new GatheringFileSubscriber(channel(file), e, 8, 3, GatheringFileSubscriber.Force.PERIODIC, 1, TimeUnit.HOURS);
+
+    subscribeRecording(new AsyncIterablePublisher<ByteBuffer>(input, e), sub, requests);
+
+    assertEquals(sub.written().get(env.defaultTimeoutMillis() * 10, TimeUnit.MILLISECONDS), Long.valueOf(expected.size()));
+    assertTrue(Arrays.equals(Files.readAllBytes(file), expected.toByteArray()));
+    // Every flush of at least 3 bytes frees the slots of the buffers it has written
+    assertEquals(requests, Arrays.asList(8L, 2L, 1L, 1L));
+  }
+
+  @Test public void failedStreamFailsTheResult() throws Exception {
+    final GatheringFileSubscriber sub = new GatheringFileSubscriber(channel(Files.createTempFile(dir, "failed", ".bin")), e);
+    sub.onSubscribe(new Subscription() {
+      boolean failed;
+      @Override public void request(long n) {
+        if (failed) return;
+        failed = true;
+        sub.onNext(ByteBuffer.wrap(new byte[] { 1 })); // Only once there is demand, as per rule 1.1
+        sub.onError(new IllegalStateException("boom"));
+      }
+      @Override public void cancel() { }
+    });
+    try {
+      sub.written().get(env.defaultTimeoutMillis() * 10, TimeUnit.MILLISECONDS);
+      fail("Expected the stream's failure");
+    } catch (ExecutionException expected) {
+      assertTrue(expected.getCause() instanceof IllegalStateException);
+    } catch (TimeoutException ex) {
+      fail("Expected the stream's failure", ex);
+    }
+  }
+}
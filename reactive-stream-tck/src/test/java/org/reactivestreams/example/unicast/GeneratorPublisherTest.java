@@ -0,0 +1,191 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.SkipException;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+@Test // Must be here for TestNG to find and run this, do not remove
+public class GeneratorPublisherTest extends PublisherVerification<Integer> {
+
+  private ExecutorService e;
+  @BeforeClass void before() { e = Executors.newCachedThreadPool(); }
+  @AfterClass void after() { if (e != null) e.shutdown(); }
+
+  public GeneratorPublisherTest() {
+    super(new TestEnvironment());
+  }
+
+  // Emits `0` to `elements - 1`, and counts how many it has emitted
+  static GeneratorPublisher.Generator<Integer> counting(final long elements, final AtomicInteger emitted) {
+    return new GeneratorPublisher.Generator<Integer>() {
+      @Override public void generate(GeneratorPublisher.Emitter<Integer> emitter) throws Exception {
+        for (int i = 0; i < elements; i++) {
+          if (!emitter.emit(i)) return;
+          emitted.getAndIncrement();
+        }
+      }
+    };
+  }
+
+  @Override public Publisher<Integer> createPublisher(final long elements) {
+    assert(elements <= maxElementsFromPublisher());
+    return new GeneratorPublisher<Integer>(counting(elements, new AtomicInteger()), e);
+  }
+
+  @Override public Publisher<Integer> createFailedPublisher() {
+    return new GeneratorPublisher<Integer>(new GeneratorPublisher.Generator<Integer>() {
+      @Override public void generate(GeneratorPublisher.Emitter<Integer> emitter) throws Exception {
+        throw new RuntimeException("Error state signal!");
+      }
+    }, e);
+  }
+
+  @Override public long maxElementsFromPublisher() {
+    return Integer.MAX_VALUE;
+  }
+
+  static List<Integer> range(int elements) {
+    final List<Integer> list = new ArrayList<Integer>();
+    for (int i = 0; i < elements; i++) list.add(i);
+    return list;
+  }
+
+  static class RecordingSubscriber implements Subscriber<Integer> {
+    final List<Integer> items = Collections.synchronizedList(new ArrayList<Integer>());
+    final CountDownLatch subscribed = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(1);
+    volatile Subscription subscription;
+    volatile Throwable error;
+    @Override public void onSubscribe(Subscription s) { subscription = s; subscribed.countDown(); }
+    @Override public void onNext(Integer t) { items.add(t); }
+    @Override public void onError(Throwable t) { error = t; done.countDown(); }
+    @Override public void onComplete() { done.countDown(); }
+  }
+
+  @Test public void generatorParksUntilThereIsDemand() throws Exception {
+    final AtomicInteger emitted = new AtomicInteger();
+    final RecordingSubscriber sub = new RecordingSubscriber();
+    new GeneratorPublisher<Integer>(counting(100, emitted), 4, e).subscribe(sub);
+    assertTrue(sub.subscribed.await(10, TimeUnit.SECONDS));
+
+    Thread.sleep(50);
+    assertEquals(emitted.get(), 0);
+
+    sub.subscription.request(10);
+    for (int i = 0; i < 1000 && sub.items.size() < 10; i++) Thread.sleep(10);
+    Thread.sleep(50); // Gives the generator the chance to emit more than requested
+    assertEquals(sub.items.size(), 10);
+    assertEquals(emitted.get(), 10); // `emit` returned for the ones requested, and the generator is parked in the next one
+
+    sub.subscription.request(Long.MAX_VALUE);
+    assertTrue(sub.done.await(10, TimeUnit.SECONDS));
+    assertEquals(sub.items, range(100));
+    assertEquals(sub.error, null);
+  }
+
+  @Test public void cancellingStopsAParkedGenerator() throws Exception {
+    final AtomicBoolean returned = new AtomicBoolean();
+    final CountDownLatch stopped = new CountDownLatch(1);
+    final CountDownLatch delivered = new CountDownLatch(5);
+    final RecordingSubscriber sub = new RecordingSubscriber() {
+      @Override public void onNext(Integer t) { super.onNext(t); delivered.countDown(); }
+    };
+    new GeneratorPublisher<Integer>(new GeneratorPublisher.Generator<Integer>() {
+      @Override public void generate(GeneratorPublisher.Emitter<Integer> emitter) throws Exception {
+        try {
+          for (int i = 0;; i++) {
+            if (!emitter.emit(i)) {
+              returned.set(emitter.isCancelled());
+              return;
+            }
+          }
+        } finally {
+          stopped.countDown();
+        }
+      }
+    }, e).subscribe(sub);
+    assertTrue(sub.subscribed.await(10, TimeUnit.SECONDS));
+    sub.subscription.request(5);
+    assertTrue(delivered.await(10, TimeUnit.SECONDS)); // The generator is now parked in the sixth `emit`
+    sub.subscription.cancel();
+
+    assertTrue(stopped.await(10, TimeUnit.SECONDS));
+    assertTrue(returned.get());
+    assertEquals(sub.items, range(5));
+  }
+
+  @Test public void elementsEmittedBeforeAFailureAreDeliveredFirst() throws Exception {
+    final RecordingSubscriber sub = new RecordingSubscriber();
+    final IllegalStateException failure = new IllegalStateException("test");
+    new GeneratorPublisher<Integer>(new GeneratorPublisher.Generator<Integer>() {
+      @Override public void generate(GeneratorPublisher.Emitter<Integer> emitter) throws Exception {
+        for (int i = 0; i < 3; i++) emitter.emit(i);
+        throw failure;
+      }
+    }, e).subscribe(sub);
+    assertTrue(sub.subscribed.await(10, TimeUnit.SECONDS));
+    sub.subscription.request(10);
+
+    assertTrue(sub.done.await(10, TimeUnit.SECONDS));
+    assertEquals(sub.items, range(3));
+    assertEquals(sub.error, failure);
+  }
+
+  @Test public void generatorsRunOnVirtualThreads() throws Exception {
+    if (!VirtualThreads.isSupported()) throw new SkipException("Virtual threads require Java 21 or later");
+    final ExecutorService virtual = VirtualThreads.newVirtualThreadPerTaskExecutor();
+    try {
+      final int streams = 1000; // Far more than there are carrier threads, each sleeping for 100 ms in total
+      final AtomicReference<Thread> platform = new AtomicReference<Thread>();
+      final AtomicInteger received = new AtomicInteger();
+      final CountDownLatch done = new CountDownLatch(streams);
+      final GeneratorPublisher<Integer> p = new GeneratorPublisher<Integer>(new GeneratorPublisher.Generator<Integer>() {
+        @Override public void generate(GeneratorPublisher.Emitter<Integer> emitter) throws Exception {
+          for (int i = 0; i < 100; i++) {
+            if (!VirtualThreads.isVirtual(Thread.currentThread())) platform.set(Thread.currentThread());
+            Thread.sleep(1); // Like a slow read
+            if (!emitter.emit(i)) return;
+          }
+        }
+      }, virtual);
+      for (int i = 0; i < streams; i++) {
+        p.subscribe(new Subscriber<Integer>() {
+          Subscription s;
+          @Override public void onSubscribe(Subscription s) { this.s = s; s.request(1); }
+          @Override public void onNext(Integer t) { received.getAndIncrement(); s.request(1); }
+          @Override public void onError(Throwable t) { t.printStackTrace(System.err); done.countDown(); }
+          @Override public void onComplete() { done.countDown(); }
+        });
+      }
+      assertTrue(done.await(10, TimeUnit.SECONDS), "The generators didn't run concurrently");
+      assertEquals(received.get(), streams * 100);
+      assertEquals(platform.get(), null, "A generator ran on a platform thread");
+    } finally {
+      virtual.shutdown();
+    }
+  }
+}
@@ -0,0 +1,69 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+import org.reactivestreams.BatchSubscriber;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the {@link PublisherVerification} against the batched emission path of {@link AsyncIterablePublisher}.
+ */
+@Test // Must be here for TestNG to find and run this, do not remove
+public class IterablePublisherBatchSubscriberTest extends PublisherVerification<Integer> {
+
+  private ExecutorService e;
+  @BeforeClass void before() { e = Executors.newFixedThreadPool(4); }
+  @AfterClass void after() { if (e != null) e.shutdown(); }
+
+  public IterablePublisherBatchSubscriberTest() {
+    super(new TestEnvironment());
+  }
+
+  @Override public Publisher<Integer> createPublisher(final long elements) {
+    assert(elements <= maxElementsFromPublisher());
+    return batched(new NumberIterablePublisher(0, (int)elements, e));
+  }
+
+  @Override public Publisher<Integer> createFailedPublisher() {
+    return batched(new AsyncIterablePublisher<Integer>(new Iterable<Integer>() {
+      @Override public Iterator<Integer> iterator() {
+        throw new RuntimeException("Error state signal!");
+      }
+    }, e));
+  }
+
+  @Override public long maxElementsFromPublisher() {
+    return Integer.MAX_VALUE;
+  }
+
+  // Interposes a BatchSubscriber so the TCK exercises AsyncIterablePublisher's onNextBatch path
+  static Publisher<Integer> batched(final Publisher<Integer> source) {
+    return new Publisher<Integer>() {
+      @Override public void subscribe(final Subscriber<? super Integer> s) {
+        if (s == null) throw null;
+        source.subscribe(new BatchSubscriber<Integer>() {
+          @Override public void onSubscribe(Subscription subscription) { s.onSubscribe(subscription); }
+          @Override public void onNextBatch(Object[] items, int from, int to) {
+            for (int i = from; i < to; i++) s.onNext((Integer)items[i]);
+          }
+          @Override public void onNext(Integer t) { s.onError(new AssertionError("AsyncIterablePublisher signalled " + t + " outside of a batch")); }
+          @Override public void onError(Throwable t) { s.onError(t); }
+          @Override public void onComplete() { s.onComplete(); }
+        });
+      }
+    };
+  }
+}
@@ -0,0 +1,54 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.tck.QueueFusionVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Test // Must be here for TestNG to find and run this, do not remove
+public class IterablePublisherFusionTest extends QueueFusionVerification<Integer> {
+
+  private ExecutorService e;
+  @BeforeClass void before() { e = Executors.newFixedThreadPool(4); }
+  @AfterClass void after() { if (e != null) e.shutdown(); }
+
+  public IterablePublisherFusionTest() {
+    super(new TestEnvironment());
+  }
+
+  @Override public Publisher<Integer> createPublisher(final long elements) {
+    return new NumberIterablePublisher(0, (int)elements, e);
+  }
+
+  @Override public Publisher<Integer> createFailedPublisher() {
+    return failingAfter(3, e);
+  }
+
+  // An `AsyncIterablePublisher` whose `Iterator` fails after the given number of elements
+  static Publisher<Integer> failingAfter(final int elements, final Executor executor) {
+    return new AsyncIterablePublisher<Integer>(new Iterable<Integer>() {
+      @Override public Iterator<Integer> iterator() {
+        return new Iterator<Integer>() {
+          private int at = 0;
+          @Override public boolean hasNext() {
+            if (at == elements) throw new IllegalStateException("Error state signal!");
+            return true;
+          }
+          @Override public Integer next() { hasNext(); return at++; }
+          @Override public void remove() { throw new UnsupportedOperationException(); }
+        };
+      }
+    }, executor);
+  }
+}
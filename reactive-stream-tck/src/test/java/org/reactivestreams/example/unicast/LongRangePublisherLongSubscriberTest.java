@@ -0,0 +1,52 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+import org.reactivestreams.LongSubscriber;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.annotations.Test;
+
+/**
+ * Runs the {@link PublisherVerification} against the unboxed emission path of {@link LongRangePublisher}.
+ */
+@Test // Must be here for TestNG to find and run this, do not remove
+public class LongRangePublisherLongSubscriberTest extends PublisherVerification<Long> {
+    public LongRangePublisherLongSubscriberTest() {
+        super(new TestEnvironment(50, 50));
+    }
+
+    @Override
+    public Publisher<Long> createPublisher(long elements) {
+        final LongRangePublisher range = new LongRangePublisher(Integer.MAX_VALUE, elements);
+        return new Publisher<Long>() {
+            @Override
+            public void subscribe(final Subscriber<? super Long> s) {
+                if (s == null) throw null;
+                // Interpose a LongSubscriber so the TCK exercises LongRangePublisher's onNextLong path
+                range.subscribe(new LongSubscriber() {
+                    @Override public void onSubscribe(Subscription subscription) { s.onSubscribe(subscription); }
+                    @Override public void onNextLong(long value) { s.onNext(value); }
+                    @Override public void onNext(Long t) { s.onError(new AssertionError("LongRangePublisher boxed " + t + " for a LongSubscriber")); }
+                    @Override public void onError(Throwable t) { s.onError(t); }
+                    @Override public void onComplete() { s.onComplete(); }
+                });
+            }
+        };
+    }
+
+    @Override
+    public Publisher<Long> createFailedPublisher() {
+        return null;
+    }
+
+    @Override
+    public long maxElementsFromPublisher() {
+        return Long.MAX_VALUE - Integer.MAX_VALUE;
+    }
+}
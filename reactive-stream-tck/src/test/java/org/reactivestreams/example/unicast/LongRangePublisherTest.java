@@ -0,0 +1,32 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.annotations.Test;
+
+@Test // Must be here for TestNG to find and run this, do not remove
+public class LongRangePublisherTest extends PublisherVerification<Long> {
+    public LongRangePublisherTest() {
+        super(new TestEnvironment(50, 50));
+    }
+
+    @Override
+    public Publisher<Long> createPublisher(long elements) {
+        return new LongRangePublisher(Integer.MAX_VALUE, elements);
+    }
+
+    @Override
+    public Publisher<Long> createFailedPublisher() {
+        return null;
+    }
+
+    @Override
+    public long maxElementsFromPublisher() {
+        return Long.MAX_VALUE - Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,125 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+@Test // Must be here for TestNG to find and run this, do not remove
+public class MappedFilePublisherTest extends PublisherVerification<ByteBuffer> {
+
+  static final int CHUNK = 16;
+
+  private ExecutorService e;
+  private Path dir;
+  @BeforeClass void before() throws IOException { e = Executors.newFixedThreadPool(4); dir = Files.createTempDirectory("mapped"); }
+  @AfterClass void after() throws IOException {
+    if (e != null) e.shutdown();
+    if (dir != null) {
+      for (Path p : Files.newDirectoryStream(dir)) Files.delete(p);
+      Files.delete(dir);
+    }
+  }
+
+  public MappedFilePublisherTest() {
+    super(new TestEnvironment());
+  }
+
+  Path file(int length) throws IOException {
+    final byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) bytes[i] = (byte)i;
+    return Files.write(Files.createTempFile(dir, "chunks", ".bin"), bytes);
+  }
+
+  @Override public Publisher<ByteBuffer> createPublisher(final long elements) {
+    assert(elements <= maxElementsFromPublisher());
+    try {
+      // A window of 4 chunks, so that longer streams map several windows
+      return new MappedFilePublisher(file((int)elements * CHUNK), CHUNK, 4 * CHUNK, e);
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  @Override public Publisher<ByteBuffer> createFailedPublisher() {
+    return new MappedFilePublisher(dir.resolve("does-not-exist"), e);
+  }
+
+  @Override public long maxElementsFromPublisher() {
+    return 4096;
+  }
+
+  // Copies out everything it receives, requesting one chunk at a time
+  static class CopyingSubscriber implements Subscriber<ByteBuffer> {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+    final CountDownLatch done = new CountDownLatch(1);
+    Subscription subscription;
+    volatile Throwable error;
+    @Override public void onSubscribe(Subscription s) { subscription = s; s.request(1); }
+    @Override public void onNext(ByteBuffer b) {
+      chunks.add(b);
+      final byte[] copy = new byte[b.remaining()];
+      b.duplicate().get(copy);
+      bytes.write(copy, 0, copy.length);
+      subscription.request(1);
+    }
+    @Override public void onError(Throwable t) { error = t; done.countDown(); }
+    @Override public void onComplete() { done.countDown(); }
+  }
+
+  @Test public void emitsTheWholeFileInReadOnlyChunks() throws IOException, InterruptedException {
+    final int length = 10 * CHUNK + 5; // The last chunk is a short one
+    final Path f = file(length);
+    final CopyingSubscriber s = new CopyingSubscriber();
+    new MappedFilePublisher(f, CHUNK, 3 * CHUNK + 1, e).subscribe(s); // The window is rounded down to 3 chunks
+    assertTrue(s.done.await(10, TimeUnit.SECONDS));
+    assertNull(s.error);
+    assertTrue(Arrays.equals(s.bytes.toByteArray(), Files.readAllBytes(f)));
+    assertEquals(s.chunks.size(), 11);
+    assertEquals(s.chunks.get(10).remaining(), 5);
+    try {
+      s.chunks.get(0).put(0, (byte)1);
+      fail("Expected the chunks to be read-only");
+    } catch (ReadOnlyBufferException expected) {
+    }
+  }
+
+  @Test public void emptyFileCompletesWithoutDemand() throws IOException, InterruptedException {
+    final CountDownLatch done = new CountDownLatch(1);
+    new MappedFilePublisher(file(0), e).subscribe(new Subscriber<ByteBuffer>() {
+      @Override public void onSubscribe(Subscription s) {}
+      @Override public void onNext(ByteBuffer b) { fail("Expected no elements"); }
+      @Override public void onError(Throwable t) {}
+      @Override public void onComplete() { done.countDown(); }
+    });
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+  }
+}
@@ -0,0 +1,197 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Runs the {@link PublisherVerification} against {@link ParallelPublisher#mergeOrdered(int)}.
+ */
+@Test // Must be here for TestNG to find and run this, do not remove
+public class ParallelPublisherTest extends PublisherVerification<Integer> {
+
+  private ForkJoinPool pool;
+  @BeforeClass void before() { pool = new ForkJoinPool(4); }
+  @AfterClass void after() { if (pool != null) pool.shutdown(); }
+
+  public ParallelPublisherTest() {
+    super(new TestEnvironment());
+  }
+
+  @Override public Publisher<Integer> createPublisher(final long elements) {
+    assert(elements <= maxElementsFromPublisher());
+    return ParallelPublisher.range(0, (int)elements, 4, pool).mergeOrdered(16);
+  }
+
+  @Override public Publisher<Integer> createFailedPublisher() {
+    return ParallelPublisher.from(new Supplier<Spliterator<Integer>>() {
+      @Override public Spliterator<Integer> get() {
+        throw new RuntimeException("Error state signal!");
+      }
+    }, 4, pool).mergeOrdered(16);
+  }
+
+  @Override public long maxElementsFromPublisher() {
+    return Integer.MAX_VALUE;
+  }
+
+  // Collects everything it receives, requesting a few elements at a time
+  static class CollectingSubscriber<T> implements Subscriber<T> {
+    final List<T> items = Collections.synchronizedList(new ArrayList<T>());
+    final CountDownLatch done = new CountDownLatch(1);
+    Subscription subscription;
+    volatile Throwable error;
+    @Override public void onSubscribe(Subscription s) { subscription = s; s.request(7); }
+    @Override public void onNext(T t) { items.add(t); if (items.size() % 7 == 0) subscription.request(7); }
+    @Override public void onError(Throwable t) { error = t; done.countDown(); }
+    @Override public void onComplete() { done.countDown(); }
+  }
+
+  static List<Integer> range(int from, int to) {
+    final List<Integer> list = new ArrayList<Integer>();
+    for (int i = from; i < to; i++) list.add(i);
+    return list;
+  }
+
+  @Test public void orderedMergeKeepsTheOrderOfTheSource() throws InterruptedException {
+    final CollectingSubscriber<Integer> s = new CollectingSubscriber<Integer>();
+    ParallelPublisher.range(0, 10000, 4, pool).map(new Function<Integer, Integer>() {
+      @Override public Integer apply(Integer i) { return i * 2; }
+    }).mergeOrdered(32).subscribe(s);
+    assertTrue(s.done.await(10, TimeUnit.SECONDS));
+    assertNull(s.error);
+    final List<Integer> expected = new ArrayList<Integer>();
+    for (int i = 0; i < 10000; i++) expected.add(i * 2);
+    assertEquals(s.items, expected);
+  }
+
+  @Test public void unorderedMergeDeliversEverything() throws InterruptedException {
+    final CollectingSubscriber<Integer> s = new CollectingSubscriber<Integer>();
+    ParallelPublisher.range(0, 10000, 3, pool).merge(32).subscribe(s);
+    assertTrue(s.done.await(10, TimeUnit.SECONDS));
+    assertNull(s.error);
+    final List<Integer> sorted = new ArrayList<Integer>(s.items);
+    Collections.sort(sorted);
+    assertEquals(sorted, range(0, 10000));
+  }
+
+  @Test public void railsMapOnSeparateThreads() throws InterruptedException {
+    final Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+    final CountDownLatch allRailsStarted = new CountDownLatch(4);
+    final CollectingSubscriber<Integer> s = new CollectingSubscriber<Integer>();
+    ParallelPublisher.range(0, 1000, 4, pool).map(new Function<Integer, Integer>() {
+      @Override public Integer apply(Integer i) {
+        if (threads.add(Thread.currentThread())) {
+          allRailsStarted.countDown();
+          try {
+            allRailsStarted.await(5, TimeUnit.SECONDS); // Only returns early if all rails are mapping at the same time
+          } catch (InterruptedException ex) {
+            throw new RuntimeException(ex);
+          }
+        }
+        return i;
+      }
+    }).merge(16).subscribe(s);
+    assertTrue(s.done.await(10, TimeUnit.SECONDS));
+    assertEquals(allRailsStarted.getCount(), 0L);
+    assertEquals(threads.size(), 4);
+    assertEquals(s.items.size(), 1000);
+  }
+
+  @Test public void mapperFailureCancelsAllRails() throws InterruptedException {
+    final CollectingSubscriber<Integer> s = new CollectingSubscriber<Integer>();
+    ParallelPublisher.range(0, 100000, 4, pool).map(new Function<Integer, Integer>() {
+      @Override public Integer apply(Integer i) {
+        if (i == 500) throw new IllegalStateException("boom");
+        return i;
+      }
+    }).mergeOrdered(16).subscribe(s);
+    assertTrue(s.done.await(10, TimeUnit.SECONDS));
+    assertTrue(s.error instanceof IllegalStateException);
+    assertTrue(s.items.size() < 100000);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test public void wrongNumberOfSubscribersFailsThemAll() {
+    final CollectingSubscriber<Integer> a = new CollectingSubscriber<Integer>();
+    final CollectingSubscriber<Integer> b = new CollectingSubscriber<Integer>();
+    ParallelPublisher.range(0, 10, 3, pool).subscribe(new Subscriber[] { a, b });
+    assertTrue(a.error instanceof IllegalArgumentException);
+    assertTrue(b.error instanceof IllegalArgumentException);
+  }
+
+  @Test public void cancelLeavesTheRailsToTheDrain() throws InterruptedException {
+    final CountDownLatch inRequest = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger calls = new AtomicInteger(); // The calls on the rail's `Subscription` which are in progress
+    final AtomicBoolean overlapped = new AtomicBoolean();
+    final AtomicBoolean cancelled = new AtomicBoolean();
+    final ParallelPublisher<Integer> rails = new ParallelPublisher<Integer>() {
+      @Override public int parallelism() { return 1; }
+      @Override public void subscribe(Subscriber<? super Integer>[] subscribers) {
+        subscribers[0].onSubscribe(new Subscription() {
+          @Override public void request(long n) {
+            if (calls.getAndIncrement() != 0) overlapped.set(true);
+            inRequest.countDown();
+            try {
+              release.await(5, TimeUnit.SECONDS); // Keeps the drain busy in here, while the test cancels
+            } catch (InterruptedException ex) {
+              throw new RuntimeException(ex);
+            }
+            calls.decrementAndGet();
+          }
+          @Override public void cancel() {
+            if (calls.getAndIncrement() != 0) overlapped.set(true);
+            cancelled.set(true);
+            calls.decrementAndGet();
+          }
+        });
+      }
+    };
+    final CollectingSubscriber<Integer> s = new CollectingSubscriber<Integer>();
+    final Thread subscriber = new Thread(new Runnable() {
+      @Override public void run() { rails.merge(4).subscribe(s); }
+    });
+    subscriber.start();
+    assertTrue(inRequest.await(5, TimeUnit.SECONDS));
+    s.subscription.cancel();
+    assertFalse(cancelled.get()); // The draining thread cancels the rail once its `request` has returned
+    release.countDown();
+    subscriber.join(5000);
+    assertTrue(cancelled.get());
+    assertFalse(overlapped.get());
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void rejectsAPrefetchTooLargeForTheRails() {
+    ParallelPublisher.range(0, 10, 3, pool).merge(Integer.MAX_VALUE);
+  }
+}
@@ -0,0 +1,48 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Runs the {@link PublisherVerification} against {@link ParallelPublisher#merge(int)}.
+ */
+@Test // Must be here for TestNG to find and run this, do not remove
+public class ParallelPublisherUnorderedTest extends PublisherVerification<Integer> {
+
+  private ForkJoinPool pool;
+  @BeforeClass void before() { pool = new ForkJoinPool(4); }
+  @AfterClass void after() { if (pool != null) pool.shutdown(); }
+
+  public ParallelPublisherUnorderedTest() {
+    super(new TestEnvironment());
+  }
+
+  @Override public Publisher<Integer> createPublisher(final long elements) {
+    assert(elements <= maxElementsFromPublisher());
+    return ParallelPublisher.range(0, (int)elements, 4, pool).merge(16);
+  }
+
+  @Override public Publisher<Integer> createFailedPublisher() {
+    return ParallelPublisher.from(new Supplier<Spliterator<Integer>>() {
+      @Override public Spliterator<Integer> get() {
+        throw new RuntimeException("Error state signal!");
+      }
+    }, 4, pool).merge(16);
+  }
+
+  @Override public long maxElementsFromPublisher() {
+    return Integer.MAX_VALUE;
+  }
+}
@@ -0,0 +1,37 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.tck.QueueFusionVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Test // Must be here for TestNG to find and run this, do not remove
+public class PublishOnPublisherFusionTest extends QueueFusionVerification<Integer> {
+
+  private ExecutorService e;
+  @BeforeClass void before() { e = Executors.newFixedThreadPool(4); }
+  @AfterClass void after() { if (e != null) e.shutdown(); }
+
+  public PublishOnPublisherFusionTest() {
+    super(new TestEnvironment());
+  }
+
+  // Two hops, so that the inner one fuses with the `RangePublisher` in SYNC mode and the outer one with the inner one
+  // in ASYNC mode, while the outer one grants ASYNC mode to the verification
+  @Override public Publisher<Integer> createPublisher(final long elements) {
+    return new PublishOnPublisher<Integer>(new PublishOnPublisher<Integer>(new RangePublisher(1, (int)elements), 16, e), 16, e);
+  }
+
+  @Override public Publisher<Integer> createFailedPublisher() {
+    return new PublishOnPublisher<Integer>(new PublishOnPublisher<Integer>(IterablePublisherFusionTest.failingAfter(20, e), 16, e), 16, e);
+  }
+}
@@ -0,0 +1,178 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.QueueSubscription;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+@Test // Must be here for TestNG to find and run this, do not remove
+public class PublishOnPublisherTest extends PublisherVerification<Integer> {
+
+  private ExecutorService e;
+  @BeforeClass void before() {
+    e = Executors.newFixedThreadPool(4, new ThreadFactory() {
+      @Override public Thread newThread(Runnable r) { return new Thread(r, "publishOn"); }
+    });
+  }
+  @AfterClass void after() { if (e != null) e.shutdown(); }
+
+  public PublishOnPublisherTest() {
+    super(new TestEnvironment());
+  }
+
+  @Override public Publisher<Integer> createPublisher(final long elements) {
+    assert(elements <= maxElementsFromPublisher());
+    return new PublishOnPublisher<Integer>(new RangePublisher(0, (int)elements), 16, e);
+  }
+
+  @Override public Publisher<Integer> createFailedPublisher() {
+    return new PublishOnPublisher<Integer>(new AsyncIterablePublisher<Integer>(new Iterable<Integer>() {
+      @Override public Iterator<Integer> iterator() {
+        throw new RuntimeException("Error state signal!");
+      }
+    }, e), e);
+  }
+
+  @Override public long maxElementsFromPublisher() {
+    return Integer.MAX_VALUE;
+  }
+
+  static final class CollectingSubscriber implements Subscriber<Integer> {
+    final List<Integer> items = Collections.synchronizedList(new ArrayList<Integer>());
+    final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+    final CountDownLatch done = new CountDownLatch(1);
+    final long request;
+    Subscription subscription;
+    long remaining;
+    volatile Throwable error;
+    CollectingSubscriber(long request) { this.request = request; this.remaining = request; }
+    @Override public void onSubscribe(Subscription s) { subscription = s; s.request(request); }
+    @Override public void onNext(Integer t) {
+      items.add(t);
+      threads.add(Thread.currentThread().getName());
+      if (request != Long.MAX_VALUE && --remaining == 0) {
+        remaining = request;
+        subscription.request(request);
+      }
+    }
+    @Override public void onError(Throwable t) { error = t; done.countDown(); }
+    @Override public void onComplete() { done.countDown(); }
+  }
+
+  @Test public void emitsOnTheExecutorAndRequestsInPrefetchChunks() throws InterruptedException {
+    final BlockingIterableTest.RecordingPublisher<Integer> source = new BlockingIterableTest.RecordingPublisher<Integer>(new RangePublisher(0, 100));
+    final CollectingSubscriber sub = new CollectingSubscriber(7);
+    new PublishOnPublisher<Integer>(source, 16, e).subscribe(sub);
+
+    assertTrue(sub.done.await(10, TimeUnit.SECONDS));
+    assertNull(sub.error);
+    assertEquals(sub.items, GeneratorPublisherTest.range(100));
+    assertEquals(new java.util.HashSet<String>(sub.threads), Collections.singleton("publishOn"));
+    // 16 up front, then 12 every time 12 have been emitted
+    final List<Object> expected = new ArrayList<Object>();
+    expected.add(16L);
+    for (int i = 0; i < 8; i++) expected.add(12L);
+    assertEquals(source.calls, expected);
+  }
+
+  @Test public void drainsInBatchesRatherThanATaskPerElement() throws InterruptedException {
+    final AtomicInteger tasks = new AtomicInteger();
+    final Executor counting = new Executor() {
+      @Override public void execute(Runnable command) {
+        tasks.getAndIncrement();
+        e.execute(command);
+      }
+    };
+    final CollectingSubscriber sub = new CollectingSubscriber(Long.MAX_VALUE);
+    new PublishOnPublisher<Integer>(new RangePublisher(0, 10000), counting).subscribe(sub);
+
+    assertTrue(sub.done.await(10, TimeUnit.SECONDS));
+    assertEquals(sub.items.size(), 10000);
+    // A synchronous source is requested from within the drain, so it refills the queue without scheduling it again
+    assertTrue(tasks.get() <= 2, tasks.get() + " tasks were scheduled");
+  }
+
+  @Test public void hopsBetweenTwoExecutors() throws InterruptedException {
+    final ExecutorService other = Executors.newSingleThreadExecutor();
+    try {
+      final CollectingSubscriber sub = new CollectingSubscriber(128);
+      new PublishOnPublisher<Integer>(new NumberIterablePublisher(0, 10000, other), 32, e).subscribe(sub);
+      assertTrue(sub.done.await(10, TimeUnit.SECONDS));
+      assertNull(sub.error);
+      assertEquals(sub.items, GeneratorPublisherTest.range(10000));
+    } finally {
+      other.shutdown();
+    }
+  }
+
+  @Test public void fusedPollLeavesTheSourceToTheDrain() throws Exception {
+    final List<String> callers = Collections.synchronizedList(new ArrayList<String>()); // The threads which called the source
+    final CountDownLatch cancelled = new CountDownLatch(1);
+    final Publisher<Integer> source = new Publisher<Integer>() {
+      @Override public void subscribe(final Subscriber<? super Integer> s) {
+        s.onSubscribe(new Subscription() {
+          int next;
+          @Override public void request(long n) {
+            callers.add(Thread.currentThread().getName());
+            for (long i = 0; i < n; i++) s.onNext(next++);
+          }
+          @Override public void cancel() {
+            callers.add(Thread.currentThread().getName());
+            cancelled.countDown();
+          }
+        });
+      }
+    };
+    final List<QueueSubscription<Integer>> fused = new ArrayList<QueueSubscription<Integer>>();
+    new PublishOnPublisher<Integer>(source, 16, e).subscribe(new Subscriber<Integer>() {
+      @Override @SuppressWarnings("unchecked") public void onSubscribe(Subscription s) {
+        final QueueSubscription<Integer> qs = (QueueSubscription<Integer>) s;
+        assertEquals(qs.requestFusion(QueueSubscription.ASYNC), QueueSubscription.ASYNC);
+        fused.add(qs);
+        s.request(Long.MAX_VALUE);
+      }
+      @Override public void onNext(Integer t) { } // Only tells us that there may be something to poll, which the test thread does
+      @Override public void onError(Throwable t) { }
+      @Override public void onComplete() { }
+    });
+
+    // Polls from the test thread, and cancels from there too, while the drain runs on the `Executor`
+    final QueueSubscription<Integer> qs = fused.get(0);
+    final List<Integer> items = new ArrayList<Integer>();
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (items.size() < 100 && System.nanoTime() < deadline) {
+      final Integer t = qs.poll();
+      if (t == null) Thread.yield(); else items.add(t);
+    }
+    qs.cancel();
+
+    assertTrue(cancelled.await(10, TimeUnit.SECONDS));
+    assertEquals(items, GeneratorPublisherTest.range(100));
+    assertEquals(new java.util.HashSet<String>(callers), Collections.singleton("publishOn"));
+  }
+}
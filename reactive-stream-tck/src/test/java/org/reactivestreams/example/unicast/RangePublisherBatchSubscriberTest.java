@@ -0,0 +1,49 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+import org.reactivestreams.BatchSubscriber;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.annotations.Test;
+
+/**
+ * Runs the {@link PublisherVerification} against the batched emission path of {@link RangePublisher}.
+ */
+@Test // Must be here for TestNG to find and run this, do not remove
+public class RangePublisherBatchSubscriberTest extends PublisherVerification<Integer> {
+    public RangePublisherBatchSubscriberTest() {
+        super(new TestEnvironment(50, 50));
+    }
+
+    @Override
+    public Publisher<Integer> createPublisher(long elements) {
+        final RangePublisher range = new RangePublisher(1, (int)elements);
+        return new Publisher<Integer>() {
+            @Override
+            public void subscribe(final Subscriber<? super Integer> s) {
+                if (s == null) throw null;
+                // Interpose a BatchSubscriber so the TCK exercises RangePublisher's onNextBatch path
+                range.subscribe(new BatchSubscriber<Integer>() {
+                    @Override public void onSubscribe(Subscription subscription) { s.onSubscribe(subscription); }
+                    @Override public void onNextBatch(Object[] items, int from, int to) {
+                        for (int i = from; i < to; i++) s.onNext((Integer)items[i]);
+                    }
+                    @Override public void onNext(Integer t) { s.onError(new AssertionError("RangePublisher signalled " + t + " outside of a batch")); }
+                    @Override public void onError(Throwable t) { s.onError(t); }
+                    @Override public void onComplete() { s.onComplete(); }
+                });
+            }
+        };
+    }
+
+    @Override
+    public Publisher<Integer> createFailedPublisher() {
+        return null;
+    }
+}
@@ -0,0 +1,26 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.tck.QueueFusionVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.annotations.Test;
+
+@Test // Must be here for TestNG to find and run this, do not remove
+public class RangePublisherFusionTest extends QueueFusionVerification<Integer> {
+
+  public RangePublisherFusionTest() {
+    super(new TestEnvironment());
+  }
+
+  @Override public Publisher<Integer> createPublisher(final long elements) {
+    return new RangePublisher(1, (int)elements);
+  }
+
+  @Override public Publisher<Integer> createFailedPublisher() {
+    return null;
+  }
+}
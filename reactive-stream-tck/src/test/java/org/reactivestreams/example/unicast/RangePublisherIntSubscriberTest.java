@@ -0,0 +1,47 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+import org.reactivestreams.IntSubscriber;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.annotations.Test;
+
+/**
+ * Runs the {@link PublisherVerification} against the unboxed emission path of {@link RangePublisher}.
+ */
+@Test // Must be here for TestNG to find and run this, do not remove
+public class RangePublisherIntSubscriberTest extends PublisherVerification<Integer> {
+    public RangePublisherIntSubscriberTest() {
+        super(new TestEnvironment(50, 50));
+    }
+
+    @Override
+    public Publisher<Integer> createPublisher(long elements) {
+        final RangePublisher range = new RangePublisher(1, (int)elements);
+        return new Publisher<Integer>() {
+            @Override
+            public void subscribe(final Subscriber<? super Integer> s) {
+                if (s == null) throw null;
+                // Interpose an IntSubscriber so the TCK exercises RangePublisher's onNextInt path
+                range.subscribe(new IntSubscriber() {
+                    @Override public void onSubscribe(Subscription subscription) { s.onSubscribe(subscription); }
+                    @Override public void onNextInt(int value) { s.onNext(value); }
+                    @Override public void onNext(Integer t) { s.onError(new AssertionError("RangePublisher boxed " + t + " for an IntSubscriber")); }
+                    @Override public void onError(Throwable t) { s.onError(t); }
+                    @Override public void onComplete() { s.onComplete(); }
+                });
+            }
+        };
+    }
+
+    @Override
+    public Publisher<Integer> createFailedPublisher() {
+        return null;
+    }
+}
@@ -0,0 +1,56 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.Spliterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static org.reactivestreams.example.unicast.IterablePublisherBatchSubscriberTest.batched;
+
+/**
+ * Runs the {@link PublisherVerification} against the batched emission path of {@link SpliteratorPublisher}.
+ */
+@Test // Must be here for TestNG to find and run this, do not remove
+public class SpliteratorPublisherBatchSubscriberTest extends PublisherVerification<Integer> {
+
+  private ExecutorService e;
+  @BeforeClass void before() { e = Executors.newFixedThreadPool(4); }
+  @AfterClass void after() { if (e != null) e.shutdown(); }
+
+  public SpliteratorPublisherBatchSubscriberTest() {
+    super(new TestEnvironment());
+  }
+
+  @Override public Publisher<Integer> createPublisher(final long elements) {
+    assert(elements <= maxElementsFromPublisher());
+    return batched(new SpliteratorPublisher<Integer>(new Supplier<Spliterator<Integer>>() {
+      @Override public Spliterator<Integer> get() {
+        return IntStream.range(0, (int)elements).boxed().spliterator();
+      }
+    }, e));
+  }
+
+  @Override public Publisher<Integer> createFailedPublisher() {
+    return batched(new SpliteratorPublisher<Integer>(new Supplier<Spliterator<Integer>>() {
+      @Override public Spliterator<Integer> get() {
+        throw new RuntimeException("Error state signal!");
+      }
+    }, e));
+  }
+
+  @Override public long maxElementsFromPublisher() {
+    return Integer.MAX_VALUE;
+  }
+}
@@ -0,0 +1,119 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+@Test // Must be here for TestNG to find and run this, do not remove
+public class SpliteratorPublisherTest extends PublisherVerification<Integer> {
+
+  private ExecutorService e;
+  @BeforeClass void before() { e = Executors.newFixedThreadPool(4); }
+  @AfterClass void after() { if (e != null) e.shutdown(); }
+
+  public SpliteratorPublisherTest() {
+    super(new TestEnvironment());
+  }
+
+  @Override public Publisher<Integer> createPublisher(final long elements) {
+    assert(elements <= maxElementsFromPublisher());
+    return new SpliteratorPublisher<Integer>(new Supplier<Spliterator<Integer>>() {
+      @Override public Spliterator<Integer> get() {
+        return IntStream.range(0, (int)elements).boxed().spliterator();
+      }
+    }, e);
+  }
+
+  @Override public Publisher<Integer> createFailedPublisher() {
+    return new SpliteratorPublisher<Integer>(new Supplier<Spliterator<Integer>>() {
+      @Override public Spliterator<Integer> get() {
+        throw new RuntimeException("Error state signal!");
+      }
+    }, e);
+  }
+
+  @Override public long maxElementsFromPublisher() {
+    return Integer.MAX_VALUE;
+  }
+
+  // Records what it receives and requests in steps of `step`
+  static class RecordingSubscriber<T> implements Subscriber<T> {
+    final List<T> items = new ArrayList<T>();
+    final CountDownLatch done = new CountDownLatch(1);
+    final long step;
+    Subscription subscription;
+    volatile Throwable error;
+    RecordingSubscriber(long step) { this.step = step; }
+    @Override public void onSubscribe(Subscription s) { subscription = s; s.request(step); }
+    @Override public void onNext(T t) { items.add(t); if (step != Long.MAX_VALUE && items.size() % step == 0) subscription.request(step); }
+    @Override public void onError(Throwable t) { error = t; done.countDown(); }
+    @Override public void onComplete() { done.countDown(); }
+  }
+
+  // A `SIZED` `Spliterator` which fails if it is asked for more elements than it has
+  static Supplier<Spliterator<Integer>> strict(final Integer... elements) {
+    return new Supplier<Spliterator<Integer>>() {
+      @Override public Spliterator<Integer> get() {
+        final Spliterator<Integer> s = Arrays.spliterator(elements);
+        return new Spliterators.AbstractSpliterator<Integer>(elements.length, Spliterator.SIZED | Spliterator.ORDERED) {
+          @Override public boolean tryAdvance(Consumer<? super Integer> action) {
+            if (!s.tryAdvance(action)) throw new IllegalStateException("Probed past the end");
+            return true;
+          }
+          @Override public void forEachRemaining(Consumer<? super Integer> action) {
+            s.forEachRemaining(action);
+          }
+        };
+      }
+    };
+  }
+
+  @Test public void sizedSpliteratorIsNotProbedPastTheEnd() throws InterruptedException {
+    for (long step : new long[] { 1, 2, Long.MAX_VALUE }) {
+      RecordingSubscriber<Integer> s = new RecordingSubscriber<Integer>(step);
+      new SpliteratorPublisher<Integer>(strict(1, 2, 3, 4, 5), 2, e).subscribe(s);
+      assertTrue(s.done.await(10, TimeUnit.SECONDS));
+      assertNull(s.error);
+      assertEquals(s.items, Arrays.asList(1, 2, 3, 4, 5));
+    }
+  }
+
+  @Test public void unsizedSpliteratorCompletesOnFirstFailedAdvance() throws InterruptedException {
+    final List<Integer> list = Arrays.asList(1, 2, 3);
+    RecordingSubscriber<Integer> s = new RecordingSubscriber<Integer>(Long.MAX_VALUE);
+    new SpliteratorPublisher<Integer>(new Supplier<Spliterator<Integer>>() {
+      @Override public Spliterator<Integer> get() {
+        return Spliterators.spliteratorUnknownSize(list.iterator(), Spliterator.ORDERED);
+      }
+    }, e).subscribe(s);
+    assertTrue(s.done.await(10, TimeUnit.SECONDS));
+    assertNull(s.error);
+    assertEquals(s.items, list);
+  }
+}
@@ -0,0 +1,73 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.reactivestreams.tck.SubscriberBlackboxVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+@Test // Must be here for TestNG to find and run this, do not remove
+public class SyncSubscriberPrefetchTest extends SubscriberBlackboxVerification<Integer> {
+
+  public SyncSubscriberPrefetchTest() {
+    super(new TestEnvironment());
+  }
+
+  @Override public Subscriber<Integer> createSubscriber() {
+    return new SyncSubscriber<Integer>(16) {
+      @Override protected boolean whenNext(final Integer element) {
+        return true;
+      }
+    };
+  }
+
+  @Test public void testRequestsAreBatched() throws InterruptedException {
+    final List<Long> requests = Collections.synchronizedList(new ArrayList<Long>());
+    final CountDownLatch latch = new CountDownLatch(1);
+    final Subscriber<Integer> sub = new SyncSubscriber<Integer>(16) {
+      @Override protected boolean whenNext(final Integer element) {
+        return true;
+      }
+
+      @Override public void onComplete() {
+        super.onComplete();
+        latch.countDown();
+      }
+    };
+
+    // Records every request made by the Subscriber while forwarding it to the actual Publisher
+    new RangePublisher(0, 30).subscribe(new Subscriber<Integer>() {
+      @Override public void onSubscribe(final Subscription s) {
+        sub.onSubscribe(new Subscription() {
+          @Override public void request(long n) { requests.add(n); s.request(n); }
+          @Override public void cancel() { s.cancel(); }
+        });
+      }
+      @Override public void onNext(Integer element) { sub.onNext(element); }
+      @Override public void onError(Throwable t) { sub.onError(t); }
+      @Override public void onComplete() { sub.onComplete(); }
+    });
+
+    assertTrue(latch.await(0, TimeUnit.MILLISECONDS)); // The Subscriber runs on the Publisher's thread
+    // 16 up front, then 12 each time 75% of the window has been consumed
+    assertEquals(requests, Arrays.asList(16L, 12L, 12L));
+  }
+
+  @Override public Integer createElement(int element) {
+    return element;
+  }
+}
@@ -0,0 +1,79 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.tck.SubscriberBlackboxVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.SkipException;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+@Test // Must be here for TestNG to find and run this, do not remove
+public class VirtualThreadAsyncSubscriberTest extends SubscriberBlackboxVerification<Integer> {
+
+  private ExecutorService e;
+  @BeforeClass void before() {
+    if (!VirtualThreads.isSupported()) throw new SkipException("Virtual threads require Java 21 or later");
+    e = VirtualThreads.newVirtualThreadPerTaskExecutor();
+  }
+  @AfterClass void after() { if (e != null) e.shutdown(); }
+
+  public VirtualThreadAsyncSubscriberTest() {
+    super(new TestEnvironment());
+  }
+
+  @Override public Subscriber<Integer> createSubscriber() {
+    return new AsyncSubscriber<Integer>(e, 16) {
+      @Override protected boolean whenNext(final Integer element) {
+        return true;
+      }
+    };
+  }
+
+  @Override public Integer createElement(int element) {
+    return element;
+  }
+
+  @Test public void blockingWhenNextParksTheVirtualThread() throws InterruptedException {
+    final AtomicLong sum = new AtomicLong();
+    final AtomicBoolean platform = new AtomicBoolean();
+    final CountDownLatch latch = new CountDownLatch(1);
+    final Subscriber<Integer> sub = new AsyncSubscriber<Integer>(e, 16) {
+      private long acc;
+      @Override protected boolean whenNext(final Integer element) {
+        if (!VirtualThreads.isVirtual(Thread.currentThread())) platform.set(true);
+        try {
+          Thread.sleep(1); // Like a slow write of every element
+        } catch (InterruptedException ex) {
+          throw new IllegalStateException(ex);
+        }
+        acc += element;
+        return true;
+      }
+
+      @Override protected void whenComplete() {
+        sum.set(acc);
+        latch.countDown();
+      }
+    };
+
+    AsyncIterablePublisher.blocking(BlockingIterablePublisherTest.range(100), e).subscribe(sub);
+    assertTrue(latch.await(env.defaultTimeoutMillis() * 10, TimeUnit.MILLISECONDS));
+    assertEquals(sum.get(), 4950L);
+    assertFalse(platform.get(), "whenNext ran on a platform thread");
+  }
+}
@@ -0,0 +1,100 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.unicast;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.SkipException;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+@Test // Must be here for TestNG to find and run this, do not remove
+public class VirtualThreadIterablePublisherTest extends PublisherVerification<Integer> {
+
+  private ExecutorService e;
+  @BeforeClass void before() {
+    if (!VirtualThreads.isSupported()) throw new SkipException("Virtual threads require Java 21 or later");
+    e = VirtualThreads.newVirtualThreadPerTaskExecutor();
+  }
+  @AfterClass void after() { if (e != null) e.shutdown(); }
+
+  public VirtualThreadIterablePublisherTest() {
+    super(new TestEnvironment());
+  }
+
+  @Override public Publisher<Integer> createPublisher(final long elements) {
+    assert(elements <= maxElementsFromPublisher());
+    return AsyncIterablePublisher.blocking(BlockingIterablePublisherTest.range((int)elements), e);
+  }
+
+  @Override public Publisher<Integer> createFailedPublisher() {
+    return AsyncIterablePublisher.blocking(new Iterable<Integer>() {
+      @Override public Iterator<Integer> iterator() {
+        throw new RuntimeException("Error state signal!");
+      }
+    }, e);
+  }
+
+  @Override public long maxElementsFromPublisher() {
+    return 1024 * 16;
+  }
+
+  // A source which blocks for a millisecond before every element, like a slow read, and records whether it ran on a platform thread
+  static Iterable<Integer> sleeping(final int elements, final AtomicBoolean platform) {
+    return new Iterable<Integer>() {
+      @Override public Iterator<Integer> iterator() {
+        return new Iterator<Integer>() {
+          int next;
+          @Override public boolean hasNext() { return next < elements; }
+          @Override public Integer next() {
+            if (next == elements) throw new NoSuchElementException();
+            if (!VirtualThreads.isVirtual(Thread.currentThread())) platform.set(true);
+            try {
+              Thread.sleep(1);
+            } catch (InterruptedException ex) {
+              throw new IllegalStateException(ex);
+            }
+            return next++;
+          }
+          @Override public void remove() { throw new UnsupportedOperationException(); }
+        };
+      }
+    };
+  }
+
+  @Test public void manyBlockingSourcesParkOnVirtualThreads() throws InterruptedException {
+    final int streams = 1000; // Far more than there are carrier threads, each sleeping for 100 ms in total
+    final AtomicBoolean platform = new AtomicBoolean();
+    final AtomicInteger received = new AtomicInteger();
+    final CountDownLatch done = new CountDownLatch(streams);
+    for (int i = 0; i < streams; i++) {
+      AsyncIterablePublisher.blocking(sleeping(100, platform), e).subscribe(new Subscriber<Integer>() {
+        @Override public void onSubscribe(Subscription s) { s.request(Long.MAX_VALUE); }
+        @Override public void onNext(Integer t) { received.getAndIncrement(); }
+        @Override public void onError(Throwable t) { t.printStackTrace(System.err); done.countDown(); }
+        @Override public void onComplete() { done.countDown(); }
+      });
+    }
+    assertTrue(done.await(10, TimeUnit.SECONDS), "The streams didn't run concurrently");
+    assertEquals(received.get(), streams * 100);
+    assertFalse(platform.get(), "The source ran on a platform thread");
+  }
+}
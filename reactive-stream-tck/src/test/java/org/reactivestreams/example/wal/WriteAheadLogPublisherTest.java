@@ -0,0 +1,240 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.example.wal;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+@Test // Must be here for TestNG to find and run this, do not remove
+public class WriteAheadLogPublisherTest extends PublisherVerification<Integer> {
+
+  static final Serializer<Integer> INTS = new Serializer<Integer>() {
+    @Override public byte[] serialize(Integer item) { return ByteBuffer.allocate(4).putInt(item).array(); }
+    @Override public Integer deserialize(ByteBuffer bytes) { return bytes.getInt(); }
+  };
+
+  private ExecutorService e;
+  private Path dir;
+  @BeforeClass void before() throws IOException { e = Executors.newFixedThreadPool(4); dir = Files.createTempDirectory("wal"); }
+  @AfterClass void after() throws IOException {
+    if (e != null) e.shutdown();
+    if (dir != null) {
+      Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+        @Override public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException { Files.delete(file); return FileVisitResult.CONTINUE; }
+        @Override public FileVisitResult postVisitDirectory(Path d, IOException ex) throws IOException { Files.delete(d); return FileVisitResult.CONTINUE; }
+      });
+    }
+  }
+
+  public WriteAheadLogPublisherTest() {
+    super(new TestEnvironment());
+  }
+
+  // Small segments, so there are plenty of them, without forcing, to keep the TCK fast
+  WriteAheadLogPublisher<Integer> open(Path directory) throws IOException {
+    return WriteAheadLogPublisher.open(directory, INTS, e, 1024, Long.MAX_VALUE, Long.MAX_VALUE, TimeUnit.MILLISECONDS, false);
+  }
+
+  // Replays the log from the given offset
+  static Publisher<Integer> from(final WriteAheadLogPublisher<Integer> log, final long offset) {
+    return new Publisher<Integer>() {
+      @Override public void subscribe(Subscriber<? super Integer> s) { log.subscribe(s, offset); }
+    };
+  }
+
+  @Override public Publisher<Integer> createPublisher(final long elements) {
+    assert(elements <= maxElementsFromPublisher());
+    try {
+      final WriteAheadLogPublisher<Integer> log = open(Files.createTempDirectory(dir, "tck"));
+      for (int i = 0; i < elements; i++) {
+        log.offer(i);
+      }
+      log.close();
+      return from(log, 0L);
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  // Asking for an offset beyond the end of the log fails the subscription
+  @Override public Publisher<Integer> createFailedPublisher() {
+    try {
+      return from(open(Files.createTempDirectory(dir, "failed")), 1L);
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  @Override public long maxElementsFromPublisher() {
+    return 1024;
+  }
+
+  static class RecordingSubscriber implements Subscriber<Integer> {
+    final List<Integer> items = Collections.synchronizedList(new ArrayList<Integer>());
+    final CountDownLatch done = new CountDownLatch(1);
+    volatile Throwable error;
+    @Override public void onSubscribe(Subscription s) { s.request(Long.MAX_VALUE); }
+    @Override public void onNext(Integer t) { items.add(t); }
+    @Override public void onError(Throwable t) { error = t; done.countDown(); }
+    @Override public void onComplete() { done.countDown(); }
+  }
+
+  static void offer(WriteAheadLogPublisher<Integer> log, int from, int to) throws Exception {
+    CompletableFuture<Long> last = null;
+    for (int i = from; i < to; i++) {
+      last = log.offer(i);
+    }
+    assertEquals(last.get(10, TimeUnit.SECONDS), Long.valueOf(to - 1));
+  }
+
+  static List<Integer> range(int from, int to) {
+    final List<Integer> list = new ArrayList<Integer>();
+    for (int i = from; i < to; i++) list.add(i);
+    return list;
+  }
+
+  @Test public void replaysFromAnOffsetAndFollowsTheLiveItems() throws Exception {
+    final WriteAheadLogPublisher<Integer> log = WriteAheadLogPublisher.open(Files.createTempDirectory(dir, "replay"), INTS, e,
+        64 * 1024, Long.MAX_VALUE, Long.MAX_VALUE, TimeUnit.MILLISECONDS, true);
+    offer(log, 0, 20000); // Several segments, with many index entries each, and far more than the items kept in memory
+
+    final RecordingSubscriber sub = new RecordingSubscriber();
+    log.subscribe(sub, 12345);
+    offer(log, 20000, 30000);
+    log.close();
+
+    assertTrue(sub.done.await(10, TimeUnit.SECONDS));
+    assertNull(sub.error);
+    assertEquals(sub.items, range(12345, 30000));
+  }
+
+  @Test public void reopeningContinuesTheLog() throws Exception {
+    final Path directory = Files.createTempDirectory(dir, "reopen");
+    WriteAheadLogPublisher<Integer> log = open(directory);
+    offer(log, 0, 500);
+    log.close();
+
+    log = open(directory);
+    assertEquals(log.committedOffset(), 500L);
+    offer(log, 500, 600);
+    final RecordingSubscriber sub = new RecordingSubscriber();
+    log.subscribe(sub, 0L);
+    log.close();
+
+    assertTrue(sub.done.await(10, TimeUnit.SECONDS));
+    assertNull(sub.error);
+    assertEquals(sub.items, range(0, 600));
+  }
+
+  @Test public void recoveryTruncatesAnInterruptedWrite() throws Exception {
+    final Path directory = Files.createTempDirectory(dir, "torn");
+    WriteAheadLogPublisher<Integer> log = open(directory);
+    offer(log, 0, 10);
+    log.close();
+
+    // Half a record: a header announcing 4 bytes, with only 2 of them
+    final Path last = directory.resolve(String.format("%020d", 0L) + Segment.LOG_SUFFIX);
+    Files.write(last, new byte[] { 0, 0, 0, 4, 1, 2, 3, 4, 5, 6 }, StandardOpenOption.APPEND);
+
+    log = open(directory);
+    assertEquals(log.committedOffset(), 10L);
+    offer(log, 10, 20);
+    final RecordingSubscriber sub = new RecordingSubscriber();
+    log.subscribe(sub, 0L);
+    log.close();
+
+    assertTrue(sub.done.await(10, TimeUnit.SECONDS));
+    assertNull(sub.error);
+    assertEquals(sub.items, range(0, 20));
+  }
+
+  @Test public void retentionDeletesTheOldestSegments() throws Exception {
+    final Path directory = Files.createTempDirectory(dir, "retention");
+    final WriteAheadLogPublisher<Integer> log = WriteAheadLogPublisher.open(directory, INTS, e,
+        1024, 4096, Long.MAX_VALUE, TimeUnit.MILLISECONDS, false);
+    offer(log, 0, 2000);
+
+    assertTrue(log.earliestOffset() > 0L, "Nothing was deleted");
+    int files = 0;
+    try (DirectoryStream<Path> logs = Files.newDirectoryStream(directory, "*" + Segment.LOG_SUFFIX)) {
+      for (Path ignored : logs) files++;
+    }
+    assertTrue(files <= 6, files + " segments are left"); // At most 4096 bytes, plus the active segment
+
+    final RecordingSubscriber sub = new RecordingSubscriber();
+    log.subscribe(sub, 0L);
+    assertTrue(sub.done.await(10, TimeUnit.SECONDS));
+    assertTrue(sub.error instanceof IllegalStateException, "Expected the offset to be gone but got " + sub.error);
+
+    final RecordingSubscriber retained = new RecordingSubscriber();
+    final long earliest = log.earliestOffset();
+    log.subscribe(retained, earliest);
+    log.close();
+    assertTrue(retained.done.await(10, TimeUnit.SECONDS));
+    assertNull(retained.error);
+    assertEquals(retained.items, range((int)earliest, 2000));
+  }
+
+  @Test public void concurrentOffersAreCommittedTogether() throws Exception {
+    final WriteAheadLogPublisher<Integer> log = WriteAheadLogPublisher.open(Files.createTempDirectory(dir, "group"), INTS, e);
+    final ExecutorService producers = Executors.newFixedThreadPool(4);
+    final List<CompletableFuture<Long>> futures = Collections.synchronizedList(new ArrayList<CompletableFuture<Long>>());
+    try {
+      for (int t = 0; t < 4; t++) {
+        final int base = t * 1000;
+        producers.execute(new Runnable() {
+          @Override public void run() {
+            for (int i = 0; i < 1000; i++) futures.add(log.offer(base + i));
+          }
+        });
+      }
+    } finally {
+      producers.shutdown();
+    }
+    assertTrue(producers.awaitTermination(10, TimeUnit.SECONDS));
+
+    final Set<Long> offsets = new HashSet<Long>();
+    for (CompletableFuture<Long> f : futures) offsets.add(f.get(10, TimeUnit.SECONDS));
+    assertEquals(offsets.size(), 4000);
+    assertEquals(log.committedOffset(), 4000L);
+
+    final RecordingSubscriber sub = new RecordingSubscriber();
+    log.subscribe(sub, 0L);
+    log.close();
+    assertTrue(sub.done.await(10, TimeUnit.SECONDS));
+    assertNull(sub.error);
+    assertEquals(new HashSet<Integer>(sub.items), new HashSet<Integer>(range(0, 4000)));
+  }
+}
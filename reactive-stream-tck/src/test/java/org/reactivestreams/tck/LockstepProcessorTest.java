@@ -5,11 +5,19 @@
 package org.reactivestreams.tck;
 
 import org.reactivestreams.*;
+import org.reactivestreams.example.multicast.SubscriberRegistry;
+import org.reactivestreams.example.unicast.PublishOnPublisher;
+import org.reactivestreams.example.unicast.RangePublisher;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.*;
 
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
 @Test
 public class LockstepProcessorTest extends IdentityProcessorVerification<Integer> {
 
@@ -48,13 +56,78 @@ public class LockstepProcessorTest extends IdentityProcessorVerification<Integer
         return true;
     }
 
-    static final class LockstepProcessor<T> implements Processor<T, T> {
+    @Test
+    public void mustSignalTheSameWhenFusedSynchronously() throws InterruptedException {
+        assertFusedSignals(new RangePublisher(1, 1000));
+    }
+
+    @Test
+    public void mustSignalTheSameWhenFusedAsynchronously() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertFusedSignals(new PublishOnPublisher<Integer>(new RangePublisher(1, 1000), 16, executor));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // Both subscribers must see 1..1000 and then onComplete, just as if the source hadn't fused
+    void assertFusedSignals(Publisher<Integer> source) throws InterruptedException {
+        LockstepProcessor<Integer> processor = new LockstepProcessor<Integer>();
+        final List<Object> first = new CopyOnWriteArrayList<Object>();
+        final List<Object> second = new CopyOnWriteArrayList<Object>();
+        final CountDownLatch done = new CountDownLatch(2);
+        processor.subscribe(recordingSubscriber(first, done));
+        processor.subscribe(recordingSubscriber(second, done));
+        source.subscribe(processor);
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        List<Object> expected = new ArrayList<Object>();
+        for (int i = 1; i <= 1000; i++) {
+            expected.add(i);
+        }
+        expected.add("onComplete");
+        assertEquals(first, expected);
+        assertEquals(second, expected);
+    }
+
+    static Subscriber<Integer> recordingSubscriber(final List<Object> signals, final CountDownLatch done) {
+        return new Subscriber<Integer>() {
+            Subscription upstream;
+
+            @Override
+            public void onSubscribe(Subscription s) {
+                upstream = s;
+                s.request(7);
+            }
+
+            @Override
+            public void onNext(Integer t) {
+                signals.add(t);
+                if (signals.size() % 7 == 0) {
+                    upstream.request(7);
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                signals.add(t);
+                done.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                signals.add("onComplete");
+                done.countDown();
+            }
+        };
+    }
 
-        final AtomicReference<LockstepSubscription<T>[]> subscribers =
-                new AtomicReference<LockstepSubscription<T>[]>(EMPTY);
+    static final class LockstepProcessor<T> implements Processor<T, T> {
 
-        static final LockstepSubscription[] EMPTY = new LockstepSubscription[0];
-        static final LockstepSubscription[] TERMINATED = new LockstepSubscription[0];
+        @SuppressWarnings("unchecked")
+        final SubscriberRegistry<LockstepSubscription<T>> subscribers =
+                new SubscriberRegistry<LockstepSubscription<T>>(new LockstepSubscription[0]);
 
         volatile boolean done;
         Throwable error;
@@ -75,6 +148,12 @@ public class LockstepProcessorTest extends IdentityProcessorVerification<Integer
 
         int consumed;
 
+        // Set if the upstream has granted fusion, then its `QueueSubscription` is our queue,
+        // `fused` is written before the volatile `sourceMode`, which is read first
+        QueueSubscription<T> fused;
+
+        volatile int sourceMode = QueueSubscription.NONE;
+
         @Override
         public void subscribe(Subscriber<? super T> s) {
             LockstepSubscription<T> subscription = new LockstepSubscription<T>(s, this);
@@ -96,64 +175,41 @@ public class LockstepProcessorTest extends IdentityProcessorVerification<Integer
         }
 
         boolean add(LockstepSubscription<T> sub) {
-            for (;;) {
-                LockstepSubscription<T>[] a = subscribers.get();
-                if (a == TERMINATED) {
-                    return false;
-                }
-                int n = a.length;
-                LockstepSubscription<T>[] b = new LockstepSubscription[n + 1];
-                System.arraycopy(a, 0, b, 0, n);
-                b[n] = sub;
-                if (subscribers.compareAndSet(a, b)) {
-                    return true;
-                }
-            }
+            int slot = subscribers.add(sub);
+            sub.slot = slot;
+            return slot != SubscriberRegistry.TERMINATED;
         }
 
         void remove(LockstepSubscription<T> sub) {
-            for (;;) {
-                LockstepSubscription<T>[] a = subscribers.get();
-                int n = a.length;
-
-                if (n == 0) {
-                    break;
-                }
-
-                int j = -1;
-                for (int i = 0; i < n; i++) {
-                    if (a[i] == sub) {
-                        j = i;
-                        break;
-                    }
-                }
-
-                if (j < 0) {
-                    break;
-                }
-                LockstepSubscription<T>[] b;
-                if (n == 1) {
-                    b = TERMINATED;
-                } else {
-                    b = new LockstepSubscription[n - 1];
-                    System.arraycopy(a, 0, b, 0, j);
-                    System.arraycopy(a, j + 1, b, j, n - j - 1);
-                }
-                if (subscribers.compareAndSet(a, b)) {
-                    if (b == TERMINATED) {
-                        Subscription s = upstream.getAndSet(CancelledSubscription.INSTANCE);
-                        if (s != null) {
-                            s.cancel();
-                        }
-                    }
-                    break;
+            // The processor is done once its last subscriber is gone
+            if (subscribers.remove(sub.slot, sub) && subscribers.terminateIfEmpty()) {
+                Subscription s = upstream.getAndSet(CancelledSubscription.INSTANCE);
+                if (s != null) {
+                    s.cancel();
                 }
             }
         }
 
         @Override
+        @SuppressWarnings("unchecked")
         public void onSubscribe(Subscription s) {
             if (upstream.compareAndSet(null, s)) {
+                if (s instanceof QueueSubscription) {
+                    QueueSubscription<T> qs = (QueueSubscription<T>) s;
+                    int mode = qs.requestFusion(QueueSubscription.ANY);
+                    if (mode == QueueSubscription.SYNC) {
+                        // All elements are available, so there is nothing to request or to wait for
+                        fused = qs;
+                        sourceMode = mode;
+                        done = true;
+                        drain();
+                        return;
+                    }
+                    if (mode == QueueSubscription.ASYNC) {
+                        fused = qs;
+                        sourceMode = mode;
+                    }
+                }
                 s.request(BUFFER_MASK + 1);
             } else {
                 s.cancel();
@@ -162,6 +218,10 @@ public class LockstepProcessorTest extends IdentityProcessorVerification<Integer
 
         @Override
         public void onNext(T t) {
+            if (sourceMode == QueueSubscription.ASYNC) {
+                drain(); // The element is in the upstream's queue
+                return;
+            }
             if (t == null) {
                 throw new NullPointerException("t == null");
             }
@@ -197,23 +257,24 @@ public class LockstepProcessorTest extends IdentityProcessorVerification<Integer
             for (;;) {
 
                 for (;;) {
-                    LockstepSubscription<T>[] subscribers = this.subscribers.get();
-                    int n = subscribers.length;
+                    SubscriberRegistry.View<LockstepSubscription<T>> subscribers = this.subscribers.view();
+                    int n = subscribers.length();
 
+                    int mode = sourceMode;
                     long ci = consumerIndex.get();
 
                     boolean d = done;
-                    boolean empty = producerIndex.get() == ci;
+                    boolean empty = mode == QueueSubscription.NONE ? producerIndex.get() == ci : fused.isEmpty();
 
                     if (d) {
                         Throwable ex = error;
                         if (ex != null) {
-                            for (LockstepSubscription<T> sub : this.subscribers.getAndSet(TERMINATED)) {
+                            for (LockstepSubscription<T> sub : this.subscribers.terminate()) {
                                 sub.subscriber.onError(ex);
                             }
                             break;
                         } else if (empty) {
-                            for (LockstepSubscription<T> sub : this.subscribers.getAndSet(TERMINATED)) {
+                            for (LockstepSubscription<T> sub : this.subscribers.terminate()) {
                                 sub.subscriber.onComplete();
                             }
                             break;
@@ -223,7 +284,11 @@ public class LockstepProcessorTest extends IdentityProcessorVerification<Integer
                     if (n != 0 && !empty) {
                         long ready = Long.MAX_VALUE;
                         int c = 0;
-                        for (LockstepSubscription<T> sub : subscribers) {
+                        for (int i = 0; i < n; i++) {
+                            LockstepSubscription<T> sub = subscribers.get(i);
+                            if (sub == null) {
+                                continue;
+                            }
                             long req = sub.get();
                             if (req != Long.MIN_VALUE) {
                                 ready = Math.min(ready, req - sub.emitted);
@@ -232,17 +297,36 @@ public class LockstepProcessorTest extends IdentityProcessorVerification<Integer
                         }
 
                         if (ready != 0 && c != 0) {
-                            int offset = (int) ci & BUFFER_MASK;
-                            T value = queue.get(offset);
-                            queue.lazySet(offset, null);
-                            consumerIndex.lazySet(ci + 1);
-
-                            for (LockstepSubscription<T> sub : subscribers) {
-                                sub.subscriber.onNext(value);
-                                sub.emitted++;
+                            T value;
+                            if (mode == QueueSubscription.NONE) {
+                                int offset = (int) ci & BUFFER_MASK;
+                                value = queue.get(offset);
+                                queue.lazySet(offset, null);
+                                consumerIndex.lazySet(ci + 1);
+                            } else {
+                                try {
+                                    value = fused.poll();
+                                } catch (Throwable ex) {
+                                    // In SYNC mode this stands in for onError
+                                    upstream.get().cancel();
+                                    error = ex;
+                                    done = true;
+                                    continue;
+                                }
+                                if (value == null) {
+                                    continue;
+                                }
                             }
 
-                            if (++consumed == limit) {
+                            for (int i = 0; i < n; i++) {
+                                LockstepSubscription<T> sub = subscribers.get(i);
+                                if (sub != null) {
+                                    sub.subscriber.onNext(value);
+                                    sub.emitted++;
+                                }
+                            }
+
+                            if (mode != QueueSubscription.SYNC && ++consumed == limit) {
                                 consumed = 0;
                                 upstream.get().request(limit);
                             }
@@ -270,6 +354,8 @@ public class LockstepProcessorTest extends IdentityProcessorVerification<Integer
 
             long emitted;
 
+            volatile int slot = SubscriberRegistry.TERMINATED;
+
             LockstepSubscription(Subscriber<? super T> subscriber, LockstepProcessor<T> parent) {
                 this.subscriber = subscriber;
                 this.parent = parent;
@@ -0,0 +1,36 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams;
+
+/**
+ * A {@link Subscriber} which can receive several elements in a single call to {@link #onNextBatch(Object[], int, int)}.
+ * <p>
+ * A {@link Publisher} that detects a {@link BatchSubscriber} may signal elements in batches instead of one
+ * at a time via {@link #onNext(Object)}. A batch of {@code to - from} elements is equivalent to that many
+ * {@code onNext} signals in order: it counts against the demand signalled via {@link Subscription#request(long)}
+ * and follows all the same rules. A {@link Publisher} may mix both kinds of signals freely.
+ * <p>
+ * A {@link Publisher} that is not aware of this interface keeps calling {@link #onNext(Object)}.
+ *
+ * @param <T> the type of element signaled
+ */
+public interface BatchSubscriber<T> extends Subscriber<T> {
+
+    /**
+     * Data notification of the elements {@code items[from]} up to but excluding {@code items[to]}, sent by
+     * the {@link Publisher} in response to requests to {@link Subscription#request(long)}.
+     * <p>
+     * The array is owned by the {@link Publisher} and may be reused once this method returns,
+     * so the elements must be consumed or copied before returning.
+     * <p>
+     * The array may be an {@code Object[]} even if its elements are all of type {@code T},
+     * which is why it is not typed {@code T[]}.
+     *
+     * @param items the array holding the non-null elements signaled
+     * @param from the index of the first element signaled, inclusive
+     * @param to the index of the last element signaled, exclusive and greater than {@code from}
+     */
+    public void onNextBatch(Object[] items, int from, int to);
+}
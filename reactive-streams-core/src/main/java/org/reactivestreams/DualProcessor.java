@@ -0,0 +1,38 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams;
+
+import java.util.concurrent.Flow;
+
+/**
+ * A {@link Processor} which is also a {@link Flow.Processor}, so that it can be used on either side of a pipeline
+ * as is: {@link FlowAdapters#toFlowProcessor(Processor)} returns the same instance.
+ * <p>
+ * A subclass implements the Reactive Streams methods, the {@link Flow} ones hand their arguments to them,
+ * as in {@link DualSubscriber} and {@link DualPublisher}.
+ *
+ * @param <T> the type of element signaled to the {@link Subscriber}
+ * @param <R> the type of element signaled by the {@link Publisher}
+ */
+public abstract class DualProcessor<T, R> extends DualSubscriber<T> implements Processor<T, R>, Flow.Processor<T, R> {
+
+    @Override
+    public abstract void subscribe(Subscriber<? super R> s);
+
+    @Override
+    public final void subscribe(Flow.Subscriber<? super R> s) {
+        subscribe((s == null) ? null : FlowAdapters.<R>reactiveToFlowSubscriber(s));
+    }
+
+    /**
+     * Hands a {@link DualSubscriber} to {@link #subscribe(Subscriber)}, this overload only exists so that
+     * a call with one resolves without a cast, as it matches both of the above.
+     *
+     * @param s the {@link Subscriber} that will consume signals from this {@link Publisher}
+     */
+    public final void subscribe(DualSubscriber<? super R> s) {
+        subscribe((Subscriber<? super R>)s);
+    }
+}
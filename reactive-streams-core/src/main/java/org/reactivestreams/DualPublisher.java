@@ -0,0 +1,37 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams;
+
+import java.util.concurrent.Flow;
+
+/**
+ * A {@link Publisher} which is also a {@link Flow.Publisher}, so that either kind of {@link Subscriber} can subscribe
+ * to it as is: {@link FlowAdapters#toFlowPublisher(Publisher)} returns the same instance.
+ * <p>
+ * A subclass implements {@link #subscribe(Subscriber)}, {@link #subscribe(Flow.Subscriber)} hands a
+ * {@link Flow.Subscriber} to it, wrapping it only if it is not a {@link DualSubscriber}.
+ *
+ * @param <T> the type of element signaled
+ */
+public abstract class DualPublisher<T> implements Publisher<T>, Flow.Publisher<T> {
+
+    @Override
+    public abstract void subscribe(Subscriber<? super T> s);
+
+    @Override
+    public final void subscribe(Flow.Subscriber<? super T> s) {
+        subscribe((s == null) ? null : FlowAdapters.<T>reactiveToFlowSubscriber(s));
+    }
+
+    /**
+     * Hands a {@link DualSubscriber} to {@link #subscribe(Subscriber)}, this overload only exists so that
+     * a call with one resolves without a cast, as it matches both of the above.
+     *
+     * @param s the {@link Subscriber} that will consume signals from this {@link Publisher}
+     */
+    public final void subscribe(DualSubscriber<? super T> s) {
+        subscribe((Subscriber<? super T>)s);
+    }
+}
@@ -0,0 +1,48 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams;
+
+import java.util.concurrent.Flow;
+
+/**
+ * A {@link Subscriber} which is also a {@link Flow.Subscriber}, so that it can be subscribed to either kind of
+ * {@link Publisher} as is: {@link FlowAdapters#toFlowSubscriber(Subscriber)} returns the same instance, and the
+ * {@link Publisher}s created by {@link FlowAdapters} pass it on instead of wrapping it.
+ * <p>
+ * A subclass implements the Reactive Streams methods, {@link #onSubscribe(Flow.Subscription)} hands a
+ * {@link Flow.Subscription} to {@link #onSubscribe(Subscription)}, wrapping it only if it is not a
+ * {@link Subscription} already, as a {@link DualSubscription} is.
+ *
+ * @param <T> the type of element signaled
+ */
+public abstract class DualSubscriber<T> implements Subscriber<T>, Flow.Subscriber<T> {
+
+    @Override
+    public abstract void onSubscribe(Subscription s);
+
+    @Override
+    public final void onSubscribe(Flow.Subscription s) {
+        onSubscribe(FlowAdapters.reactiveToFlowSubscription(s));
+    }
+
+    /**
+     * Hands a {@link DualSubscription} to {@link #onSubscribe(Subscription)}, this overload only exists so that
+     * a call with one resolves without a cast, as it matches both of the above.
+     *
+     * @param s the {@link Subscription} that allows requesting data
+     */
+    public final void onSubscribe(DualSubscription s) {
+        onSubscribe((Subscription)s);
+    }
+
+    @Override
+    public abstract void onNext(T t);
+
+    @Override
+    public abstract void onError(Throwable t);
+
+    @Override
+    public abstract void onComplete();
+}
@@ -0,0 +1,23 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams;
+
+import java.util.concurrent.Flow;
+
+/**
+ * A {@link Subscription} which is also a {@link Flow.Subscription}.
+ * <p>
+ * Both interfaces declare the same {@code request} and {@code cancel} methods, so a subclass implements them once,
+ * and the {@link DualSubscriber}s and {@link FlowAdapters} hand the same instance to either kind of {@link Subscriber}
+ * instead of wrapping it.
+ */
+public abstract class DualSubscription implements Subscription, Flow.Subscription {
+
+    @Override
+    public abstract void request(long n);
+
+    @Override
+    public abstract void cancel();
+}
@@ -120,7 +120,7 @@ public final class FlowAdapters {
         } else if (reactiveStreamsSubscriber instanceof Flow.Subscriber) {
             flowSubscriber = (Flow.Subscriber<T>)reactiveStreamsSubscriber;
         } else {
-            flowSubscriber = new FlowToReactiveSubscriber<T>(reactiveStreamsSubscriber);
+            flowSubscriber = flowToReactiveSubscriber(reactiveStreamsSubscriber);
         }
         return flowSubscriber;
     }
@@ -140,11 +140,75 @@ public final class FlowAdapters {
         } else if (flowSubscriber instanceof Subscriber) {
             subscriber = (Subscriber<T>)flowSubscriber;
         } else {
-            subscriber = new ReactiveToFlowSubscriber<T>(flowSubscriber);
+            subscriber = reactiveToFlowSubscriber(flowSubscriber);
         }
         return subscriber;
     }
 
+    /**
+     * Wraps a Reactive Streams Subscriber into a Flow Subscriber which is also a
+     * {@link BatchSubscriber} if the Reactive Streams Subscriber is one, unless it is
+     * a {@link DualSubscriber}, which is already a Flow Subscriber.
+     * @param <T> the element type
+     * @param reactive the Reactive Streams Subscriber to wrap
+     * @return the wrapping Flow Subscriber, or the same instance
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Flow.Subscriber<T> flowToReactiveSubscriber(Subscriber<? super T> reactive) {
+        if (reactive instanceof DualSubscriber) {
+            return (Flow.Subscriber<T>)reactive;
+        }
+        if (reactive instanceof BatchSubscriber) {
+            return new FlowToReactiveBatchSubscriber<T>((BatchSubscriber<? super T>)reactive);
+        }
+        return new FlowToReactiveSubscriber<T>(reactive);
+    }
+
+    /**
+     * Wraps a Flow Subscriber into a Reactive Streams Subscriber which is also a
+     * {@link BatchSubscriber} if the Flow Subscriber is one, unless it is
+     * a {@link DualSubscriber}, which is already a Reactive Streams Subscriber.
+     * @param <T> the element type
+     * @param flow the Flow Subscriber to wrap
+     * @return the wrapping Reactive Streams Subscriber, or the same instance
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Subscriber<T> reactiveToFlowSubscriber(Flow.Subscriber<? super T> flow) {
+        if (flow instanceof DualSubscriber) {
+            return (Subscriber<T>)flow;
+        }
+        if (flow instanceof BatchSubscriber) {
+            return new ReactiveToFlowBatchSubscriber<T>(flow);
+        }
+        return new ReactiveToFlowSubscriber<T>(flow);
+    }
+
+    /**
+     * Wraps a Flow Subscription into a Reactive Streams Subscription, unless it is one already,
+     * such as a {@link DualSubscription}.
+     * @param flow the Flow Subscription to wrap, may be {@code null}
+     * @return the wrapping Reactive Streams Subscription, or the same instance
+     */
+    static Subscription reactiveToFlowSubscription(Flow.Subscription flow) {
+        if (flow == null || flow instanceof Subscription) {
+            return (Subscription)flow;
+        }
+        return new ReactiveToFlowSubscription(flow);
+    }
+
+    /**
+     * Wraps a Reactive Streams Subscription into a Flow Subscription, unless it is one already,
+     * such as a {@link DualSubscription}.
+     * @param reactive the Reactive Streams Subscription to wrap, may be {@code null}
+     * @return the wrapping Flow Subscription, or the same instance
+     */
+    static Flow.Subscription flowToReactiveSubscription(Subscription reactive) {
+        if (reactive == null || reactive instanceof Flow.Subscription) {
+            return (Flow.Subscription)reactive;
+        }
+        return new FlowToReactiveSubscription(reactive);
+    }
+
     /**
      * Wraps a Reactive Streams Subscription and converts the calls to a Flow Subscription.
      */
@@ -194,7 +258,7 @@ public final class FlowAdapters {
      * Wraps a Reactive Streams Subscriber and forwards methods of the Flow Subscriber to it.
      * @param <T> the element type
      */
-    static final class FlowToReactiveSubscriber<T> implements Flow.Subscriber<T> {
+    static class FlowToReactiveSubscriber<T> implements Flow.Subscriber<T> {
         final Subscriber<? super T> reactiveStreams;
 
         public FlowToReactiveSubscriber(Subscriber<? super T> reactive) {
@@ -203,7 +267,7 @@ public final class FlowAdapters {
 
         @Override
         public void onSubscribe(Flow.Subscription subscription) {
-            reactiveStreams.onSubscribe((subscription == null) ? null : new ReactiveToFlowSubscription(subscription));
+            reactiveStreams.onSubscribe(reactiveToFlowSubscription(subscription));
         }
 
         @Override
@@ -227,7 +291,7 @@ public final class FlowAdapters {
      * Wraps a Flow Subscriber and forwards methods of the Reactive Streams Subscriber to it.
      * @param <T> the element type
      */
-    static final class ReactiveToFlowSubscriber<T> implements Subscriber<T> {
+    static class ReactiveToFlowSubscriber<T> implements Subscriber<T> {
         final Flow.Subscriber<? super T> flow;
 
         public ReactiveToFlowSubscriber(Flow.Subscriber<? super T> flow) {
@@ -236,7 +300,7 @@ public final class FlowAdapters {
 
         @Override
         public void onSubscribe(Subscription subscription) {
-            flow.onSubscribe((subscription == null) ? null : new FlowToReactiveSubscription(subscription));
+            flow.onSubscribe(flowToReactiveSubscription(subscription));
         }
 
         @Override
@@ -256,6 +320,45 @@ public final class FlowAdapters {
 
     }
 
+    /**
+     * Wraps a Reactive Streams {@link BatchSubscriber} and forwards methods of the Flow Subscriber
+     * and batches of elements to it.
+     * @param <T> the element type
+     */
+    static final class FlowToReactiveBatchSubscriber<T> extends FlowToReactiveSubscriber<T> implements BatchSubscriber<T> {
+
+        public FlowToReactiveBatchSubscriber(BatchSubscriber<? super T> reactive) {
+            super(reactive);
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            reactiveStreams.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNextBatch(Object[] items, int from, int to) {
+            ((BatchSubscriber<? super T>)reactiveStreams).onNextBatch(items, from, to);
+        }
+    }
+
+    /**
+     * Wraps a Flow Subscriber which is also a {@link BatchSubscriber} and forwards methods of the
+     * Reactive Streams Subscriber and batches of elements to it.
+     * @param <T> the element type
+     */
+    static final class ReactiveToFlowBatchSubscriber<T> extends ReactiveToFlowSubscriber<T> implements BatchSubscriber<T> {
+
+        public ReactiveToFlowBatchSubscriber(Flow.Subscriber<? super T> flow) {
+            super(flow);
+        }
+
+        @Override
+        public void onNextBatch(Object[] items, int from, int to) {
+            ((BatchSubscriber<?>)flow).onNextBatch(items, from, to);
+        }
+    }
+
     /**
      * Wraps a Flow Processor and forwards methods of the Reactive Streams Processor to it.
      * @param <T> the input type
@@ -270,7 +373,7 @@ public final class FlowAdapters {
 
         @Override
         public void onSubscribe(Subscription subscription) {
-            flow.onSubscribe((subscription == null) ? null : new FlowToReactiveSubscription(subscription));
+            flow.onSubscribe(flowToReactiveSubscription(subscription));
         }
 
         @Override
@@ -290,7 +393,7 @@ public final class FlowAdapters {
 
         @Override
         public void subscribe(Subscriber<? super U> s) {
-            flow.subscribe((s == null) ? null : new FlowToReactiveSubscriber<U>(s));
+            flow.subscribe((s == null) ? null : FlowAdapters.<U>flowToReactiveSubscriber(s));
         }
     }
 
@@ -308,7 +411,7 @@ public final class FlowAdapters {
 
         @Override
         public void onSubscribe(Flow.Subscription subscription) {
-            reactiveStreams.onSubscribe((subscription == null) ? null : new ReactiveToFlowSubscription(subscription));
+            reactiveStreams.onSubscribe(reactiveToFlowSubscription(subscription));
         }
 
         @Override
@@ -328,7 +431,7 @@ public final class FlowAdapters {
 
         @Override
         public void subscribe(Flow.Subscriber<? super U> s) {
-            reactiveStreams.subscribe((s == null) ? null : new ReactiveToFlowSubscriber<U>(s));
+            reactiveStreams.subscribe((s == null) ? null : FlowAdapters.<U>reactiveToFlowSubscriber(s));
         }
     }
 
@@ -345,7 +448,7 @@ public final class FlowAdapters {
 
         @Override
         public void subscribe(Subscriber<? super T> reactive) {
-            flow.subscribe((reactive == null) ? null : new FlowToReactiveSubscriber<T>(reactive));
+            flow.subscribe((reactive == null) ? null : FlowAdapters.<T>flowToReactiveSubscriber(reactive));
         }
     }
 
@@ -363,7 +466,7 @@ public final class FlowAdapters {
 
         @Override
         public void subscribe(Flow.Subscriber<? super T> flow) {
-            reactiveStreams.subscribe((flow == null) ? null : new ReactiveToFlowSubscriber<T>(flow));
+            reactiveStreams.subscribe((flow == null) ? null : FlowAdapters.<T>reactiveToFlowSubscriber(flow));
         }
     }
 
@@ -0,0 +1,35 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams;
+
+/**
+ * A {@link Subscriber} of {@code int} values which can receive them without boxing.
+ * <p>
+ * A {@link Publisher} of {@link Integer}s that detects an {@link IntSubscriber} may signal elements via {@link #onNextInt(int)}
+ * instead of {@link #onNext(Object)}. Apart from the element type, {@link #onNextInt(int)} is an {@code onNext} signal in every respect:
+ * it counts against the demand signalled via {@link Subscription#request(long)} and follows all the same rules.
+ * <p>
+ * A {@link Publisher} that is not aware of this interface keeps calling {@link #onNext(Object)}, which unboxes
+ * and delegates to {@link #onNextInt(int)} by default.
+ */
+public interface IntSubscriber extends Subscriber<Integer> {
+
+    /**
+     * Data notification sent by the {@link Publisher} in response to requests to {@link Subscription#request(long)}.
+     *
+     * @param value the element signaled
+     */
+    public void onNextInt(int value);
+
+    /**
+     * Unboxes the element and delegates to {@link #onNextInt(int)}.
+     *
+     * @param t the element signaled
+     */
+    @Override
+    public default void onNext(Integer t) {
+        onNextInt(t);
+    }
+}
@@ -0,0 +1,35 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams;
+
+/**
+ * A {@link Subscriber} of {@code long} values which can receive them without boxing.
+ * <p>
+ * A {@link Publisher} of {@link Long}s that detects a {@link LongSubscriber} may signal elements via {@link #onNextLong(long)}
+ * instead of {@link #onNext(Object)}. Apart from the element type, {@link #onNextLong(long)} is an {@code onNext} signal in every respect:
+ * it counts against the demand signalled via {@link Subscription#request(long)} and follows all the same rules.
+ * <p>
+ * A {@link Publisher} that is not aware of this interface keeps calling {@link #onNext(Object)}, which unboxes
+ * and delegates to {@link #onNextLong(long)} by default.
+ */
+public interface LongSubscriber extends Subscriber<Long> {
+
+    /**
+     * Data notification sent by the {@link Publisher} in response to requests to {@link Subscription#request(long)}.
+     *
+     * @param value the element signaled
+     */
+    public void onNextLong(long value);
+
+    /**
+     * Unboxes the element and delegates to {@link #onNextLong(long)}.
+     *
+     * @param t the element signaled
+     */
+    @Override
+    public default void onNext(Long t) {
+        onNextLong(t);
+    }
+}
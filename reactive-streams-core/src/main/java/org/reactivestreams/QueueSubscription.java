@@ -0,0 +1,70 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams;
+
+/**
+ * A {@link Subscription} which also gives access to the elements it would signal, so that two adjacent stages can agree,
+ * or "fuse", to skip the per-element {@code onNext} calls and the queue of the consuming stage.
+ * <p>
+ * Fusion is optional and has to be negotiated: a {@link Subscriber} which finds a {@link QueueSubscription} in
+ * {@code onSubscribe} may call {@link #requestFusion(int)} once, before it calls {@link #request(long)}, and before
+ * {@code onSubscribe} returns. If it doesn't, or the mode granted is {@link #NONE}, the stream continues without
+ * fusion and {@link #poll()}, {@link #isEmpty()} and {@link #clear()} must not be called. Otherwise:
+ * <ul>
+ *   <li>{@link #SYNC}: the elements are available right away, so the {@link Subscriber} takes them with {@link #poll()}
+ *   whenever it wants them, on its own thread. It doesn't call {@link #request(long)}, and doesn't get any further
+ *   signals: {@link #poll()} returns {@code null} once there are no more elements, and throws if the stream fails.</li>
+ *   <li>{@link #ASYNC}: the elements arrive over time, so the {@link Subscriber} still signals demand via
+ *   {@link #request(long)}, which the {@link Subscription} may need to produce them, but it only ever polls as many elements
+ *   as it wants, as more than were requested may become available, up to the capacity of the queue. Instead of each element,
+ *   {@code onNext} is called with {@code null}, only to tell that elements may be available through {@link #poll()},
+ *   which returns {@code null} when there are none at the moment. {@code onError} and {@code onComplete} are signalled
+ *   as usual, but possibly while elements are still available: the {@link Subscriber} takes them first.</li>
+ * </ul>
+ * In both modes {@link #poll()}, {@link #isEmpty()} and {@link #clear()} must only be called by the {@link Subscriber},
+ * serially, and {@link #cancel()} still stops the stream.
+ *
+ * @param <T> the type of element signaled
+ */
+public interface QueueSubscription<T> extends Subscription {
+
+    /** The mode granted if the {@link Subscription} doesn't fuse, the stream continues as usual. */
+    public static final int NONE = 0;
+
+    /** The mode in which the {@link Subscriber} polls all elements, without {@code request} or any further signals. */
+    public static final int SYNC = 1;
+
+    /** The mode in which the {@link Subscriber} polls the elements after {@code onNext(null)} has told that there are some. */
+    public static final int ASYNC = 2;
+
+    /** Requests either {@link #SYNC} or {@link #ASYNC}, whichever the {@link Subscription} supports. */
+    public static final int ANY = SYNC | ASYNC;
+
+    /**
+     * Negotiates the fusion mode, see above for when it may be called.
+     *
+     * @param requestedMode the modes the {@link Subscriber} supports, {@link #SYNC}, {@link #ASYNC} or {@link #ANY}
+     * @return the mode granted, which is either one of the requested modes, or {@link #NONE}
+     */
+    public int requestFusion(int requestedMode);
+
+    /**
+     * Takes the next element.
+     *
+     * @return the next element, or {@code null} if there is none: in {@link #SYNC} mode that means there never will be
+     * @throws Exception in {@link #SYNC} mode, if the stream failed, this stands in for {@code onError}
+     */
+    public T poll() throws Exception;
+
+    /**
+     * @return whether {@link #poll()} would return {@code null} right now
+     */
+    public boolean isEmpty();
+
+    /**
+     * Drops the available elements, for a {@link Subscriber} which has cancelled.
+     */
+    public void clear();
+}
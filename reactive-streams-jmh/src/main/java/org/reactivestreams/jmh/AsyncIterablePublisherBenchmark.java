@@ -0,0 +1,92 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.jmh;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.reactivestreams.example.unicast.AsyncIterablePublisher;
+import org.reactivestreams.example.unicast.NumberIterablePublisher;
+import org.reactivestreams.example.unicast.SpliteratorPublisher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Measures {@link AsyncIterablePublisher}, {@link NumberIterablePublisher} and
+ * {@link SpliteratorPublisher} over the same list delivering to a Subscriber running on the benchmark thread.
+ * Scores are reported per element because of {@link OperationsPerInvocation}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AsyncIterablePublisherBenchmark {
+
+    static final int ELEMENTS = 10_000;
+
+    @Param({ PerfSubscriber.ONE, PerfSubscriber.BATCH, PerfSubscriber.UNBOUNDED })
+    public long request;
+
+    ExecutorService executor;
+
+    AsyncIterablePublisher<Integer> iterable;
+
+    NumberIterablePublisher numbers;
+
+    SpliteratorPublisher<Integer> spliterator;
+
+    @Setup
+    public void setup() {
+        executor = Executors.newFixedThreadPool(2);
+        final List<Integer> list = new ArrayList<Integer>(ELEMENTS);
+        for (int i = 0; i < ELEMENTS; i++) {
+            list.add(i);
+        }
+        iterable = new AsyncIterablePublisher<Integer>(list, executor);
+        numbers = new NumberIterablePublisher(0, ELEMENTS, executor);
+        spliterator = new SpliteratorPublisher<Integer>(new Supplier<Spliterator<Integer>>() {
+            @Override
+            public Spliterator<Integer> get() {
+                return list.spliterator();
+            }
+        }, executor);
+    }
+
+    @TearDown
+    public void teardown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public void iterable(Blackhole bh) throws InterruptedException {
+        PerfSubscriber s = new PerfSubscriber(bh, request);
+        iterable.subscribe(s);
+        s.await();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public void numberIterable(Blackhole bh) throws InterruptedException {
+        PerfSubscriber s = new PerfSubscriber(bh, request);
+        numbers.subscribe(s);
+        s.await();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public void spliterator(Blackhole bh) throws InterruptedException {
+        PerfSubscriber s = new PerfSubscriber(bh, request);
+        spliterator.subscribe(s);
+        s.await();
+    }
+}
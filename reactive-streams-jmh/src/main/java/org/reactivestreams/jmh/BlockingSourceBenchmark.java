@@ -0,0 +1,110 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.jmh;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.example.unicast.AsyncIterablePublisher;
+import org.reactivestreams.example.unicast.VirtualThreads;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures {@link AsyncIterablePublisher} over many concurrent blocking sources, which park for
+ * {@link #BLOCK_MICROS} microseconds before every element like a slow read would. It compares the default
+ * batched mode on a fixed pool with one thread per core, {@link AsyncIterablePublisher#blocking} on a cached pool
+ * of platform threads, and {@link AsyncIterablePublisher#blocking} with a virtual thread per task, which needs Java 21.
+ * Scores are reported per element because of {@link OperationsPerInvocation}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BlockingSourceBenchmark {
+
+    static final int STREAMS = 1000;
+
+    static final int ELEMENTS = 16;
+
+    static final long BLOCK_MICROS = 100;
+
+    @Param({ "fixed", "cached", "virtual" })
+    public String executor;
+
+    ExecutorService pool;
+
+    Publisher<Integer> publisher;
+
+    @Setup
+    public void setup() {
+        Iterable<Integer> source = new Iterable<Integer>() {
+            @Override
+            public Iterator<Integer> iterator() {
+                return new BlockingIterator();
+            }
+        };
+        switch (executor) {
+            case "fixed":
+                pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+                publisher = new AsyncIterablePublisher<Integer>(source, pool);
+                break;
+            case "cached":
+                pool = Executors.newCachedThreadPool();
+                publisher = AsyncIterablePublisher.blocking(source, pool);
+                break;
+            case "virtual":
+                pool = VirtualThreads.newVirtualThreadPerTaskExecutor();
+                publisher = AsyncIterablePublisher.blocking(source, pool);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown executor " + executor);
+        }
+    }
+
+    @TearDown
+    public void teardown() {
+        pool.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STREAMS * ELEMENTS)
+    public void blockingSources(Blackhole bh) throws InterruptedException {
+        PerfSubscriber[] subscribers = new PerfSubscriber[STREAMS];
+        for (int i = 0; i < STREAMS; i++) {
+            subscribers[i] = new PerfSubscriber(bh, Long.MAX_VALUE);
+            publisher.subscribe(subscribers[i]);
+        }
+        for (PerfSubscriber s : subscribers) {
+            s.await();
+        }
+    }
+
+    static final class BlockingIterator implements Iterator<Integer> {
+
+        int index;
+
+        @Override
+        public boolean hasNext() {
+            return index != ELEMENTS;
+        }
+
+        @Override
+        public Integer next() {
+            if (index == ELEMENTS) {
+                throw new NoSuchElementException();
+            }
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(BLOCK_MICROS));
+            return index++;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.jmh;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.reactivestreams.DualProcessor;
+import org.reactivestreams.FlowAdapters;
+import org.reactivestreams.Processor;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-element cost of a mixed pipeline, a JDK {@link SubmissionPublisher} followed by two Reactive Streams
+ * stages which are connected through the {@link Flow} API, and consumed by a Reactive Streams {@link Subscriber}.
+ * <ul>
+ * <li>{@code adapted}: the stages are plain {@link Processor}s, so {@link FlowAdapters} wraps them, three extra hops per element</li>
+ * <li>{@code dual}: the stages are {@link DualProcessor}s, which {@link FlowAdapters} passes on as they are</li>
+ * </ul>
+ * The {@link SubmissionPublisher} runs on the calling thread, so the difference between both is the indirection alone.
+ * Scores are reported per element because of {@link OperationsPerInvocation}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DualInterfaceBenchmark {
+
+    static final int ELEMENTS = 100_000;
+
+    static final Executor SAME_THREAD = new Executor() {
+        @Override public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Param({ PerfSubscriber.ONE, PerfSubscriber.BATCH, PerfSubscriber.UNBOUNDED })
+    public long request;
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public void adapted(Blackhole bh) throws InterruptedException {
+        ForwardingProcessor first = new ForwardingProcessor();
+        ForwardingProcessor second = new ForwardingProcessor();
+        run(bh, first, second, FlowAdapters.toFlowProcessor(first), FlowAdapters.toFlowPublisher(first), FlowAdapters.toFlowSubscriber(second));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public void dual(Blackhole bh) throws InterruptedException {
+        DualForwardingProcessor first = new DualForwardingProcessor();
+        DualForwardingProcessor second = new DualForwardingProcessor();
+        run(bh, first, second, FlowAdapters.toFlowProcessor(first), FlowAdapters.toFlowPublisher(first), FlowAdapters.toFlowSubscriber(second));
+    }
+
+    // Connects source -> first -> second -> PerfSubscriber, the first two hops through the Flow API, and pushes all elements through
+    void run(Blackhole bh, Processor<Integer, Integer> first, Processor<Integer, Integer> second,
+             Flow.Subscriber<Integer> firstAsFlow, Flow.Publisher<Integer> firstOutput, Flow.Subscriber<Integer> secondAsFlow) throws InterruptedException {
+        PerfSubscriber s = new PerfSubscriber(bh, request);
+        second.subscribe(s);
+        firstOutput.subscribe(secondAsFlow);
+        SubmissionPublisher<Integer> source = new SubmissionPublisher<Integer>(SAME_THREAD, Flow.defaultBufferSize());
+        source.subscribe(firstAsFlow);
+        for (int i = 0; i < ELEMENTS; i++) {
+            source.submit(i);
+        }
+        source.close();
+        s.await();
+    }
+
+    /**
+     * A Reactive Streams only {@link Processor} for a single {@link Subscriber}, which forwards all signals as they are.
+     */
+    static final class ForwardingProcessor implements Processor<Integer, Integer> {
+        Subscriber<? super Integer> downstream;
+
+        @Override public void subscribe(Subscriber<? super Integer> s) { downstream = s; }
+        @Override public void onSubscribe(Subscription s) { downstream.onSubscribe(s); }
+        @Override public void onNext(Integer t) { downstream.onNext(t); }
+        @Override public void onError(Throwable t) { downstream.onError(t); }
+        @Override public void onComplete() { downstream.onComplete(); }
+    }
+
+    /**
+     * The same as {@link ForwardingProcessor}, as a {@link DualProcessor}.
+     */
+    static final class DualForwardingProcessor extends DualProcessor<Integer, Integer> {
+        Subscriber<? super Integer> downstream;
+
+        @Override public void subscribe(Subscriber<? super Integer> s) { downstream = s; }
+        @Override public void onSubscribe(Subscription s) { downstream.onSubscribe(s); }
+        @Override public void onNext(Integer t) { downstream.onNext(t); }
+        @Override public void onError(Throwable t) { downstream.onError(t); }
+        @Override public void onComplete() { downstream.onComplete(); }
+    }
+}
@@ -0,0 +1,80 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.jmh;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.reactivestreams.FlowAdapters;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.example.unicast.RangePublisher;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-element cost of crossing the {@link FlowAdapters} bridge.
+ * <ul>
+ * <li>{@code direct}: the plain Reactive Streams baseline</li>
+ * <li>{@code toFlow}: one wrapping hop, Reactive Streams Publisher consumed as a {@link Flow.Publisher}</li>
+ * <li>{@code roundTrip}: two wrapping hops, Reactive Streams to Flow and back again</li>
+ * </ul>
+ * Scores are reported per element because of {@link OperationsPerInvocation}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FlowAdaptersBenchmark {
+
+    static final int ELEMENTS = 100_000;
+
+    @Param({ PerfSubscriber.ONE, PerfSubscriber.BATCH, PerfSubscriber.UNBOUNDED })
+    public long request;
+
+    Publisher<Integer> direct;
+
+    Flow.Publisher<Integer> toFlow;
+
+    Publisher<Integer> roundTrip;
+
+    @Setup
+    public void setup() {
+        direct = new RangePublisher(0, ELEMENTS);
+        toFlow = FlowAdapters.toFlowPublisher(direct);
+        // FlowAdapters unwraps its own wrappers, so hide the type to force a second hop
+        final Flow.Publisher<Integer> flow = toFlow;
+        roundTrip = FlowAdapters.toPublisher(new Flow.Publisher<Integer>() {
+            @Override public void subscribe(Flow.Subscriber<? super Integer> s) {
+                flow.subscribe(s);
+            }
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public void direct(Blackhole bh) throws InterruptedException {
+        PerfSubscriber s = new PerfSubscriber(bh, request);
+        direct.subscribe(s);
+        s.await();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public void toFlow(Blackhole bh) throws InterruptedException {
+        PerfSubscriber s = new PerfSubscriber(bh, request);
+        toFlow.subscribe(s);
+        s.await();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public void roundTrip(Blackhole bh) throws InterruptedException {
+        PerfSubscriber s = new PerfSubscriber(bh, request);
+        roundTrip.subscribe(s);
+        s.await();
+    }
+}
@@ -0,0 +1,58 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.jmh;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.reactivestreams.example.multicast.MulticastPublisher;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link MulticastPublisher#offer(Object)} fanning out to a number of subscribers.
+ * The Executor runs the drain loops inline, so the score is the cost of one offer
+ * including delivery to every subscriber.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MulticastPublisherBenchmark {
+
+    static final int ELEMENTS = 10_000;
+
+    @Param({ PerfSubscriber.ONE, PerfSubscriber.BATCH, PerfSubscriber.UNBOUNDED })
+    public long request;
+
+    @Param({ "1", "8" })
+    public int subscribers;
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public void offer(Blackhole bh) throws InterruptedException {
+        MulticastPublisher<Integer> publisher = new MulticastPublisher<Integer>(new Executor() {
+            @Override public void execute(Runnable command) {
+                command.run();
+            }
+        }, 256);
+        PerfSubscriber[] subs = new PerfSubscriber[subscribers];
+        for (int i = 0; i < subs.length; i++) {
+            subs[i] = new PerfSubscriber(bh, request);
+            publisher.subscribe(subs[i]);
+        }
+        for (int i = 0; i < ELEMENTS; i++) {
+            if (!publisher.offer(i)) {
+                throw new IllegalStateException("MulticastPublisher rejected element " + i);
+            }
+        }
+        publisher.complete();
+        for (PerfSubscriber s : subs) {
+            s.await();
+        }
+    }
+}
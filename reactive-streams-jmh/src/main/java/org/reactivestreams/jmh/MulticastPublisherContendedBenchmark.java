@@ -0,0 +1,81 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.jmh;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.example.multicast.MulticastPublisher;
+import org.reactivestreams.example.multicast.SharedRingMulticastPublisher;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link MulticastPublisher#offer(Object, long, TimeUnit)} and its {@link SharedRingMulticastPublisher}
+ * counterpart called from several producer threads at once, fanning out to subscribers which drain on their own pool.
+ * Run with {@code -t} to vary the number of producers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class MulticastPublisherContendedBenchmark {
+
+    @Param({ "1", "8" })
+    public int subscribers;
+
+    @Param({ "perSubscriber", "shared" })
+    public String ring;
+
+    ExecutorService executor;
+
+    MulticastPublisher<Integer> publisher;
+
+    SharedRingMulticastPublisher<Integer> shared;
+
+    PerfSubscriber[] subs;
+
+    @Setup
+    public void setup(Blackhole bh) {
+        executor = Executors.newFixedThreadPool(Math.min(subscribers, 4));
+        Publisher<Integer> source;
+        if ("shared".equals(ring)) {
+            source = shared = new SharedRingMulticastPublisher<Integer>(executor, 1024);
+        } else {
+            source = publisher = new MulticastPublisher<Integer>(executor, 1024);
+        }
+        subs = new PerfSubscriber[subscribers];
+        for (int i = 0; i < subs.length; i++) {
+            subs[i] = new PerfSubscriber(bh, Long.MAX_VALUE);
+            source.subscribe(subs[i]);
+        }
+    }
+
+    @TearDown
+    public void teardown() throws InterruptedException {
+        if (shared != null) {
+            shared.complete();
+        } else {
+            publisher.complete();
+        }
+        for (PerfSubscriber s : subs) {
+            s.await();
+        }
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public boolean offer() throws InterruptedException {
+        if (shared != null) {
+            return shared.offer(1, 1, TimeUnit.SECONDS);
+        }
+        return publisher.offer(1, 1, TimeUnit.SECONDS);
+    }
+}
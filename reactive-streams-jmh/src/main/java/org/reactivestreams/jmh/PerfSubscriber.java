@@ -0,0 +1,102 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.jmh;
+
+import org.openjdk.jmh.infra.Blackhole;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Subscriber} (and {@link Flow.Subscriber}) which hands every element to a {@link Blackhole}
+ * and signals demand in fixed-size batches, so benchmarks can compare the request patterns
+ * {@code request(1)}, {@code request(128)} and {@code request(Long.MAX_VALUE)}.
+ */
+public final class PerfSubscriber implements Subscriber<Object>, Flow.Subscriber<Object> {
+
+    /** The request pattern that only requests a single element at a time. */
+    public static final String ONE = "1";
+
+    /** The request pattern that requests in chunks of 128 and replenishes once all have arrived. */
+    public static final String BATCH = "128";
+
+    /** The request pattern that requests everything upfront. */
+    public static final String UNBOUNDED = "9223372036854775807";
+
+    final Blackhole bh;
+
+    final long batch;
+
+    final CountDownLatch done = new CountDownLatch(1);
+
+    Subscription subscription;
+
+    Flow.Subscription flowSubscription;
+
+    long remaining;
+
+    Throwable error;
+
+    public PerfSubscriber(Blackhole bh, long batch) {
+        if (batch < 1) throw new IllegalArgumentException("batch must be positive");
+        this.bh = bh;
+        this.batch = batch;
+        this.remaining = batch;
+    }
+
+    @Override
+    public void onSubscribe(Subscription s) {
+        subscription = s;
+        s.request(batch);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription s) {
+        flowSubscription = s;
+        s.request(batch);
+    }
+
+    @Override
+    public void onNext(Object item) {
+        bh.consume(item);
+        // With unbounded demand there is nothing to replenish, see rule 3.17
+        if (batch != Long.MAX_VALUE && --remaining == 0L) {
+            remaining = batch;
+            if (subscription != null) {
+                subscription.request(batch);
+            } else {
+                flowSubscription.request(batch);
+            }
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        error = t;
+        done.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+        done.countDown();
+    }
+
+    /**
+     * Blocks until the upstream has terminated and rethrows any error it signalled,
+     * so a broken benchmark fails loudly instead of reporting bogus numbers.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void await() throws InterruptedException {
+        if (done.getCount() != 0L && !done.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Timed out waiting for the Publisher to terminate");
+        }
+        if (error != null) {
+            throw new IllegalStateException("Publisher signalled onError", error);
+        }
+    }
+}
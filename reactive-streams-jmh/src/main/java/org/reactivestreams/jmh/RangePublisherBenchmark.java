@@ -0,0 +1,97 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.jmh;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.reactivestreams.IntSubscriber;
+import org.reactivestreams.Subscription;
+import org.reactivestreams.example.unicast.RangePublisher;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the synchronous emission path of {@link RangePublisher},
+ * both boxed and unboxed via {@link IntSubscriber}.
+ * Scores are reported per element because of {@link OperationsPerInvocation}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RangePublisherBenchmark {
+
+    static final int ELEMENTS = 100_000;
+
+    @Param({ PerfSubscriber.ONE, PerfSubscriber.BATCH, PerfSubscriber.UNBOUNDED })
+    public long request;
+
+    RangePublisher publisher;
+
+    @Setup
+    public void setup() {
+        publisher = new RangePublisher(0, ELEMENTS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public void range(Blackhole bh) throws InterruptedException {
+        PerfSubscriber s = new PerfSubscriber(bh, request);
+        publisher.subscribe(s);
+        s.await();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public void rangeIntSubscriber(Blackhole bh) {
+        publisher.subscribe(new PerfIntSubscriber(bh, request));
+    }
+
+    /**
+     * The {@link IntSubscriber} counterpart of {@link PerfSubscriber}.
+     */
+    static final class PerfIntSubscriber implements IntSubscriber {
+
+        final Blackhole bh;
+
+        final long batch;
+
+        Subscription subscription;
+
+        long remaining;
+
+        PerfIntSubscriber(Blackhole bh, long batch) {
+            this.bh = bh;
+            this.batch = batch;
+            this.remaining = batch;
+        }
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            subscription = s;
+            s.request(batch);
+        }
+
+        @Override
+        public void onNextInt(int value) {
+            bh.consume(value);
+            if (batch != Long.MAX_VALUE && --remaining == 0L) {
+                remaining = batch;
+                subscription.request(batch);
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            throw new IllegalStateException("RangePublisher signalled onError", t);
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.jmh;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.reactivestreams.example.unicast.AsyncSubscriber;
+import org.reactivestreams.example.unicast.RangePublisher;
+import org.reactivestreams.example.unicast.SyncSubscriber;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link AsyncSubscriber} and {@link SyncSubscriber} consuming a {@link RangePublisher}.
+ * Both subscribers request {@code prefetch} elements up front and replenish them at 75% consumption,
+ * a prefetch of 1 is the one-element-at-a-time default.
+ * Scores are reported per element because of {@link OperationsPerInvocation}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SubscriberBenchmark {
+
+    static final int ELEMENTS = 10_000;
+
+    @Param({ "1", "128" })
+    public int prefetch;
+
+    ExecutorService executor;
+
+    RangePublisher publisher;
+
+    @Setup
+    public void setup() {
+        executor = Executors.newFixedThreadPool(2);
+        publisher = new RangePublisher(0, ELEMENTS);
+    }
+
+    @TearDown
+    public void teardown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public void asyncSubscriber(final Blackhole bh) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        publisher.subscribe(new AsyncSubscriber<Integer>(executor, prefetch) {
+            @Override protected boolean whenNext(final Integer element) {
+                bh.consume(element);
+                return true;
+            }
+            @Override protected void whenComplete() {
+                done.countDown();
+            }
+            @Override protected void whenError(Throwable error) {
+                done.countDown();
+            }
+        });
+        if (!done.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Timed out waiting for the AsyncSubscriber to complete");
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public void syncSubscriber(final Blackhole bh) {
+        publisher.subscribe(new SyncSubscriber<Integer>(prefetch) {
+            @Override protected boolean whenNext(final Integer element) {
+                bh.consume(element);
+                return true;
+            }
+        });
+    }
+}
@@ -4,10 +4,15 @@
 
 package org.reactivestreams;
 
+import org.reactivestreams.example.multicast.MulticastPublisher;
+import org.reactivestreams.example.unicast.RangePublisher;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Flow;
 import java.util.concurrent.SubmissionPublisher;
@@ -224,4 +229,191 @@ public class FlowAdaptersTest {
         Assert.assertSame(FlowAdapters.toPublisher(FlowAdapters.toFlowPublisher(rsPub)), rsPub);
         Assert.assertSame(FlowAdapters.toFlowPublisher(FlowAdapters.toPublisher(fPub)), fPub);
     }
+
+    @Test
+    public void batchesSurviveRoundTrip() {
+        final List<Object> items = new ArrayList<Object>();
+        final int[] batches = { 0 };
+        final boolean[] completed = { false };
+
+        BatchSubscriber<Integer> bs = new BatchSubscriber<Integer>() {
+            @Override public void onSubscribe(Subscription s) { s.request(Long.MAX_VALUE); }
+            @Override public void onNextBatch(Object[] array, int from, int to) {
+                batches[0]++;
+                items.addAll(Arrays.asList(array).subList(from, to));
+            }
+            @Override public void onNext(Integer i) { throw new AssertionError("Batch was unrolled into onNext(" + i + ")"); }
+            @Override public void onError(Throwable t) { throw new AssertionError(t); }
+            @Override public void onComplete() { completed[0] = true; }
+        };
+
+        // Each wrapper passes the batches on: the BatchSubscriber is wrapped into a Flow Subscriber, which the
+        // Flow Publisher wraps back into a Reactive Streams Subscriber for the RangePublisher
+        FlowAdapters.toFlowPublisher(new RangePublisher(1, 300)).subscribe(FlowAdapters.toFlowSubscriber(bs));
+
+        Assert.assertTrue(completed[0]);
+        Assert.assertEquals(items.size(), 300);
+        Assert.assertEquals(items.get(0), 1);
+        Assert.assertEquals(items.get(299), 300);
+        Assert.assertTrue(batches[0] > 0 && batches[0] < 300, "batches: " + batches[0]);
+    }
+
+    @Test
+    public void multicastBatchesToFlowSubscriber() {
+        MulticastPublisher<Integer> p = new MulticastPublisher<Integer>(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        }, Flow.defaultBufferSize());
+
+        final List<Object> items = new ArrayList<Object>();
+        final boolean[] completed = { false };
+
+        class FlowBatchSubscriber implements Flow.Subscriber<Integer>, BatchSubscriber<Integer> {
+            Flow.Subscription upstream;
+            @Override public void onSubscribe(Flow.Subscription s) { upstream = s; }
+            @Override public void onSubscribe(Subscription s) { throw new AssertionError("Expected a Flow.Subscription"); }
+            @Override public void onNextBatch(Object[] array, int from, int to) { items.addAll(Arrays.asList(array).subList(from, to)); }
+            @Override public void onNext(Integer i) { throw new AssertionError("Batch was unrolled into onNext(" + i + ")"); }
+            @Override public void onError(Throwable t) { throw new AssertionError(t); }
+            @Override public void onComplete() { completed[0] = true; }
+        }
+        FlowBatchSubscriber fs = new FlowBatchSubscriber();
+
+        FlowAdapters.toFlowPublisher(p).subscribe(fs);
+
+        p.offer(1);
+        p.offer(2);
+        p.offer(3);
+        p.complete();
+
+        fs.upstream.request(Long.MAX_VALUE);
+
+        Assert.assertTrue(completed[0]);
+        Assert.assertEquals(items, Arrays.<Object>asList(1, 2, 3));
+    }
+
+    @Test
+    public void stableConversionForDualInterfaces() {
+        ForwardingProcessor<Integer> processor = new ForwardingProcessor<Integer>();
+        DualPublisher<Integer> publisher = new DualPublisher<Integer>() {
+            @Override public void subscribe(Subscriber<? super Integer> s) {};
+        };
+
+        Assert.assertSame(FlowAdapters.toFlowSubscriber(processor), processor);
+        Assert.assertSame(FlowAdapters.toSubscriber(processor), processor);
+        Assert.assertSame(FlowAdapters.toFlowProcessor(processor), processor);
+        Assert.assertSame(FlowAdapters.toProcessor(processor), processor);
+        Assert.assertSame(FlowAdapters.toFlowPublisher(publisher), publisher);
+        Assert.assertSame(FlowAdapters.toPublisher(publisher), publisher);
+    }
+
+    @Test
+    public void dualSubscriberIsNotWrapped() {
+        final Object[] received = { null, null };
+        Publisher<Integer> rsPub = new Publisher<Integer>() {
+            @Override public void subscribe(Subscriber<? super Integer> s) { received[0] = s; };
+        };
+        Flow.Publisher<Integer> fPub = new Flow.Publisher<Integer>() {
+            @Override public void subscribe(Flow.Subscriber<? super Integer> s) { received[1] = s; };
+        };
+        ForwardingProcessor<Integer> processor = new ForwardingProcessor<Integer>();
+
+        FlowAdapters.toFlowPublisher(rsPub).subscribe(processor);
+        FlowAdapters.toPublisher(fPub).subscribe(processor);
+
+        Assert.assertSame(received[0], processor);
+        Assert.assertSame(received[1], processor);
+    }
+
+    @Test
+    public void dualSubscriptionIsNotWrapped() {
+        final DualSubscription subscription = new DualSubscription() {
+            @Override public void request(long n) {};
+            @Override public void cancel() {};
+        };
+        Flow.Publisher<Integer> fPub = new Flow.Publisher<Integer>() {
+            @Override public void subscribe(Flow.Subscriber<? super Integer> s) { s.onSubscribe(subscription); };
+        };
+        Publisher<Integer> rsPub = new Publisher<Integer>() {
+            @Override public void subscribe(Subscriber<? super Integer> s) { s.onSubscribe(subscription); };
+        };
+        TestEitherConsumer<Integer> rsSub = new TestEitherConsumer<Integer>();
+        TestEitherConsumer<Integer> fSub = new TestEitherConsumer<Integer>();
+
+        FlowAdapters.toPublisher(fPub).subscribe(rsSub);
+        FlowAdapters.toFlowPublisher(rsPub).subscribe(fSub);
+
+        Assert.assertSame(rsSub.subscriptionRs, subscription);
+        Assert.assertSame(fSub.subscription, subscription);
+    }
+
+    @Test
+    public void dualInterfacesConnectWithoutCasts() {
+        final DualSubscription subscription = new DualSubscription() {
+            @Override public void request(long n) {};
+            @Override public void cancel() {};
+        };
+        DualPublisher<Integer> publisher = new DualPublisher<Integer>() {
+            @Override public void subscribe(Subscriber<? super Integer> s) { s.onSubscribe(subscription); };
+        };
+        ForwardingProcessor<Integer> first = new ForwardingProcessor<Integer>();
+        ForwardingProcessor<Integer> second = new ForwardingProcessor<Integer>();
+        final Object[] received = { null };
+        DualSubscriber<Integer> last = new DualSubscriber<Integer>() {
+            @Override public void onSubscribe(Subscription s) { received[0] = s; };
+            @Override public void onNext(Integer i) {};
+            @Override public void onError(Throwable t) {};
+            @Override public void onComplete() {};
+        };
+
+        first.subscribe(second);
+        second.subscribe(last);
+        publisher.subscribe(first);
+        Assert.assertSame(received[0], subscription);
+
+        received[0] = null;
+        last.onSubscribe(subscription);
+        Assert.assertSame(received[0], subscription);
+    }
+
+    @Test
+    public void submissionPublisherThroughDualProcessor() {
+        SubmissionPublisher<Integer> p = new SubmissionPublisher<Integer>(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        }, Flow.defaultBufferSize());
+
+        ForwardingProcessor<Integer> processor = new ForwardingProcessor<Integer>();
+        TestEitherConsumer<Integer> tc = new TestEitherConsumer<Integer>();
+
+        // TestEitherConsumer implements both interfaces without being a DualSubscriber, so it needs picking one
+        processor.subscribe((Subscriber<Integer>)tc);
+        p.subscribe(processor);
+
+        p.submit(1);
+        p.submit(2);
+        p.submit(3);
+        p.submit(4);
+        p.submit(5);
+        p.close();
+
+        tc.assertRange(1, 5);
+    }
+
+    /**
+     * A {@link DualProcessor} for a single {@link Subscriber}, which forwards all signals as they are.
+     */
+    static final class ForwardingProcessor<T> extends DualProcessor<T, T> {
+        Subscriber<? super T> downstream;
+
+        @Override public void subscribe(Subscriber<? super T> s) { downstream = s; };
+        @Override public void onSubscribe(Subscription s) { downstream.onSubscribe(s); };
+        @Override public void onNext(T t) { downstream.onNext(t); };
+        @Override public void onError(Throwable t) { downstream.onError(t); };
+        @Override public void onComplete() { downstream.onComplete(); };
+    }
 }
@@ -5,6 +5,7 @@
 package org.reactivestreams.tck.flow;
 
 import org.reactivestreams.*;
+import org.reactivestreams.example.multicast.SubscriberRegistry;
 import org.reactivestreams.tck.*;
 import org.testng.annotations.Test;
 
@@ -51,11 +52,9 @@ public class LockstepFlowProcessorTest extends IdentityFlowProcessorVerification
 
     static final class LockstepProcessor<T> implements Flow.Processor<T, T> {
 
-        final AtomicReference<LockstepSubscription<T>[]> subscribers =
-                new AtomicReference<LockstepSubscription<T>[]>(EMPTY);
-
-        static final LockstepSubscription[] EMPTY = new LockstepSubscription[0];
-        static final LockstepSubscription[] TERMINATED = new LockstepSubscription[0];
+        @SuppressWarnings("unchecked")
+        final SubscriberRegistry<LockstepSubscription<T>> subscribers =
+                new SubscriberRegistry<LockstepSubscription<T>>(new LockstepSubscription[0]);
 
         volatile boolean done;
         Throwable error;
@@ -97,57 +96,17 @@ public class LockstepFlowProcessorTest extends IdentityFlowProcessorVerification
         }
 
         boolean add(LockstepSubscription<T> sub) {
-            for (;;) {
-                LockstepSubscription<T>[] a = subscribers.get();
-                if (a == TERMINATED) {
-                    return false;
-                }
-                int n = a.length;
-                LockstepSubscription<T>[] b = new LockstepSubscription[n + 1];
-                System.arraycopy(a, 0, b, 0, n);
-                b[n] = sub;
-                if (subscribers.compareAndSet(a, b)) {
-                    return true;
-                }
-            }
+            int slot = subscribers.add(sub);
+            sub.slot = slot;
+            return slot != SubscriberRegistry.TERMINATED;
         }
 
         void remove(LockstepSubscription<T> sub) {
-            for (;;) {
-                LockstepSubscription<T>[] a = subscribers.get();
-                int n = a.length;
-
-                if (n == 0) {
-                    break;
-                }
-
-                int j = -1;
-                for (int i = 0; i < n; i++) {
-                    if (a[i] == sub) {
-                        j = i;
-                        break;
-                    }
-                }
-
-                if (j < 0) {
-                    break;
-                }
-                LockstepSubscription<T>[] b;
-                if (n == 1) {
-                    b = TERMINATED;
-                } else {
-                    b = new LockstepSubscription[n - 1];
-                    System.arraycopy(a, 0, b, 0, j);
-                    System.arraycopy(a, j + 1, b, j, n - j - 1);
-                }
-                if (subscribers.compareAndSet(a, b)) {
-                    if (b == TERMINATED) {
-                        Flow.Subscription s = upstream.getAndSet(CancelledSubscription.INSTANCE);
-                        if (s != null) {
-                            s.cancel();
-                        }
-                    }
-                    break;
+            // The processor is done once its last subscriber is gone
+            if (subscribers.remove(sub.slot, sub) && subscribers.terminateIfEmpty()) {
+                Flow.Subscription s = upstream.getAndSet(CancelledSubscription.INSTANCE);
+                if (s != null) {
+                    s.cancel();
                 }
             }
         }
@@ -198,8 +157,8 @@ public class LockstepFlowProcessorTest extends IdentityFlowProcessorVerification
             for (;;) {
 
                 for (;;) {
-                    LockstepSubscription<T>[] subscribers = this.subscribers.get();
-                    int n = subscribers.length;
+                    SubscriberRegistry.View<LockstepSubscription<T>> subscribers = this.subscribers.view();
+                    int n = subscribers.length();
 
                     long ci = consumerIndex.get();
 
@@ -209,12 +168,12 @@ public class LockstepFlowProcessorTest extends IdentityFlowProcessorVerification
                     if (d) {
                         Throwable ex = error;
                         if (ex != null) {
-                            for (LockstepSubscription<T> sub : this.subscribers.getAndSet(TERMINATED)) {
+                            for (LockstepSubscription<T> sub : this.subscribers.terminate()) {
                                 sub.subscriber.onError(ex);
                             }
                             break;
                         } else if (empty) {
-                            for (LockstepSubscription<T> sub : this.subscribers.getAndSet(TERMINATED)) {
+                            for (LockstepSubscription<T> sub : this.subscribers.terminate()) {
                                 sub.subscriber.onComplete();
                             }
                             break;
@@ -224,7 +183,11 @@ public class LockstepFlowProcessorTest extends IdentityFlowProcessorVerification
                     if (n != 0 && !empty) {
                         long ready = Long.MAX_VALUE;
                         int c = 0;
-                        for (LockstepSubscription<T> sub : subscribers) {
+                        for (int i = 0; i < n; i++) {
+                            LockstepSubscription<T> sub = subscribers.get(i);
+                            if (sub == null) {
+                                continue;
+                            }
                             long req = sub.get();
                             if (req != Long.MIN_VALUE) {
                                 ready = Math.min(ready, req - sub.emitted);
@@ -238,9 +201,12 @@ public class LockstepFlowProcessorTest extends IdentityFlowProcessorVerification
                             queue.lazySet(offset, null);
                             consumerIndex.lazySet(ci + 1);
 
-                            for (LockstepSubscription<T> sub : subscribers) {
-                                sub.subscriber.onNext(value);
-                                sub.emitted++;
+                            for (int i = 0; i < n; i++) {
+                                LockstepSubscription<T> sub = subscribers.get(i);
+                                if (sub != null) {
+                                    sub.subscriber.onNext(value);
+                                    sub.emitted++;
+                                }
                             }
 
                             if (++consumed == limit) {
@@ -271,6 +237,8 @@ public class LockstepFlowProcessorTest extends IdentityFlowProcessorVerification
 
             long emitted;
 
+            volatile int slot = SubscriberRegistry.TERMINATED;
+
             LockstepSubscription(Flow.Subscriber<? super T> subscriber, LockstepProcessor<T> parent) {
                 this.subscriber = subscriber;
                 this.parent = parent;
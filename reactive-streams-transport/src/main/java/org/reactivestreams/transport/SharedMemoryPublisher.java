@@ -0,0 +1,141 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.transport;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link Publisher} of the buffers which a {@link SharedMemorySubscriber}, usually in another JVM, hands over
+ * through a {@link SharedMemoryRing}: it is the single consumer of the ring.
+ * <p>
+ * {@code request(n)} is added straight to the demand counter in the ring, from where the producer picks it up, and
+ * {@code cancel} sets the ring's cancelled flag. The producer never publishes more than was requested, so everything
+ * found in the ring is emitted right away. Every element is copied out of its slot into a fresh heap buffer, which
+ * frees the slot for the producer before it is handed to the {@link Subscriber}.
+ * <p>
+ * The ring is only written by the producer, so once subscribed, a poller occupies a thread of the {@link Executor}
+ * until the stream ends, or is cancelled. A ring can only be consumed once, so only the first {@link Subscriber} is
+ * accepted, all later ones are rejected with {@code onError}.
+ */
+public final class SharedMemoryPublisher implements Publisher<ByteBuffer> {
+
+    final SharedMemoryRing ring;
+    final Executor executor;
+    final AtomicBoolean subscribed = new AtomicBoolean();
+
+    /**
+     * @param ring the ring opened by {@link SharedMemoryRing#open}
+     * @param executor where the poller runs
+     */
+    public SharedMemoryPublisher(SharedMemoryRing ring, Executor executor) {
+        if (ring == null) throw new NullPointerException("ring is null");
+        if (executor == null) throw new NullPointerException("executor is null");
+        this.ring = ring;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+        if (subscriber == null) throw new NullPointerException("subscriber is null");
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Subscription() {
+                @Override public void request(long n) { }
+                @Override public void cancel() { }
+            });
+            subscriber.onError(new IllegalStateException("A SharedMemoryPublisher allows only a single Subscriber"));
+            return;
+        }
+        RingSubscription s = new RingSubscription(subscriber);
+        subscriber.onSubscribe(s);
+        try {
+            executor.execute(s);
+        } catch (Throwable ex) {
+            if (!s.cancelled) {
+                s.cancel();
+                subscriber.onError(ex);
+            }
+        }
+    }
+
+    final class RingSubscription implements Subscription, Runnable {
+
+        final Subscriber<? super ByteBuffer> actual;
+
+        volatile boolean cancelled;
+
+        volatile boolean badRequest;
+
+        RingSubscription(Subscriber<? super ByteBuffer> actual) {
+            this.actual = actual;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0L) {
+                badRequest = true; // The poller signals the error, so it doesn't overlap with an onNext as per §1.3
+            } else if (!cancelled) {
+                ring.request(n);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                ring.cancel();
+            }
+        }
+
+        @Override
+        public void run() {
+            long consumed = ring.consumerCursor();
+            int idle = 0;
+            for (;;) {
+                if (cancelled) {
+                    return;
+                }
+                if (badRequest) {
+                    cancel();
+                    actual.onError(new IllegalArgumentException("§3.9 violated: request was not positive"));
+                    return;
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    cancel();
+                    actual.onError(new InterruptedException("The poller was interrupted"));
+                    return;
+                }
+                long produced = ring.producerCursor();
+                if (consumed != produced) {
+                    idle = 0;
+                    do {
+                        ByteBuffer b = ring.read(consumed);
+                        ring.consumed(++consumed);
+                        actual.onNext(b);
+                    } while (consumed != produced && !cancelled);
+                } else {
+                    long state = ring.state();
+                    if (state == SharedMemoryRing.RUNNING) {
+                        SharedMemoryRing.backoff(idle++);
+                    } else if (ring.producerCursor() == consumed) { // Nothing was published before the terminal state that we have missed
+                        cancelled = true;
+                        if (state == SharedMemoryRing.COMPLETED) {
+                            actual.onComplete();
+                        } else {
+                            actual.onError(new IOException("The producer failed: " + ring.error()));
+                        }
+                        return;
+                    }
+                }
+            }
+        }
+    }
+}
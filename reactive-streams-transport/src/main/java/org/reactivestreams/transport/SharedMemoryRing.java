@@ -0,0 +1,231 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.transport;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A single-producer single-consumer ring of byte slots in a memory-mapped file, through which a
+ * {@link SharedMemorySubscriber} in one JVM hands {@link ByteBuffer}s to a {@link SharedMemoryPublisher} in another.
+ * <p>
+ * Besides the slots, the file holds a few counters, each on its own cache line, which the two sides read and write
+ * with acquire and release semantics through a {@link VarHandle}:
+ * <ul>
+ * <li>the producer cursor, the number of slots published so far,</li>
+ * <li>the consumer cursor, the number of slots consumed so far, after which they may be overwritten,</li>
+ * <li>the demand, the total number of elements the consumer has requested so far, {@code Long.MAX_VALUE} if unbounded,</li>
+ * <li>the terminal state of the producer, and whether the consumer has cancelled.</li>
+ * </ul>
+ * Neither side can wake up the other, so both poll, spinning first and then backing off up to a millisecond.
+ */
+public final class SharedMemoryRing {
+
+    static final long MAGIC = 0x5253524947314C00L; // "RSRIG1" followed by the version
+
+    // The layout of the header, the counters are 128 bytes apart to keep them off each other's cache lines
+    static final int MAGIC_OFFSET = 0;
+    static final int CAPACITY_OFFSET = 8;
+    static final int SLOT_SIZE_OFFSET = 16;
+    static final int PRODUCER_OFFSET = 128;
+    static final int CONSUMER_OFFSET = 256;
+    static final int DEMAND_OFFSET = 384;
+    static final int STATE_OFFSET = 512;
+    static final int CANCELLED_OFFSET = 640;
+    static final int ERROR_LENGTH_OFFSET = 768;
+    static final int ERROR_OFFSET = 776;
+    static final int HEADER_SIZE = 1024;
+
+    static final int MAX_ERROR_LENGTH = HEADER_SIZE - ERROR_OFFSET;
+
+    /** Each slot starts with the length of its element, followed by the bytes. */
+    static final int SLOT_HEADER_SIZE = 8;
+
+    static final long RUNNING = 0L;
+    static final long COMPLETED = 1L;
+    static final long FAILED = 2L;
+
+    static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    final MappedByteBuffer buffer;
+    final int capacity;
+    final int mask;
+    final int slotSize;
+    final int stride;
+
+    SharedMemoryRing(MappedByteBuffer buffer, int capacity, int slotSize) {
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.slotSize = slotSize;
+        this.stride = SLOT_HEADER_SIZE + ((slotSize + 7) & ~7);
+    }
+
+    /**
+     * Creates the ring file, replacing whatever was there, for the producer side.
+     * @param file the file to create
+     * @param capacity the number of slots, a power of two
+     * @param slotSize the largest element, in bytes
+     * @return the ring
+     * @throws IOException if the file can't be created or mapped
+     */
+    public static SharedMemoryRing create(Path file, int capacity, int slotSize) throws IOException {
+        if (file == null) throw new NullPointerException("file is null");
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("capacity must be a positive power of two but was " + capacity);
+        if (slotSize < 1) throw new IllegalArgumentException("slotSize must be positive but was " + slotSize);
+        long size = HEADER_SIZE + (long)capacity * (SLOT_HEADER_SIZE + ((slotSize + 7) & ~7));
+        if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("capacity * slotSize is too large to map at once");
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L, size); // The mapping stays valid after closing the channel
+        }
+        LONGS.set(buffer, CAPACITY_OFFSET, (long)capacity);
+        LONGS.set(buffer, SLOT_SIZE_OFFSET, (long)slotSize);
+        // Publishes the header, a consumer which sees the magic number sees the rest
+        LONGS.setRelease(buffer, MAGIC_OFFSET, MAGIC);
+        return new SharedMemoryRing(buffer, capacity, slotSize);
+    }
+
+    /**
+     * Maps a ring file created by {@link #create(Path, int, int)}, for the consumer side.
+     * @param file the file to map
+     * @return the ring
+     * @throws IOException if the file can't be mapped, or is not a ring file (yet)
+     */
+    public static SharedMemoryRing open(Path file) throws IOException {
+        if (file == null) throw new NullPointerException("file is null");
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) throw new IOException(file + " is not a ring file");
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L, size);
+        }
+        if ((long)LONGS.getAcquire(buffer, MAGIC_OFFSET) != MAGIC) throw new IOException(file + " is not a ring file");
+        int capacity = (int)(long)LONGS.get(buffer, CAPACITY_OFFSET);
+        int slotSize = (int)(long)LONGS.get(buffer, SLOT_SIZE_OFFSET);
+        return new SharedMemoryRing(buffer, capacity, slotSize);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int slotSize() {
+        return slotSize;
+    }
+
+    long producerCursor() {
+        return (long)LONGS.getAcquire(buffer, PRODUCER_OFFSET);
+    }
+
+    long consumerCursor() {
+        return (long)LONGS.getAcquire(buffer, CONSUMER_OFFSET);
+    }
+
+    void consumed(long cursor) {
+        LONGS.setRelease(buffer, CONSUMER_OFFSET, cursor);
+    }
+
+    long demand() {
+        return (long)LONGS.getAcquire(buffer, DEMAND_OFFSET);
+    }
+
+    /** Adds to the demand, saturating at {@code Long.MAX_VALUE} as per §3.17. */
+    void request(long n) {
+        for (;;) {
+            long d = (long)LONGS.getVolatile(buffer, DEMAND_OFFSET);
+            long u = d + n;
+            if (u < 0L) {
+                u = Long.MAX_VALUE;
+            }
+            if (LONGS.compareAndSet(buffer, DEMAND_OFFSET, d, u)) {
+                return;
+            }
+        }
+    }
+
+    boolean isCancelled() {
+        return (long)LONGS.getAcquire(buffer, CANCELLED_OFFSET) != 0L;
+    }
+
+    void cancel() {
+        LONGS.setRelease(buffer, CANCELLED_OFFSET, 1L);
+    }
+
+    long state() {
+        return (long)LONGS.getAcquire(buffer, STATE_OFFSET);
+    }
+
+    /** Writes an element into the slot for {@code index} and publishes it, the caller checks that it fits. */
+    void publish(long index, ByteBuffer element) {
+        int offset = HEADER_SIZE + (int)(index & mask) * stride;
+        int length = element.remaining();
+        LONGS.set(buffer, offset, (long)length);
+        ByteBuffer slot = buffer.duplicate();
+        slot.position(offset + SLOT_HEADER_SIZE);
+        slot.put(element.duplicate());
+        LONGS.setRelease(buffer, PRODUCER_OFFSET, index + 1);
+    }
+
+    /** Copies the element in the slot for {@code index} out of the ring, the caller then marks it consumed. */
+    ByteBuffer read(long index) {
+        int offset = HEADER_SIZE + (int)(index & mask) * stride;
+        int length = (int)(long)LONGS.get(buffer, offset);
+        ByteBuffer slot = buffer.duplicate();
+        slot.position(offset + SLOT_HEADER_SIZE).limit(offset + SLOT_HEADER_SIZE + length);
+        ByteBuffer copy = ByteBuffer.allocate(length);
+        copy.put(slot).flip();
+        return copy;
+    }
+
+    void complete() {
+        LONGS.setRelease(buffer, STATE_OFFSET, COMPLETED);
+    }
+
+    void fail(Throwable error) {
+        byte[] message = String.valueOf(error).getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(message.length, MAX_ERROR_LENGTH);
+        ByteBuffer region = buffer.duplicate();
+        region.position(ERROR_OFFSET);
+        region.put(message, 0, length);
+        LONGS.set(buffer, ERROR_LENGTH_OFFSET, (long)length);
+        LONGS.setRelease(buffer, STATE_OFFSET, FAILED);
+    }
+
+    /** @return the description of the producer's error, only valid once the state is {@link #FAILED} */
+    String error() {
+        int length = (int)(long)LONGS.get(buffer, ERROR_LENGTH_OFFSET);
+        byte[] message = new byte[length];
+        ByteBuffer region = buffer.duplicate();
+        region.position(ERROR_OFFSET);
+        region.get(message);
+        return new String(message, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Waits a little after a poll which found nothing to do: it spins first, to keep the hand-off fast while the other
+     * side is busy, then yields, and then parks for exponentially longer, up to a millisecond.
+     * @param idle the number of polls in a row which found nothing to do
+     */
+    static void backoff(int idle) {
+        if (idle < 100) {
+            Thread.onSpinWait();
+        } else if (idle < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(Math.min(1L << Math.min(idle - 200, 20), 1_000_000L));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.transport;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A {@link Subscriber} which hands the buffers it receives to a {@link SharedMemoryPublisher}, usually in another JVM,
+ * through a {@link SharedMemoryRing}: it is the single producer of the ring.
+ * <p>
+ * It never requests more than the consumer has requested, nor more than fits into the free slots of the ring, so
+ * every {@code onNext} is written straight into its slot, without any buffering on our side. The consumer's demand
+ * is only known by looking at the ring, so once subscribed, a poller occupies a thread of the {@link Executor}
+ * until the stream ends, or the consumer cancels. It makes all calls on the {@link Subscription}.
+ * <p>
+ * A buffer larger than the ring's slots fails the stream. {@link #published()} tells how it ended.
+ */
+public final class SharedMemorySubscriber implements Subscriber<ByteBuffer> {
+
+    final SharedMemoryRing ring;
+    final Executor executor;
+
+    final AtomicReference<Subscription> upstream = new AtomicReference<Subscription>();
+
+    final CompletableFuture<Long> published = new CompletableFuture<Long>();
+
+    /** Set once the stream has ended, for whatever reason, which stops the poller. */
+    volatile boolean done;
+
+    /** Set by {@code onNext} if it failed the stream, so the poller cancels the {@link Subscription} as per §2.7. */
+    volatile boolean cancelUpstream;
+
+    /** The producer cursor, only accessed from the signals, which are serial as per §1.3. */
+    long index;
+
+    /**
+     * @param ring the ring created by {@link SharedMemoryRing#create}, which must not have a producer yet
+     * @param executor where the poller runs
+     */
+    public SharedMemorySubscriber(SharedMemoryRing ring, Executor executor) {
+        if (ring == null) throw new NullPointerException("ring is null");
+        if (executor == null) throw new NullPointerException("executor is null");
+        this.ring = ring;
+        this.executor = executor;
+    }
+
+    /**
+     * @return a future which completes with the number of buffers published once the stream has completed, or
+     *         exceptionally if it failed, or the consumer cancelled
+     */
+    public CompletableFuture<Long> published() {
+        return published;
+    }
+
+    @Override
+    public void onSubscribe(Subscription s) {
+        if (s == null) throw new NullPointerException("s is null");
+        if (!upstream.compareAndSet(null, s)) {
+            s.cancel();
+            return;
+        }
+        try {
+            executor.execute(new Poller(s));
+        } catch (Throwable ex) { // We can't find out about any demand, so there is no point in subscribing
+            done = true;
+            s.cancel();
+            fail(ex);
+        }
+    }
+
+    @Override
+    public void onNext(ByteBuffer item) {
+        if (item == null) throw new NullPointerException("item is null");
+        if (done) {
+            return;
+        }
+        if (item.remaining() > ring.slotSize) {
+            done = true;
+            cancelUpstream = true;
+            fail(new IllegalArgumentException("A buffer of " + item.remaining() + " bytes doesn't fit into the ring's slots of " + ring.slotSize + " bytes"));
+            return;
+        }
+        ring.publish(index++, item);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        if (throwable == null) throw new NullPointerException("throwable is null");
+        if (!done) {
+            done = true;
+            fail(throwable);
+        }
+    }
+
+    @Override
+    public void onComplete() {
+        if (!done) {
+            done = true;
+            ring.complete();
+            published.complete(index);
+        }
+    }
+
+    void fail(Throwable ex) {
+        ring.fail(ex);
+        published.completeExceptionally(ex);
+    }
+
+    final class Poller implements Runnable {
+
+        final Subscription s;
+
+        /** The total number of buffers requested from upstream so far. */
+        long requested;
+
+        Poller(Subscription s) {
+            this.s = s;
+        }
+
+        @Override
+        public void run() {
+            int idle = 0;
+            for (;;) {
+                if (done) {
+                    if (cancelUpstream) {
+                        s.cancel();
+                    }
+                    return;
+                }
+                if (ring.isCancelled()) {
+                    done = true;
+                    s.cancel();
+                    published.completeExceptionally(new CancellationException("The consumer cancelled"));
+                    return;
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    done = true;
+                    s.cancel();
+                    fail(new InterruptedException("The poller was interrupted"));
+                    return;
+                }
+                // Both the consumer's demand and the free slots bound what we may request
+                long limit = Math.min(ring.demand(), ring.consumerCursor() + ring.capacity);
+                if (limit > requested) {
+                    long n = limit - requested;
+                    requested = limit;
+                    idle = 0;
+                    s.request(n);
+                } else {
+                    SharedMemoryRing.backoff(idle++);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.transport;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link Publisher} of the bytes received on a connected {@link AsynchronousSocketChannel}.
+ * <p>
+ * Every element is a freshly allocated buffer, holding what a single read returned, at most {@code readBufferSize} bytes.
+ * The socket is only read while there is demand, and at most one read is in flight, so a {@link Subscriber} which
+ * doesn't request more leaves the bytes in the socket's receive buffer. Once that is full, TCP's flow control stops
+ * the sender, so backpressure reaches the other end of the connection without any buffering on our side.
+ * <p>
+ * The end of the stream is signalled with {@code onComplete}, cancelling shuts down the input side of the socket.
+ * The channel itself is not closed, as its output side may still be in use, it belongs to whoever connected it.
+ * A socket can only be read once, so only the first {@link Subscriber} is accepted, all later ones are rejected
+ * with {@code onError}.
+ */
+public final class SocketPublisher implements Publisher<ByteBuffer> {
+
+    static final int DEFAULT_READ_BUFFER_SIZE = 8192;
+
+    final AsynchronousSocketChannel channel;
+    final int readBufferSize;
+    final AtomicBoolean subscribed = new AtomicBoolean();
+
+    /**
+     * @param channel the connected channel to read from
+     */
+    public SocketPublisher(AsynchronousSocketChannel channel) {
+        this(channel, DEFAULT_READ_BUFFER_SIZE);
+    }
+
+    /**
+     * @param channel the connected channel to read from
+     * @param readBufferSize the size of the buffer of each read, and therefore the largest element
+     */
+    public SocketPublisher(AsynchronousSocketChannel channel, int readBufferSize) {
+        if (channel == null) throw new NullPointerException("channel is null");
+        if (readBufferSize < 1) throw new IllegalArgumentException("readBufferSize must be positive but was " + readBufferSize);
+        this.channel = channel;
+        this.readBufferSize = readBufferSize;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+        if (subscriber == null) throw new NullPointerException("subscriber is null");
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Subscription() {
+                @Override public void request(long n) { }
+                @Override public void cancel() { }
+            });
+            subscriber.onError(new IllegalStateException("A SocketPublisher allows only a single Subscriber"));
+            return;
+        }
+        ReadSubscription s = new ReadSubscription(subscriber);
+        subscriber.onSubscribe(s);
+        s.drain();
+    }
+
+    final class ReadSubscription implements Subscription, CompletionHandler<Integer, ByteBuffer> {
+
+        final Subscriber<? super ByteBuffer> actual;
+
+        final AtomicLong requested = new AtomicLong();
+
+        final AtomicInteger wip = new AtomicInteger();
+
+        volatile boolean cancelled;
+
+        volatile boolean badRequest;
+
+        /** Set while a read is in flight, cleared by the read's handler after it stored the result. */
+        volatile boolean reading;
+
+        /** The bytes of the last read, until they are emitted. */
+        volatile ByteBuffer ready;
+
+        volatile boolean eof;
+
+        volatile Throwable error;
+
+        ReadSubscription(Subscriber<? super ByteBuffer> actual) {
+            this.actual = actual;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0L) {
+                badRequest = true;
+            } else {
+                for (;;) {
+                    long r = requested.get();
+                    long u = r + n;
+                    if (u < 0L) {
+                        u = Long.MAX_VALUE;
+                    }
+                    if (requested.compareAndSet(r, u)) {
+                        break;
+                    }
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                shutdownInput();
+            }
+        }
+
+        void shutdownInput() {
+            try {
+                // A pending read can't be abandoned, but this makes it complete
+                channel.shutdownInput();
+            } catch (IOException ex) {
+                // The socket is broken anyway, there is nothing left to read
+            }
+        }
+
+        @Override
+        public void completed(Integer n, ByteBuffer buffer) {
+            if (n < 0) {
+                eof = true;
+            } else {
+                buffer.flip();
+                ready = buffer;
+            }
+            reading = false;
+            drain();
+        }
+
+        @Override
+        public void failed(Throwable ex, ByteBuffer buffer) {
+            error = ex;
+            reading = false;
+            drain();
+        }
+
+        void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            for (;;) {
+                if (cancelled) {
+                    ready = null;
+                } else if (badRequest) {
+                    cancelled = true;
+                    ready = null;
+                    shutdownInput();
+                    actual.onError(new IllegalArgumentException("§3.9 violated: request was not positive"));
+                } else {
+                    ByteBuffer b = ready;
+                    long r = requested.get();
+                    if (b != null && r != 0L) {
+                        ready = null;
+                        if (r != Long.MAX_VALUE) {
+                            requested.decrementAndGet();
+                        }
+                        actual.onNext(b);
+                    }
+                    // Read `reading` before the results, the handler stores them before clearing it
+                    boolean idle = !reading;
+                    Throwable ex = error;
+                    boolean done = eof;
+                    if (!cancelled && ready == null) {
+                        if (ex != null) {
+                            cancelled = true;
+                            actual.onError(ex);
+                        } else if (done) {
+                            cancelled = true;
+                            actual.onComplete();
+                        } else if (idle && requested.get() != 0L) {
+                            read();
+                        }
+                    }
+                }
+
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+
+        void read() {
+            ByteBuffer buffer = ByteBuffer.allocate(readBufferSize);
+            reading = true;
+            try {
+                channel.read(buffer, buffer, this);
+            } catch (Throwable ex) {
+                failed(ex, buffer); // Comes back to `drain`, which picks it up in its next round
+            }
+        }
+    }
+}
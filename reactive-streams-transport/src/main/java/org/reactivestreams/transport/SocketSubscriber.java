@@ -0,0 +1,238 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.transport;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A {@link Subscriber} which sends the bytes it receives over a connected {@link AsynchronousSocketChannel}.
+ * <p>
+ * It requests {@code prefetch} buffers up front, and then one more for every buffer that has been written completely.
+ * The buffers that have arrived are written with a single gathering write, and at most one write is in flight.
+ * If the socket's send buffer is full, because the other end doesn't read, the write only completes partially or
+ * not at all, so no more buffers are requested: a full send buffer becomes withheld demand, and this never holds
+ * more than {@code prefetch} buffers.
+ * <p>
+ * Once everything has been written after {@code onComplete}, the output side of the socket is shut down, so the
+ * other end sees the end of the stream. After {@code onError}, or if writing fails, the channel is closed instead,
+ * so that the other end doesn't mistake what it got for the whole stream. {@link #written()} tells how it ended.
+ */
+public class SocketSubscriber implements Subscriber<ByteBuffer> {
+
+    static final int DEFAULT_PREFETCH = 16;
+
+    final AsynchronousSocketChannel channel;
+    final int prefetch;
+
+    final AtomicReference<Subscription> upstream = new AtomicReference<Subscription>();
+
+    /** The buffers which have arrived but are not being written yet. */
+    final Queue<ByteBuffer> queue = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    final AtomicInteger wip = new AtomicInteger();
+
+    final CompletableFuture<Long> written = new CompletableFuture<Long>();
+
+    final WriteHandler handler = new WriteHandler();
+
+    volatile boolean terminated;
+    Throwable error;
+
+    /** Set while a write is in flight, cleared by the write's handler after it updated the fields below. */
+    volatile boolean writing;
+
+    volatile Throwable writeError;
+
+    // The fields below are only accessed by `drain`, or by the handler while a write is in flight
+
+    /** The buffers being written, the ones at the front may already have been written partially. */
+    final ByteBuffer[] batch;
+    int batchCount;
+
+    /** The number of buffers written completely, which have not been requested again yet. */
+    int freed;
+
+    long total;
+
+    boolean subscribed;
+    boolean done;
+
+    /**
+     * @param channel the connected channel to write to
+     */
+    public SocketSubscriber(AsynchronousSocketChannel channel) {
+        this(channel, DEFAULT_PREFETCH);
+    }
+
+    /**
+     * @param channel the connected channel to write to
+     * @param prefetch the number of buffers to request up front, and to write at most with one gathering write
+     */
+    public SocketSubscriber(AsynchronousSocketChannel channel, int prefetch) {
+        if (channel == null) throw new NullPointerException("channel is null");
+        if (prefetch < 1) throw new IllegalArgumentException("prefetch must be positive but was " + prefetch);
+        this.channel = channel;
+        this.prefetch = prefetch;
+        this.batch = new ByteBuffer[prefetch];
+    }
+
+    /**
+     * @return a future which completes with the number of bytes sent once the output side of the socket has been
+     *         shut down, or exceptionally if the stream or writing failed
+     */
+    public CompletableFuture<Long> written() {
+        return written;
+    }
+
+    @Override
+    public void onSubscribe(Subscription s) {
+        if (s == null) throw new NullPointerException("s is null");
+        if (upstream.compareAndSet(null, s)) {
+            drain();
+        } else {
+            s.cancel();
+        }
+    }
+
+    @Override
+    public void onNext(ByteBuffer item) {
+        if (item == null) throw new NullPointerException("item is null");
+        queue.offer(item);
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        if (throwable == null) throw new NullPointerException("throwable is null");
+        error = throwable;
+        terminated = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        terminated = true;
+        drain();
+    }
+
+    void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        for (;;) {
+            if (done) {
+                queue.clear();
+            } else if (!writing) {
+                Subscription s = upstream.get();
+                Throwable we = writeError;
+                if (we != null) {
+                    done = true;
+                    if (s != null) {
+                        s.cancel();
+                    }
+                    fail(we);
+                } else if (s != null) {
+                    // All calls on the Subscription happen in here, so they are serial as per §2.7
+                    if (!subscribed) {
+                        subscribed = true;
+                        s.request(prefetch);
+                    }
+                    int f = freed;
+                    if (f != 0) {
+                        freed = 0;
+                        s.request(f);
+                    }
+
+                    boolean t = terminated; // Read before polling, so no buffer that came before the terminal signal is missed
+                    ByteBuffer b;
+                    while (batchCount != batch.length && (b = queue.poll()) != null) {
+                        batch[batchCount++] = b;
+                    }
+                    if (batchCount != 0) {
+                        write();
+                    } else if (t) {
+                        done = true;
+                        Throwable ex = error;
+                        if (ex != null) {
+                            fail(ex);
+                        } else {
+                            try {
+                                channel.shutdownOutput();
+                                written.complete(total);
+                            } catch (IOException ex2) {
+                                fail(ex2);
+                            }
+                        }
+                    }
+                }
+            }
+
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) {
+                break;
+            }
+        }
+    }
+
+    void write() {
+        writing = true;
+        try {
+            // No timeout, a peer which doesn't read just keeps us from requesting more
+            channel.write(batch, 0, batchCount, 0L, TimeUnit.MILLISECONDS, null, handler);
+        } catch (Throwable ex) {
+            handler.failed(ex, null);
+        }
+    }
+
+    void fail(Throwable ex) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // We are already failing with `ex`
+        }
+        written.completeExceptionally(ex);
+    }
+
+    final class WriteHandler implements CompletionHandler<Long, Void> {
+
+        @Override
+        public void completed(Long n, Void attachment) {
+            total += n;
+            int i = 0;
+            while (i != batchCount && !batch[i].hasRemaining()) {
+                i++;
+            }
+            // Keep the partially written and unwritten buffers at the front for the next write
+            System.arraycopy(batch, i, batch, 0, batchCount - i);
+            for (int j = batchCount - i; j != batchCount; j++) {
+                batch[j] = null;
+            }
+            batchCount -= i;
+            freed += i;
+            writing = false;
+            drain();
+        }
+
+        @Override
+        public void failed(Throwable ex, Void attachment) {
+            writeError = ex;
+            writing = false;
+            drain();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.transport;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * Connects pairs of sockets over the loopback interface, and closes all of them at the end of a test.
+ */
+final class Loopback {
+
+  private final List<AsynchronousSocketChannel> channels = new ArrayList<AsynchronousSocketChannel>();
+
+  /**
+   * @return the client and the server end of a new connection
+   */
+  synchronized AsynchronousSocketChannel[] connect() throws Exception {
+    final AsynchronousServerSocketChannel server = AsynchronousServerSocketChannel.open()
+        .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    try {
+      final Future<AsynchronousSocketChannel> accepted = server.accept();
+      final AsynchronousSocketChannel client = AsynchronousSocketChannel.open();
+      channels.add(client);
+      client.connect(server.getLocalAddress()).get();
+      final AsynchronousSocketChannel other = accepted.get();
+      channels.add(other);
+      return new AsynchronousSocketChannel[] { client, other };
+    } finally {
+      server.close();
+    }
+  }
+
+  // Writes `length` bytes holding 0, 1, 2, ... and then shuts down the output
+  static void writeAndShutdown(AsynchronousSocketChannel channel, int length) throws Exception {
+    final byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) bytes[i] = (byte)i;
+    final ByteBuffer b = ByteBuffer.wrap(bytes);
+    while (b.hasRemaining()) channel.write(b).get();
+    channel.shutdownOutput();
+  }
+
+  // Reads and discards everything until the other end shuts down its output or the channel is closed
+  static void discard(AsynchronousSocketChannel channel) {
+    final ByteBuffer b = ByteBuffer.allocate(8192);
+    try {
+      for (;;) {
+        b.clear();
+        if (channel.read(b).get() < 0) return;
+      }
+    } catch (Exception ignored) {
+      // The channel has been closed
+    }
+  }
+
+  synchronized void close() throws IOException {
+    for (AsynchronousSocketChannel c : channels) c.close();
+    channels.clear();
+  }
+}
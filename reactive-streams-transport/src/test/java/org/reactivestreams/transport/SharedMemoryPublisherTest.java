@@ -0,0 +1,81 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.transport;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.example.unicast.AsyncIterablePublisher;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Test // Must be here for TestNG to find and run this, do not remove
+public class SharedMemoryPublisherTest extends PublisherVerification<ByteBuffer> {
+
+  private ExecutorService e;
+  private Path dir;
+  @BeforeClass void before() throws IOException { e = Executors.newCachedThreadPool(); dir = Files.createTempDirectory("ring"); }
+  @AfterClass void after() throws IOException {
+    if (e != null) e.shutdownNow();
+    if (dir != null) {
+      for (Path p : Files.newDirectoryStream(dir)) Files.delete(p);
+      Files.delete(dir);
+    }
+  }
+
+  public SharedMemoryPublisherTest() {
+    super(new TestEnvironment());
+  }
+
+  // `n` buffers of a single byte each
+  static Iterable<ByteBuffer> bytes(final long n) {
+    return new Iterable<ByteBuffer>() {
+      @Override public Iterator<ByteBuffer> iterator() {
+        return new Iterator<ByteBuffer>() {
+          long i;
+          @Override public boolean hasNext() { return i < n; }
+          @Override public ByteBuffer next() { return ByteBuffer.wrap(new byte[] { (byte)i++ }); }
+          @Override public void remove() { throw new UnsupportedOperationException(); }
+        };
+      }
+    };
+  }
+
+  // The producer and the consumer each map the ring file on their own, as two processes would
+  Publisher<ByteBuffer> connect(Publisher<ByteBuffer> source) {
+    try {
+      final Path file = Files.createTempFile(dir, "tck", ".ring");
+      source.subscribe(new SharedMemorySubscriber(SharedMemoryRing.create(file, 8, 16), e));
+      return new SharedMemoryPublisher(SharedMemoryRing.open(file), e);
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  @Override public Publisher<ByteBuffer> createPublisher(final long elements) {
+    assert(elements <= maxElementsFromPublisher());
+    return connect(new AsyncIterablePublisher<ByteBuffer>(bytes(elements), e));
+  }
+
+  // The producer's stream fails right away, which reaches the consumer through the ring
+  @Override public Publisher<ByteBuffer> createFailedPublisher() {
+    return connect(new AsyncIterablePublisher<ByteBuffer>(new Iterable<ByteBuffer>() {
+      @Override public Iterator<ByteBuffer> iterator() { throw new RuntimeException("Error state signal!"); }
+    }, e));
+  }
+
+  @Override public long maxElementsFromPublisher() {
+    return 1024;
+  }
+}
@@ -0,0 +1,174 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.transport;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.reactivestreams.example.unicast.AsyncIterablePublisher;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+@Test // Must be here for TestNG to find and run this, do not remove
+public class SharedMemoryTransportTest {
+
+  private ExecutorService e;
+  private Path dir;
+  @BeforeClass void before() throws IOException { e = Executors.newCachedThreadPool(); dir = Files.createTempDirectory("ring"); }
+  @AfterClass void after() throws IOException {
+    if (e != null) e.shutdownNow();
+    if (dir != null) {
+      for (Path p : Files.newDirectoryStream(dir)) Files.delete(p);
+      Files.delete(dir);
+    }
+  }
+
+  // Collects everything it receives, requesting only once `request` is called
+  static class Collector implements Subscriber<ByteBuffer> {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final AtomicInteger received = new AtomicInteger();
+    final CountDownLatch done = new CountDownLatch(1);
+    volatile Subscription subscription;
+    volatile Throwable error;
+    void request(long n) { subscription.request(n); }
+    @Override public void onSubscribe(Subscription s) { subscription = s; }
+    @Override public void onNext(ByteBuffer b) {
+      synchronized (bytes) { while (b.hasRemaining()) bytes.write(b.get()); }
+      received.incrementAndGet();
+    }
+    @Override public void onError(Throwable t) { error = t; done.countDown(); }
+    @Override public void onComplete() { done.countDown(); }
+  }
+
+  // Buffers of 1 to 16 bytes, holding the numbers from 0 on, produced lazily and counted in `produced`
+  static Iterable<ByteBuffer> buffers(final int n, final AtomicInteger produced) {
+    return new Iterable<ByteBuffer>() {
+      @Override public Iterator<ByteBuffer> iterator() {
+        return new Iterator<ByteBuffer>() {
+          int i;
+          @Override public boolean hasNext() { return i < n; }
+          @Override public ByteBuffer next() {
+            final byte[] bytes = new byte[i % 16 + 1];
+            for (int j = 0; j < bytes.length; j++) bytes[j] = (byte)(i + j);
+            i++;
+            produced.incrementAndGet();
+            return ByteBuffer.wrap(bytes);
+          }
+          @Override public void remove() { throw new UnsupportedOperationException(); }
+        };
+      }
+    };
+  }
+
+  static byte[] expected(int n) {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final Iterator<ByteBuffer> it = buffers(n, new AtomicInteger()).iterator();
+    while (it.hasNext()) {
+      final ByteBuffer b = it.next();
+      out.write(b.array(), 0, b.remaining());
+    }
+    return out.toByteArray();
+  }
+
+  @Test public void deliversEverythingThroughTwoMappingsOfTheRing() throws Exception {
+    final Path file = Files.createTempFile(dir, "all", ".ring");
+    final SharedMemorySubscriber producer = new SharedMemorySubscriber(SharedMemoryRing.create(file, 8, 16), e);
+    final Collector consumer = new Collector();
+    new SharedMemoryPublisher(SharedMemoryRing.open(file), e).subscribe(consumer);
+    new AsyncIterablePublisher<ByteBuffer>(buffers(10000, new AtomicInteger()), e).subscribe(producer);
+
+    consumer.request(Long.MAX_VALUE);
+    assertEquals(producer.published().get(10, TimeUnit.SECONDS), Long.valueOf(10000));
+    assertTrue(consumer.done.await(10, TimeUnit.SECONDS));
+    assertNull(consumer.error);
+    assertTrue(Arrays.equals(consumer.bytes.toByteArray(), expected(10000)));
+  }
+
+  @Test public void consumerDemandHoldsBackTheProducer() throws Exception {
+    final Path file = Files.createTempFile(dir, "demand", ".ring");
+    final AtomicInteger produced = new AtomicInteger();
+    final List<Long> requests = Collections.synchronizedList(new ArrayList<Long>());
+    final SharedMemorySubscriber producer = new SharedMemorySubscriber(SharedMemoryRing.create(file, 8, 16), e);
+    final Collector consumer = new Collector();
+    new SharedMemoryPublisher(SharedMemoryRing.open(file), e).subscribe(consumer);
+    new AsyncIterablePublisher<ByteBuffer>(buffers(100, produced), e).subscribe(new Subscriber<ByteBuffer>() {
+      @Override public void onSubscribe(final Subscription s) {
+        producer.onSubscribe(new Subscription() {
+          @Override public void request(long n) { requests.add(n); s.request(n); }
+          @Override public void cancel() { s.cancel(); }
+        });
+      }
+      @Override public void onNext(ByteBuffer b) { producer.onNext(b); }
+      @Override public void onError(Throwable t) { producer.onError(t); }
+      @Override public void onComplete() { producer.onComplete(); }
+    });
+
+    consumer.request(3);
+    Thread.sleep(200);
+    // The consumer's request reaches the producer through the ring, and nothing more is produced
+    assertEquals(produced.get(), 3);
+    assertEquals(consumer.received.get(), 3);
+    assertEquals(requests, Arrays.asList(3L));
+
+    // Unbounded demand is still bounded by the free slots of the ring
+    consumer.request(Long.MAX_VALUE);
+    assertTrue(consumer.done.await(10, TimeUnit.SECONDS));
+    assertNull(consumer.error);
+    assertEquals(consumer.received.get(), 100);
+    for (Long n : requests) assertTrue(n <= 8, "Requested " + n + " with a ring of 8 slots");
+  }
+
+  @Test public void cancellingTheConsumerCancelsTheProducer() throws Exception {
+    final Path file = Files.createTempFile(dir, "cancel", ".ring");
+    final SharedMemorySubscriber producer = new SharedMemorySubscriber(SharedMemoryRing.create(file, 8, 16), e);
+    final Collector consumer = new Collector();
+    new SharedMemoryPublisher(SharedMemoryRing.open(file), e).subscribe(consumer);
+    new AsyncIterablePublisher<ByteBuffer>(buffers(100, new AtomicInteger()), e).subscribe(producer);
+
+    consumer.request(1);
+    consumer.subscription.cancel();
+    try {
+      producer.published().get(10, TimeUnit.SECONDS);
+      fail("Expected the consumer's cancellation");
+    } catch (CancellationException expected) {
+      // `get` throws the future's CancellationException as it is
+    }
+  }
+
+  @Test public void bufferLargerThanASlotFailsTheStream() throws Exception {
+    final Path file = Files.createTempFile(dir, "large", ".ring");
+    final SharedMemorySubscriber producer = new SharedMemorySubscriber(SharedMemoryRing.create(file, 8, 4), e);
+    final Collector consumer = new Collector();
+    new SharedMemoryPublisher(SharedMemoryRing.open(file), e).subscribe(consumer);
+    new AsyncIterablePublisher<ByteBuffer>(buffers(100, new AtomicInteger()), e).subscribe(producer);
+
+    consumer.request(Long.MAX_VALUE);
+    assertTrue(consumer.done.await(10, TimeUnit.SECONDS));
+    assertTrue(consumer.error instanceof IOException, "Expected the producer's failure but got " + consumer.error);
+    assertEquals(consumer.received.get(), 4); // The buffers of 1 to 4 bytes fit
+  }
+}
@@ -0,0 +1,71 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.transport;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Test // Must be here for TestNG to find and run this, do not remove
+public class SocketPublisherTest extends PublisherVerification<ByteBuffer> {
+
+  private ExecutorService e;
+  private Loopback loopback;
+  @BeforeClass void before() { e = Executors.newCachedThreadPool(); loopback = new Loopback(); }
+  @AfterClass void after() throws IOException { if (e != null) e.shutdownNow(); if (loopback != null) loopback.close(); }
+
+  public SocketPublisherTest() {
+    super(new TestEnvironment());
+  }
+
+  // Reads one byte at a time, so every byte the other end sends is one element
+  @Override public Publisher<ByteBuffer> createPublisher(final long elements) {
+    assert(elements <= maxElementsFromPublisher());
+    try {
+      final AsynchronousSocketChannel[] pair = loopback.connect();
+      e.submit(new Callable<Void>() {
+        @Override public Void call() throws Exception {
+          Loopback.writeAndShutdown(pair[1], (int)elements);
+          return null;
+        }
+      });
+      return new SocketPublisher(pair[0], 1);
+    } catch (Exception ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  // A socket can only be read once, so this one is failed by having been subscribed to already
+  @Override public Publisher<ByteBuffer> createFailedPublisher() {
+    try {
+      final SocketPublisher p = new SocketPublisher(loopback.connect()[0]);
+      p.subscribe(new Subscriber<ByteBuffer>() {
+        @Override public void onSubscribe(Subscription s) { }
+        @Override public void onNext(ByteBuffer b) { }
+        @Override public void onError(Throwable t) { }
+        @Override public void onComplete() { }
+      });
+      return p;
+    } catch (Exception ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  @Override public long maxElementsFromPublisher() {
+    return 1024;
+  }
+}
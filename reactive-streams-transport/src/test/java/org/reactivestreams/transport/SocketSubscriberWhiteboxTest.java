@@ -0,0 +1,85 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.transport;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.reactivestreams.tck.SubscriberWhiteboxVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Test // Must be here for TestNG to find and run this, do not remove
+public class SocketSubscriberWhiteboxTest extends SubscriberWhiteboxVerification<ByteBuffer> {
+
+  private ExecutorService e;
+  private Loopback loopback;
+  @BeforeClass void before() { e = Executors.newCachedThreadPool(); loopback = new Loopback(); }
+  @AfterClass void after() throws IOException { if (e != null) e.shutdownNow(); if (loopback != null) loopback.close(); }
+
+  public SocketSubscriberWhiteboxTest() {
+    super(new TestEnvironment());
+  }
+
+  @Override
+  public Subscriber<ByteBuffer> createSubscriber(final WhiteboxSubscriberProbe<ByteBuffer> probe) {
+    final AsynchronousSocketChannel[] pair;
+    try {
+      pair = loopback.connect();
+    } catch (Exception ex) {
+      throw new RuntimeException(ex);
+    }
+    e.execute(new Runnable() {
+      @Override public void run() { Loopback.discard(pair[1]); }
+    });
+    return new SocketSubscriber(pair[0]) {
+      @Override
+      public void onSubscribe(final Subscription s) {
+        super.onSubscribe(s);
+
+        probe.registerOnSubscribe(new SubscriberPuppet() {
+          @Override
+          public void triggerRequest(long elements) {
+            s.request(elements);
+          }
+
+          @Override
+          public void signalCancel() {
+            s.cancel();
+          }
+        });
+      }
+
+      @Override
+      public void onNext(ByteBuffer element) {
+        super.onNext(element);
+        probe.registerOnNext(element);
+      }
+
+      @Override
+      public void onError(Throwable cause) {
+        super.onError(cause);
+        probe.registerOnError(cause);
+      }
+
+      @Override
+      public void onComplete() {
+        super.onComplete();
+        probe.registerOnComplete();
+      }
+    };
+  }
+
+  @Override public ByteBuffer createElement(int element) {
+    return ByteBuffer.wrap(new byte[] { (byte)element });
+  }
+}
@@ -0,0 +1,81 @@
+/***************************************************
+ * Licensed under MIT No Attribution (SPDX: MIT-0) *
+ ***************************************************/
+
+package org.reactivestreams.transport;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.reactivestreams.example.unicast.AsyncIterablePublisher;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+@Test // Must be here for TestNG to find and run this, do not remove
+public class SocketTransportTest {
+
+  static final int CHUNK = 64 * 1024;
+  static final int CHUNKS = 1024; // 64 MiB, far more than the socket buffers hold
+
+  private ExecutorService e;
+  private Loopback loopback;
+  @BeforeClass void before() { e = Executors.newFixedThreadPool(4); loopback = new Loopback(); }
+  @AfterClass void after() throws IOException { if (e != null) e.shutdownNow(); if (loopback != null) loopback.close(); }
+
+  // Reads everything, but only once `start` is called
+  static class LazyReader implements Subscriber<ByteBuffer> {
+    final AtomicLong bytes = new AtomicLong();
+    final CountDownLatch done = new CountDownLatch(1);
+    volatile Subscription subscription;
+    volatile Throwable error;
+    void start() { subscription.request(Long.MAX_VALUE); }
+    @Override public void onSubscribe(Subscription s) { subscription = s; }
+    @Override public void onNext(ByteBuffer b) { bytes.addAndGet(b.remaining()); }
+    @Override public void onError(Throwable t) { error = t; done.countDown(); }
+    @Override public void onComplete() { done.countDown(); }
+  }
+
+  @Test public void slowReaderHoldsBackTheSource() throws Exception {
+    final AsynchronousSocketChannel[] pair = loopback.connect();
+    final AtomicInteger produced = new AtomicInteger();
+    final AsyncIterablePublisher<ByteBuffer> source = new AsyncIterablePublisher<ByteBuffer>(new Iterable<ByteBuffer>() {
+      @Override public Iterator<ByteBuffer> iterator() {
+        return new Iterator<ByteBuffer>() {
+          @Override public boolean hasNext() { return produced.get() < CHUNKS; }
+          @Override public ByteBuffer next() { produced.incrementAndGet(); return ByteBuffer.allocate(CHUNK); }
+          @Override public void remove() { throw new UnsupportedOperationException(); }
+        };
+      }
+    }, e);
+
+    final SocketSubscriber sender = new SocketSubscriber(pair[0], 4);
+    final LazyReader reader = new LazyReader();
+    new SocketPublisher(pair[1]).subscribe(reader);
+    source.subscribe(sender);
+
+    Thread.sleep(500); // Plenty of time to fill up the socket buffers
+    // Without demand on the reading end, the sender only gets as far as the socket buffers and its prefetch allow
+    assertTrue(produced.get() < CHUNKS / 4, "Produced " + produced.get() + " chunks without the reader requesting any");
+
+    reader.start();
+    assertEquals(sender.written().get(10, TimeUnit.SECONDS), Long.valueOf((long)CHUNK * CHUNKS));
+    assertTrue(reader.done.await(10, TimeUnit.SECONDS));
+    assertNull(reader.error);
+    assertEquals(reader.bytes.get(), (long)CHUNK * CHUNKS);
+  }
+}